@@ -55,9 +55,11 @@ export const Explore = () => {
   }, [numClubsDisplayed]);
 
   const updateClubList = async () => {
+    /* Only the clubs that are displayed are requested from the backend. */
     const listedClubsPromise =
         await yourClubsHandlerService.listClubs(MembershipType.NonMember,
-            authenticationHandlerService.getToken());
+            authenticationHandlerService.getRequestToken(),
+            numClubsDisplayed ? numClubsDisplayed : DEFAULT_NUM_DISPLAYED);
     setListedClubs(listedClubsPromise);
   }
 
@@ -67,7 +69,7 @@ export const Explore = () => {
 
   const updateClubListAfterJoining = async (clubId: string) => {
     const success = await yourClubsHandlerService.joinClub(
-        clubId, authenticationHandlerService.getToken());
+        clubId, authenticationHandlerService.getRequestToken());
     if (success) {
       updateClubList();
     }
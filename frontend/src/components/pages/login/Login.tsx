@@ -40,7 +40,7 @@ export const Login = (props: LoginProps) => {
     props.handleUserLogin();
     try {
       await profileHandlerService.getPerson(
-          authenticationHandlerService.getToken());
+          authenticationHandlerService.getRequestToken());
     } catch (err) {
       const parsedToken = authenticationHandlerService.getParsedToken();
       if (!parsedToken) {
@@ -61,7 +61,7 @@ export default function Profile() {
   React.useEffect(() => {
     (async() => {
       const personResponse = await profileHandlerService.getPerson(
-          authenticationHandlerService.getToken());
+          authenticationHandlerService.getRequestToken());
       setPerson(personResponse);
     })();
   }, []);
@@ -87,7 +87,7 @@ export default function Profile() {
       }
       try {
         await profileHandlerService.updatePerson(
-            person, authenticationHandlerService.getToken());
+            person, authenticationHandlerService.getRequestToken());
         setSubmitSuccess(true);
       } catch (err) {
         setSubmitSuccess(false);
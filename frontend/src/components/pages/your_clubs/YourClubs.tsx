@@ -74,7 +74,7 @@ export const YourClubs = () => {
   const updateClubList = async () => {
     const listedClubsPromise =
         await yourClubsHandlerService.listClubs(MembershipType.Member,
-            authenticationHandlerService.getToken());
+            authenticationHandlerService.getRequestToken());
     setListedClubs(listedClubsPromise);
   }
 
@@ -84,7 +84,7 @@ export const YourClubs = () => {
    */
   const updateClubListAfterLeaving = async (clubId: string) => {
     const success = await yourClubsHandlerService.leaveClub(
-        clubId, authenticationHandlerService.getToken());
+        clubId, authenticationHandlerService.getRequestToken());
     if (success) {
       updateClubList();
     }
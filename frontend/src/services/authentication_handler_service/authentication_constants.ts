@@ -1,3 +1,13 @@
 /** The client ID of our app, safe to expose. */
 export const CLIENT_ID: string =
     "893627513276-o7p1m433c9l828svolutrbaibqqvmt8q.apps.googleusercontent.com";
+
+/** The response header of /api/retrieve-token holding the session token. */
+export const SESSION_TOKEN_HEADER: string = "X-Session-Token";
+
+/**
+ * How long a session token is used for, in milliseconds. It is shorter than
+ * the lifetime the server gives session tokens (coffeehouse.session.ttlSeconds,
+ * one hour), so that a token is never sent once the server would reject it.
+ */
+export const SESSION_TOKEN_LIFETIME_MS: number = 50 * 60 * 1000;
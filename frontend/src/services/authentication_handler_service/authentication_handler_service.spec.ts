@@ -18,8 +18,12 @@ const EXPECTED_SCOPES = "profile email openid";
 const TOKEN = "Test token";
 const ENCODED_TOKEN = "1.IlRlc3QgdG9rZW4i";
 const tokenConsumer = jest.fn();
+const SESSION_TOKEN = "cs1.Test session token";
 const authService = new AuthenticationHandlerService({
-  retrieveToken: jest.fn().mockReturnValue(TOKEN),
+  retrieveToken: jest.fn().mockReturnValue({
+    idToken: TOKEN,
+    sessionToken: SESSION_TOKEN,
+  }),
 });
 const failingAuthService = new AuthenticationHandlerService({
   retrieveToken: jest.fn().mockImplementation(() => {throw new Error()}),
@@ -105,3 +109,67 @@ it("returns an empty object if no parsed token exists", async () => {
   const result = authService.getParsedToken();
   expect(result).toBe(undefined);
 });
+
+it("sends the session token with requests after sign in", async () => {
+  const service = new AuthenticationHandlerService({
+    retrieveToken: jest.fn().mockReturnValue({
+      idToken: TOKEN,
+      sessionToken: SESSION_TOKEN,
+    }),
+  });
+  authInstance.grantOfflineAccess = successfulGrantOffileAccess;
+  service.getToken = jest.fn().mockReturnValue(TOKEN);
+
+  await service.signIn(EXPECTED_SCOPES);
+
+  expect(service.getRequestToken()).toBe(SESSION_TOKEN);
+});
+
+it("sends the ID token once the session token is too old", async () => {
+  const service = new AuthenticationHandlerService({
+    retrieveToken: jest.fn().mockReturnValue({
+      idToken: TOKEN,
+      sessionToken: SESSION_TOKEN,
+    }),
+  });
+  authInstance.grantOfflineAccess = successfulGrantOffileAccess;
+  service.getToken = jest.fn().mockReturnValue(TOKEN);
+  await service.signIn(EXPECTED_SCOPES);
+
+  const now = jest.spyOn(Date, "now")
+      .mockReturnValue(service.sessionTokenExpiresAt);
+  try {
+    expect(service.getRequestToken()).toBe(TOKEN);
+  } finally {
+    now.mockRestore();
+  }
+});
+
+it("sends the ID token when no session token was minted", async () => {
+  const service = new AuthenticationHandlerService({
+    retrieveToken: jest.fn().mockReturnValue({idToken: TOKEN}),
+  });
+  authInstance.grantOfflineAccess = successfulGrantOffileAccess;
+  service.getToken = jest.fn().mockReturnValue(TOKEN);
+
+  await service.signIn(EXPECTED_SCOPES);
+
+  expect(service.getRequestToken()).toBe(TOKEN);
+});
+
+it("forgets the session token on sign out", async () => {
+  const service = new AuthenticationHandlerService({
+    retrieveToken: jest.fn().mockReturnValue({
+      idToken: TOKEN,
+      sessionToken: SESSION_TOKEN,
+    }),
+  });
+  authInstance.grantOfflineAccess = successfulGrantOffileAccess;
+  service.getToken = jest.fn().mockReturnValue(TOKEN);
+  await service.signIn(EXPECTED_SCOPES);
+  authInstance.isSignedIn.get = jest.fn().mockReturnValue(true);
+
+  await service.signOut();
+
+  expect(service.getRequestToken()).toBe(TOKEN);
+});
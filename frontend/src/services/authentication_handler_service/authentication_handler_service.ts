@@ -1,4 +1,5 @@
 import { BackendAuthenticationInterface } from "../backend_service_interface/backend_service_interface";
+import { SESSION_TOKEN_LIFETIME_MS } from "./authentication_constants";
 
 /** Error that occurs if sign in fails. */
 export class FailureToSignInError extends Error {
@@ -36,6 +37,8 @@ export interface TokenInterface {
 export class AuthenticationHandlerService {
   token: string | undefined = undefined;
   authInstance: gapi.auth2.GoogleAuth | undefined = undefined;
+  sessionToken: string | undefined = undefined;
+  sessionTokenExpiresAt: number = 0;
 
   /** Backend is responsible for retrieving the ID token. */
   constructor(private readonly backend: BackendAuthenticationInterface) {}
@@ -73,6 +76,19 @@ export class AuthenticationHandlerService {
     return response.id_token;
   }
 
+  /**
+   * Gets the token to send to the backend with requests made for the user: the
+   * session token minted at sign in while it is fresh, since the server checks
+   * it faster than an ID token, and otherwise the ID token.
+   * @return the token if the user is signed in, otherwise undefined
+   */
+  getRequestToken(): string | undefined {
+    if (this.sessionToken && Date.now() < this.sessionTokenExpiresAt) {
+      return this.sessionToken;
+    }
+    return this.getToken();
+  }
+
   /**
    * Signs the user in, returns the user's ID token.
    * @param scopes the scopes our app requests for oauth
@@ -87,7 +103,10 @@ export class AuthenticationHandlerService {
     const redirectUri = window.location.origin;
     return new Promise(async (resolve, reject) => {
       try {
-        const token = await this.backend.retrieveToken(code, redirectUri);
+        const { idToken: token, sessionToken } =
+            await this.backend.retrieveToken(code, redirectUri);
+        this.sessionToken = sessionToken;
+        this.sessionTokenExpiresAt = Date.now() + SESSION_TOKEN_LIFETIME_MS;
         const signedInToken = this.getToken();
         // If already logged in, listener won't run so we resolve here.
         if (signedInToken) {
@@ -110,6 +129,7 @@ export class AuthenticationHandlerService {
     if (!auth.isSignedIn.get()) {
       return false;
     }
+    this.sessionToken = undefined;
     await auth.signOut();
     return true;
   }
@@ -1,10 +1,17 @@
+import { RetrievedTokensInterface } from "../backend_service_interface/backend_service_interface"
+import { SESSION_TOKEN_HEADER } from "../authentication_handler_service/authentication_constants";
+
 /**
  * Communicates with the backend to exchange an auth code and a redirect
  * URI for an ID token.
  */
 export class AuthenticationBackendService {
-  /** Returns the ID token given an auth code and redirect URI. */
-  async retrieveToken(code: string, redirectUri: string): Promise<string> {
+  /**
+   * Returns the ID token, and the session token if the server minted one,
+   * given an auth code and redirect URI.
+   */
+  async retrieveToken(
+      code: string, redirectUri: string): Promise<RetrievedTokensInterface> {
     const bodyContents = {
       code,
       redirectUri,
@@ -15,6 +22,8 @@ export class AuthenticationBackendService {
       body: JSON.stringify(bodyContents),
     });
 
-    return response.text();
+    const idToken = (await response.text()).trim();
+    const sessionToken = response.headers.get(SESSION_TOKEN_HEADER);
+    return sessionToken ? {idToken, sessionToken} : {idToken};
   }
 }
@@ -13,16 +13,29 @@ export class ClubBackendService {
     return response.json();
   }
 
-  /** Retrieves a list of clubs with some relation to a user. */
-  async listClubs(membership: MembershipType,
-                  token: string): Promise<ClubInterface[]> {
-    const listClubsUrl = "/api/list-clubs?" + new URLSearchParams({
+  /**
+   * Retrieves a list of clubs with some relation to a user.
+   * @param membership the relationship of the user to the clubs returned
+   * @param token the ID token of the user
+   * @param pageSize the maximum number of clubs returned, or undefined for all of them
+   * @return the list of clubs
+   */
+  async listClubs(membership: MembershipType, token: string,
+                  pageSize?: number): Promise<ClubInterface[]> {
+    const params = new URLSearchParams({
       idToken: token,
       membershipStatus: membership,
-    }).toString();
-    const response = await fetch(listClubsUrl, {
+    });
+    if (pageSize !== undefined) {
+      params.append("pageSize", pageSize.toString());
+    }
+    const response = await fetch("/api/list-clubs?" + params.toString(), {
       method: "GET",
     });
+    if (pageSize !== undefined) {
+      const page = await response.json();
+      return page.clubs;
+    }
     return response.json();
   }
 
@@ -19,6 +19,7 @@ export interface ClubInterface {
   contentWarnings: string[],
   description: string,
   currentBook: BookInterface,
+  memberCount?: number,
 }
 
 export interface BackendProfileServiceInterface {
@@ -35,13 +36,24 @@ export enum MembershipType {
 
 export interface BackendYourClubsServiceInterface {
   createClub(club: ClubInterface): Promise<ClubInterface>,
-  listClubs(membership: MembershipType,
-            token: string): Promise<ClubInterface[]>,
+  listClubs(membership: MembershipType, token: string,
+            pageSize?: number): Promise<ClubInterface[]>,
   leaveClub(clubId: string, token: string): Promise<number>,
   joinClub(clubId: string, token: string): Promise<number>,
   getClub(clubId: string): Promise<ClubInterface>,
 }
 
+/**
+ * The tokens returned by a sign in: the Google ID token, and the session token
+ * minted by the server, which the servlets accept in place of the ID token and
+ * check faster. The session token is missing if the server could not mint one.
+ */
+export interface RetrievedTokensInterface {
+  idToken: string,
+  sessionToken?: string,
+}
+
 export interface BackendAuthenticationInterface {
-  retrieveToken(code: string, redirectUri: string): Promise<string>,
+  retrieveToken(
+      code: string, redirectUri: string): Promise<RetrievedTokensInterface>,
 }
@@ -83,6 +83,12 @@ it("calls the listClubs function correctly", async () => {
   expect(response).toStrictEqual([testClub]);
 });
 
+it("passes the page size to the listClubs function", async () => {
+  const response = await clubService.listClubs(MEMBERSHIP, TOKEN, 5);
+  expect(listClubsSuccessful).toHaveBeenCalledWith(MEMBERSHIP, TOKEN, 5);
+  expect(response).toStrictEqual([testClub]);
+});
+
 it("calls the leaveClub function correctly", async () => {
   const response = await clubService.leaveClub(CLUB_ID, TOKEN);
   expect(leaveClubSuccessful).toHaveBeenCalledWith(CLUB_ID, TOKEN);
@@ -59,13 +59,17 @@ export class YourClubsHandlerService {
    * Lists clubs that a user is in or not in.
    * @param membership the relationship of the user to the clubs returned
    * @param token the ID token of the user
+   * @param pageSize the maximum number of clubs returned, or undefined for all of them
    * @return the list of clubs that the user is in or not in
    * @throws FailureToGetClubsError if an error was encountered listing the clubs
    */
-  async listClubs(membership: MembershipType,
-                  token: string): Promise<ClubInterface[]> {
+  async listClubs(membership: MembershipType, token: string,
+                  pageSize?: number): Promise<ClubInterface[]> {
     try {
-      return await this.backend.listClubs(membership, token);
+      if (pageSize === undefined) {
+        return await this.backend.listClubs(membership, token);
+      }
+      return await this.backend.listClubs(membership, token, pageSize);
     } catch (err) {
       throw new FailureToGetClubsError();
     }
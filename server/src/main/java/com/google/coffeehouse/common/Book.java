@@ -38,7 +38,7 @@ public class Book implements Saveable {
   private String author;
   private String isbn;
   private String bookId;
-  private StorageHandlerApi handler;
+  private transient StorageHandlerApi handler;
 
   private Book(Builder builder) {
     this.title = builder.title;
@@ -114,9 +114,27 @@ public class Book implements Saveable {
     this.handler = handler;
   }
 
+  /** Returns the API the book is saved with, which is the default API if none was set. */
+  private StorageHandlerApi storageHandler() {
+    if (handler == null) {
+      handler = new StorageHandlerApi();
+    }
+    return handler;
+  }
+
   @Override
   public void save() {
     List<Mutation> mutations = new ArrayList<>();
+    mutations.add(toMutation());
+    storageHandler().writeMutations(mutations);
+  }
+
+  /**
+   * Returns the mutation that saves this {@link Book}, so that it can be written in the same
+   * commit as other mutations.
+   * @return the insert or update mutation of the Books table
+   */
+  public Mutation toMutation() {
     Mutation.WriteBuilder bookMutation = 
         Mutation.newInsertOrUpdateBuilder("Books")
                 .set("bookId").to(bookId)
@@ -127,9 +145,7 @@ public class Book implements Saveable {
     if (getIsbn().isPresent()) {
       bookMutation.set("isbn").to(isbn);
     }
-
-    mutations.add(bookMutation.build());
-    handler.writeMutations(mutations);
+    return bookMutation.build();
   }
 
   @Override
@@ -143,7 +159,7 @@ public class Book implements Saveable {
     private String author = null;
     private String isbn = null;
     private String bookId = null;
-    private StorageHandlerApi handler = new StorageHandlerApi();
+    private StorageHandlerApi handler = null;
 
     public Builder setTitle(String title) {
       this.title = title;
@@ -42,7 +42,8 @@ public class Club implements Saveable {
   private String ownerId;
   private String description;
   private List<String> contentWarnings;
-  private StorageHandlerApi handler;
+  private long memberCount;
+  private transient StorageHandlerApi handler;
 
   private Club(Builder builder) {
     this.name = builder.name;
@@ -51,6 +52,7 @@ public class Club implements Saveable {
     this.description = builder.description;
     this.contentWarnings = builder.contentWarnings;
     this.ownerId = builder.ownerId;
+    this.memberCount = builder.memberCount;
     this.handler = builder.handler;
   }
 
@@ -118,6 +120,14 @@ public class Club implements Saveable {
     return clubId;
   }
 
+  /**
+   * Returns the number of members of the club, including the owner. The count is maintained by
+   * the membership transactions, so it is not written by {@link #save()}.
+   */
+  public long getMemberCount() {
+    return memberCount;
+  }
+
   public void setBook(Book book) {
     this.currentBook = book;
   }
@@ -134,6 +144,17 @@ public class Club implements Saveable {
     this.handler = handler;
   }
 
+  /**
+   * Returns the API this club is saved with, creating the default one the first time a club built
+   * without a handler is saved, so that building a club never connects to the database.
+   */
+  private StorageHandlerApi storageHandler() {
+    if (handler == null) {
+      handler = new StorageHandlerApi();
+    }
+    return handler;
+  }
+
   /** Starts the building process of a new Club object. */
   public static Builder newBuilder() {
     return new Builder();
@@ -147,12 +168,33 @@ public class Club implements Saveable {
     return clubInfo + ", currentBook: (" + bookInfo + ")";
   }
 
+  /**
+   * Saves this {@link Club} and its current {@link Book} in a single commit.
+   */
   @Override
   public void save() {
-    currentBook.setStorageHandler(handler);
-    currentBook.save();
+    currentBook.setStorageHandler(storageHandler());
+    storageHandler().writeMutations(toMutations());
+  }
 
+  /**
+   * Returns the mutations that save this {@link Club} and its current {@link Book}, so that they
+   * can be written in the same commit as other mutations.
+   * @return the insert or update mutations of the Books and Clubs tables
+   */
+  public List<Mutation> toMutations() {
     List<Mutation> mutations = new ArrayList<>();
+    mutations.add(currentBook.toMutation());
+    mutations.add(toClubMutation());
+    return mutations;
+  }
+
+  /**
+   * Returns the mutation that saves this {@link Club} without its current {@link Book}, for a club
+   * whose book is already saved, for example because other clubs are reading it.
+   * @return the insert or update mutation of the Clubs table
+   */
+  public Mutation toClubMutation() {
     Mutation.WriteBuilder clubMutation = 
         Mutation.newInsertOrUpdateBuilder("Clubs")
                 .set("clubId").to(clubId)
@@ -162,9 +204,7 @@ public class Club implements Saveable {
                 .set("name").to(name)
                 .set("ownerId").to(ownerId)
                 .set("timestamp").to(Value.COMMIT_TIMESTAMP);
-    
-    mutations.add(clubMutation.build());
-    handler.writeMutations(mutations);
+    return clubMutation.build();
   }
 
   public static class Builder {
@@ -174,8 +214,9 @@ public class Club implements Saveable {
     private String clubId = null;
     private String ownerId = null;
     private List<String> contentWarnings = new ArrayList<>();
+    private long memberCount = 0;
     private static final String DEFAULT_DESCRIPTION = "A book club about %s.";
-    private StorageHandlerApi handler = new StorageHandlerApi();
+    private StorageHandlerApi handler = null;
         
     public Builder setCurrentBook(Book currentBook) {
       this.currentBook = currentBook;
@@ -207,6 +248,11 @@ public class Club implements Saveable {
       return this;
     }
 
+    public Builder setMemberCount(long memberCount) {
+      this.memberCount = memberCount;
+      return this;
+    }
+
     public Builder setStorageHandler(StorageHandlerApi handler) {
       this.handler = handler;
       return this;
@@ -41,7 +41,7 @@ public class Person implements Saveable {
   private String email;
   private String pronouns;
   private String userId;
-  private StorageHandlerApi handler;
+  private transient StorageHandlerApi handler;
 
   private Person(Builder builder) {
     this.nickname = builder.nickname;
@@ -114,6 +114,15 @@ public class Person implements Saveable {
     this.handler = handler;
   }
 
+  // The default API is created on the first save rather than by the builder, as creating it
+  // connects to the default storage backend.
+  private StorageHandlerApi storageHandler() {
+    if (handler == null) {
+      handler = new StorageHandlerApi();
+    }
+    return handler;
+  }
+
   /** Starts the building process of a new Person object. */
   public static Builder newBuilder() {
     return new Builder();
@@ -127,6 +136,16 @@ public class Person implements Saveable {
   @Override
   public void save() {
     List<Mutation> mutations = new ArrayList<>();
+    mutations.add(toMutation());
+    storageHandler().writeMutations(mutations);
+  }
+
+  /**
+   * Returns the mutation that saves this {@link Person}, so that it can be written in the same
+   * commit as other mutations.
+   * @return the insert or update mutation of the Persons table
+   */
+  public Mutation toMutation() {
     Mutation.WriteBuilder personMutation = 
         Mutation.newInsertOrUpdateBuilder("Persons")
                 .set("userId").to(userId)
@@ -135,9 +154,7 @@ public class Person implements Saveable {
     if (getPronouns().isPresent()) {
       personMutation.set("pronouns").to(pronouns);
     }
-
-    mutations.add(personMutation.build());
-    handler.writeMutations(mutations);
+    return personMutation.build();
   }
 
   /** A builder class to create a Person object. */
@@ -146,7 +163,7 @@ public class Person implements Saveable {
     private String nickname = null;
     private String pronouns = null;
     private String userId = null;
-    private StorageHandlerApi handler = new StorageHandlerApi();
+    private StorageHandlerApi handler = null;
 
     public Builder setNickname(String nickname) {
       this.nickname = nickname;
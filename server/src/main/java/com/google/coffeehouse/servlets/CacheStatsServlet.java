@@ -0,0 +1,67 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import com.google.coffeehouse.storagehandler.EntityCache;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ * Servlet to return the counters of the entity caches of this instance in JSON format, so that
+ * the caches can be sized. Only the administrators of the project can reach it, as set by the
+ * security constraint of {@code web.xml}.
+ */
+@WebServlet("/api/cache-stats")
+public class CacheStatsServlet extends HttpServlet {
+  private static final Gson gson = new Gson();
+  private final StorageHandlerApi storageHandler;
+
+  /**
+   * Overloaded constructor for dependency injection.
+   * @param storageHandler the {@link StorageHandlerApi} whose cache counters are returned
+   */
+  public CacheStatsServlet(StorageHandlerApi storageHandler) {
+    super();
+    this.storageHandler = storageHandler;
+  }
+
+  /**
+   * Explicit default constructor used for instantiating the servlet when not testing.
+   */
+  public CacheStatsServlet() {
+    super();
+    this.storageHandler = new StorageHandlerApi();
+  }
+
+  /** 
+   * Returns the hit, miss, eviction and expiration counters of each entity cache in JSON format.
+   * @param request the GET request, which needs no parameters
+   * @param response the response from this method, will contain a JSON object mapping the name of
+   *     each cached table to the counters of its cache
+   * @throws IOException if an input or output error is detected when the servlet handles the request
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Map<String, EntityCache.CacheStats> stats = storageHandler.getCacheStats();
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(stats));
+  }
+}
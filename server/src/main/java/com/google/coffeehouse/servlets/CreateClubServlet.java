@@ -52,7 +52,7 @@ public class CreateClubServlet extends HttpServlet {
   public static final String LOG_INPUT_ERROR_MESSAGE =
       "Error with JSON input in CreateClubServlet: ";
   private final StorageHandlerApi handler;
-  private static IdentifierGenerator idGen;
+  private final IdentifierGenerator idGen;
   private static final Gson gson = new Gson();
 
   /** 
@@ -96,7 +96,8 @@ public class CreateClubServlet extends HttpServlet {
             String.format(NO_FIELD_ERROR, Club.CURRENT_BOOK_FIELD_NAME));
       }
 
-      // Generate IDs for the club and the book.
+      // Generate IDs for the club and the book. The book ID is only used if no other club is
+      // reading the same book.
       bookInfo.put(Book.BOOK_ID_FIELD_NAME, idGen.generateId());
       clubInfo.put(Club.CLUB_ID_FIELD_NAME, idGen.generateId());
       newClub = Club.fromMap(clubInfo);
@@ -111,9 +112,9 @@ public class CreateClubServlet extends HttpServlet {
     }
     
     newClub.setStorageHandler(handler);
-    newClub.save();
-
-    handler.addOwnership(newClub.getOwnerId(), newClub.getClubId());
+    // The book, the club and the owner's membership are written in one commit. If the book is
+    // already in the catalog, the club's book is replaced by the shared book instead.
+    handler.createClub(newClub);
 
     response.setContentType("application/json;");
     response.getWriter().println(gson.toJson(newClub));
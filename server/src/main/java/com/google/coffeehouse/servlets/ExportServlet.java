@@ -0,0 +1,149 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.servlets;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.AuthenticationHelper;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet for administrators to export every {@link Club}, with its current book and optionally
+ * its members, as a gzip-compressed NDJSON file, that is one JSON object per line.
+ *
+ * <p>Each line is the JSON format of a club, as returned by {@code GetClubServlet}, with a
+ * {@code "members"} array of the members of the club when they are requested. The clubs are
+ * compressed and written to the response as they are read, so the memory used does not depend
+ * on the number of clubs.
+ */
+@WebServlet("/api/export")
+public class ExportServlet extends HttpServlet {
+  /** The name of the query parameter that is "true" when the members of the clubs are exported. */
+  public static final String MEMBERS_PARAMETER = "members";
+  /** The name of the field of an exported club holding its members. */
+  public static final String MEMBERS_FIELD_NAME = "members";
+  /** The file name of the export offered to the browser. */
+  public static final String FILE_NAME = "clubs.ndjson.gz";
+  /** The error string sent by the response object when the user is not an administrator. */
+  public static final String NOT_ADMIN_ERROR = "Only administrators can export records.";
+  /** Message to be logged when an invalid ID token is passed in. */
+  public static final String LOG_SECURITY_MESSAGE = "Forbidden action attempted: ";
+  /** Message to be logged when reading the clubs fails during the export. */
+  public static final String LOG_EXPORT_ERROR_MESSAGE = "Export failed in ExportServlet: ";
+  /** The error string sent by the response object when the export fails before it is sent. */
+  public static final String EXPORT_ERROR = "- unable to export the clubs.";
+
+  private static final Logger logger = Logger.getLogger(ExportServlet.class.getName());
+  private static final Gson gson = new Gson();
+  private final GoogleIdTokenVerifier verifier;
+  private final StorageHandlerApi storageHandler;
+
+  /**
+   * Overloaded constructor for dependency injection.
+   * @param verifier the class that verifies the validity of the ID token
+   * @param storageHandler the {@link StorageHandlerApi} that the clubs are read with
+   */
+  public ExportServlet(GoogleIdTokenVerifier verifier, StorageHandlerApi storageHandler) {
+    super();
+    this.verifier = verifier;
+    this.storageHandler = storageHandler;
+  }
+
+  /**
+   * Explicit default constructor used for instantiating the servlet when not testing.
+   */
+  public ExportServlet() {
+    super();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
+    this.storageHandler = new StorageHandlerApi();
+  }
+
+  /**
+   * Writes every club as a line of JSON to a gzip-compressed NDJSON file.
+   * @param request the GET request, whose {@code "Authorization"} header must hold
+   *     {@code "Bearer "} followed by the ID token of an administrator, and which may have a
+   *     {@code "members"} parameter set to {@code "true"} to export the members of each club
+   * @param response the response from this method, will contain the gzip-compressed NDJSON file.
+   *     If the ID token is missing or invalid, or the user is not an administrator, the response
+   *     will send a "403 Forbidden error". If reading the clubs fails before any of the file
+   *     was sent, the response will send a "500 Internal Server Error"
+   * @throws IOException if an input or output error is detected when the servlet handles the
+   *     request, or if reading the clubs fails after the file has started, so that the response
+   *     is aborted without the end of the gzip file and the client sees it as incomplete
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    try {
+      String idToken = AuthenticationHelper.getIdTokenFromAuthorizationHeader(
+          request.getHeader("Authorization"));
+      String userId = AuthenticationHelper.getUserIdFromIdToken(idToken, verifier);
+      if (!AuthenticationHelper.isAdmin(userId)) {
+        throw new GeneralSecurityException(NOT_ADMIN_ERROR);
+      }
+    } catch (GeneralSecurityException e) {
+      System.out.println(LOG_SECURITY_MESSAGE + e.getMessage());
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+      return;
+    }
+    boolean includeMembers = Boolean.parseBoolean(request.getParameter(MEMBERS_PARAMETER));
+
+    response.setContentType("application/gzip");
+    response.setHeader("Content-Disposition", "attachment; filename=\"" + FILE_NAME + "\"");
+    // The writer is only closed once every club was written, since closing it writes the end
+    // of the gzip file and would make a partial export look complete.
+    Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new GZIPOutputStream(response.getOutputStream()), StandardCharsets.UTF_8));
+    try {
+      storageHandler.exportClubs(includeMembers, (club, members) -> {
+        JsonObject line = gson.toJsonTree(club).getAsJsonObject();
+        if (members != null) {
+          line.add(MEMBERS_FIELD_NAME, gson.toJsonTree(members));
+        }
+        try {
+          writer.write(gson.toJson(line));
+          writer.write('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } catch (RuntimeException e) {
+      logger.log(Level.SEVERE, LOG_EXPORT_ERROR_MESSAGE + e.getMessage(), e);
+      if (response.isCommitted()) {
+        throw new IOException(LOG_EXPORT_ERROR_MESSAGE + e.getMessage(), e);
+      }
+      response.reset();
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, EXPORT_ERROR);
+      return;
+    }
+    writer.close();
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ * Servlet to get several {@link Club}s at once from the repeated {@code "clubId"} URL parameters
+ * of an Http GET Request through one batched call to the Storage Handler API, and return them
+ * in JSON format.
+ */
+@WebServlet("/api/get-clubs")
+public class GetClubsServlet extends HttpServlet {
+  /** Message to be logged when the GET request does not have required fields. */
+  public static final String LOG_INPUT_ERROR_MESSAGE = "No \"%s\" parameter found.";
+  /** Message to be logged when the GET request asks for more clubs than allowed at once. */
+  public static final String TOO_MANY_CLUBS_ERROR = "At most %d \"%s\" parameters are allowed.";
+  /** Message to be logged when a non-security related exception is thrown in the servlet. */
+  public static final String GENERAL_LOG_ERROR = "Exception encountered in GetClubsServlet: ";
+  /** 
+   * The error string sent by the response object in doGet when the Clubs cannot be fetched
+   * because of a server fault rather than the request.
+   */
+  public static final String INTERNAL_ERROR = "- unable to fetch clubs.";
+  /** Name of the key in the output JSON that corresponds to the list of found Clubs. */
+  public static final String CLUBS_FIELD_NAME = "clubs";
+  /** Name of the key in the output JSON that corresponds to the club IDs that were not found. */
+  public static final String MISSING_CLUB_IDS_FIELD_NAME = "missingClubIds";
+  /** The maximum number of club IDs that can be requested at once. */
+  public static final int MAX_CLUB_IDS = 100;
+
+  private static final Gson gson = new Gson();
+  private final StorageHandlerApi storageHandler;
+
+  /**
+   * Overloaded constructor for dependency injection.
+   * @param storageHandler the {@link StorageHandlerApi} that is used when fetching the Clubs
+   */
+  public GetClubsServlet(StorageHandlerApi storageHandler) {
+    super();
+    this.storageHandler = storageHandler;
+  }
+
+  /**
+   * Explicit default constructor used for instantiating the servlet when not testing.
+   */
+  public GetClubsServlet() {
+    super();
+    this.storageHandler = new StorageHandlerApi();
+  }
+  
+  /** 
+   * Returns the requested {@link Club} objects in JSON format from information in the database.
+   * @param request the GET request that must have at least one {@code "clubId"} URL parameter
+   *     and at most {@code MAX_CLUB_IDS} of them, each corresponding to a desired club's club ID.
+   *     If there is no such parameter, or there are too many, the response object will send a
+   *     "400 Bad Request error"
+   * @param response the response from this method, will contain a JSON object with a
+   *     {@code "clubs"} key mapped to the found Clubs (in the order they were requested) and a
+   *     {@code "missingClubIds"} key mapped to the requested club IDs that do not exist in the
+   *     database. If the request object has no "clubId" parameter, or too many of them, this
+   *     object will send a "400 Bad Request error". If the Clubs cannot be fetched from the
+   *     database, this object will send a "500 Internal Server error"
+   * @throws IOException if an input or output error is detected when the servlet handles the request
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    List<Club> clubs = new ArrayList<>();
+    List<String> missingClubIds = new ArrayList<>();
+    try {
+      String[] clubIdParameters = request.getParameterValues(Club.CLUB_ID_FIELD_NAME);
+      if (clubIdParameters == null || clubIdParameters.length == 0) {
+        throw new IllegalArgumentException(
+            String.format(LOG_INPUT_ERROR_MESSAGE, Club.CLUB_ID_FIELD_NAME));
+      }
+      Set<String> clubIds = new LinkedHashSet<>(Arrays.asList(clubIdParameters));
+      if (clubIds.size() > MAX_CLUB_IDS) {
+        throw new IllegalArgumentException(
+            String.format(TOO_MANY_CLUBS_ERROR, MAX_CLUB_IDS, Club.CLUB_ID_FIELD_NAME));
+      }
+
+      Map<String, Club> clubsById = storageHandler.fetchClubsByIds(clubIds);
+      for (String clubId : clubIds) {
+        if (clubsById.containsKey(clubId)) {
+          clubs.add(clubsById.get(clubId));
+        } else {
+          missingClubIds.add(clubId);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println(GENERAL_LOG_ERROR + e.getMessage());
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    } catch (Exception e) {
+      System.out.println(GENERAL_LOG_ERROR + e.getMessage());
+      response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, INTERNAL_ERROR);
+      return;
+    }
+    JsonObject responseJson = new JsonObject();
+    responseJson.add(CLUBS_FIELD_NAME, gson.toJsonTree(clubs));
+    responseJson.add(MISSING_CLUB_IDS_FIELD_NAME, gson.toJsonTree(missingClubIds));
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(responseJson));
+  }
+}
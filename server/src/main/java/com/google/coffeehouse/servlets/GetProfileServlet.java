@@ -17,9 +17,6 @@ package com.google.coffeehouse.servlets;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.coffeehouse.common.Person;
 import com.google.coffeehouse.storagehandler.StorageHandlerApi;
 import com.google.coffeehouse.storagehandler.StorageHandler;
@@ -52,8 +49,6 @@ public class GetProfileServlet extends HttpServlet {
   public static final String ID_TOKEN_PARAMETER = "idToken";
 
   private static final Gson gson = new Gson();
-  private static final HttpTransport transport = new NetHttpTransport();
-  private static final GsonFactory jsonFactory = GsonFactory.getDefaultInstance();
   private final GoogleIdTokenVerifier verifier;
   private final StorageHandlerApi storageHandler;
 
@@ -74,7 +69,7 @@ public class GetProfileServlet extends HttpServlet {
   public GetProfileServlet() {
     super();
     this.storageHandler = new StorageHandlerApi();
-    this.verifier = new GoogleIdTokenVerifier.Builder(transport, jsonFactory).build();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
   }
   
   /** 
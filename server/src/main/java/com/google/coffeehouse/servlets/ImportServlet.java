@@ -0,0 +1,254 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.servlets;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.MembershipConstants;
+import com.google.coffeehouse.common.Person;
+import com.google.coffeehouse.storagehandler.BulkWriter;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.AuthenticationHelper;
+import com.google.coffeehouse.util.IdentifierGenerator;
+import com.google.coffeehouse.util.UuidWrapper;
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet for administrators to import persons, books, clubs and memberships in bulk from an
+ * Http POST Request Body in NDJSON format, that is one JSON object per line, and return a
+ * summary of the import in JSON format.
+ *
+ * <p>Each line is a record with a {@code "type"} field naming what it imports. The other fields
+ * are those of {@link Person#fromMap(Map)} for {@code "person"} records, {@link Book#fromMap(Map)}
+ * for {@code "book"} records and {@link Club#fromMap(Map)} for {@code "club"} records. Clubs are
+ * created with the ownership of their owner, as by {@code CreateClubServlet}, and a book ID is
+ * generated for their current book if it has none. A {@code "membership"} record has the
+ * {@code "userId"} and {@code "clubId"} fields, and an optional {@code "membershipType"} field
+ * that is either {@code "member"} (the default) or {@code "owner"}.
+ *
+ * <p>The body is read one line at a time and the records are committed in batches by a
+ * {@link BulkWriter}, so the memory used does not depend on the size of the body. A record that
+ * cannot be parsed or written is reported in the summary with its line number, and the other
+ * records are still imported.
+ */
+@WebServlet("/api/import")
+public class ImportServlet extends HttpServlet {
+  /** The name of the field of a record naming what it imports. */
+  public static final String TYPE_FIELD_NAME = "type";
+  public static final String PERSON_TYPE = "person";
+  public static final String BOOK_TYPE = "book";
+  public static final String CLUB_TYPE = "club";
+  public static final String MEMBERSHIP_TYPE = "membership";
+  /** The name of the field of a membership record holding the membership level. */
+  public static final String MEMBERSHIP_TYPE_FIELD_NAME = "membershipType";
+  public static final String MEMBER_LEVEL = "member";
+  public static final String OWNER_LEVEL = "owner";
+  /** The maximum number of failed records whose errors are returned in the summary. */
+  public static final int MAX_REPORTED_ERRORS = 100;
+
+  /** The error string sent by the response object when the user is not an administrator. */
+  public static final String NOT_ADMIN_ERROR = "Only administrators can import records.";
+  /** The error string of a record that does not have a required field. */
+  public static final String NO_FIELD_ERROR = "Missing \"%s\" field in JSON";
+  /** The error string of a record whose type is unknown. */
+  public static final String UNKNOWN_TYPE_ERROR = "Unknown record type \"%s\"";
+  /** The error string of a membership record whose membership type is unknown. */
+  public static final String UNKNOWN_MEMBERSHIP_TYPE_ERROR = "Unknown membership type \"%s\"";
+  /** Message to be logged when an invalid ID token is passed in. */
+  public static final String LOG_SECURITY_MESSAGE = "Forbidden action attempted: ";
+  /** Message to be logged when the member count of an imported club could not be recounted. */
+  public static final String LOG_RECOUNT_ERROR_MESSAGE =
+      "Member count of club \"%s\" could not be recounted: ";
+
+  private static final Gson gson = new Gson();
+  private final GoogleIdTokenVerifier verifier;
+  private final StorageHandlerApi storageHandler;
+  private final IdentifierGenerator idGen;
+
+  /**
+   * Overloaded constructor for dependency injection.
+   * @param verifier the class that verifies the validity of the ID token
+   * @param storageHandler the {@link StorageHandlerApi} that the records are written with
+   * @param idGen the {@link IdentifierGenerator} that is used for books without a book ID
+   */
+  public ImportServlet(
+      GoogleIdTokenVerifier verifier, StorageHandlerApi storageHandler,
+      IdentifierGenerator idGen) {
+    super();
+    this.verifier = verifier;
+    this.storageHandler = storageHandler;
+    this.idGen = idGen;
+  }
+
+  /**
+   * Explicit default constructor used for instantiating the servlet when not testing.
+   */
+  public ImportServlet() {
+    super();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
+    this.storageHandler = new StorageHandlerApi();
+    this.idGen = new UuidWrapper();
+  }
+
+  /**
+   * Imports the records of the body and returns a summary of the import in JSON format.
+   * @param request the POST request, whose {@code "Authorization"} header must hold
+   *     {@code "Bearer "} followed by the ID token of an administrator, and whose body holds one
+   *     record in JSON format per line. Blank lines are skipped
+   * @param response the response from this method, will contain the number of records imported,
+   *     the number of records that failed, the line number and error of the first
+   *     {@code MAX_REPORTED_ERRORS} records that failed, and the IDs of the first
+   *     {@code MAX_REPORTED_ERRORS} clubs whose member count could not be recounted after their
+   *     memberships were imported. If the ID token is missing or invalid,
+   *     or the user is not an administrator, the response will send a "403 Forbidden error"
+   * @throws IOException if an input or output error is detected when the servlet handles the request
+   */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    try {
+      String idToken = AuthenticationHelper.getIdTokenFromAuthorizationHeader(
+          request.getHeader("Authorization"));
+      String userId = AuthenticationHelper.getUserIdFromIdToken(idToken, verifier);
+      if (!AuthenticationHelper.isAdmin(userId)) {
+        throw new GeneralSecurityException(NOT_ADMIN_ERROR);
+      }
+    } catch (GeneralSecurityException e) {
+      System.out.println(LOG_SECURITY_MESSAGE + e.getMessage());
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+      return;
+    }
+
+    ImportSummary summary = new ImportSummary();
+    BulkWriter writer = storageHandler.newBulkWriter(summary);
+    BufferedReader reader = request.getReader();
+    long lineNumber = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      try {
+        addRecord(writer, lineNumber, gson.fromJson(line, Map.class));
+      } catch (RuntimeException e) {
+        summary.addError(lineNumber, e);
+      }
+    }
+    writer.flush();
+    summary.imported = writer.getWrittenRecords();
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(summary));
+  }
+
+  private void addRecord(BulkWriter writer, long lineNumber, Map record) {
+    String type = (String) requireField(record, TYPE_FIELD_NAME);
+    switch (type) {
+      case PERSON_TYPE:
+        writer.add(lineNumber, Collections.singletonList(Person.fromMap(record).toMutation()));
+        break;
+      case BOOK_TYPE:
+        writer.add(lineNumber, Collections.singletonList(Book.fromMap(record).toMutation()));
+        break;
+      case CLUB_TYPE:
+        Map bookInfo = (Map) requireField(record, Club.CURRENT_BOOK_FIELD_NAME);
+        if (!bookInfo.containsKey(Book.BOOK_ID_FIELD_NAME)) {
+          bookInfo.put(Book.BOOK_ID_FIELD_NAME, idGen.generateId());
+        }
+        writer.add(lineNumber, StorageHandlerApi.createClubMutations(Club.fromMap(record)));
+        break;
+      case MEMBERSHIP_TYPE:
+        writer.addMembership(
+            lineNumber,
+            (String) requireField(record, Person.USER_ID_FIELD_NAME),
+            (String) requireField(record, Club.CLUB_ID_FIELD_NAME),
+            membershipLevelOf(record));
+        break;
+      default:
+        throw new IllegalArgumentException(String.format(UNKNOWN_TYPE_ERROR, type));
+    }
+  }
+
+  private static int membershipLevelOf(Map record) {
+    String level = (String) record.getOrDefault(MEMBERSHIP_TYPE_FIELD_NAME, MEMBER_LEVEL);
+    switch (level) {
+      case MEMBER_LEVEL:
+        return MembershipConstants.MEMBER;
+      case OWNER_LEVEL:
+        return MembershipConstants.OWNER;
+      default:
+        throw new IllegalArgumentException(String.format(UNKNOWN_MEMBERSHIP_TYPE_ERROR, level));
+    }
+  }
+
+  private static Object requireField(Map record, String fieldName) {
+    Object value = record.get(fieldName);
+    if (value == null) {
+      throw new IllegalArgumentException(String.format(NO_FIELD_ERROR, fieldName));
+    }
+    return value;
+  }
+
+  /** The summary of an import, returned in JSON format. */
+  private static class ImportSummary implements BulkWriter.FailureListener {
+    private long imported;
+    private long failed;
+    private final List<RecordError> errors = new ArrayList<>();
+    private final List<String> staleMemberCountClubIds = new ArrayList<>();
+
+    @Override
+    public void onFailure(long recordNumber, RuntimeException e) {
+      addError(recordNumber, e);
+    }
+
+    @Override
+    public void onRecountFailure(String clubId, RuntimeException e) {
+      System.out.println(String.format(LOG_RECOUNT_ERROR_MESSAGE, clubId) + e.getMessage());
+      if (staleMemberCountClubIds.size() < MAX_REPORTED_ERRORS) {
+        staleMemberCountClubIds.add(clubId);
+      }
+    }
+
+    private void addError(long lineNumber, RuntimeException e) {
+      failed++;
+      if (errors.size() < MAX_REPORTED_ERRORS) {
+        String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        errors.add(new RecordError(lineNumber, message));
+      }
+    }
+  }
+
+  /** The line number and error of a record that could not be imported. */
+  private static class RecordError {
+    private final long line;
+    private final String error;
+
+    private RecordError(long line, String error) {
+      this.line = line;
+      this.error = error;
+    }
+  }
+}
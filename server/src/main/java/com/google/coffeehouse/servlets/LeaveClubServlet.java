@@ -17,9 +17,6 @@ package com.google.coffeehouse.servlets;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.MembershipConstants;
 import com.google.coffeehouse.common.Person;
@@ -66,8 +63,6 @@ public class LeaveClubServlet extends HttpServlet {
   public static final String ID_TOKEN_FIELD_NAME = "idToken";
 
   private static final Gson gson = new Gson();
-  private static final HttpTransport transport = new NetHttpTransport();
-  private static final GsonFactory jsonFactory = GsonFactory.getDefaultInstance();
   private final GoogleIdTokenVerifier verifier;
   private final StorageHandlerApi storageHandler;
 
@@ -88,7 +83,7 @@ public class LeaveClubServlet extends HttpServlet {
   public LeaveClubServlet() {
     super();
     this.storageHandler = new StorageHandlerApi();
-    this.verifier = new GoogleIdTokenVerifier.Builder(transport, jsonFactory).build();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
   }
 
   /**
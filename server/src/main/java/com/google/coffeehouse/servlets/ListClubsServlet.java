@@ -17,17 +17,16 @@ package com.google.coffeehouse.servlets;
 import static com.google.coffeehouse.common.MembershipConstants.MembershipStatus;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.storagehandler.ClubPage;
 import com.google.coffeehouse.storagehandler.StorageHandlerApi;
 import com.google.coffeehouse.storagehandler.StorageHandler;
 import com.google.coffeehouse.util.AuthenticationHelper;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.GeneralSecurityException;
-import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -36,9 +35,11 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * Servlet to get a list of Clubs that a user is in (or not in) and return it in JSON format.
  *
- * <p>TODO: There is currently no pagination implemented in this servlet. In the future,
- * pagination should be supported, as it will allow this code to be used even when the 
- * number of clubs in our database increases.
+ * <p>When the request has a {@code "pageSize"} URL parameter, the clubs are returned one page
+ * at a time together with an opaque token that is passed back as the {@code "pageToken"} URL
+ * parameter to get the next page. Without a page size, every club is written to the response
+ * as its row is read from the database, so the memory used by a request does not grow with the
+ * number of clubs and the client receives the first clubs before the last row is read.
  */
 @WebServlet("/api/list-clubs")
 public class ListClubsServlet extends HttpServlet {
@@ -67,10 +68,20 @@ public class ListClubsServlet extends HttpServlet {
    * clubs that the user is not a member of.
    */
   public static final String NOT_MEMBER = "not member";
+  /** Name of the URL parameter that corresponds to the maximum number of clubs in a page. */
+  public static final String PAGE_SIZE_PARAMETER = "pageSize";
+  /** Name of the URL parameter that corresponds to the token of the page to return. */
+  public static final String PAGE_TOKEN_PARAMETER = "pageToken";
+  /** The largest page size that may be requested. */
+  public static final int MAX_PAGE_SIZE = 100;
+  /** The number of clubs written to the response between flushes of a streamed list. */
+  public static final int CLUBS_PER_FLUSH = 50;
+  /** Message to be logged when the page size is not a number between 1 and MAX_PAGE_SIZE. */
+  public static final String INVALID_PAGE_SIZE_ERROR =
+      "The \"" + PAGE_SIZE_PARAMETER + "\" parameter must be a number between 1 and "
+      + MAX_PAGE_SIZE + ".";
 
   private static final Gson gson = new Gson();
-  private static final HttpTransport transport = new NetHttpTransport();
-  private static final GsonFactory jsonFactory = GsonFactory.getDefaultInstance();
   private final GoogleIdTokenVerifier verifier;
   private final StorageHandlerApi storageHandler;
 
@@ -91,7 +102,7 @@ public class ListClubsServlet extends HttpServlet {
   public ListClubsServlet() {
     super();
     this.storageHandler = new StorageHandlerApi();
-    this.verifier = new GoogleIdTokenVerifier.Builder(transport, jsonFactory).build();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
   }
 
   /**
@@ -102,16 +113,21 @@ public class ListClubsServlet extends HttpServlet {
    *     we return a list of clubs where the user is a member, or not a member. If the required
    *     "membershipStatus" parameter does not exist, the response object will send a
    *     "400 Bad Request error". If the "idToken" parameter is missing or invalid, the response
-   *     object will send a "403 Forbidden error"
+   *     object will send a "403 Forbidden error". The request may also have a {@code "pageSize"}
+   *     URL parameter between 1 and {@code MAX_PAGE_SIZE}, and a {@code "pageToken"} URL
+   *     parameter holding the token returned with the previous page
    * @param response the response from this method, will contain the list of Clubs in JSON format.
    *     If the required "membershipStatus" parameter does not exist, this object will send a
    *     "400 Bad Request error". If the "idToken" parameter is missing or invalid, this object
-   *     will send a "403 Forbidden error"
-   * @throws IOException if an input or output error is detected when the servlet handles the request
+   *     will send a "403 Forbidden error". When a page size is given, the response instead
+   *     contains a JSON object with the {@code "clubs"} of the page and the
+   *     {@code "nextPageToken"}, which is absent on the last page
+   * @throws IOException if an input or output error is detected when the servlet handles the
+   *     request, or if a streamed list fails after part of it has been sent
    */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    List<Club> clubs;
+    String clubsJson;
     try {
       // Get the userId after validating the user's ID token.
       String idToken = request.getParameter(ID_TOKEN_PARAMETER);
@@ -126,18 +142,101 @@ public class ListClubsServlet extends HttpServlet {
       MembershipStatus membershipStatus = status.equals(MEMBER)
           ? MembershipStatus.MEMBER
           : MembershipStatus.NOT_MEMBER;
-      
-      clubs = storageHandler.listClubsFromUserId(userId, membershipStatus);
+
+      String pageSize = request.getParameter(PAGE_SIZE_PARAMETER);
+      if (pageSize == null) {
+        writeClubStream(response, userId, membershipStatus);
+        return;
+      }
+      ClubPage page = storageHandler.listClubPageFromUserId(
+          userId, membershipStatus, parsePageSize(pageSize),
+          request.getParameter(PAGE_TOKEN_PARAMETER));
+      clubsJson = gson.toJson(page);
     } catch (GeneralSecurityException e) {
       System.out.println(LOG_SECURITY_MESSAGE + e.getMessage());
       response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
       return;
     } catch (Exception e) {
       System.out.println(GENERAL_LOG_ERROR + e.getMessage());
+      // Once part of a streamed list has been sent the status can no longer be changed, so the
+      // container is made to abort the response rather than end a truncated list with a 200.
+      if (response.isCommitted()) {
+        throw new IOException(GENERAL_LOG_ERROR + e.getMessage(), e);
+      }
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
       return;
     }
     response.setContentType("application/json;");
-    response.getWriter().println(gson.toJson(clubs));
+    response.getWriter().println(clubsJson);
+  }
+
+  /**
+   * Writes the clubs to the response as a JSON list, one club at a time as they are read from the
+   * database, flushing the response every {@code CLUBS_PER_FLUSH} clubs. Nothing is written
+   * until the first club is read, so errors from the query can still be sent as an error status.
+   */
+  private void writeClubStream(
+      HttpServletResponse response, String userId, MembershipStatus membershipStatus)
+      throws IOException {
+    ClubStreamWriter clubWriter = new ClubStreamWriter(response);
+    try {
+      storageHandler.streamClubsFromUserId(userId, membershipStatus, clubWriter::write);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    clubWriter.finish();
+  }
+
+  private static int parsePageSize(String pageSize) {
+    int size;
+    try {
+      size = Integer.parseInt(pageSize);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(INVALID_PAGE_SIZE_ERROR);
+    }
+    if (size < 1 || size > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException(INVALID_PAGE_SIZE_ERROR);
+    }
+    return size;
+  }
+
+  /** Writes a JSON list of {@link Club}s to a response one club at a time. */
+  private static class ClubStreamWriter {
+    private final HttpServletResponse response;
+    private JsonWriter jsonWriter;
+    private int clubsSinceFlush = 0;
+
+    private ClubStreamWriter(HttpServletResponse response) {
+      this.response = response;
+    }
+
+    private void write(Club club) {
+      try {
+        begin();
+        gson.toJson(club, Club.class, jsonWriter);
+        if (++clubsSinceFlush == CLUBS_PER_FLUSH) {
+          jsonWriter.flush();
+          response.flushBuffer();
+          clubsSinceFlush = 0;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void finish() throws IOException {
+      begin();
+      jsonWriter.endArray();
+      jsonWriter.flush();
+      response.getWriter().println();
+    }
+
+    private void begin() throws IOException {
+      if (jsonWriter == null) {
+        response.setContentType("application/json;");
+        jsonWriter = new JsonWriter(response.getWriter());
+        jsonWriter.beginArray();
+      }
+    }
   }
 }
@@ -22,10 +22,12 @@ import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.coffeehouse.util.AuthenticationHelper;
+import com.google.coffeehouse.util.SessionTokens;
 import com.google.gson.Gson;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.security.GeneralSecurityException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -34,6 +36,9 @@ import javax.servlet.http.HttpServletResponse;
 
 /** 
  * Servlet to retrieve an ID/auth/refresh token from an auth code and redirect URI input.
+ *
+ * <p>The response also carries a session token minted by the server, which the other servlets
+ * accept in place of the ID token and verify with an HMAC instead of an RSA signature check.
  */
 @WebServlet("/api/retrieve-token")
 public class RetrieveTokenServlet extends HttpServlet {
@@ -60,48 +65,68 @@ public class RetrieveTokenServlet extends HttpServlet {
   /** The logged error string when an an ID token fails verification. */
   public static final String LOG_INVALID_ID_TOKEN_MESSAGE = 
       "ID token failed verification: ";
+  /** The name of the response header holding the session token. */
+  public static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+  /** The logged error string when a session token cannot be minted. */
+  public static final String LOG_SESSION_TOKEN_ERROR_MESSAGE =
+      "Session token could not be minted: ";
+  /** 
+   * The error string sent by the response object in doPost when the client secret
+   * cannot be loaded.
+   */
+  public static final String CLIENT_SECRET_ERROR = "- sign in is temporarily unavailable.";
+  /** The logged error string when the client secret cannot be loaded. */
+  public static final String LOG_CLIENT_SECRET_ERROR_MESSAGE =
+      "Client secret could not be loaded: ";
 
   private static final Gson gson = new Gson();
   private static final HttpTransport transport = new NetHttpTransport();
   private static final GsonFactory jsonFactory = GsonFactory.getDefaultInstance();
-  private GoogleIdTokenVerifier verifier =
-      new GoogleIdTokenVerifier.Builder(transport, jsonFactory).build();
-  
-  // Empty code and redirectUri will be overwritten before executing request.
-  private GoogleAuthorizationCodeTokenRequest tokenRequest =
-      new GoogleAuthorizationCodeTokenRequest(
-          transport,
-          jsonFactory,
-          AuthenticationHelper.CLIENT_ID,
-          AuthenticationHelper.CLIENT_SECRET,
-          /* code= */ "",
-          /* redirectUri= */ "");
+  private final GoogleIdTokenVerifier verifier;
+  // Requests are filled in with the code of each POST request, so one is made per POST request.
+  private final Supplier<GoogleAuthorizationCodeTokenRequest> tokenRequests;
+  // Null unless injected, in which case the default session tokens are used.
+  private final SessionTokens sessionTokens;
 
   /** 
    * Overloaded constructor for dependency injection.
    * @param verifier the class that verifies the validity of the ID token
-   * @param tokenRequest the class that makes the request to exchange auth code for token
+   * @param tokenRequests the supplier of a new request to exchange an auth code for a token,
+   *     called once per POST request
+   * @param sessionTokens the class that mints the session tokens
    */
   public RetrieveTokenServlet(
-      GoogleIdTokenVerifier verifier, GoogleAuthorizationCodeTokenRequest tokenRequest) {
+      GoogleIdTokenVerifier verifier,
+      Supplier<GoogleAuthorizationCodeTokenRequest> tokenRequests,
+      SessionTokens sessionTokens) {
     super();
     this.verifier = verifier;
-    this.tokenRequest = tokenRequest;
+    this.tokenRequests = tokenRequests;
+    this.sessionTokens = sessionTokens;
   }
 
+  /** 
+   * Explicit default constructor used for instantiating the servlet when not testing. The secrets
+   * are prefetched by {@link SecretPrefetchListener} when the application starts.
+   */
   public RetrieveTokenServlet() {
     super();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
+    this.tokenRequests = RetrieveTokenServlet::newTokenRequest;
+    this.sessionTokens = null;
   }
 
   /** 
-   * Exchanges an auth code for an ID/auth/refresh token. Returns the ID token in JSON format.
+   * Exchanges an auth code for an ID/auth/refresh token. Returns the ID token in JSON format, and
+   * a session token for the user in the {@code SESSION_TOKEN_HEADER} header.
    * @param request the POST request that must have a JSON body with a valid auth code and 
    *     redirect URI (associated with the keys defined by the CODE_KEY_NAME and 
    *     REDIRECT_URI_KEY_NAME constants).
    * @param response the response from this method, will contain the retrieved ID token as JSON.
    *     If the request object does not have the required JSON, this object will send a 
-   *     "400 Bad Request error". If the ID token retrieved by this servlet cannot be verified,
-   *     this object will send a "403 Forbidden error"
+   *     "400 Bad Request error". If the client secret cannot be loaded, this object will send a
+   *     "503 Service Unavailable error". If the ID token retrieved by this servlet cannot be
+   *     verified, this object will send a "403 Forbidden error"
    * @throws IOException if an input or output error is detected when the servlet handles the request
    */
   @Override
@@ -121,21 +146,55 @@ public class RetrieveTokenServlet extends HttpServlet {
       return;
     }
 
+    GoogleAuthorizationCodeTokenRequest codeRequest;
+    try {
+      codeRequest = tokenRequests.get();
+    } catch (IllegalStateException e) {
+      System.out.println(LOG_CLIENT_SECRET_ERROR_MESSAGE + e.getMessage());
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, CLIENT_SECRET_ERROR);
+      return;
+    }
+
     // Exchange auth code for token.
-    GoogleTokenResponse res = tokenRequest.setCode(code).setRedirectUri(redirectUri).execute();
+    GoogleTokenResponse res = codeRequest.setCode(code).setRedirectUri(redirectUri).execute();
     // TODO: getRefreshToken() and getAccessToken(), save it in our database next to the ID token
     String idToken = res.getIdToken();
 
+    String userId;
     try {
       // Perform basic security to make sure the ID token is valid.
-      AuthenticationHelper.getUserIdFromIdToken(idToken, verifier);
+      userId = AuthenticationHelper.getUserIdFromIdToken(idToken, verifier);
     } catch (Exception e) {
       System.out.println(LOG_INVALID_ID_TOKEN_MESSAGE + e.getMessage());
       response.sendError(HttpServletResponse.SC_FORBIDDEN, INVALID_ID_TOKEN);
       return;
     }
+
+    try {
+      // The default session tokens are looked up per request to pick up a rotated keyring.
+      SessionTokens minter = sessionTokens != null
+          ? sessionTokens
+          : AuthenticationHelper.getDefaultSessionTokens();
+      response.setHeader(SESSION_TOKEN_HEADER, minter.mint(userId));
+    } catch (RuntimeException e) {
+      // The ID token still works on its own, so the sign in goes ahead without a session token.
+      System.out.println(LOG_SESSION_TOKEN_ERROR_MESSAGE + e.getMessage());
+    }
     
     response.setContentType("text/plain;");
     response.getWriter().println(idToken);
   }
+
+  // Returns a new request that exchanges an auth code, which is the only place that waits for the
+  // client secret to be loaded. Empty code and redirectUri will be overwritten before executing
+  // request.
+  private static GoogleAuthorizationCodeTokenRequest newTokenRequest() {
+    return new GoogleAuthorizationCodeTokenRequest(
+        transport,
+        jsonFactory,
+        AuthenticationHelper.CLIENT_ID,
+        AuthenticationHelper.getClientSecret(),
+        /* code= */ "",
+        /* redirectUri= */ "");
+  }
 }
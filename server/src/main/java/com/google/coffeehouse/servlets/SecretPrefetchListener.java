@@ -0,0 +1,40 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import com.google.coffeehouse.util.AuthenticationHelper;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Listener that starts loading the secrets when the application starts, so that the first
+ * request of any servlet that needs the client secret or the session keyring does not wait for
+ * Secret Manager, even on an instance that was not warmed up.
+ */
+@WebListener
+public class SecretPrefetchListener implements ServletContextListener {
+  /**
+   * Starts loading the secrets in the background.
+   * @param event the event of the application starting
+   */
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    AuthenticationHelper.prefetchSecrets();
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {}
+}
@@ -17,9 +17,7 @@ package com.google.coffeehouse.servlets;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
+import com.google.cloud.spanner.TimestampBound;
 import com.google.coffeehouse.common.Book;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.Person;
@@ -88,8 +86,6 @@ public class UpdateClubServlet extends HttpServlet {
   public static final String ID_TOKEN_FIELD_NAME = "idToken";
 
   private static final Gson gson = new Gson();
-  private static final HttpTransport transport = new NetHttpTransport();
-  private static final GsonFactory jsonFactory = GsonFactory.getDefaultInstance();
   private final GoogleIdTokenVerifier verifier;
   private final StorageHandlerApi storageHandler;
 
@@ -110,7 +106,7 @@ public class UpdateClubServlet extends HttpServlet {
   public UpdateClubServlet() {
     super();
     this.storageHandler = new StorageHandlerApi();
-    this.verifier = new GoogleIdTokenVerifier.Builder(transport, jsonFactory).build();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
   }
 
   /** 
@@ -168,7 +164,8 @@ public class UpdateClubServlet extends HttpServlet {
       if (clubIdElement == null) {
         throw new IllegalArgumentException(String.format(NO_FIELD_ERROR, Club.CLUB_ID_FIELD_NAME));
       }
-      club = storageHandler.fetchClubFromId(clubIdElement.getAsString());
+      // The ownership check and the edit must see the latest version of the club.
+      club = storageHandler.fetchClubFromId(clubIdElement.getAsString(), TimestampBound.strong());
 
       // Determine if the user has the permissions to actually make changes on the Club.
       JsonElement idToken = requestJson.get(ID_TOKEN_FIELD_NAME);
@@ -215,7 +212,9 @@ public class UpdateClubServlet extends HttpServlet {
 
     club.setStorageHandler(storageHandler);
     club.getCurrentBook().setStorageHandler(storageHandler);
-    club.save();
+    // Other clubs may be reading the same book, so a changed book is looked up in the catalog
+    // instead of being edited in place.
+    storageHandler.updateClub(club);
 
     response.setContentType("application/json;");
     response.getWriter().println(gson.toJson(club));
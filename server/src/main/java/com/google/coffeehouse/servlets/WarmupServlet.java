@@ -0,0 +1,89 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.AuthenticationHelper;
+import com.google.coffeehouse.util.RefreshingIdTokenVerifier;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** 
+ * Servlet that App Engine calls before sending traffic to a new instance, so that the Spanner
+ * session pool, the shared ID token verifier and the secrets are ready for the first request.
+ */
+@WebServlet("/_ah/warmup")
+public class WarmupServlet extends HttpServlet {
+  /** The message logged when a part of the warmup fails. */
+  public static final String LOG_WARMUP_ERROR_MESSAGE = "Error while warming up the instance: ";
+
+  private final GoogleIdTokenVerifier verifier;
+  private final StorageHandlerApi storageHandler;
+
+  /**
+   * Overloaded constructor for dependency injection.
+   * @param verifier the class that verifies the validity of the ID token, whose keys are fetched
+   * @param storageHandler the {@link StorageHandlerApi} whose backend is warmed up
+   */
+  public WarmupServlet(GoogleIdTokenVerifier verifier, StorageHandlerApi storageHandler) {
+    super();
+    this.verifier = verifier;
+    this.storageHandler = storageHandler;
+  }
+
+  /**
+   * Explicit default constructor used for instantiating the servlet when not testing.
+   */
+  public WarmupServlet() {
+    super();
+    this.verifier = AuthenticationHelper.getDefaultVerifier();
+    this.storageHandler = new StorageHandlerApi();
+  }
+
+  /** 
+   * Creates the Spanner session pool, downloads the Google public keys that ID tokens are
+   * verified with, and starts loading the secrets. A {@link RefreshingIdTokenVerifier} downloads
+   * the keys into the key manager it verifies tokens with, instead of the one it falls back on
+   * before its first download. Each step is attempted even if an earlier one fails, since a
+   * failed step is simply left to the first request.
+   * @param request the GET request sent by App Engine, which has no parameters
+   * @param response the response from this method, which always has the status 200 (OK)
+   * @throws IOException if an input or output error is detected when the servlet handles the request
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    try {
+      storageHandler.warmUp();
+    } catch (Exception e) {
+      System.out.println(LOG_WARMUP_ERROR_MESSAGE + e.getMessage());
+    }
+    try {
+      if (verifier instanceof RefreshingIdTokenVerifier) {
+        ((RefreshingIdTokenVerifier) verifier).refreshKeys();
+      } else {
+        verifier.getPublicKeysManager().refresh();
+      }
+    } catch (Exception e) {
+      System.out.println(LOG_WARMUP_ERROR_MESSAGE + e.getMessage());
+    }
+    // Started last, since the secrets load in the background.
+    AuthenticationHelper.prefetchSecrets();
+    response.setStatus(HttpServletResponse.SC_OK);
+  }
+}
@@ -0,0 +1,134 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.Struct;
+import com.google.coffeehouse.common.Book;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+* The BookCatalog class holds the functions that map a book to the single row of the Books table
+* that every club reading it shares. The {@code TABLE} table is keyed by a catalog key, which is
+* the ISBN-13 of the book when it has a valid ISBN-10 or ISBN-13, and otherwise its title and
+* author ignoring case and spacing.
+*
+* <p>Catalog entries are only ever inserted, so the book ID of a key never changes once it is
+* written and can be cached for as long as the cache likes.
+*/
+public class BookCatalog {
+  /** The name of the table from catalog key to book ID. */
+  public static final String TABLE = "BookCatalog";
+  public static final List<String> COLUMNS = Arrays.asList("catalogKey", "bookId");
+
+  private static final String ISBN_KEY_PREFIX = "isbn:";
+  private static final String TITLE_KEY_PREFIX = "title:";
+  // Separates the title and author of a title key. It cannot appear in a normalized title.
+  private static final String TITLE_AUTHOR_SEPARATOR = "\n";
+
+  /**
+  * Returns the ISBN-13 form of an ISBN-10 or ISBN-13, ignoring hyphens and spaces.
+  *
+  * @param  isbn    the ISBN string, which may be null
+  * @return         the 13 digits of the ISBN-13, or null if the string is not a valid ISBN
+  */
+  public static String normalizeIsbn(String isbn) {
+    if (isbn == null) {
+      return null;
+    }
+    String digits = isbn.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+    if (digits.matches("\\d{9}[\\dX]") && isbn10CheckSum(digits) % 11 == 0) {
+      String isbn13 = "978" + digits.substring(0, 9);
+      return isbn13 + isbn13CheckDigit(isbn13);
+    }
+    if (digits.matches("97[89]\\d{10}")
+        && isbn13CheckDigit(digits.substring(0, 12)) == digits.charAt(12) - '0') {
+      return digits;
+    }
+    return null;
+  }
+
+  /**
+  * Returns the catalog key of a book: its ISBN-13 if it has a valid ISBN, and otherwise its title
+  * and author in lower case with runs of spaces collapsed.
+  *
+  * @param  book    the book, whose book ID is ignored
+  * @return         the catalog key string
+  */
+  public static String catalogKey(Book book) {
+    String isbn = normalizeIsbn(book.getIsbn().orElse(null));
+    if (isbn != null) {
+      return ISBN_KEY_PREFIX + isbn;
+    }
+    return TITLE_KEY_PREFIX + normalizeText(book.getTitle()) + TITLE_AUTHOR_SEPARATOR
+        + normalizeText(book.getAuthor().orElse(""));
+  }
+
+  /**
+  * Returns a single Mutation that adds a book to the catalog. The mutation is an insert, so of
+  * two commits adding the same catalog key, the second fails with {@code ALREADY_EXISTS}.
+  *
+  * @param  catalogKey    the catalog key string of the book
+  * @param  bookId        the book ID string of the Books row shared by clubs reading the book
+  * @return               the single mutation to add the catalog entry
+  */
+  public static Mutation entryMutation(String catalogKey, String bookId) {
+    return Mutation.newInsertBuilder(TABLE)
+                   .set("catalogKey")
+                   .to(catalogKey)
+                   .set("bookId")
+                   .to(bookId)
+                   .build();
+  }
+
+  /**
+  * Returns the book ID that a catalog key maps to.
+  *
+  * @param  readContext   the context of the read
+  * @param  catalogKey    the catalog key string of the book
+  * @return               the book ID string, or null if the book is not in the catalog
+  */
+  public static String readBookId(ReadContext readContext, String catalogKey) {
+    Struct row = readContext.readRow(TABLE, Key.of(catalogKey), Arrays.asList("bookId"));
+    return row == null ? null : row.getString("bookId");
+  }
+
+  private static String normalizeText(String text) {
+    return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  private static int isbn10CheckSum(String isbn10) {
+    int sum = 0;
+    for (int i = 0; i < 10; i++) {
+      char c = isbn10.charAt(i);
+      int digit = c == 'X' ? 10 : c - '0';
+      sum += (10 - i) * digit;
+    }
+    return sum;
+  }
+
+  private static int isbn13CheckDigit(String first12Digits) {
+    int sum = 0;
+    for (int i = 0; i < 12; i++) {
+      int digit = first12Digits.charAt(i) - '0';
+      sum += i % 2 == 0 ? digit : 3 * digit;
+    }
+    return (10 - sum % 10) % 10;
+  }
+}
@@ -0,0 +1,320 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.SpannerException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+* The BulkWriter class writes many records, each made of the mutations that must be committed
+* together, in as few commits as the per-commit mutation limit of Spanner allows. It is used to
+* import clubs, books, persons and memberships in bulk.
+*
+* <p>Records are buffered until the next one would take the commit over the
+* {@code MAX_MUTATIONS_PROPERTY} system property, so the memory held does not depend on the
+* number of records written. Spanner counts every column of an insert or update as a mutation, as
+* this class does, and the secondary indexes written add to the count, so the default leaves
+* room below the limit of 20,000 mutations per commit.
+*
+* <p>A commit that fails with a transient error, such as {@code ABORTED} or {@code UNAVAILABLE},
+* is retried whole, up to {@code MAX_ATTEMPTS_PROPERTY} attempts with a doubling backoff. A commit
+* that fails because of its data, such as a row that {@code ALREADY_EXISTS}, is split: each of its
+* records is committed on its own, so that a bad record is reported to the
+* {@link FailureListener} without failing the records committed with it. Any other failure, or a
+* transient one that outlasts the attempts, fails every record of the commit.
+*
+* <p>Memberships added with {@link #addMembership} do not change the member count of their club
+* when they are written. Instead, the member count of each of their clubs is recounted once per
+* commit, with {@link StorageBackend#recountMembers}. A recount that fails is reported to the
+* {@link FailureListener} and the other clubs are still recounted, as the memberships themselves
+* were committed.
+*/
+public class BulkWriter {
+  /** The system property holding the maximum number of mutations committed at once. */
+  public static final String MAX_MUTATIONS_PROPERTY = "coffeehouse.import.maxMutationsPerCommit";
+  public static final int DEFAULT_MAX_MUTATIONS = 10000;
+  /** The system property holding the most attempts made of a commit that fails transiently. */
+  public static final String MAX_ATTEMPTS_PROPERTY = "coffeehouse.import.maxAttemptsPerCommit";
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+  /** The system property holding the backoff, in milliseconds, before the second attempt. */
+  public static final String BACKOFF_MILLIS_PROPERTY = "coffeehouse.import.backoffMillis";
+  public static final long DEFAULT_BACKOFF_MILLIS = 100;
+  /** The error message when a single record has more mutations than a commit can hold. */
+  public static final String RECORD_TOO_LARGE =
+      "The record has more mutations than can be committed at once.";
+
+  /** The listener told about each record that could not be written. */
+  public interface FailureListener {
+    /**
+    * Called when a record could not be written. None of its mutations were committed.
+    *
+    * @param  recordNumber  the number the record was added with
+    * @param  e             the exception that made the record fail
+    */
+    void onFailure(long recordNumber, RuntimeException e);
+
+    /**
+    * Called when the member count of a club could not be recounted after memberships of the club
+    * were committed. The count stays stale until the club is recounted again.
+    *
+    * @param  clubId        the club ID string of the club whose member count is stale
+    * @param  e             the exception that made the recount fail
+    */
+    default void onRecountFailure(String clubId, RuntimeException e) {}
+  }
+
+  // The errors that are worth retrying the same commit for.
+  private static final Set<ErrorCode> TRANSIENT_ERRORS =
+      EnumSet.of(ErrorCode.ABORTED, ErrorCode.UNAVAILABLE);
+  // The errors caused by the data of one of the records, which is found by splitting the commit.
+  private static final Set<ErrorCode> DATA_ERRORS =
+      EnumSet.of(
+          ErrorCode.ALREADY_EXISTS, ErrorCode.FAILED_PRECONDITION, ErrorCode.NOT_FOUND,
+          ErrorCode.INVALID_ARGUMENT);
+
+  private final StorageBackend backend;
+  private final StorageHandlerCache cache;
+  private final int maxMutations;
+  private final int maxAttempts;
+  private final long backoffMillis;
+  private final FailureListener failureListener;
+  private final List<PendingRecord> pending = new ArrayList<>();
+  private int pendingMutations;
+  private long writtenRecords;
+  private long commits;
+
+  /**
+  * Creates a writer that retries transient failures as the {@code MAX_ATTEMPTS_PROPERTY} and
+  * {@code BACKOFF_MILLIS_PROPERTY} system properties say.
+  *
+  * @param  backend           the backend the records are written to
+  * @param  cache             the cache whose entities are invalidated by the commits
+  * @param  maxMutations      the maximum number of mutations committed at once
+  * @param  failureListener   the listener told about each record that could not be written
+  * @throws IllegalArgumentException if the maximum number of mutations is not positive
+  */
+  BulkWriter(
+      StorageBackend backend, StorageHandlerCache cache, int maxMutations,
+      FailureListener failureListener) {
+    this(backend, cache, maxMutations,
+         Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+         Long.getLong(BACKOFF_MILLIS_PROPERTY, DEFAULT_BACKOFF_MILLIS),
+         failureListener);
+  }
+
+  /**
+  * Creates a writer.
+  *
+  * @param  backend           the backend the records are written to
+  * @param  cache             the cache whose entities are invalidated by the commits
+  * @param  maxMutations      the maximum number of mutations committed at once
+  * @param  maxAttempts       the most attempts made of a commit that fails transiently
+  * @param  backoffMillis     the backoff before the second attempt, which doubles with each
+  *                           later attempt
+  * @param  failureListener   the listener told about each record that could not be written
+  * @throws IllegalArgumentException if the maximum number of mutations or attempts is not
+  *     positive
+  */
+  BulkWriter(
+      StorageBackend backend, StorageHandlerCache cache, int maxMutations, int maxAttempts,
+      long backoffMillis, FailureListener failureListener) {
+    if (maxMutations <= 0) {
+      throw new IllegalArgumentException("The maximum number of mutations must be positive.");
+    }
+    if (maxAttempts <= 0) {
+      throw new IllegalArgumentException("A commit must be attempted at least once.");
+    }
+    this.backend = backend;
+    this.cache = cache;
+    this.maxMutations = maxMutations;
+    this.maxAttempts = maxAttempts;
+    this.backoffMillis = backoffMillis;
+    this.failureListener = failureListener;
+  }
+
+  /**
+  * Adds a record whose mutations keep the member counts of the clubs they write up to date,
+  * such as those of {@link StorageHandlerApi#createClubMutations}. The buffered records are
+  * committed first if the record does not fit in their commit.
+  *
+  * @param  recordNumber  the number that identifies the record to the failure listener
+  * @param  mutations     the mutations of the record, which are committed together
+  */
+  public void add(long recordNumber, List<Mutation> mutations) {
+    add(new PendingRecord(recordNumber, mutations, null));
+  }
+
+  /**
+  * Adds a record that inserts a membership or ownership, and its {@code MEMBERSHIP_ADDED}
+  * {@link ChangeEvent}. The record fails if the person is already in the club.
+  *
+  * @param  recordNumber      the number that identifies the record to the failure listener
+  * @param  userId            the user ID string of the person joining the club
+  * @param  clubId            the club ID string of the club being joined
+  * @param  membershipLevel   the integer representing membership level (member or owner)
+  */
+  public void addMembership(long recordNumber, String userId, String clubId, int membershipLevel) {
+    add(new PendingRecord(
+        recordNumber,
+        Arrays.asList(
+            StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
+                userId, clubId, membershipLevel),
+            Outbox.eventMutation(ChangeEvent.Type.MEMBERSHIP_ADDED, clubId, userId)),
+        clubId));
+  }
+
+  /** Commits the buffered records. */
+  public void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<PendingRecord> written = new ArrayList<>();
+    try {
+      List<Mutation> mutations = new ArrayList<>();
+      for (PendingRecord record : pending) {
+        mutations.addAll(record.mutations);
+      }
+      writeWithRetries(mutations);
+      written.addAll(pending);
+    } catch (RuntimeException e) {
+      if (isDataError(e)) {
+        // A single bad record fails the whole commit, so each record is committed on its own to
+        // find it.
+        for (PendingRecord record : pending) {
+          try {
+            writeWithRetries(record.mutations);
+            written.add(record);
+          } catch (RuntimeException recordException) {
+            failureListener.onFailure(record.recordNumber, recordException);
+          }
+        }
+      } else {
+        for (PendingRecord record : pending) {
+          failureListener.onFailure(record.recordNumber, e);
+        }
+      }
+    }
+    pending.clear();
+    pendingMutations = 0;
+    writtenRecords += written.size();
+
+    Set<String> recountClubIds = new LinkedHashSet<>();
+    for (PendingRecord record : written) {
+      if (record.recountClubId != null) {
+        recountClubIds.add(record.recountClubId);
+      }
+    }
+    for (String clubId : recountClubIds) {
+      try {
+        backend.recountMembers(clubId);
+      } catch (RuntimeException e) {
+        failureListener.onRecountFailure(clubId, e);
+      }
+      cache.invalidateMembership(clubId);
+    }
+  }
+
+  /** Returns the number of records committed so far. */
+  public long getWrittenRecords() {
+    return writtenRecords;
+  }
+
+  /** Returns the number of commits made so far, including those of records committed alone. */
+  public long getCommits() {
+    return commits;
+  }
+
+  /** Returns the maximum number of mutations per commit given by the system property. */
+  static int maxMutationsPerCommit() {
+    return Integer.getInteger(MAX_MUTATIONS_PROPERTY, DEFAULT_MAX_MUTATIONS);
+  }
+
+  /** Returns the number of mutations Spanner counts for the mutation. */
+  static int countMutations(Mutation mutation) {
+    return mutation.getOperation() == Mutation.Op.DELETE ? 1 : mutation.asMap().size();
+  }
+
+  private void add(PendingRecord record) {
+    if (record.mutationCount > maxMutations) {
+      failureListener.onFailure(
+          record.recordNumber, new IllegalArgumentException(RECORD_TOO_LARGE));
+      return;
+    }
+    if (pendingMutations + record.mutationCount > maxMutations) {
+      flush();
+    }
+    pending.add(record);
+    pendingMutations += record.mutationCount;
+  }
+
+  // Commits the mutations, retrying the whole commit while it fails with a transient error.
+  private void writeWithRetries(List<Mutation> mutations) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        write(mutations);
+        return;
+      } catch (SpannerException e) {
+        if (!TRANSIENT_ERRORS.contains(e.getErrorCode()) || attempt >= maxAttempts) {
+          throw e;
+        }
+      }
+      try {
+        Thread.sleep(backoffMillis << Math.min(attempt - 1, 10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while retrying a commit", e);
+      }
+    }
+  }
+
+  private void write(List<Mutation> mutations) {
+    commits++;
+    backend.write(mutations);
+    cache.invalidate(mutations);
+  }
+
+  // Whether the failure was caused by the data of a record rather than by the database.
+  private static boolean isDataError(RuntimeException e) {
+    if (e instanceof SpannerException) {
+      return DATA_ERRORS.contains(((SpannerException) e).getErrorCode());
+    }
+    return e instanceof IllegalArgumentException;
+  }
+
+  // The mutations of a record that has not been committed yet.
+  private static class PendingRecord {
+    private final long recordNumber;
+    private final List<Mutation> mutations;
+    private final String recountClubId;
+    private final int mutationCount;
+
+    private PendingRecord(long recordNumber, List<Mutation> mutations, String recountClubId) {
+      this.recordNumber = recordNumber;
+      this.mutations = mutations;
+      this.recountClubId = recountClubId;
+      int count = 0;
+      for (Mutation mutation : mutations) {
+        count += countMutations(mutation);
+      }
+      this.mutationCount = count;
+    }
+  }
+}
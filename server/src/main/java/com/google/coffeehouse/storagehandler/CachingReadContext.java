@@ -0,0 +1,122 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.Struct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+* The CachingReadContext class wraps the {@link ReadContext} of a single transaction and serves
+* repeated reads of the same row from memory, so that each row is read from Spanner at most once
+* per attempt of the transaction.
+*
+* <p>A read of a row fetches the union of the requested columns, the columns of earlier reads of
+* the row and the columns registered with {@link #prefetchColumns}. A later read whose columns were
+* all fetched is served locally, including when the row does not exist. Reads inside a
+* read/write transaction do not observe the mutations it buffers, so the cached rows stay exactly
+* what Spanner would return.
+*
+* <p>A CachingReadContext must only be used by the transaction attempt that created it, and is
+* not thread safe.
+*/
+public class CachingReadContext {
+  private final ReadContext delegate;
+  private final Map<String, Set<String>> prefetchedColumns = new HashMap<>();
+  private final Map<String, Map<Key, CachedRow>> rows = new HashMap<>();
+
+  /**
+  * Creates a cache around the read context of a transaction.
+  *
+  * @param  delegate  the read context that rows missing from the cache are read from
+  */
+  public CachingReadContext(ReadContext delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+  * Registers columns that are fetched by every read of the table, so that reads of other
+  * columns of the same row later in the transaction are served from the cache.
+  *
+  * @param  table     the name of the table
+  * @param  columns   the columns fetched with every read of a row of the table
+  * @return           this CachingReadContext
+  */
+  public CachingReadContext prefetchColumns(String table, Iterable<String> columns) {
+    Set<String> tableColumns = prefetchedColumns.computeIfAbsent(table, t -> new LinkedHashSet<>());
+    for (String column : columns) {
+      tableColumns.add(column);
+    }
+    return this;
+  }
+
+  /**
+  * Returns the row of the table with the key, or null if the row does not exist. The returned
+  * Struct has at least the requested columns and must be read by column name.
+  *
+  * @param  table     the name of the table
+  * @param  key       the primary key of the row
+  * @param  columns   the columns that are read
+  * @return           the row, or null if it does not exist
+  */
+  public Struct readRow(String table, Key key, Iterable<String> columns) {
+    Map<Key, CachedRow> tableRows = rows.computeIfAbsent(table, t -> new HashMap<>());
+    CachedRow cached = tableRows.get(key);
+    if (cached != null && cached.hasColumns(columns)) {
+      return cached.row;
+    }
+
+    Set<String> readColumns = new LinkedHashSet<>();
+    for (String column : columns) {
+      readColumns.add(column);
+    }
+    if (prefetchedColumns.containsKey(table)) {
+      readColumns.addAll(prefetchedColumns.get(table));
+    }
+    if (cached != null) {
+      readColumns.addAll(cached.columns);
+    }
+    List<String> readColumnList = new ArrayList<>(readColumns);
+    Struct row = delegate.readRow(table, key, readColumnList);
+    tableRows.put(key, new CachedRow(row, readColumns));
+    return row;
+  }
+
+  // A row as it was read, or null if it did not exist, and the columns it was read with.
+  private static class CachedRow {
+    private final Struct row;
+    private final Set<String> columns;
+
+    private CachedRow(Struct row, Set<String> columns) {
+      this.row = row;
+      this.columns = columns;
+    }
+
+    private boolean hasColumns(Iterable<String> requestedColumns) {
+      for (String column : requestedColumns) {
+        if (!columns.contains(column)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.Timestamp;
+
+/**
+* The ChangeEvent class is a change to a club or to its memberships, written to the
+* {@link Outbox} in the same commit as the change and delivered to the subscribers of the
+* {@link ChangeEventBus} by the {@link OutboxRelay}.
+*
+* <p>Events are delivered at least once, so a subscriber can see the same event more than once.
+* Subscribers that must not apply an event twice compare event IDs.
+*/
+public class ChangeEvent {
+  /** The kinds of change recorded in the outbox. */
+  public enum Type {
+    CLUB_CREATED,
+    CLUB_UPDATED,
+    MEMBERSHIP_ADDED,
+    MEMBERSHIP_DELETED
+  }
+
+  private final String eventId;
+  private final Type type;
+  private final String clubId;
+  private final String userId;
+  private final Timestamp createdAt;
+
+  /**
+  * Creates an event.
+  *
+  * @param  eventId     the unique ID string of the event
+  * @param  type        the kind of change
+  * @param  clubId      the club ID string of the club that changed
+  * @param  userId      the user ID string of the person who joined or left, or null if the club
+  *                     itself changed
+  * @param  createdAt   the commit timestamp of the change
+  */
+  public ChangeEvent(
+      String eventId, Type type, String clubId, String userId, Timestamp createdAt) {
+    this.eventId = eventId;
+    this.type = type;
+    this.clubId = clubId;
+    this.userId = userId;
+    this.createdAt = createdAt;
+  }
+
+  public String getEventId() {
+    return eventId;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getClubId() {
+    return clubId;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public Timestamp getCreatedAt() {
+    return createdAt;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s(eventId: %s, clubId: %s, userId: %s, createdAt: %s)",
+                         type, eventId, clubId, userId, createdAt);
+  }
+}
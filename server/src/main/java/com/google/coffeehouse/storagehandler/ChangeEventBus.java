@@ -0,0 +1,86 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+* The ChangeEventBus class passes the {@link ChangeEvent}s relayed from the {@link Outbox} to the
+* subscribers in this process, such as counters and search indexes, so that they learn of
+* committed changes without polling the database.
+*
+* <p>The bus does not cross processes. The relays of all the instances drain the same outbox, so
+* each event is published on the bus of whichever instance read it, usually only one. Subscribers
+* must therefore do work that any one instance can do for all of them, such as updating a shared
+* store or calling another service. State kept by every instance, such as the entity caches of
+* {@link StorageHandlerCache}, must not rely on the bus to learn of changes made elsewhere; those
+* caches expire their entries instead. Delivering the events to every instance would need a
+* publish/subscribe service between the relay and the instances.
+*
+* <p>Subscribers are called on the thread of the {@link OutboxRelay}, in the order the events were
+* committed, and must return quickly. A subscriber that throws makes the batch of events
+* undelivered, so every subscriber receives the batch again; subscribers must therefore tolerate
+* receiving an event more than once.
+*/
+public class ChangeEventBus {
+  private final List<Consumer<ChangeEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+  /**
+  * Adds a subscriber, which receives every event published after it is added.
+  *
+  * @param  subscriber  the consumer that each event is passed to
+  */
+  public void subscribe(Consumer<ChangeEvent> subscriber) {
+    subscribers.add(subscriber);
+  }
+
+  /**
+  * Removes a subscriber, which receives no more events once this method returns.
+  *
+  * @param  subscriber  the consumer passed to {@link #subscribe}
+  */
+  public void unsubscribe(Consumer<ChangeEvent> subscriber) {
+    subscribers.remove(subscriber);
+  }
+
+  /**
+  * Passes each event, in order, to every subscriber. A subscriber that throws does not stop the
+  * other subscribers from receiving the events.
+  *
+  * @param  events    the events to be delivered, in commit order
+  * @throws RuntimeException the first exception thrown by a subscriber, once every subscriber
+  *     has been passed every event
+  */
+  public void publish(List<ChangeEvent> events) {
+    RuntimeException failure = null;
+    for (ChangeEvent event : events) {
+      for (Consumer<ChangeEvent> subscriber : subscribers) {
+        try {
+          subscriber.accept(event);
+        } catch (RuntimeException e) {
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.BatchClient;
+import com.google.cloud.spanner.BatchReadOnlyTransaction;
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.Partition;
+import com.google.cloud.spanner.PartitionOptions;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.ReadOnlyTransaction;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.SpannerExceptionFactory;
+import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.Person;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+* The ClubExport class holds the functions that read every {@link Club}, with its {@link Book}
+* and optionally its members, for a bulk export of the club catalog.
+*
+* <p>The clubs are read in the partitions of a {@link BatchClient} query, which are read in
+* parallel by up to {@code PARALLELISM_PROPERTY} threads, all at the same timestamp. Each partition
+* is read in chunks of {@code CHUNK_SIZE} clubs, whose books and members are read with one
+* multi-key read or query per chunk, so the memory used depends on the number of threads and not
+* on the number of clubs.
+*/
+public class ClubExport {
+  /** The system property holding the number of partitions that are read at the same time. */
+  public static final String PARALLELISM_PROPERTY = "coffeehouse.export.parallelism";
+  public static final int DEFAULT_PARALLELISM = 4;
+  /** The number of clubs whose books and members are read together. */
+  static final int CHUNK_SIZE = 500;
+
+  private static final Statement CLUBS_STATEMENT =
+      Statement.of("SELECT " + StorageHandler.CLUB_QUERY_COLUMNS + "FROM Clubs c");
+
+  /**
+  * Passes every club to the consumer, read in parallel in the partitions of a batch read-only
+  * transaction. The consumer is called by one thread at a time, in no particular club order.
+  * Clubs whose book does not exist are skipped, as they are by the listing queries.
+  *
+  * @param  batchClient       the batch client used to partition the read
+  * @param  includeMembers    whether the members of each club are read
+  * @param  parallelism       the maximum number of partitions read at the same time
+  * @param  consumer          the consumer that each club, and its members ordered by user ID or
+  *                           null if they are not read, is passed to
+  */
+  public static void exportClubs(
+      BatchClient batchClient, boolean includeMembers, int parallelism,
+      BiConsumer<Club, List<Person>> consumer) {
+    Object consumerLock = new Object();
+    BiConsumer<Club, List<Person>> serializedConsumer = (club, members) -> {
+      synchronized (consumerLock) {
+        consumer.accept(club, members);
+      }
+    };
+    BatchReadOnlyTransaction transaction =
+        batchClient.batchReadOnlyTransaction(TimestampBound.strong());
+    ExecutorService executor = null;
+    try {
+      List<Partition> partitions =
+          transaction.partitionQuery(PartitionOptions.getDefaultInstance(), CLUBS_STATEMENT);
+      if (partitions.isEmpty()) {
+        return;
+      }
+      executor = Executors.newFixedThreadPool(
+          Math.max(1, Math.min(parallelism, partitions.size())),
+          runnable -> {
+            Thread thread = new Thread(runnable, "club-export");
+            thread.setDaemon(true);
+            return thread;
+          });
+      List<Future<?>> reads = new ArrayList<>();
+      for (Partition partition : partitions) {
+        reads.add(executor.submit(() -> {
+          try (ResultSet clubRows = transaction.execute(partition)) {
+            exportRows(transaction, clubRows, includeMembers, serializedConsumer);
+          }
+        }));
+      }
+      for (Future<?> read : reads) {
+        awaitRead(read);
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      transaction.cleanup();
+    }
+  }
+
+  /**
+  * Passes every club to the consumer, read in club ID order with one query in a read-only
+  * transaction. Used by databases without a {@link BatchClient}.
+  *
+  * @param  dbClient          the database client
+  * @param  includeMembers    whether the members of each club are read
+  * @param  consumer          the consumer that each club, and its members ordered by user ID or
+  *                           null if they are not read, is passed to
+  */
+  public static void exportClubs(
+      DatabaseClient dbClient, boolean includeMembers, BiConsumer<Club, List<Person>> consumer) {
+    Statement statement = Statement.of(CLUBS_STATEMENT.getSql() + " ORDER BY c.clubId");
+    try (ReadOnlyTransaction transaction = dbClient.readOnlyTransaction();
+        ResultSet clubRows = transaction.executeQuery(statement)) {
+      exportRows(transaction, clubRows, includeMembers, consumer);
+    }
+  }
+
+  /** Returns the number of partitions read at the same time given by the system property. */
+  static int parallelism() {
+    return Integer.getInteger(PARALLELISM_PROPERTY, DEFAULT_PARALLELISM);
+  }
+
+  private static void exportRows(
+      ReadContext readContext, ResultSet clubRows, boolean includeMembers,
+      BiConsumer<Club, List<Person>> consumer) {
+    List<Struct> chunk = new ArrayList<>();
+    while (clubRows.next()) {
+      chunk.add(clubRows.getCurrentRowAsStruct());
+      if (chunk.size() == CHUNK_SIZE) {
+        exportChunk(readContext, chunk, includeMembers, consumer);
+        chunk.clear();
+      }
+    }
+    exportChunk(readContext, chunk, includeMembers, consumer);
+  }
+
+  private static void exportChunk(
+      ReadContext readContext, List<Struct> clubRows, boolean includeMembers,
+      BiConsumer<Club, List<Person>> consumer) {
+    if (clubRows.isEmpty()) {
+      return;
+    }
+    Set<String> bookIds = new HashSet<>();
+    List<String> clubIds = new ArrayList<>();
+    for (Struct row : clubRows) {
+      bookIds.add(row.getString("bookId"));
+      clubIds.add(row.getString("clubId"));
+    }
+    Map<String, Book> books = StorageHandler.getBooks(readContext, bookIds);
+    Map<String, List<Person>> members = includeMembers
+        ? readMembers(readContext, clubIds)
+        : new HashMap<>();
+    for (Struct row : clubRows) {
+      Book book = books.get(row.getString("bookId"));
+      if (book == null) {
+        continue;
+      }
+      Club club = StorageHandler.buildClubFromRow(row, book);
+      List<Person> clubMembers = null;
+      if (includeMembers) {
+        clubMembers = members.getOrDefault(club.getClubId(), new ArrayList<>());
+      }
+      consumer.accept(club, clubMembers);
+    }
+  }
+
+  /**
+  * Returns the members of the clubs ordered by user ID, keyed by club ID, read with one query
+  * of the Memberships table and one multi-key read of the Persons table. Members that do not
+  * exist in the Persons table are left out.
+  */
+  private static Map<String, List<Person>> readMembers(
+      ReadContext readContext, List<String> clubIds) {
+    Statement statement =
+        Statement.newBuilder(
+                "SELECT clubId, userId "
+                  + "FROM Memberships "
+                  + "WHERE clubId IN UNNEST(@clubIds) "
+                  + "ORDER BY clubId, userId")
+            .bind("clubIds")
+            .toStringArray(clubIds)
+            .build();
+    Map<String, List<String>> memberIds = new HashMap<>();
+    Set<String> userIds = new HashSet<>();
+    try (ResultSet resultSet = readContext.executeQuery(statement)) {
+      while (resultSet.next()) {
+        String userId = resultSet.getString("userId");
+        memberIds.computeIfAbsent(resultSet.getString("clubId"), clubId -> new ArrayList<>())
+                 .add(userId);
+        userIds.add(userId);
+      }
+    }
+    Map<String, Person> persons = StorageHandler.getPersons(readContext, userIds);
+    Map<String, List<Person>> members = new HashMap<>();
+    for (Map.Entry<String, List<String>> club : memberIds.entrySet()) {
+      List<Person> clubMembers = new ArrayList<>();
+      for (String userId : club.getValue()) {
+        Person person = persons.get(userId);
+        if (person != null) {
+          clubMembers.add(person);
+        }
+      }
+      members.put(club.getKey(), clubMembers);
+    }
+    return members;
+  }
+
+  // Rethrows the exception of a failed partition read.
+  private static void awaitRead(Future<?> read) {
+    try {
+      read.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw SpannerExceptionFactory.propagateInterrupt(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw SpannerExceptionFactory.newSpannerException(e.getCause());
+    }
+  }
+
+  // Private constructor to enforce that it should not be instantiated.
+  private ClubExport() {}
+}
@@ -0,0 +1,83 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.coffeehouse.common.Club;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+* The ClubPage class holds one page of a listing of {@link Club}s ordered by club ID, and the
+* opaque token that is passed back to fetch the page after it.
+*/
+public class ClubPage {
+  public static final String INVALID_PAGE_TOKEN = "The page token is not valid.";
+
+  private final List<Club> clubs;
+  private final String nextPageToken;
+
+  /**
+  * Creates a page of clubs.
+  *
+  * @param  clubs           the clubs in the page, ordered by club ID
+  * @param  nextPageToken   the token of the next page, or null if this is the last page
+  */
+  public ClubPage(List<Club> clubs, String nextPageToken) {
+    this.clubs = Collections.unmodifiableList(clubs);
+    this.nextPageToken = nextPageToken;
+  }
+
+  public List<Club> getClubs() {
+    return clubs;
+  }
+
+  /** Returns the token of the next page, or null if this is the last page. */
+  public String getNextPageToken() {
+    return nextPageToken;
+  }
+
+  /**
+  * Returns the opaque page token of the page that starts after the given club.
+  *
+  * @param  lastClubId    the club ID of the last club of the current page
+  * @return               the page token
+  */
+  public static String encodePageToken(String lastClubId) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(lastClubId.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+  * Returns the club ID that a page token starts after.
+  *
+  * @param  pageToken     the page token returned with the previous page
+  * @return               the club ID of the last club of the previous page
+  * @throws IllegalArgumentException if the page token was not returned by this class
+  */
+  public static String decodePageToken(String pageToken) {
+    String lastClubId;
+    try {
+      lastClubId = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(INVALID_PAGE_TOKEN);
+    }
+    if (lastClubId.isEmpty()) {
+      throw new IllegalArgumentException(INVALID_PAGE_TOKEN);
+    }
+    return lastClubId;
+  }
+}
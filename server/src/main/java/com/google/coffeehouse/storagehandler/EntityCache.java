@@ -0,0 +1,277 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+* The EntityCache class is a bounded, in-process, read-through cache of entities keyed by their
+* ID. Entries expire after a fixed time to live, and once the cache holds its maximum number of
+* entries the least recently used entry is evicted. The cache counts its hits, misses, evictions
+* and expirations so that it can be sized.
+*
+* <p>Cached entities are shared between callers, so they must be treated as read-only.
+*
+* @param <V>  the type of entity held in the cache
+*/
+public class EntityCache<V> {
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final LongSupplier ticker;
+  private final LinkedHashMap<String, CacheEntry<V>> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+  // Incremented on every invalidation so that loads which started before a write cannot
+  // put the value they read back into the cache after the write invalidated it.
+  private long generation = 0;
+
+  /**
+  * Creates a cache that uses the system clock.
+  *
+  * @param  ttl         the time an entry stays in the cache after it is loaded
+  * @param  unit        the unit of the time to live
+  * @param  maxEntries  the maximum number of entries held before evicting the least recently used
+  */
+  public EntityCache(long ttl, TimeUnit unit, int maxEntries) {
+    this(ttl, unit, maxEntries, System::nanoTime);
+  }
+
+  /**
+  * Creates a cache that reads the time from the given ticker, used for dependency injection.
+  *
+  * @param  ttl         the time an entry stays in the cache after it is loaded
+  * @param  unit        the unit of the time to live
+  * @param  maxEntries  the maximum number of entries held before evicting the least recently used
+  * @param  ticker      the supplier of the current time in nanoseconds
+  */
+  public EntityCache(long ttl, TimeUnit unit, int maxEntries, LongSupplier ticker) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("maxEntries must not be negative");
+    }
+    this.ttlNanos = unit.toNanos(ttl);
+    this.maxEntries = maxEntries;
+    this.ticker = ticker;
+    this.entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f,
+                                       /* accessOrder= */ true);
+  }
+
+  /**
+  * Returns the cached entity for the ID, loading and caching it on a miss.
+  *
+  * @param  id      the ID of the entity
+  * @param  loader  the function that reads the entity from the database on a miss
+  * @return         the cached or newly loaded entity
+  */
+  public V get(String id, Function<String, V> loader) {
+    return get(id, Long.MAX_VALUE, TimeUnit.NANOSECONDS, loader);
+  }
+
+  /**
+  * Returns the cached entity for the ID if it was loaded less than the maximum age ago, loading
+  * and caching it otherwise. An entry older than the maximum age but within the time to live
+  * counts as a miss and is replaced by the newly loaded entity.
+  *
+  * @param  id      the ID of the entity
+  * @param  maxAge  the maximum time since the cached entity was loaded
+  * @param  unit    the unit of the maximum age
+  * @param  loader  the function that reads the entity from the database on a miss
+  * @return         the cached or newly loaded entity
+  */
+  public V get(String id, long maxAge, TimeUnit unit, Function<String, V> loader) {
+    long maxAgeNanos = unit.toNanos(maxAge);
+    long loadGeneration;
+    synchronized (this) {
+      V value = getIfFresh(id, maxAgeNanos);
+      if (value != null) {
+        hits.incrementAndGet();
+        return value;
+      }
+      misses.incrementAndGet();
+      loadGeneration = generation;
+    }
+    V value = loader.apply(id);
+    putIfUnchanged(id, value, loadGeneration);
+    return value;
+  }
+
+  /**
+  * Returns the cached entities for the IDs, loading every missing ID with one call to the loader.
+  * IDs that the loader does not return are absent from the returned map and are not cached.
+  *
+  * @param  ids     the IDs of the entities
+  * @param  loader  the function that reads the missing entities from the database in one batch
+  * @return         the map from ID to the cached or newly loaded entity
+  */
+  public Map<String, V> getAll(
+      Collection<String> ids, Function<Collection<String>, Map<String, V>> loader) {
+    Map<String, V> found = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    long loadGeneration;
+    synchronized (this) {
+      for (String id : ids) {
+        V value = getIfFresh(id, Long.MAX_VALUE);
+        if (value != null) {
+          hits.incrementAndGet();
+          found.put(id, value);
+        } else if (!missing.contains(id)) {
+          misses.incrementAndGet();
+          missing.add(id);
+        }
+      }
+      loadGeneration = generation;
+    }
+    if (!missing.isEmpty()) {
+      Map<String, V> loaded = loader.apply(missing);
+      for (Map.Entry<String, V> entry : loaded.entrySet()) {
+        putIfUnchanged(entry.getKey(), entry.getValue(), loadGeneration);
+        found.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return found;
+  }
+
+  /** Removes the entity with the ID from the cache. */
+  public synchronized void invalidate(String id) {
+    generation++;
+    entries.remove(id);
+  }
+
+  /** Removes every entity matching the predicate from the cache. */
+  public synchronized void invalidateIf(Predicate<V> predicate) {
+    generation++;
+    entries.values().removeIf(entry -> predicate.test(entry.value));
+  }
+
+  /** Removes every entity from the cache. */
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+  }
+
+  /** Returns the number of entities currently held, including ones that have expired. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Returns a snapshot of the hit, miss, eviction and expiration counters of the cache. */
+  public synchronized CacheStats getStats() {
+    return new CacheStats(
+        hits.get(), misses.get(), evictions.get(), expirations.get(), entries.size(), maxEntries);
+  }
+
+  // Must be called while holding the lock.
+  private V getIfFresh(String id, long maxAgeNanos) {
+    CacheEntry<V> entry = entries.get(id);
+    if (entry == null) {
+      return null;
+    }
+    long ageNanos = ticker.getAsLong() - entry.loadedAtNanos;
+    if (ageNanos >= ttlNanos) {
+      entries.remove(id);
+      expirations.incrementAndGet();
+      return null;
+    }
+    return ageNanos < maxAgeNanos ? entry.value : null;
+  }
+
+  private synchronized void putIfUnchanged(String id, V value, long loadGeneration) {
+    if (value == null || loadGeneration != generation || maxEntries == 0) {
+      return;
+    }
+    entries.put(id, new CacheEntry<>(value, ticker.getAsLong()));
+    Iterator<CacheEntry<V>> eldest = entries.values().iterator();
+    while (entries.size() > maxEntries && eldest.hasNext()) {
+      eldest.next();
+      eldest.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private static class CacheEntry<V> {
+    private final V value;
+    private final long loadedAtNanos;
+
+    private CacheEntry(V value, long loadedAtNanos) {
+      this.value = value;
+      this.loadedAtNanos = loadedAtNanos;
+    }
+  }
+
+  /** CacheStats is an immutable snapshot of the counters of an {@link EntityCache}. */
+  public static class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final int size;
+    private final int maxEntries;
+
+    private CacheStats(
+        long hits, long misses, long evictions, long expirations, int size, int maxEntries) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.expirations = expirations;
+      this.size = size;
+      this.maxEntries = maxEntries;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    /** Returns the number of entries removed because the cache was full. */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /** Returns the number of entries removed because their time to live had passed. */
+    public long getExpirations() {
+      return expirations;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public int getMaxEntries() {
+      return maxEntries;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "hits: %d, misses: %d, evictions: %d, expirations: %d, size: %d, maxEntries: %d",
+          hits, misses, evictions, expirations, size, maxEntries);
+    }
+  }
+}
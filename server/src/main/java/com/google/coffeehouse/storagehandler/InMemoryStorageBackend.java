@@ -0,0 +1,653 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeyRange;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.SpannerExceptionFactory;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.Type;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.cloud.spanner.Value;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.MembershipConstants;
+import com.google.coffeehouse.common.Person;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+* The InMemoryStorageBackend class is a {@link StorageBackend} that keeps the Persons, Books,
+* Clubs, Memberships, {@link BookCatalog}, {@link MemberCountShards} and {@link Outbox} tables in
+* memory, so that the application can be load tested and benchmarked without a Cloud Spanner
+* instance.
+*
+* <p>Each table is a {@link ConcurrentSkipListMap} sorted by primary key, and the memberships are
+* also indexed by club. Reads do not lock and see every write that completed before they started;
+* a read that runs at the same time as a write may or may not see it. Writes and the membership
+* transactions are serialized, and a batch of mutations is applied atomically, so the membership
+* checks and the writes that depend on them behave like the Spanner read-write transactions.
+* Timestamp bounds are ignored, as every read is strong.
+*/
+public class InMemoryStorageBackend implements StorageBackend {
+  private static final Comparator<List<String>> KEY_ORDER = InMemoryStorageBackend::compareKeys;
+  private static final Map<String, List<String>> PRIMARY_KEYS = new HashMap<>();
+
+  static {
+    PRIMARY_KEYS.put("Persons", Arrays.asList("userId"));
+    PRIMARY_KEYS.put("Books", Arrays.asList("bookId"));
+    PRIMARY_KEYS.put("Clubs", Arrays.asList("clubId"));
+    PRIMARY_KEYS.put("Memberships", Arrays.asList("userId", "clubId"));
+    PRIMARY_KEYS.put(BookCatalog.TABLE, Arrays.asList("catalogKey"));
+    PRIMARY_KEYS.put(MemberCountShards.TABLE, Arrays.asList("clubId", "shardId"));
+    PRIMARY_KEYS.put(Outbox.TABLE, Arrays.asList("eventId"));
+  }
+
+  private final Map<String, ConcurrentSkipListMap<List<String>, Map<String, Value>>> tables =
+      new ConcurrentHashMap<>();
+  // The (clubId, userId) keys of the Memberships table, used to list the members of a club.
+  private final ConcurrentSkipListSet<List<String>> membershipsByClub =
+      new ConcurrentSkipListSet<>(KEY_ORDER);
+  // The events of the Outbox table in the order they are relayed, like its createdAt index.
+  private final ConcurrentSkipListSet<ChangeEvent> outboxByCreatedAt =
+      new ConcurrentSkipListSet<>(Outbox.COMMIT_ORDER);
+  private final Object writeLock = new Object();
+  // The commit timestamp of the last write, guarded by the write lock.
+  private long lastCommitMicros;
+
+  /** Creates a backend with empty tables. */
+  public InMemoryStorageBackend() {
+    for (String table : PRIMARY_KEYS.keySet()) {
+      tables.put(table, new ConcurrentSkipListMap<>(KEY_ORDER));
+    }
+  }
+
+  @Override
+  public Person getPerson(String userId) {
+    Map<String, Value> row = table("Persons").get(Collections.singletonList(userId));
+    if (row == null) {
+      throw new IllegalArgumentException(StorageHandler.PERSON_DOES_NOT_EXIST);
+    }
+    return StorageHandler.buildPersonFromRow(toStruct(row, StorageHandler.PERSON_COLUMNS));
+  }
+
+  @Override
+  public Map<String, Person> getPersons(Collection<String> userIds) {
+    Map<String, Person> persons = new HashMap<>();
+    for (String userId : userIds) {
+      Map<String, Value> row = table("Persons").get(Collections.singletonList(userId));
+      if (row != null) {
+        persons.put(userId,
+            StorageHandler.buildPersonFromRow(toStruct(row, StorageHandler.PERSON_COLUMNS)));
+      }
+    }
+    return persons;
+  }
+
+  @Override
+  public Book getBook(String bookId, TimestampBound bound) {
+    Book book = findBook(bookId);
+    if (book == null) {
+      throw new IllegalArgumentException(StorageHandler.BOOK_DOES_NOT_EXIST);
+    }
+    return book;
+  }
+
+  @Override
+  public Map<String, Book> getBooks(Collection<String> bookIds) {
+    Map<String, Book> books = new HashMap<>();
+    for (String bookId : bookIds) {
+      Book book = findBook(bookId);
+      if (book != null) {
+        books.put(bookId, book);
+      }
+    }
+    return books;
+  }
+
+  @Override
+  public String getCatalogBookId(String catalogKey) {
+    Map<String, Value> row = table(BookCatalog.TABLE).get(Collections.singletonList(catalogKey));
+    return row == null ? null : stringOf(row.get("bookId"));
+  }
+
+  @Override
+  public Club getClub(String clubId, TimestampBound bound) {
+    Map<String, Value> row = table("Clubs").get(Collections.singletonList(clubId));
+    if (row == null) {
+      throw new IllegalArgumentException(StorageHandler.CLUB_DOES_NOT_EXIST);
+    }
+    Book book = getBook(stringOf(row.get("bookId")), bound);
+    return StorageHandler.buildClubFromRow(clubStruct(row), book);
+  }
+
+  @Override
+  public Map<String, Club> getClubs(Collection<String> clubIds) {
+    Map<String, Club> clubs = new HashMap<>();
+    for (String clubId : clubIds) {
+      Club club = findClub(clubId);
+      if (club != null) {
+        clubs.put(clubId, club);
+      }
+    }
+    return clubs;
+  }
+
+  @Override
+  public List<Person> getListOfMembers(String clubId) {
+    List<Person> members = new ArrayList<>();
+    for (List<String> key : membershipsByClub.tailSet(Collections.singletonList(clubId))) {
+      if (!key.get(0).equals(clubId)) {
+        break;
+      }
+      members.add(getPerson(key.get(1)));
+    }
+    if (members.isEmpty()) {
+      throw new IllegalStateException(MembershipConstants.NO_MEMBERS);
+    }
+    return members;
+  }
+
+  @Override
+  public void streamListOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      TimestampBound bound, Consumer<Club> consumer) {
+    forEachClub(userId, membershipStatus, /* afterClubId= */ null, club -> {
+      consumer.accept(club);
+      return true;
+    });
+  }
+
+  @Override
+  public ClubPage getPageOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      int pageSize, String pageToken, TimestampBound bound) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException(StorageHandler.INVALID_PAGE_SIZE);
+    }
+    String afterClubId = pageToken == null ? null : ClubPage.decodePageToken(pageToken);
+    List<Club> clubs = new ArrayList<>();
+    boolean[] hasNextPage = {false};
+    forEachClub(userId, membershipStatus, afterClubId, club -> {
+      if (clubs.size() == pageSize) {
+        hasNextPage[0] = true;
+        return false;
+      }
+      clubs.add(club);
+      return true;
+    });
+    String nextPageToken = hasNextPage[0]
+        ? ClubPage.encodePageToken(clubs.get(clubs.size() - 1).getClubId())
+        : null;
+    return new ClubPage(clubs, nextPageToken);
+  }
+
+  @Override
+  public void exportClubs(boolean includeMembers, BiConsumer<Club, List<Person>> consumer) {
+    for (List<String> key : table("Clubs").keySet()) {
+      Club club = findClub(key.get(0));
+      if (club == null) {
+        continue;
+      }
+      List<Person> members = null;
+      if (includeMembers) {
+        members = new ArrayList<>();
+        for (List<String> membership
+            : membershipsByClub.tailSet(Collections.singletonList(club.getClubId()))) {
+          if (!membership.get(0).equals(club.getClubId())) {
+            break;
+          }
+          Map<String, Value> person =
+              table("Persons").get(Collections.singletonList(membership.get(1)));
+          if (person != null) {
+            members.add(StorageHandler.buildPersonFromRow(
+                toStruct(person, StorageHandler.PERSON_COLUMNS)));
+          }
+        }
+      }
+      consumer.accept(club, members);
+    }
+  }
+
+  @Override
+  public void addAnyMembershipType(String userId, String clubId, int membershipLevel) {
+    insertMembership(userId, clubId, membershipLevel);
+  }
+
+  @Override
+  public void insertMembership(String userId, String clubId, int membershipLevel) {
+    synchronized (writeLock) {
+      if (table("Memberships").containsKey(Arrays.asList(userId, clubId))) {
+        throw new IllegalArgumentException(MembershipConstants.PERSON_ALREADY_IN_CLUB);
+      }
+      applyAtomically(Arrays.asList(
+          memberCountChangeMutation(clubId, 1),
+          StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
+              userId, clubId, membershipLevel),
+          Outbox.eventMutation(ChangeEvent.Type.MEMBERSHIP_ADDED, clubId, userId)));
+    }
+  }
+
+  @Override
+  public void deleteMembership(String userId, String clubId) {
+    synchronized (writeLock) {
+      Map<String, Value> row = table("Memberships").get(Arrays.asList(userId, clubId));
+      if (row == null) {
+        throw new IllegalArgumentException(MembershipConstants.PERSON_NOT_IN_CLUB);
+      }
+      if (row.get("membershipType").getInt64() == MembershipConstants.OWNER) {
+        throw new IllegalArgumentException(MembershipConstants.OWNER_CAN_NOT_LEAVE_CLUB);
+      }
+      applyAtomically(Arrays.asList(
+          memberCountChangeMutation(clubId, -1),
+          StorageHandlerCommonMutations.deleteMembershipMutation(userId, clubId),
+          Outbox.eventMutation(ChangeEvent.Type.MEMBERSHIP_DELETED, clubId, userId)));
+    }
+  }
+
+  @Override
+  public void recountMembers(String clubId) {
+    synchronized (writeLock) {
+      if (!table("Clubs").containsKey(Collections.singletonList(clubId))) {
+        return;
+      }
+      applyAtomically(Collections.singletonList(
+          StorageHandlerCommonMutations.updateMemberCountMutation(
+              clubId, countMemberships(clubId) - sumShards(clubId))));
+    }
+  }
+
+  @Override
+  public Timestamp write(List<Mutation> mutations) {
+    synchronized (writeLock) {
+      return applyAtomically(mutations);
+    }
+  }
+
+  @Override
+  public List<ChangeEvent> readOutbox(int limit) {
+    List<ChangeEvent> events = new ArrayList<>();
+    for (ChangeEvent event : outboxByCreatedAt) {
+      if (events.size() == limit) {
+        break;
+      }
+      events.add(event);
+    }
+    return events;
+  }
+
+  /**
+  * Passes the clubs, in club ID order and after the club ID if it is not null, to the visitor
+  * until the visitor returns false. A club whose book does not exist throws, as it does in the
+  * joined queries of the {@link StorageHandler}.
+  *
+  * @throws IllegalArgumentException if the book of a listed club does not exist
+  */
+  private void forEachClub(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      String afterClubId, Predicate<Club> visitor) {
+    ConcurrentSkipListMap<List<String>, Map<String, Value>> memberships = table("Memberships");
+    if (membershipStatus == MembershipConstants.MembershipStatus.MEMBER) {
+      List<String> from = afterClubId == null
+          ? Collections.singletonList(userId)
+          : Arrays.asList(userId, afterClubId);
+      for (List<String> key : memberships.tailMap(from, afterClubId == null).keySet()) {
+        if (!key.get(0).equals(userId)) {
+          break;
+        }
+        Club club = findListedClub(key.get(1));
+        if (club != null && !visitor.test(club)) {
+          return;
+        }
+      }
+    } else {
+      ConcurrentSkipListMap<List<String>, Map<String, Value>> clubs = table("Clubs");
+      ConcurrentNavigableMap<List<String>, Map<String, Value>> candidates = afterClubId == null
+          ? clubs
+          : clubs.tailMap(Collections.singletonList(afterClubId), /* inclusive= */ false);
+      for (List<String> key : candidates.keySet()) {
+        if (memberships.containsKey(Arrays.asList(userId, key.get(0)))) {
+          continue;
+        }
+        Club club = findListedClub(key.get(0));
+        if (club != null && !visitor.test(club)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+  * Returns the mutation that changes the member count of the club the way
+  * {@link MemberCountShards#bufferMemberCountChange} does: a random shard is changed, unless the
+  * club has no base count, which is then set from its memberships. Must be called while holding
+  * the write lock.
+  */
+  private Mutation memberCountChangeMutation(String clubId, long delta) {
+    Map<String, Value> row = table("Clubs").get(Collections.singletonList(clubId));
+    if (row == null) {
+      throw new IllegalArgumentException(StorageHandler.CLUB_DOES_NOT_EXIST);
+    }
+    if (isNull(row.get("memberCount"))) {
+      return StorageHandlerCommonMutations.updateMemberCountMutation(
+          clubId, countMemberships(clubId) + delta);
+    }
+    Value shards = row.get("memberCountShards");
+    long shardId = MemberCountShards.pickShard(
+        isNull(shards) ? MemberCountShards.defaultShards() : shards.getInt64());
+    Map<String, Value> shard =
+        table(MemberCountShards.TABLE).get(Arrays.asList(clubId, Long.toString(shardId)));
+    long shardCount = shard == null ? 0 : shard.get("memberCount").getInt64();
+    return MemberCountShards.shardMutation(clubId, shardId, shardCount + delta);
+  }
+
+  /**
+  * Returns the row of the club with its member count summed over the shards. As in
+  * {@link MemberCountShards#MEMBER_COUNT_EXPRESSION}, a missing base count counts as zero.
+  */
+  private Struct clubStruct(Map<String, Value> row) {
+    String clubId = stringOf(row.get("clubId"));
+    Value base = row.get("memberCount");
+    Map<String, Value> summed = new HashMap<>(row);
+    long baseCount = isNull(base) ? 0 : base.getInt64();
+    summed.put("memberCount", Value.int64(baseCount + sumShards(clubId)));
+    return toStruct(summed, StorageHandler.CLUB_COLUMNS);
+  }
+
+  private long sumShards(String clubId) {
+    long sum = 0;
+    for (Map.Entry<List<String>, Map<String, Value>> shard : table(MemberCountShards.TABLE)
+        .tailMap(Collections.singletonList(clubId)).entrySet()) {
+      if (!shard.getKey().get(0).equals(clubId)) {
+        break;
+      }
+      sum += shard.getValue().get("memberCount").getInt64();
+    }
+    return sum;
+  }
+
+  private long countMemberships(String clubId) {
+    long count = 0;
+    for (List<String> key : membershipsByClub.tailSet(Collections.singletonList(clubId))) {
+      if (!key.get(0).equals(clubId)) {
+        break;
+      }
+      count++;
+    }
+    return count;
+  }
+
+  private Book findBook(String bookId) {
+    if (bookId == null) {
+      return null;
+    }
+    Map<String, Value> row = table("Books").get(Collections.singletonList(bookId));
+    return row == null
+        ? null
+        : StorageHandler.buildBookFromRow(toStruct(row, StorageHandler.BOOK_COLUMNS));
+  }
+
+  private Club findClub(String clubId) {
+    Map<String, Value> row = table("Clubs").get(Collections.singletonList(clubId));
+    if (row == null) {
+      return null;
+    }
+    Book book = findBook(stringOf(row.get("bookId")));
+    return book == null
+        ? null
+        : StorageHandler.buildClubFromRow(clubStruct(row), book);
+  }
+
+  // Returns the club as the listing queries build it, or null if the club does not exist.
+  private Club findListedClub(String clubId) {
+    Map<String, Value> row = table("Clubs").get(Collections.singletonList(clubId));
+    if (row == null) {
+      return null;
+    }
+    Book book = findBook(stringOf(row.get("bookId")));
+    if (book == null) {
+      throw new IllegalArgumentException(StorageHandler.BOOK_DOES_NOT_EXIST);
+    }
+    return StorageHandler.buildClubFromRow(clubStruct(row), book);
+  }
+
+  /**
+  * Applies the mutations in order, undoing the ones already applied if any of them fails.
+  * As in Spanner, each commit has a greater timestamp than the commits before it, even when the
+  * clock has not moved. Must be called while holding the write lock.
+  *
+  * @return   the commit timestamp written to the commit timestamp columns
+  */
+  private Timestamp applyAtomically(List<Mutation> mutations) {
+    Timestamp now = Timestamp.now();
+    lastCommitMicros = Math.max(
+        TimeUnit.SECONDS.toMicros(now.getSeconds()) + TimeUnit.NANOSECONDS.toMicros(now.getNanos()),
+        lastCommitMicros + 1);
+    Timestamp commitTimestamp = Timestamp.ofTimeMicroseconds(lastCommitMicros);
+    Deque<Runnable> undoLog = new ArrayDeque<>();
+    try {
+      for (Mutation mutation : mutations) {
+        apply(mutation, commitTimestamp, undoLog);
+      }
+    } catch (RuntimeException e) {
+      while (!undoLog.isEmpty()) {
+        undoLog.pop().run();
+      }
+      throw e;
+    }
+    return commitTimestamp;
+  }
+
+  private void apply(Mutation mutation, Timestamp commitTimestamp, Deque<Runnable> undoLog) {
+    String tableName = mutation.getTable();
+    ConcurrentSkipListMap<List<String>, Map<String, Value>> rows = table(tableName);
+    if (mutation.getOperation() == Mutation.Op.DELETE) {
+      for (List<String> key : keysIn(rows, mutation.getKeySet())) {
+        putRow(tableName, key, null, undoLog);
+      }
+      return;
+    }
+
+    Map<String, Value> values = new HashMap<>();
+    for (Map.Entry<String, Value> entry : mutation.asMap().entrySet()) {
+      Value value = entry.getValue();
+      values.put(entry.getKey(),
+                 value.isCommitTimestamp() ? Value.timestamp(commitTimestamp) : value);
+    }
+    List<String> key = new ArrayList<>();
+    for (String column : PRIMARY_KEYS.get(tableName)) {
+      Value part = values.get(column);
+      if (part == null || part.isNull()) {
+        throw SpannerExceptionFactory.newSpannerException(
+            ErrorCode.FAILED_PRECONDITION, "Missing primary key column " + column);
+      }
+      key.add(keyPartOf(part));
+    }
+    key = Collections.unmodifiableList(key);
+
+    Map<String, Value> existing = rows.get(key);
+    Map<String, Value> row;
+    switch (mutation.getOperation()) {
+      case INSERT:
+        if (existing != null) {
+          throw SpannerExceptionFactory.newSpannerException(
+              ErrorCode.ALREADY_EXISTS, "Row " + key + " in table " + tableName + " already exists");
+        }
+        row = values;
+        break;
+      case UPDATE:
+        if (existing == null) {
+          throw SpannerExceptionFactory.newSpannerException(
+              ErrorCode.NOT_FOUND, "Row " + key + " in table " + tableName + " does not exist");
+        }
+        row = new HashMap<>(existing);
+        row.putAll(values);
+        break;
+      case INSERT_OR_UPDATE:
+        row = existing == null ? values : new HashMap<>(existing);
+        row.putAll(values);
+        break;
+      case REPLACE:
+      default:
+        row = values;
+        break;
+    }
+    putRow(tableName, key, Collections.unmodifiableMap(row), undoLog);
+  }
+
+  /** Puts or, if the row is null, removes a row, and logs how to undo the change. */
+  private void putRow(
+      String tableName, List<String> key, Map<String, Value> row, Deque<Runnable> undoLog) {
+    Map<String, Value> previous = setRow(tableName, key, row);
+    undoLog.push(() -> setRow(tableName, key, previous));
+  }
+
+  private Map<String, Value> setRow(String tableName, List<String> key, Map<String, Value> row) {
+    ConcurrentSkipListMap<List<String>, Map<String, Value>> rows = table(tableName);
+    Map<String, Value> previous = row == null ? rows.remove(key) : rows.put(key, row);
+    if (tableName.equals("Memberships")) {
+      List<String> clubKey = Arrays.asList(key.get(1), key.get(0));
+      if (row == null) {
+        membershipsByClub.remove(clubKey);
+      } else {
+        membershipsByClub.add(clubKey);
+      }
+    } else if (tableName.equals(Outbox.TABLE)) {
+      if (previous != null) {
+        outboxByCreatedAt.remove(Outbox.buildEventFromRow(toStruct(previous, Outbox.COLUMNS)));
+      }
+      if (row != null) {
+        outboxByCreatedAt.add(Outbox.buildEventFromRow(toStruct(row, Outbox.COLUMNS)));
+      }
+    }
+    return previous;
+  }
+
+  private static List<List<String>> keysIn(
+      ConcurrentSkipListMap<List<String>, Map<String, Value>> rows, KeySet keySet) {
+    List<List<String>> keys = new ArrayList<>();
+    if (keySet.isAll()) {
+      keys.addAll(rows.keySet());
+      return keys;
+    }
+    for (Key key : keySet.getKeys()) {
+      List<String> parts = partsOf(key);
+      if (rows.containsKey(parts)) {
+        keys.add(parts);
+      }
+    }
+    for (KeyRange range : keySet.getRanges()) {
+      for (List<String> key : rows.keySet()) {
+        if (inRange(key, range)) {
+          keys.add(key);
+        }
+      }
+    }
+    return keys;
+  }
+
+  private static boolean inRange(List<String> key, KeyRange range) {
+    // As in Spanner, a bound with fewer parts than the key compares equal to every key it is
+    // a prefix of.
+    int fromStart = comparePrefix(key, partsOf(range.getStart()));
+    int fromEnd = comparePrefix(key, partsOf(range.getEnd()));
+    boolean afterStart = range.getStartType() == KeyRange.Endpoint.CLOSED
+        ? fromStart >= 0
+        : fromStart > 0;
+    boolean beforeEnd = range.getEndType() == KeyRange.Endpoint.CLOSED
+        ? fromEnd <= 0
+        : fromEnd < 0;
+    return afterStart && beforeEnd;
+  }
+
+  private static int comparePrefix(List<String> key, List<String> bound) {
+    for (int i = 0; i < Math.min(key.size(), bound.size()); i++) {
+      int comparison = key.get(i).compareTo(bound.get(i));
+      if (comparison != 0) {
+        return comparison;
+      }
+    }
+    return 0;
+  }
+
+  private static int compareKeys(List<String> a, List<String> b) {
+    int comparison = comparePrefix(a, b);
+    return comparison != 0 ? comparison : Integer.compare(a.size(), b.size());
+  }
+
+  private static List<String> partsOf(Key key) {
+    List<String> parts = new ArrayList<>();
+    Iterator<Object> iterator = key.getParts().iterator();
+    while (iterator.hasNext()) {
+      Object part = iterator.next();
+      parts.add(part == null ? null : part.toString());
+    }
+    return Collections.unmodifiableList(parts);
+  }
+
+  private ConcurrentSkipListMap<List<String>, Map<String, Value>> table(String tableName) {
+    ConcurrentSkipListMap<List<String>, Map<String, Value>> rows = tables.get(tableName);
+    if (rows == null) {
+      throw SpannerExceptionFactory.newSpannerException(
+          ErrorCode.NOT_FOUND, "Table not found: " + tableName);
+    }
+    return rows;
+  }
+
+  private static Struct toStruct(Map<String, Value> row, List<String> columns) {
+    Struct.Builder struct = Struct.newBuilder();
+    for (String column : columns) {
+      Value value = row.get(column);
+      struct.set(column).to(value == null ? Value.string(null) : value);
+    }
+    return struct.build();
+  }
+
+  // Keys are compared as strings, so integer key columns such as shardId are stored in decimal.
+  private static String keyPartOf(Value value) {
+    return value.getType().equals(Type.int64())
+        ? Long.toString(value.getInt64())
+        : value.getString();
+  }
+
+  private static boolean isNull(Value value) {
+    return value == null || value.isNull();
+  }
+
+  private static String stringOf(Value value) {
+    return (value == null || value.isNull()) ? null : value.getString();
+  }
+}
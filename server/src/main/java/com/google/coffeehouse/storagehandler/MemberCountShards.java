@@ -0,0 +1,188 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.TransactionContext;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+* The MemberCountShards class holds the functions that maintain the member count of a club as a
+* sharded counter, so that concurrent joins of a popular club do not all write the same row.
+*
+* <p>The member count of a club is the memberCount column of its Clubs row, called the base
+* count, plus the memberCount column of each of its rows in the {@code TABLE} table, which is
+* keyed by (clubId, shardId) and interleaved in Clubs. A membership change adds to a random one
+* of the club's shards and leaves the Clubs row untouched. The number of shards of a club is its
+* memberCountShards column, or the {@code SHARDS_PROPERTY} system property if the column is null.
+* Readers sum every shard of the club, so the number of shards of a club can be changed at any
+* time.
+*
+* <p>Clubs written before the member count existed have no base count. Their first membership
+* change sets it from their memberships, but queries listing clubs read a missing base count as
+* zero, so existing clubs are backfilled once with this Partitioned DML statement:
+* <pre>
+* UPDATE Clubs c
+* SET memberCount = (SELECT COUNT(*) FROM Memberships m WHERE m.clubId = c.clubId)
+* WHERE c.memberCount IS NULL
+* </pre>
+*/
+public class MemberCountShards {
+  /** The name of the table holding the shards of the member counts. */
+  public static final String TABLE = "ClubMemberCountShards";
+  /** The system property holding the number of shards of clubs that do not set their own. */
+  public static final String SHARDS_PROPERTY = "coffeehouse.storage.memberCountShards";
+  public static final int DEFAULT_SHARDS = 4;
+  /** The error message when a club is given a number of shards that is not positive. */
+  public static final String INVALID_SHARDS = "The number of member count shards must be positive.";
+
+  /**
+  * The SQL expression that computes the member count of the club aliased {@code c}, named
+  * memberCount. The shards are interleaved in the club, so they are read with the club. A club
+  * without a base count, which the backfill above sets, counts as zero plus its shards, so that
+  * listing clubs never scans their memberships.
+  */
+  static final String MEMBER_COUNT_EXPRESSION =
+      "IFNULL(c.memberCount, 0) + "
+        + "(SELECT IFNULL(SUM(s.memberCount), 0) FROM " + TABLE + " s "
+        + "WHERE s.clubId = c.clubId) AS memberCount ";
+
+  /**
+  * Buffers the change of the member count of a club in the transaction.
+  * The base count and number of shards of the club are read, and the change is added to the
+  * current value of a random shard. Clubs written before the member count existed have no base
+  * count, which is then set once to the number of memberships of the club plus the change.
+  *
+  * @param  transaction   the transaction the change is buffered in
+  * @param  clubId        the club ID string of the club whose member count changes
+  * @param  delta         the number of members added, or a negative number if members left
+  * @throws IllegalArgumentException if the club does not exist
+  */
+  public static void bufferMemberCountChange(
+      TransactionContext transaction, String clubId, long delta) {
+    Struct club =
+          transaction
+            .readRow(
+              "Clubs",
+              Key.of(clubId),
+              Arrays.asList("memberCount", "memberCountShards"));
+    if (club == null) {
+      throw new IllegalArgumentException(StorageHandler.CLUB_DOES_NOT_EXIST);
+    }
+    if (club.isNull("memberCount")) {
+      long memberCount = StorageHandlerHelper.getMemberCount(transaction, clubId);
+      transaction.buffer(
+        StorageHandlerCommonMutations.updateMemberCountMutation(clubId, memberCount + delta));
+      return;
+    }
+    long shardId = pickShard(club.isNull("memberCountShards")
+        ? defaultShards()
+        : club.getLong("memberCountShards"));
+    Struct shard =
+          transaction
+            .readRow(
+              TABLE,
+              Key.of(clubId, shardId),
+              Arrays.asList("memberCount"));
+    long shardCount = shard == null ? 0 : shard.getLong("memberCount");
+    transaction.buffer(shardMutation(clubId, shardId, shardCount + delta));
+  }
+
+  /**
+  * Buffers the reset of the base count of a club, so that the member count of the club equals
+  * its number of memberships. Used after memberships were written without changing the count,
+  * such as by a bulk import. The memberships and every shard are read in the transaction, so
+  * the membership changes that commit at the same time are not lost. Does nothing if the club
+  * does not exist.
+  *
+  * @param  transaction   the transaction the reset is buffered in
+  * @param  clubId        the club ID string of the club whose member count is reset
+  */
+  public static void bufferRecount(TransactionContext transaction, String clubId) {
+    Struct club =
+          transaction
+            .readRow(
+              "Clubs",
+              Key.of(clubId),
+              Arrays.asList("clubId"));
+    if (club == null) {
+      return;
+    }
+    long memberships = StorageHandlerHelper.getMemberCount(transaction, clubId);
+    transaction.buffer(
+      StorageHandlerCommonMutations.updateMemberCountMutation(
+        clubId, memberships - sumShards(transaction, clubId)));
+  }
+
+  /**
+  * Returns the sum of the shards of the member count of a club, read with one prefix range read
+  * of the shards table.
+  *
+  * @param  readContext   the context used to read the shards
+  * @param  clubId        the club ID string of the club
+  * @return               the sum of the shards, which does not include the base count
+  */
+  public static long sumShards(ReadContext readContext, String clubId) {
+    long sum = 0;
+    try (ResultSet resultSet =
+            readContext.read(
+              TABLE,
+              KeySet.prefixRange(Key.of(clubId)),
+              Arrays.asList("memberCount"))) {
+      while (resultSet.next()) {
+        sum += resultSet.getLong("memberCount");
+      }
+    }
+    return sum;
+  }
+
+  /**
+  * Returns a single Mutation that sets the value of a shard.
+  *
+  * @param  clubId        the club ID string of the club
+  * @param  shardId       the ID of the shard, from 0 to the number of shards of the club
+  * @param  memberCount   the value of the shard
+  * @return               the single mutation to set the shard
+  */
+  public static Mutation shardMutation(String clubId, long shardId, long memberCount) {
+    return Mutation.newInsertOrUpdateBuilder(TABLE)
+                   .set("clubId")
+                   .to(clubId)
+                   .set("shardId")
+                   .to(shardId)
+                   .set("memberCount")
+                   .to(memberCount)
+                   .build();
+  }
+
+  /** Returns the number of shards of clubs that do not set their own. */
+  public static int defaultShards() {
+    return Integer.getInteger(SHARDS_PROPERTY, DEFAULT_SHARDS);
+  }
+
+  /** Returns a random shard ID of a club with the number of shards, treating zero as one. */
+  static long pickShard(long shards) {
+    return shards <= 1 ? 0 : ThreadLocalRandom.current().nextLong(shards);
+  }
+
+  // Private constructor to enforce that it should not be instantiated.
+  private MemberCountShards() {}
+}
@@ -0,0 +1,171 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.StructReader;
+import com.google.cloud.spanner.Value;
+import com.google.coffeehouse.util.IdentifierGenerator;
+import com.google.coffeehouse.util.UuidWrapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+* The Outbox class holds the functions that write {@link ChangeEvent}s to the {@code TABLE}
+* table and read them back. An event is buffered in the same commit as the change it records,
+* so an event exists if and only if its change was committed.
+*
+* <p>The table is keyed by a random event ID, so that concurrent writers do not all append to
+* the same split. Each event is also given a random bucket, from 0 to {@code BUCKETS}, and the
+* {@code CREATED_AT_INDEX} index is keyed by (bucket, createdAt): an index on the commit timestamp
+* alone would put every new entry at its end, on one split. The {@link OutboxRelay} reads the
+* oldest events of each bucket and merges them. Delivered events are deleted from the table.
+*/
+public class Outbox {
+  /** The name of the table holding the events that have not been delivered yet. */
+  public static final String TABLE = "Outbox";
+  /** The name of the index of the table on the bucket and createdAt columns. */
+  public static final String CREATED_AT_INDEX = "OutboxByBucketCreatedAt";
+  /**
+  * The number of buckets the events are spread over. Readers query every bucket, so it can only
+  * be lowered once the buckets above the new number are empty.
+  */
+  public static final int BUCKETS = 16;
+  /** The order the events are relayed in: by commit timestamp, then by event ID. */
+  public static final Comparator<ChangeEvent> COMMIT_ORDER =
+      Comparator.comparing(ChangeEvent::getCreatedAt).thenComparing(ChangeEvent::getEventId);
+  public static final List<String> COLUMNS =
+      Arrays.asList("eventId", "type", "clubId", "userId", "createdAt");
+
+  private static final IdentifierGenerator idGen = new UuidWrapper();
+
+  /**
+  * Returns a single Mutation that adds an event to a random bucket of the outbox. The createdAt
+  * column is set to the commit timestamp of the mutation.
+  *
+  * @param  type      the kind of change
+  * @param  clubId    the club ID string of the club that changed
+  * @param  userId    the user ID string of the person who joined or left, or null if the club
+  *                   itself changed
+  * @return           the single mutation to add the event
+  */
+  public static Mutation eventMutation(ChangeEvent.Type type, String clubId, String userId) {
+    return Mutation.newInsertBuilder(TABLE)
+                   .set("eventId")
+                   .to(idGen.generateId())
+                   .set("type")
+                   .to(type.name())
+                   .set("clubId")
+                   .to(clubId)
+                   .set("userId")
+                   .to(userId)
+                   .set("bucket")
+                   .to(ThreadLocalRandom.current().nextInt(BUCKETS))
+                   .set("createdAt")
+                   .to(Value.COMMIT_TIMESTAMP)
+                   .build();
+  }
+
+  /**
+  * Returns a {@code CLUB_UPDATED} event mutation for each insert or update of the Clubs table in
+  * the mutations, so that saving a club records the change in the same commit.
+  *
+  * @param  mutations   the mutations that are being written to the database
+  * @return             the mutations to add the events, which may be empty
+  */
+  public static List<Mutation> clubUpdatedEventMutations(List<Mutation> mutations) {
+    List<Mutation> events = new ArrayList<>();
+    for (Mutation mutation : mutations) {
+      if (mutation.getTable().equals("Clubs") && mutation.getOperation() != Mutation.Op.DELETE) {
+        String clubId = mutation.asMap().get("clubId").getString();
+        events.add(eventMutation(ChangeEvent.Type.CLUB_UPDATED, clubId, null));
+      }
+    }
+    return events;
+  }
+
+  /**
+  * Returns the oldest events of the outbox, in {@code COMMIT_ORDER}. The oldest events of each
+  * bucket are read with a query of the {@code CREATED_AT_INDEX} index, so the context must be
+  * able to run several queries, and the oldest of them all are returned.
+  *
+  * @param  readContext   the context used to read the events
+  * @param  limit         the maximum number of events returned
+  * @return               the list of events
+  */
+  public static List<ChangeEvent> readOldestEvents(ReadContext readContext, int limit) {
+    List<ChangeEvent> events = new ArrayList<>();
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      Statement statement =
+          Statement.newBuilder(
+                  "SELECT eventId, type, clubId, userId, createdAt "
+                    + "FROM " + TABLE + "@{FORCE_INDEX=" + CREATED_AT_INDEX + "} "
+                    + "WHERE bucket = @bucket "
+                    + "ORDER BY createdAt, eventId LIMIT @limit")
+              .bind("bucket")
+              .to(bucket)
+              .bind("limit")
+              .to(limit)
+              .build();
+      try (ResultSet resultSet = readContext.executeQuery(statement)) {
+        while (resultSet.next()) {
+          events.add(buildEventFromRow(resultSet));
+        }
+      }
+    }
+    events.sort(COMMIT_ORDER);
+    return events.size() <= limit ? events : new ArrayList<>(events.subList(0, limit));
+  }
+
+  /**
+  * Returns a single Mutation that deletes delivered events from the outbox.
+  *
+  * @param  eventIds  the event ID strings of the delivered events
+  * @return           the single mutation to delete the events
+  */
+  public static Mutation deleteEventsMutation(Collection<String> eventIds) {
+    KeySet.Builder keys = KeySet.newBuilder();
+    for (String eventId : eventIds) {
+      keys.addKey(Key.of(eventId));
+    }
+    return Mutation.delete(TABLE, keys.build());
+  }
+
+  /**
+  * Returns a {@link ChangeEvent} built from a row that has the {@code COLUMNS} columns.
+  *
+  * @param  row   the row (or result set positioned on a row) containing the event columns
+  * @return       the ChangeEvent object
+  */
+  public static ChangeEvent buildEventFromRow(StructReader row) {
+    return new ChangeEvent(
+        row.getString("eventId"),
+        ChangeEvent.Type.valueOf(row.getString("type")),
+        row.getString("clubId"),
+        row.isNull("userId") ? null : row.getString("userId"),
+        row.getTimestamp("createdAt"));
+  }
+
+  // Private constructor to enforce that it should not be instantiated.
+  private Outbox() {}
+}
@@ -0,0 +1,156 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+* The OutboxRelay class reads the {@link ChangeEvent}s of the {@link Outbox} in batches, publishes
+* them on a {@link ChangeEventBus} and then deletes them from the outbox.
+*
+* <p>Delivery is at least once: an event is deleted only after every subscriber received it, so
+* an event whose batch failed, or that was read by the relays of two instances at the same time,
+* is delivered again. Once started, the relay drains the outbox every {@code POLL_MILLIS_PROPERTY}
+* milliseconds on a daemon thread, reading at most {@code BATCH_SIZE_PROPERTY} events per read.
+* Each event is published on the bus of one instance only, as {@link ChangeEventBus} explains.
+*/
+public class OutboxRelay {
+  /**
+  * The system property that, when true, makes the APIs created with the default constructor of
+  * {@link StorageHandlerApi} start a relay. It is set by the deployed application only, so that
+  * unit tests do not poll a database.
+  */
+  public static final String ENABLED_PROPERTY = "coffeehouse.outbox.relayEnabled";
+  /** The system property holding the maximum number of events read from the outbox at once. */
+  public static final String BATCH_SIZE_PROPERTY = "coffeehouse.outbox.batchSize";
+  public static final int DEFAULT_BATCH_SIZE = 100;
+  /** The system property holding the number of milliseconds between drains of the outbox. */
+  public static final String POLL_MILLIS_PROPERTY = "coffeehouse.outbox.pollMillis";
+  public static final long DEFAULT_POLL_MILLIS = 1000;
+  /** The message to be logged when a drain of the outbox fails. */
+  public static final String LOG_RELAY_ERROR_MESSAGE = "Unable to relay the outbox: ";
+
+  private final StorageBackend backend;
+  private final ChangeEventBus bus;
+  private final int batchSize;
+  private final long pollMillis;
+  private ScheduledExecutorService executor;
+
+  /**
+  * Creates a relay with the batch size and poll interval of the {@code BATCH_SIZE_PROPERTY} and
+  * {@code POLL_MILLIS_PROPERTY} system properties.
+  *
+  * @param  backend   the backend whose outbox is relayed
+  * @param  bus       the bus the events are published on
+  */
+  public OutboxRelay(StorageBackend backend, ChangeEventBus bus) {
+    this(backend, bus,
+         Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE),
+         Long.getLong(POLL_MILLIS_PROPERTY, DEFAULT_POLL_MILLIS));
+  }
+
+  /**
+  * Creates a relay with the given batch size and poll interval.
+  *
+  * @param  backend       the backend whose outbox is relayed
+  * @param  bus           the bus the events are published on
+  * @param  batchSize     the maximum number of events read from the outbox at once
+  * @param  pollMillis    the number of milliseconds between drains of the outbox
+  * @throws IllegalArgumentException if the batch size or poll interval is not positive
+  */
+  public OutboxRelay(StorageBackend backend, ChangeEventBus bus, int batchSize, long pollMillis) {
+    if (batchSize <= 0 || pollMillis <= 0) {
+      throw new IllegalArgumentException(
+          "The batch size and poll interval of the outbox relay must be positive.");
+    }
+    this.backend = backend;
+    this.bus = bus;
+    this.batchSize = batchSize;
+    this.pollMillis = pollMillis;
+  }
+
+  /**
+  * Reads the oldest batch of events, publishes them and deletes them from the outbox.
+  *
+  * @return   the number of events relayed, which is less than the batch size only if the
+  *           outbox is now empty
+  * @throws RuntimeException if the events could not be read, published or deleted, in which case
+  *     the events that were read stay in the outbox
+  */
+  public int relayBatch() {
+    List<ChangeEvent> events = backend.readOutbox(batchSize);
+    if (events.isEmpty()) {
+      return 0;
+    }
+    bus.publish(events);
+    List<String> eventIds = new ArrayList<>();
+    for (ChangeEvent event : events) {
+      eventIds.add(event.getEventId());
+    }
+    backend.write(Collections.singletonList(Outbox.deleteEventsMutation(eventIds)));
+    return events.size();
+  }
+
+  /**
+  * Relays batches of events until the outbox is empty.
+  *
+  * @return   the number of events relayed
+  */
+  public int drain() {
+    int relayed = 0;
+    int batch;
+    do {
+      batch = relayBatch();
+      relayed += batch;
+    } while (batch == batchSize);
+    return relayed;
+  }
+
+  /** Starts draining the outbox in the background. Does nothing if the relay is running. */
+  public synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "outbox-relay");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(
+        this::drainAndLog, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops draining the outbox. A drain that is running is allowed to finish. */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  // An exception would cancel the scheduled drains, so failures are logged and retried at the
+  // next poll.
+  private void drainAndLog() {
+    try {
+      drain();
+    } catch (RuntimeException e) {
+      System.out.println(LOG_RELAY_ERROR_MESSAGE + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.BatchClient;
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.Statement;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.MembershipConstants;
+import com.google.coffeehouse.common.Person;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+* The SpannerStorageBackend class is the {@link StorageBackend} that reads from and writes to a
+* Cloud Spanner database through the {@link StorageHandler}.
+*/
+public class SpannerStorageBackend implements StorageBackend {
+  private final DatabaseClient dbClient;
+  private final BatchClient batchClient;
+  private final StorageTransactionRunner transactionRunner;
+
+  /**
+  * Creates a backend that uses the database client, and runs the membership transactions with
+  * the runner shared by the users of the client (see {@link StorageTransactionRunner#forClient}).
+  * Exports read the clubs with a single query.
+  *
+  * @param  dbClient  the database client
+  */
+  public SpannerStorageBackend(DatabaseClient dbClient) {
+    this(dbClient, null, StorageTransactionRunner.forClient(dbClient));
+  }
+
+  /**
+  * Creates a backend that uses the database client, runs the membership transactions with the
+  * runner shared by the users of the client, and exports the clubs with partitioned reads of the
+  * batch client.
+  *
+  * @param  dbClient      the database client
+  * @param  batchClient   the batch client of the same database
+  */
+  public SpannerStorageBackend(DatabaseClient dbClient, BatchClient batchClient) {
+    this(dbClient, batchClient, StorageTransactionRunner.forClient(dbClient));
+  }
+
+  /**
+  * Creates a backend that uses the database client and runs the membership transactions with the
+  * transaction runner. Exports read the clubs with a single query.
+  *
+  * @param  dbClient            the database client
+  * @param  transactionRunner   the runner of the membership transactions
+  */
+  public SpannerStorageBackend(
+      DatabaseClient dbClient, StorageTransactionRunner transactionRunner) {
+    this(dbClient, null, transactionRunner);
+  }
+
+  /**
+  * Creates a backend that uses the database client, runs the membership transactions with the
+  * transaction runner, and exports the clubs with partitioned reads of the batch client.
+  *
+  * @param  dbClient            the database client
+  * @param  batchClient         the batch client of the same database, or null to export the
+  *                             clubs with a single query
+  * @param  transactionRunner   the runner of the membership transactions
+  */
+  public SpannerStorageBackend(
+      DatabaseClient dbClient, BatchClient batchClient,
+      StorageTransactionRunner transactionRunner) {
+    this.dbClient = dbClient;
+    this.batchClient = batchClient;
+    this.transactionRunner = transactionRunner;
+  }
+
+  @Override
+  public Person getPerson(String userId) {
+    return StorageHandler.getPerson(dbClient, userId);
+  }
+
+  @Override
+  public Map<String, Person> getPersons(Collection<String> userIds) {
+    try (ReadContext readContext = dbClient.singleUse()) {
+      return StorageHandler.getPersons(readContext, userIds);
+    }
+  }
+
+  @Override
+  public Book getBook(String bookId, TimestampBound bound) {
+    return StorageHandler.getBook(dbClient, bookId, bound);
+  }
+
+  @Override
+  public Map<String, Book> getBooks(Collection<String> bookIds) {
+    try (ReadContext readContext = dbClient.singleUse()) {
+      return StorageHandler.getBooks(readContext, bookIds);
+    }
+  }
+
+  @Override
+  public String getCatalogBookId(String catalogKey) {
+    try (ReadContext readContext = dbClient.singleUse()) {
+      return BookCatalog.readBookId(readContext, catalogKey);
+    }
+  }
+
+  @Override
+  public Club getClub(String clubId, TimestampBound bound) {
+    return StorageHandler.getClub(dbClient, clubId, bound);
+  }
+
+  @Override
+  public Map<String, Club> getClubs(Collection<String> clubIds) {
+    return StorageHandler.getClubs(dbClient, clubIds);
+  }
+
+  @Override
+  public List<Person> getListOfMembers(String clubId) {
+    return StorageHandler.getListOfMembers(dbClient, clubId);
+  }
+
+  @Override
+  public void streamListOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      TimestampBound bound, Consumer<Club> consumer) {
+    StorageHandler.streamListOfClubs(dbClient, userId, membershipStatus, bound, consumer);
+  }
+
+  @Override
+  public ClubPage getPageOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      int pageSize, String pageToken, TimestampBound bound) {
+    return StorageHandler.getPageOfClubs(
+        dbClient, userId, membershipStatus, pageSize, pageToken, bound);
+  }
+
+  @Override
+  public void exportClubs(boolean includeMembers, BiConsumer<Club, List<Person>> consumer) {
+    if (batchClient == null) {
+      ClubExport.exportClubs(dbClient, includeMembers, consumer);
+    } else {
+      ClubExport.exportClubs(batchClient, includeMembers, ClubExport.parallelism(), consumer);
+    }
+  }
+
+  @Override
+  public void addAnyMembershipType(String userId, String clubId, int membershipLevel) {
+    StorageHandler.runAddAnyMembershipTypeTransaction(
+        transactionRunner, userId, clubId, membershipLevel);
+  }
+
+  @Override
+  public void insertMembership(String userId, String clubId, int membershipLevel) {
+    StorageHandler.runInsertMembershipTransaction(
+        transactionRunner, userId, clubId, membershipLevel);
+  }
+
+  @Override
+  public void deleteMembership(String userId, String clubId) {
+    StorageHandler.runDeleteMembershipTransaction(transactionRunner, userId, clubId);
+  }
+
+  @Override
+  public void recountMembers(String clubId) {
+    StorageHandler.runRecountMembersTransaction(transactionRunner, clubId);
+  }
+
+  @Override
+  public Timestamp write(List<Mutation> mutations) {
+    return dbClient.write(mutations);
+  }
+
+  @Override
+  public List<ChangeEvent> readOutbox(int limit) {
+    try (ReadContext readContext = dbClient.readOnlyTransaction()) {
+      return Outbox.readOldestEvents(readContext, limit);
+    }
+  }
+
+  @Override
+  public Map<String, TransactionMetrics.TransactionStats> getTransactionStats() {
+    return transactionRunner.getMetrics().getStats();
+  }
+
+  /**
+  * Runs a query that needs no table, which waits for the session pool to hand out its first
+  * session and opens the channel to Spanner.
+  */
+  @Override
+  public void warmUp() {
+    try (ResultSet resultSet = dbClient.singleUse().executeQuery(Statement.of("SELECT 1"))) {
+      while (resultSet.next()) {}
+    }
+  }
+}
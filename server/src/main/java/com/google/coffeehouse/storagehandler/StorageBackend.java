@@ -0,0 +1,244 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.MembershipConstants;
+import com.google.coffeehouse.common.Person;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+* The StorageBackend interface holds every read, transaction and write that the
+* {@link StorageHandlerApi} makes against the database, so that the database can be replaced.
+* Each method behaves like the {@link StorageHandler} method of the same name, including the
+* exceptions it throws when an entity does not exist or a membership transaction is refused.
+*/
+public interface StorageBackend {
+  /**
+  * Returns the {@link Person} with the user ID.
+  *
+  * @param  userId    the user ID string of the person
+  * @return           the Person object
+  * @throws IllegalArgumentException if the person does not exist
+  */
+  Person getPerson(String userId);
+
+  /**
+  * Returns a map from user ID to {@link Person}. IDs that do not exist are absent from the map.
+  *
+  * @param  userIds   the user ID strings of the persons
+  * @return           the map from user ID to Person object
+  */
+  Map<String, Person> getPersons(Collection<String> userIds);
+
+  /**
+  * Returns the {@link Book} with the book ID, read at the timestamp bound.
+  *
+  * @param  bookId    the book ID string of the book
+  * @param  bound     the timestamp bound (strong, exact staleness or max staleness) of the read
+  * @return           the Book object
+  * @throws IllegalArgumentException if the book does not exist
+  */
+  Book getBook(String bookId, TimestampBound bound);
+
+  /**
+  * Returns a map from book ID to {@link Book}. IDs that do not exist are absent from the map.
+  *
+  * @param  bookIds   the book ID strings of the books
+  * @return           the map from book ID to Book object
+  */
+  Map<String, Book> getBooks(Collection<String> bookIds);
+
+  /**
+  * Returns the book ID that a key of the {@link BookCatalog} maps to, read strongly.
+  *
+  * @param  catalogKey    the catalog key string of the book
+  * @return               the book ID string, or null if the book is not in the catalog
+  */
+  String getCatalogBookId(String catalogKey);
+
+  /**
+  * Returns the {@link Club} with the club ID, read at the timestamp bound.
+  *
+  * @param  clubId    the club ID string of the club
+  * @param  bound     the timestamp bound (strong, exact staleness or max staleness) of the read
+  * @return           the Club object
+  * @throws IllegalArgumentException if the club or its book does not exist
+  */
+  Club getClub(String clubId, TimestampBound bound);
+
+  /**
+  * Returns a map from club ID to {@link Club}. IDs of clubs that do not exist, or whose book does
+  * not exist, are absent from the map.
+  *
+  * @param  clubIds   the club ID strings of the clubs
+  * @return           the map from club ID to Club object
+  */
+  Map<String, Club> getClubs(Collection<String> clubIds);
+
+  /**
+  * Returns the members of a club ordered by user ID.
+  *
+  * @param  clubId    the club ID string of the club
+  * @return           the list of Person objects that are members of the club
+  * @throws IllegalStateException if the club has no members
+  * @throws IllegalArgumentException if a member does not exist in the Persons table
+  */
+  List<Person> getListOfMembers(String clubId);
+
+  /**
+  * Passes each {@link Club} that a user is either a member of or not a member of to the
+  * consumer, in club ID order.
+  *
+  * @param  userId            the user ID string of the person
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the read
+  * @param  consumer          the consumer that each Club object is passed to
+  */
+  void streamListOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      TimestampBound bound, Consumer<Club> consumer);
+
+  /**
+  * Returns the {@link Club}s that a user is either a member of or not a member of, in club ID
+  * order.
+  *
+  * @param  userId            the user ID string of the person
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the read
+  * @return                   the list of Club objects
+  */
+  default List<Club> getListOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      TimestampBound bound) {
+    List<Club> clubs = new ArrayList<>();
+    streamListOfClubs(userId, membershipStatus, bound, clubs::add);
+    return clubs;
+  }
+
+  /**
+  * Returns one page of the {@link Club}s that a user is either a member of or not a member of,
+  * in club ID order.
+  *
+  * @param  userId            the user ID string of the person
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  pageSize          the maximum number of clubs in the page, which must be positive
+  * @param  pageToken         the token returned with the previous page, or null for the first page
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the read
+  * @return                   the page of Club objects and the token of the next page
+  * @throws IllegalArgumentException if the page size is not positive or the page token is invalid
+  */
+  ClubPage getPageOfClubs(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      int pageSize, String pageToken, TimestampBound bound);
+
+  /**
+  * Passes every {@link Club} to the consumer, for a bulk export of the club catalog. The consumer
+  * is called by one thread at a time, but not necessarily in club ID order or on the calling
+  * thread. Clubs whose book does not exist are skipped.
+  *
+  * @param  includeMembers    whether the members of each club are read
+  * @param  consumer          the consumer that each Club object, and its members ordered by user
+  *                           ID or null if they are not read, is passed to
+  */
+  void exportClubs(boolean includeMembers, BiConsumer<Club, List<Person>> consumer);
+
+  /**
+  * Adds a membership or ownership, and increments the member count of the club, in a transaction
+  * that first checks the person is not already in the club.
+  *
+  * @param  userId            the user ID string of the person joining the club
+  * @param  clubId            the club ID string of the club being joined
+  * @param  membershipLevel   the integer representing membership level (member or owner)
+  * @throws IllegalArgumentException if the person is already in the club
+  */
+  void addAnyMembershipType(String userId, String clubId, int membershipLevel);
+
+  /**
+  * Adds a membership or ownership, and increments the member count of the club, without first
+  * reading the membership. The primary key of the Memberships table rejects the insert if the
+  * person is already in the club.
+  *
+  * @param  userId            the user ID string of the person joining the club
+  * @param  clubId            the club ID string of the club being joined
+  * @param  membershipLevel   the integer representing membership level (member or owner)
+  * @throws IllegalArgumentException if the person is already in the club
+  */
+  void insertMembership(String userId, String clubId, int membershipLevel);
+
+  /**
+  * Deletes a membership, and decrements the member count of the club, in a transaction that
+  * first checks the person is a member, and not the owner, of the club.
+  *
+  * @param  userId    the user ID string of the person leaving the club
+  * @param  clubId    the club ID string of the club being left
+  * @throws IllegalArgumentException if the person is not in the club or is its owner
+  */
+  void deleteMembership(String userId, String clubId);
+
+  /**
+  * Resets the member count of a club to its number of memberships, in a transaction. Used after
+  * memberships were written with {@link #write} instead of the membership transactions. Does
+  * nothing if the club does not exist.
+  *
+  * @param  clubId    the club ID string of the club whose member count is reset
+  */
+  void recountMembers(String clubId);
+
+  /**
+  * Applies the mutations atomically in a single commit.
+  *
+  * @param  mutations   the mutations to be written
+  * @return             the timestamp of the commit
+  */
+  Timestamp write(List<Mutation> mutations);
+
+  /**
+  * Returns the oldest events of the {@link Outbox}, in commit timestamp order.
+  *
+  * @param  limit       the maximum number of events returned
+  * @return             the list of events, which is empty if the outbox is empty
+  */
+  List<ChangeEvent> readOutbox(int limit);
+
+  /**
+  * Returns a snapshot of the counters of the read/write transactions run by this backend, keyed
+  * by the type of transaction. Backends without transactions return an empty map.
+  *
+  * @return             the map from transaction type to the counters of its transactions
+  */
+  default Map<String, TransactionMetrics.TransactionStats> getTransactionStats() {
+    return Collections.emptyMap();
+  }
+
+  /**
+  * Prepares the backend to serve requests, for example by opening connections, so that the
+  * first request does not pay for it. Does nothing by default.
+  */
+  default void warmUp() {}
+}
@@ -21,18 +21,28 @@ import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.MembershipConstants;
 import com.google.coffeehouse.common.Person;
 import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.ErrorCode;
 import com.google.cloud.spanner.Key;
 import com.google.cloud.spanner.KeySet;
-import com.google.cloud.spanner.KeyRange;
 import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.ReadContext;
 import com.google.cloud.spanner.ReadOnlyTransaction;
 import com.google.cloud.spanner.ResultSet;
+import com.google.cloud.spanner.SpannerException;
 import com.google.cloud.spanner.Statement;
 import com.google.cloud.spanner.Struct;
+import com.google.cloud.spanner.StructReader;
+import com.google.cloud.spanner.TimestampBound;
 import com.google.cloud.spanner.TransactionContext;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
 * The StorageHandler class holds the functions that either get information from the
@@ -45,10 +55,45 @@ public class StorageHandler {
 
   public static final String CLUB_DOES_NOT_EXIST = "This club does not exist in the database.";
 
+  /** The names the membership transactions are counted under in the {@link TransactionMetrics}. */
+  public static final String ADD_MEMBERSHIP_TRANSACTION = "addMembership";
+  public static final String INSERT_MEMBERSHIP_TRANSACTION = "insertMembership";
+  public static final String DELETE_MEMBERSHIP_TRANSACTION = "deleteMembership";
+  public static final String RECOUNT_MEMBERS_TRANSACTION = "recountMembers";
+
   public static final String NO_AUTHOR = "No author";
   public static final String NO_ISBN = "No ISBN";
   public static final String BOOK_DOES_NOT_EXIST = "This book does not exist in the database.";
 
+  public static final String INVALID_PAGE_SIZE = "The page size must be a positive number.";
+
+  /** The columns of the Persons table needed to build a {@link Person}. */
+  static final List<String> PERSON_COLUMNS =
+      Arrays.asList("userId", "email", "nickname", "pronouns");
+
+  /** The columns of the Books table needed to build a {@link Book}. */
+  static final List<String> BOOK_COLUMNS =
+      Arrays.asList("bookId", "title", "author", "isbn");
+
+  /** The columns of the Clubs table needed to build a {@link Club}, given its {@link Book}. */
+  static final List<String> CLUB_COLUMNS =
+      Arrays.asList(
+          "clubId", "bookId", "name", "description", "ownerId", "contentWarning", "memberCount");
+
+  /**
+  * The columns of the Clubs (c) table needed to build a {@link Club}, with the member count
+  * summed over its shards.
+  */
+  static final String CLUB_QUERY_COLUMNS =
+      "c.clubId, c.bookId, c.name, c.description, c.ownerId, c.contentWarning, "
+        + MemberCountShards.MEMBER_COUNT_EXPRESSION;
+
+  /** The columns of the Clubs (c) and Books (b) tables needed to build a {@link Club}. */
+  private static final String CLUB_WITH_BOOK_COLUMNS =
+      "c.clubId, c.name, c.description, c.ownerId, c.contentWarning, "
+        + MemberCountShards.MEMBER_COUNT_EXPRESSION + ", "
+        + "b.bookId, b.title, b.author, b.isbn ";
+
   /**
   * Creates and returns a {@link Person} with the result of a strong read from the database.
   * This method builds a {@link Person} with a user's ID, email, nickname, and pronouns.
@@ -64,22 +109,42 @@ public class StorageHandler {
             .readRow(
               "Persons",
               Key.of(userId),
-              Arrays.asList("email", "nickname", "pronouns"));
+              PERSON_COLUMNS);
     if (row != null) {
-      Person.Builder personBuilder = Person.newBuilder()
-                                           .setEmail(row.getString(/* emailIndex= */0))
-                                           .setNickname(row.getString(/* nicknameIndex= */1))
-                                           .setUserId(userId);
-
-      if (!row.isNull(/* index= */2)) {
-        personBuilder.setPronouns(row.getString(/* pronounsIndex= */2));
-      }
-      return personBuilder.build();
+      return buildPersonFromRow(row);
     } else {
       throw new IllegalArgumentException(PERSON_DOES_NOT_EXIST);
     }
   }
 
+  /**
+  * Creates and returns a map from user ID to {@link Person} for every given user ID that exists
+  * in the database. All of the persons are fetched with a single multi-key read of the
+  * Persons table, and user IDs that do not exist in the database are absent from the map.
+  *
+  * @param  readContext   the context used to read the persons, such as a read-only transaction
+  * @param  userIds       the user ID strings of the persons to fetch
+  * @return               the map from user ID to the Person object built for that user
+  */
+  public static Map<String, Person> getPersons(ReadContext readContext, Collection<String> userIds) {
+    Map<String, Person> persons = new HashMap<>();
+    if (userIds.isEmpty()) {
+      return persons;
+    }
+    KeySet.Builder keySetBuilder = KeySet.newBuilder();
+    for (String userId : userIds) {
+      keySetBuilder.addKey(Key.of(userId));
+    }
+    try (ResultSet resultSet =
+            readContext.read("Persons", keySetBuilder.build(), PERSON_COLUMNS)) {
+      while (resultSet.next()) {
+        Person person = buildPersonFromRow(resultSet);
+        persons.put(person.getUserId(), person);
+      }
+    }
+    return persons;
+  }
+
   /**
   * Creates and returns a {@link Book} with the result of a strong read from the database.
   * This method builds a {@link Book} with a book's ID, author, ISBN, and title.
@@ -89,25 +154,35 @@ public class StorageHandler {
   * @return           the Book object built containing the book information
   */
   public static Book getBook(DatabaseClient dbClient, String bookId) {
-    Struct row = 
-        dbClient
-            .singleUse()
-            .readRow(
-              "Books",
-              Key.of(bookId),
-              Arrays.asList("title", "author", "isbn"));
-    if (row != null) {
-      Book.Builder bookBuilder = Book.newBuilder()
-                                     .setTitle(row.getString(/* titleIndex= */ 0))
-                                     .setBookId(bookId);
+    return getBook(dbClient, bookId, TimestampBound.strong());
+  }
 
-      if (!row.isNull(/* authorIndex= */ 1)) {
-        bookBuilder.setAuthor(row.getString(/* authorIndex= */ 1));
-      }
-      if (!row.isNull(/* isbnIndex= */ 2)) {
-        bookBuilder.setIsbn(row.getString(/* isbnIndex= */ 2));
-      }
-      return bookBuilder.build();
+  /**
+  * Creates and returns a {@link Book} with the result of a read from the database at the
+  * given timestamp bound. A stale bound lets the read be served by the nearest replica instead
+  * of requiring a round trip to the leader.
+  *
+  * @param  dbClient  the database client
+  * @param  bookId    the book ID string used to query and get a book's information
+  * @param  bound     the timestamp bound (strong, exact staleness or max staleness) of the read
+  * @return           the Book object built containing the book information
+  */
+  public static Book getBook(DatabaseClient dbClient, String bookId, TimestampBound bound) {
+    return readBook(dbClient.singleUse(bound), bookId);
+  }
+
+  /**
+  * Creates and returns a {@link Book} read with the given context, so that it can be read in
+  * the same snapshot as other rows.
+  *
+  * @param  readContext   the context used to read the book, such as a read-only transaction
+  * @param  bookId        the book ID string used to query and get a book's information
+  * @return               the Book object built containing the book information
+  */
+  static Book readBook(ReadContext readContext, String bookId) {
+    Struct row = readContext.readRow("Books", Key.of(bookId), BOOK_COLUMNS);
+    if (row != null) {
+      return buildBookFromRow(row);
     } else {
       throw new IllegalArgumentException(BOOK_DOES_NOT_EXIST);
     }
@@ -122,63 +197,180 @@ public class StorageHandler {
   * @return           the Club object built containing the club information
   */
   public static Club getClub(DatabaseClient dbClient, String clubId) {
-    Struct row = 
-      dbClient
-          .singleUse()
-          .readRow(
-            "Clubs",
-            Key.of(clubId),
-            Arrays.asList("bookId", "name", "description", "ownerId", "contentWarning"));
-    if (row != null) {
-      Book book = getBook(dbClient, row.getString(/* bookIdIndex= */ 0));
-      Club.Builder clubBuilder = Club.newBuilder()
-                                     .setCurrentBook(book)
-                                     .setName(row.getString(/* nameIndex= */ 1))
-                                     .setClubId(clubId)
-                                     .setDescription(row.getString(/* descriptionIndex= */ 2))
-                                     .setOwnerId(row.getString(/* ownerIdIndex= */ 3));                       
-      if (!row.isNull(/* contentWarningIndex=*/ 4)) {
-        List<String> contentWarnings =
-            Arrays.asList(row.getString(/* contentWarningIndex=*/ 4).split("\\n"));
-        clubBuilder.setContentWarnings(contentWarnings);
+    return getClub(dbClient, clubId, TimestampBound.strong());
+  }
+
+  /**
+  * Creates and returns a {@link Club} with the result of a read from the database at the
+  * given timestamp bound. The club and its book are read from the same snapshot, and the member
+  * count is summed over its shards in the query that reads the club. Spanner only allows max
+  * staleness and min read timestamp bounds in single-use reads, so with those bounds the book is
+  * read in a second read at the timestamp the club was read at.
+  *
+  * @param  dbClient  the database client
+  * @param  clubId    the club ID string used to query and get a club's information
+  * @param  bound     the timestamp bound (strong, exact staleness or max staleness) of the reads
+  * @return           the Club object built containing the club information
+  */
+  public static Club getClub(DatabaseClient dbClient, String clubId, TimestampBound bound) {
+    Statement statement =
+        Statement.newBuilder(
+                "SELECT " + CLUB_QUERY_COLUMNS
+                  + "FROM Clubs c "
+                  + "WHERE c.clubId = @clubId")
+              .bind("clubId")
+              .to(clubId)
+              .build();
+    if (bound.getMode() == TimestampBound.Mode.MAX_STALENESS
+        || bound.getMode() == TimestampBound.Mode.MIN_READ_TIMESTAMP) {
+      Struct row;
+      TimestampBound readTimestamp;
+      try (ReadOnlyTransaction clubRead = dbClient.singleUseReadOnlyTransaction(bound)) {
+        row = readClubRow(clubRead, statement);
+        readTimestamp = TimestampBound.ofReadTimestamp(clubRead.getReadTimestamp());
       }
-      return clubBuilder.build();
-    } else {
-      throw new IllegalArgumentException(CLUB_DOES_NOT_EXIST);
+      return buildClubFromRow(
+          row, readBook(dbClient.singleUse(readTimestamp), row.getString("bookId")));
+    }
+    try (ReadOnlyTransaction transaction = dbClient.readOnlyTransaction(bound)) {
+      Struct row = readClubRow(transaction, statement);
+      return buildClubFromRow(row, readBook(transaction, row.getString("bookId")));
+    }
+  }
+
+  private static Struct readClubRow(ReadContext readContext, Statement statement) {
+    try (ResultSet resultSet = readContext.executeQuery(statement)) {
+      if (!resultSet.next()) {
+        throw new IllegalArgumentException(CLUB_DOES_NOT_EXIST);
+      }
+      return resultSet.getCurrentRowAsStruct();
     }
   }
 
+  /**
+  * Creates and returns a map from book ID to {@link Book} for every given book ID that exists
+  * in the database. All of the books are fetched with a single multi-key read of the
+  * Books table, and book IDs that do not exist in the database are absent from the map.
+  *
+  * @param  readContext   the context used to read the books, such as a read-only transaction
+  * @param  bookIds       the book ID strings of the books to fetch
+  * @return               the map from book ID to the Book object built for that book
+  */
+  public static Map<String, Book> getBooks(ReadContext readContext, Collection<String> bookIds) {
+    Map<String, Book> books = new HashMap<>();
+    if (bookIds.isEmpty()) {
+      return books;
+    }
+    KeySet.Builder keySetBuilder = KeySet.newBuilder();
+    for (String bookId : bookIds) {
+      keySetBuilder.addKey(Key.of(bookId));
+    }
+    try (ResultSet resultSet = readContext.read("Books", keySetBuilder.build(), BOOK_COLUMNS)) {
+      while (resultSet.next()) {
+        Book book = buildBookFromRow(resultSet);
+        books.put(book.getBookId(), book);
+      }
+    }
+    return books;
+  }
+
+  /**
+  * Creates and returns a map from club ID to {@link Club} for every given club ID that exists
+  * in the database. Inside a single read-only transaction, all of the clubs (with their member
+  * counts) are fetched with one query of the Clubs table and all of their books with one
+  * multi-key read of the Books table. Club IDs that do not exist in the database (or whose book
+  * does not exist) are absent from the map.
+  *
+  * @param  dbClient    the database client
+  * @param  clubIds     the club ID strings of the clubs to fetch
+  * @return             the map from club ID to the Club object built for that club
+  */
+  public static Map<String, Club> getClubs(DatabaseClient dbClient, Collection<String> clubIds) {
+    Map<String, Club> clubs = new HashMap<>();
+    if (clubIds.isEmpty()) {
+      return clubs;
+    }
+    Statement statement =
+        Statement.newBuilder(
+                "SELECT " + CLUB_QUERY_COLUMNS
+                  + "FROM Clubs c "
+                  + "WHERE c.clubId IN UNNEST(@clubIds)")
+              .bind("clubIds")
+              .toStringArray(clubIds)
+              .build();
+    List<Struct> clubRows = new ArrayList<>();
+    Set<String> bookIds = new HashSet<>();
+    Map<String, Book> books;
+    try (ReadOnlyTransaction transaction = dbClient.readOnlyTransaction()) {
+      try (ResultSet resultSet = transaction.executeQuery(statement)) {
+        while (resultSet.next()) {
+          Struct row = resultSet.getCurrentRowAsStruct();
+          clubRows.add(row);
+          bookIds.add(row.getString("bookId"));
+        }
+      }
+      books = getBooks(transaction, bookIds);
+    }
+    for (Struct row : clubRows) {
+      Book book = books.get(row.getString("bookId"));
+      if (book != null) {
+        Club club = buildClubFromRow(row, book);
+        clubs.put(club.getClubId(), club);
+      }
+    }
+    return clubs;
+  }
+
+  /**
+  * Runs the add membership transaction with the {@link StorageTransactionRunner} shared by the
+  * users of the database client (see {@link StorageTransactionRunner#forClient}).
+  *
+  * @param  dbClient             the database client
+  * @param  userId               the user ID string used to perform the transaction
+  * @param  clubId               the club ID string used to perform the transaction
+  * @param  membershipLevel      the integer representing membership level (member or owner)
+  */
+  public static void runAddAnyMembershipTypeTransaction(
+    DatabaseClient dbClient,
+    String userId,
+    String clubId,
+    int membershipLevel
+  ) {
+    runAddAnyMembershipTypeTransaction(
+      StorageTransactionRunner.forClient(dbClient), userId, clubId, membershipLevel);
+  }
+
   /**
   * Runs a transaction that adds a membership or ownership to the database.
   * This method checks if a person is already a member of a club by calling a helper function.
-  * If the person does not exist, this method will buffer a single mutation that adds
-  * the membership (or owner). Otherwise, it will throw an exception indicating that the person
+  * If the person does not exist, this method will buffer a mutation that adds the membership
+  * (or owner), a mutation that increments a shard of the member count of the club (see
+  * {@link MemberCountShards}) and a {@code MEMBERSHIP_ADDED} {@link ChangeEvent} in the
+  * {@link Outbox}. Otherwise, it will throw an exception indicating that the person
   * is already a member of the club. If a person is already a member of a club, and is trying to
   * become an owner, it will throw an RuntimeException because only one unique key of
   * (userId, clubId) can exist in the database Memberships table at a time. 
   *
-  * @param  dbClient             the database client
+  * @param  runner               the runner that retries the transaction when it is aborted
   * @param  userId               the user ID string used to perform the transaction
   * @param  clubId               the club ID string used to perform the transaction
   * @param  membershipLevel      the integer representing membership level (member or owner)
   */
   public static void runAddAnyMembershipTypeTransaction(
-    DatabaseClient dbClient,
+    StorageTransactionRunner runner,
     String userId,
     String clubId,
     int membershipLevel
   ) {
-    dbClient
-        .readWriteTransaction()
+    runner
         .run(
+          ADD_MEMBERSHIP_TRANSACTION,
           new TransactionCallable<Void>() {
             @Override
             public Void run(TransactionContext transaction) throws Exception {
               Boolean exists = StorageHandlerHelper.checkAnyMembership(transaction, userId, clubId);
               if (!exists) {
-                transaction.buffer(
-                  StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
-                    userId, clubId, membershipLevel));
+                bufferAddMembership(transaction, userId, clubId, membershipLevel);
               } else {
                 throw new IllegalArgumentException(MembershipConstants.PERSON_ALREADY_IN_CLUB);
               }
@@ -188,36 +380,133 @@ public class StorageHandler {
         );
   }
 
+  /**
+  * Runs the insert membership transaction with the {@link StorageTransactionRunner} shared by the
+  * users of the database client (see {@link StorageTransactionRunner#forClient}).
+  *
+  * @param  dbClient             the database client
+  * @param  userId               the user ID string used to perform the transaction
+  * @param  clubId               the club ID string used to perform the transaction
+  * @param  membershipLevel      the integer representing membership level (member or owner)
+  */
+  public static void runInsertMembershipTransaction(
+    DatabaseClient dbClient,
+    String userId,
+    String clubId,
+    int membershipLevel
+  ) {
+    runInsertMembershipTransaction(
+      StorageTransactionRunner.forClient(dbClient), userId, clubId, membershipLevel);
+  }
+
+  /**
+  * Runs a transaction that adds a membership or ownership to the database without first reading
+  * the membership. The insert is rejected by the primary key of the Memberships table when the
+  * person is already in the club, which this method reports with the same exception as
+  * {@link #runAddAnyMembershipTypeTransaction}. The only rows read are the club and one shard of
+  * its member count.
+  *
+  * @param  runner               the runner that retries the transaction when it is aborted
+  * @param  userId               the user ID string used to perform the transaction
+  * @param  clubId               the club ID string used to perform the transaction
+  * @param  membershipLevel      the integer representing membership level (member or owner)
+  * @throws IllegalArgumentException if the person is already in the club or the club does not
+  *     exist
+  */
+  public static void runInsertMembershipTransaction(
+    StorageTransactionRunner runner,
+    String userId,
+    String clubId,
+    int membershipLevel
+  ) {
+    try {
+      runner
+          .run(
+            INSERT_MEMBERSHIP_TRANSACTION,
+            new TransactionCallable<Void>() {
+              @Override
+              public Void run(TransactionContext transaction) throws Exception {
+                bufferAddMembership(transaction, userId, clubId, membershipLevel);
+                return null;
+              }
+            }
+          );
+    } catch (SpannerException e) {
+      if (e.getErrorCode() == ErrorCode.ALREADY_EXISTS) {
+        throw new IllegalArgumentException(MembershipConstants.PERSON_ALREADY_IN_CLUB, e);
+      }
+      throw e;
+    }
+  }
+
+  // Buffers the insert of the membership, the increment of the member count of the club and the
+  // event recording the change.
+  private static void bufferAddMembership(
+      TransactionContext transaction, String userId, String clubId, int membershipLevel) {
+    MemberCountShards.bufferMemberCountChange(transaction, clubId, 1);
+    transaction.buffer(
+      StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
+        userId, clubId, membershipLevel));
+    transaction.buffer(Outbox.eventMutation(ChangeEvent.Type.MEMBERSHIP_ADDED, clubId, userId));
+  }
+
+  /**
+  * Runs the delete membership transaction with the {@link StorageTransactionRunner} shared by the
+  * users of the database client (see {@link StorageTransactionRunner#forClient}).
+  *
+  * @param  dbClient    the database client
+  * @param  userId      the user ID string used to perform the transaction
+  * @param  clubId      the club ID string used to perform the transaction
+  */
+  public static void runDeleteMembershipTransaction(
+    DatabaseClient dbClient,
+    String userId,
+    String clubId
+  ) {
+    runDeleteMembershipTransaction(StorageTransactionRunner.forClient(dbClient), userId, clubId);
+  }
+
   /**
   * Runs a transaction that deletes a membership (or ownership) from the database.
   * This method checks if the person is already a member of a club by calling a helper function.
   * This method also checks if the person is the owner of the club by calling a helper function.
-  * If the person is a member, and not the owner, this method will buffer a single mutation
-  * that deletes the membership. If the person is the owner of the club, it will throw an exception
-  * indicating that the owner can't leave their own club. If the person is not a member, it will
+  * Both checks share a {@link CachingReadContext}, so the membership row is read only once.
+  * If the person is a member, and not the owner, this method will buffer a mutation that
+  * deletes the membership, a mutation that decrements a shard of the member count of the
+  * club and a {@code MEMBERSHIP_DELETED} {@link ChangeEvent} in the {@link Outbox}. If the
+  * person is the owner of the club, it will throw an exception indicating that the owner can't
+  * leave their own club. If the person is not a member, it will
   * throw an exception indicating that the person is already not a member of the club.
   *
-  * @param  dbClient    the database client
+  * @param  runner      the runner that retries the transaction when it is aborted
   * @param  userId      the user ID string used to perform the transaction
   * @param  clubId      the club ID string used to perform the transaction
   */
   public static void runDeleteMembershipTransaction(
-    DatabaseClient dbClient, 
-    String userId, 
+    StorageTransactionRunner runner,
+    String userId,
     String clubId
   ) {
-    dbClient
-        .readWriteTransaction()
+    runner
         .run(
+          DELETE_MEMBERSHIP_TRANSACTION,
           new TransactionCallable<Void>() {
             @Override
             public Void run(TransactionContext transaction) throws Exception {
-              Boolean exists = StorageHandlerHelper.checkAnyMembership(transaction, userId, clubId);
-              Boolean owner = StorageHandlerHelper.checkOwnership(transaction, userId, clubId);
+              // Both checks read the same membership row, which is read once with the columns
+              // of both.
+              CachingReadContext rowCache = new CachingReadContext(transaction)
+                  .prefetchColumns("Memberships", StorageHandlerHelper.MEMBERSHIP_CHECK_COLUMNS);
+              Boolean exists = StorageHandlerHelper.checkAnyMembership(rowCache, userId, clubId);
+              Boolean owner = StorageHandlerHelper.checkOwnership(rowCache, userId, clubId);
               if (exists) {
                 if (!owner) {
+                  MemberCountShards.bufferMemberCountChange(transaction, clubId, -1);
                   transaction.buffer(
                     StorageHandlerCommonMutations.deleteMembershipMutation(userId, clubId));
+                  transaction.buffer(
+                    Outbox.eventMutation(
+                      ChangeEvent.Type.MEMBERSHIP_DELETED, clubId, userId));
                 } else {
                   throw new IllegalArgumentException(MembershipConstants.OWNER_CAN_NOT_LEAVE_CLUB);
                 }
@@ -230,10 +519,33 @@ public class StorageHandler {
         );
   }
 
+  /**
+  * Runs a transaction that resets the member count of a club to its number of memberships (see
+  * {@link MemberCountShards#bufferRecount}). Does nothing if the club does not exist.
+  *
+  * @param  runner      the runner that retries the transaction when it is aborted
+  * @param  clubId      the club ID string of the club whose member count is reset
+  */
+  public static void runRecountMembersTransaction(StorageTransactionRunner runner, String clubId) {
+    runner
+        .run(
+          RECOUNT_MEMBERS_TRANSACTION,
+          new TransactionCallable<Void>() {
+            @Override
+            public Void run(TransactionContext transaction) throws Exception {
+              MemberCountShards.bufferRecount(transaction, clubId);
+              return null;
+            }
+          }
+        );
+  }
+
   /**
   * Creates and returns a list of {@link Persons}s that are a member of a club.
   * This method builds a {@link Person} for each person who is a member of the club, as specified
-  * by club ID. Each {@link Person} is added to a list that gets returned. If there are no members,
+  * by club ID. Each {@link Person} is added to a list that gets returned, ordered by user ID.
+  * The member IDs and the members themselves are read inside a single read-only transaction,
+  * with one multi-key read of the Persons table for all of the members. If there are no members,
   * this method will throw an exception indicating that there are no members in the club.
   *
   * @param  dbClient    the database client
@@ -241,21 +553,35 @@ public class StorageHandler {
   * @return             the list of Person objects
   */
   public static List<Person> getListOfMembers(DatabaseClient dbClient, String clubId) {
-    List<Person> persons = new ArrayList<>();
+    List<String> userIds = new ArrayList<>();
+    Map<String, Person> personsById;
     Statement statement = 
         Statement.newBuilder(
                 "SELECT userId "
                   + "FROM Memberships "
-                  + "WHERE clubId = @clubId ")
+                  + "WHERE clubId = @clubId "
+                  + "ORDER BY userId")
             .bind("clubId")
             .to(clubId)
             .build();
-    ResultSet resultSet = dbClient.singleUse().executeQuery(statement);
-    while (resultSet.next()) {
-      persons.add(getPerson(dbClient, resultSet.getString(/* userIdIndex= */0)));
+    try (ReadOnlyTransaction transaction = dbClient.readOnlyTransaction()) {
+      try (ResultSet resultSet = transaction.executeQuery(statement)) {
+        while (resultSet.next()) {
+          userIds.add(resultSet.getString(/* userIdIndex= */0));
+        }
+      }
+      if (userIds.size() == 0) {
+        throw new IllegalStateException(MembershipConstants.NO_MEMBERS);
+      }
+      personsById = getPersons(transaction, userIds);
     }
-    if (persons.size() == 0) {
-      throw new IllegalStateException(MembershipConstants.NO_MEMBERS);
+    List<Person> persons = new ArrayList<>();
+    for (String userId : userIds) {
+      Person person = personsById.get(userId);
+      if (person == null) {
+        throw new IllegalArgumentException(PERSON_DOES_NOT_EXIST);
+      }
+      persons.add(person);
     }
     return persons;
   }
@@ -264,6 +590,9 @@ public class StorageHandler {
   * Creates and returns a list of {@link Club}s depending on the user's membership status.
   * This method builds a {@link Club} for each club that a user is either a member of
   * or not a member of. Each {@link Club} is added to a list that gets returned.
+  * The clubs and their current books are read with a single query that joins the Clubs and
+  * Books tables (and the Memberships table when listing the clubs a user is a member of),
+  * so the number of reads does not grow with the number of clubs returned.
   *
   * @param  dbClient          the database client
   * @param  userId            the user ID string used to query and get a list of clubs
@@ -275,33 +604,234 @@ public class StorageHandler {
     String userId,
     MembershipConstants.MembershipStatus membershipStatus
   ) {
-    ResultSet resultSet;
+    return getListOfClubs(dbClient, userId, membershipStatus, TimestampBound.strong());
+  }
+
+  /**
+  * Creates and returns a list of {@link Club}s depending on the user's membership status,
+  * read from the database at the given timestamp bound.
+  *
+  * @param  dbClient          the database client
+  * @param  userId            the user ID string used to query and get a list of clubs
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the query
+  * @return                   the list of Clubs objects
+  */
+  public static List<Club> getListOfClubs(
+    DatabaseClient dbClient,
+    String userId,
+    MembershipConstants.MembershipStatus membershipStatus,
+    TimestampBound bound
+  ) {
     List<Club> clubs = new ArrayList<>();
-    ReadOnlyTransaction transaction = dbClient.readOnlyTransaction();
+    streamListOfClubs(dbClient, userId, membershipStatus, bound, clubs::add);
+    return clubs;
+  }
+
+  /**
+  * Passes each {@link Club} that a user is either a member of or not a member of to the
+  * consumer as its row is read from the database, in club ID order. Unlike
+  * {@link #getListOfClubs}, the clubs are never held in a list, so the memory used does not grow
+  * with the number of clubs.
+  *
+  * @param  dbClient          the database client
+  * @param  userId            the user ID string used to query and get a list of clubs
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the query
+  * @param  consumer          the consumer that each Club object is passed to
+  */
+  public static void streamListOfClubs(
+    DatabaseClient dbClient,
+    String userId,
+    MembershipConstants.MembershipStatus membershipStatus,
+    TimestampBound bound,
+    Consumer<Club> consumer
+  ) {
+    Statement statement = buildListOfClubsStatement(
+        userId, membershipStatus, /* afterClubId= */ null, /* limit= */ null);
+    try (ResultSet resultSet = dbClient.singleUse(bound).executeQuery(statement)) {
+      while (resultSet.next()) {
+        consumer.accept(buildClubFromJoinedRow(resultSet));
+      }
+    }
+  }
+
+  /**
+  * Creates and returns one page of the {@link Club}s depending on the user's membership status.
+  * Clubs are ordered by club ID, and the page starts after the club ID encoded in the page
+  * token. The query reads at most one more club than the page size, which is how it knows
+  * whether there is a next page, so its cost grows with the page size rather than with the
+  * number of clubs in the database.
+  *
+  * @param  dbClient          the database client
+  * @param  userId            the user ID string used to query and get a list of clubs
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  pageSize          the maximum number of clubs in the page, which must be positive
+  * @param  pageToken         the token returned with the previous page, or null for the first page
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the query
+  * @return                   the page of Club objects and the token of the next page
+  * @throws IllegalArgumentException if the page size is not positive or the page token is invalid
+  */
+  public static ClubPage getPageOfClubs(
+    DatabaseClient dbClient,
+    String userId,
+    MembershipConstants.MembershipStatus membershipStatus,
+    int pageSize,
+    String pageToken,
+    TimestampBound bound
+  ) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException(INVALID_PAGE_SIZE);
+    }
+    String afterClubId = pageToken == null ? null : ClubPage.decodePageToken(pageToken);
+    Statement statement = buildListOfClubsStatement(
+        userId, membershipStatus, afterClubId, /* limit= */ (long) pageSize + 1);
+    List<Club> clubs = new ArrayList<>();
+    boolean hasNextPage = false;
+    try (ResultSet resultSet = dbClient.singleUse(bound).executeQuery(statement)) {
+      while (resultSet.next()) {
+        if (clubs.size() == pageSize) {
+          hasNextPage = true;
+          break;
+        }
+        clubs.add(buildClubFromJoinedRow(resultSet));
+      }
+    }
+    String nextPageToken = hasNextPage
+        ? ClubPage.encodePageToken(clubs.get(clubs.size() - 1).getClubId())
+        : null;
+    return new ClubPage(clubs, nextPageToken);
+  }
+
+  /**
+  * Returns the query listing the clubs, joined with their books, that a user is either a member
+  * of or not a member of, ordered by club ID. The clubs a user is not a member of are found with
+  * an anti-join on the Memberships primary key, so each club costs one point lookup. The books
+  * are outer joined, so that a club whose book is missing is reported instead of dropped.
+  *
+  * @param  userId            the user ID string used to query and get a list of clubs
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  afterClubId       the club ID that every listed club ID is greater than, or null
+  * @param  limit             the maximum number of clubs listed, or null for no limit
+  * @return                   the statement of the query
+  */
+  private static Statement buildListOfClubsStatement(
+    String userId,
+    MembershipConstants.MembershipStatus membershipStatus,
+    String afterClubId,
+    Long limit
+  ) {
+    StringBuilder sql = new StringBuilder("SELECT ").append(CLUB_WITH_BOOK_COLUMNS);
     if (membershipStatus == MembershipConstants.MembershipStatus.MEMBER) {
-      resultSet = 
-          transaction
-              .read(
-                "Memberships",
-                KeySet.range(KeyRange.prefix(Key.of(userId))),
-                Arrays.asList("clubId"));
+      sql.append("FROM Memberships AS m ")
+         .append("JOIN Clubs AS c ON m.clubId = c.clubId ")
+         .append("LEFT JOIN Books AS b ON c.bookId = b.bookId ")
+         .append("WHERE m.userId = @userId ");
     } else {
-      Statement statement = 
-        Statement.newBuilder(
-                "SELECT clubId "
-                  + "FROM Clubs "
-                  + "WHERE clubId NOT IN ("
-                  + "SELECT clubId "
-                  + "FROM Memberships "
-                  + "WHERE userId = @userId)")
-            .bind("userId")
-            .to(userId)
-            .build();
-      resultSet = dbClient.singleUse().executeQuery(statement);
+      sql.append("FROM Clubs AS c ")
+         .append("LEFT JOIN Books AS b ON c.bookId = b.bookId ")
+         .append("WHERE NOT EXISTS (")
+         .append("SELECT 1 FROM Memberships AS m ")
+         .append("WHERE m.userId = @userId AND m.clubId = c.clubId) ");
     }
-    while (resultSet.next()) {
-      clubs.add(getClub(dbClient, resultSet.getString(/* clubIdIndex= */0)));
+    if (afterClubId != null) {
+      sql.append("AND c.clubId > @afterClubId ");
     }
-    return clubs;
+    sql.append("ORDER BY c.clubId");
+    if (limit != null) {
+      sql.append(" LIMIT @limit");
+    }
+
+    Statement.Builder statement = Statement.newBuilder(sql.toString())
+        .bind("userId")
+        .to(userId);
+    if (afterClubId != null) {
+      statement.bind("afterClubId").to(afterClubId);
+    }
+    if (limit != null) {
+      statement.bind("limit").to(limit);
+    }
+    return statement.build();
+  }
+
+  /**
+  * Returns a {@link Person} built from a row that contains the {@code PERSON_COLUMNS}.
+  *
+  * @param  row   the row (or result set positioned on a row) containing the person columns
+  * @return       the Person object built containing the person information
+  */
+  static Person buildPersonFromRow(StructReader row) {
+    Person.Builder personBuilder = Person.newBuilder()
+                                         .setEmail(row.getString("email"))
+                                         .setNickname(row.getString("nickname"))
+                                         .setUserId(row.getString("userId"));
+    if (!row.isNull("pronouns")) {
+      personBuilder.setPronouns(row.getString("pronouns"));
+    }
+    return personBuilder.build();
+  }
+
+  /**
+  * Returns a {@link Book} built from a row that contains the {@code BOOK_COLUMNS}.
+  *
+  * @param  row   the row (or result set positioned on a row) containing the book columns
+  * @return       the Book object built containing the book information
+  */
+  static Book buildBookFromRow(StructReader row) {
+    Book.Builder bookBuilder = Book.newBuilder()
+                                   .setBookId(row.getString("bookId"))
+                                   .setTitle(row.getString("title"));
+    if (!row.isNull("author")) {
+      bookBuilder.setAuthor(row.getString("author"));
+    }
+    if (!row.isNull("isbn")) {
+      bookBuilder.setIsbn(row.getString("isbn"));
+    }
+    return bookBuilder.build();
+  }
+
+  /**
+  * Returns a {@link Club} built from a row that contains the club columns of
+  * {@code CLUB_COLUMNS} and the {@link Book} the club is reading.
+  *
+  * @param  row   the row (or result set positioned on a row) containing the club columns
+  * @param  book  the Book object that is the club's current book
+  * @return       the Club object built containing the club information
+  */
+  static Club buildClubFromRow(StructReader row, Book book) {
+    Club.Builder clubBuilder = Club.newBuilder()
+                                   .setCurrentBook(book)
+                                   .setName(row.getString("name"))
+                                   .setClubId(row.getString("clubId"))
+                                   .setDescription(row.getString("description"))
+                                   .setOwnerId(row.getString("ownerId"));
+    if (!row.isNull("contentWarning")) {
+      List<String> contentWarnings =
+          Arrays.asList(row.getString("contentWarning").split("\\n"));
+      clubBuilder.setContentWarnings(contentWarnings);
+    }
+    if (!row.isNull("memberCount")) {
+      clubBuilder.setMemberCount(row.getLong("memberCount"));
+    }
+    return clubBuilder.build();
+  }
+
+  /**
+  * Returns a {@link Club} built from the current row of a query that selected
+  * {@code CLUB_WITH_BOOK_COLUMNS}, including the {@link Book} the club is reading.
+  *
+  * @param  row   the row (or result set positioned on a row) containing the club and book columns
+  * @return       the Club object built containing the club and book information
+  * @throws IllegalArgumentException if the book of the club does not exist, as it is when the
+  *     club and its book are read one after the other
+  */
+  private static Club buildClubFromJoinedRow(StructReader row) {
+    if (row.isNull("bookId")) {
+      throw new IllegalArgumentException(BOOK_DOES_NOT_EXIST);
+    }
+    return buildClubFromRow(row, buildBookFromRow(row));
   }
 }
@@ -14,24 +14,118 @@
 
 package com.google.coffeehouse.storagehandler;
 
+import com.google.coffeehouse.common.Book;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.MembershipConstants;
 import com.google.coffeehouse.common.Person;
 
-import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.ErrorCode;
 import com.google.cloud.spanner.Mutation;
 import com.google.cloud.spanner.Spanner;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.util.IdentifierGenerator;
+import com.google.coffeehouse.util.UuidWrapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
 * The StorageHandlerApi class holds all the wrapper functions that the rest of the code will
-* use to interact with the StorageHandler class. This class also instantiates a Spanner and
-* Database Client which is then referenced throughout the file.
+* use to interact with the database. The database is reached through a {@link StorageBackend},
+* which is the Cloud Spanner database unless the {@code BACKEND_PROPERTY} system property selects
+* the {@link InMemoryStorageBackend}.
+*
+* <p>Clubs, books and persons are read through a {@link StorageHandlerCache}, and every write made
+* through this class invalidates the cached entities it affects.
+*
+* <p>Reads of clubs, books and the clubs a user is not a member of default to
+* {@code DEFAULT_STALENESS}, which lets Spanner serve them from the nearest replica. Callers that
+* must observe their own writes pass {@link TimestampBound#strong()}, and reads inside the
+* membership transactions are always strong.
+*
+* <p>Memberships and ownerships are added with a transaction that inserts the membership without
+* reading it first, so that the insert fails if the membership already exists, unless the
+* {@code JOIN_MODE_PROPERTY} system property selects {@code READ_FIRST_JOIN_MODE}, whose
+* transaction reads the membership before inserting it. Both modes are read/write transactions
+* that keep the member count of the club up to date in the same commit, which reads the club and
+* one shard of its member count, as Spanner cannot increment a column without reading it.
+*
+* <p>Club creates and updates and membership joins and leaves write a {@link ChangeEvent} to the
+* {@link Outbox} in the same commit as the change. The APIs created with the default constructor
+* share an {@link OutboxRelay}, started when the {@code OutboxRelay.ENABLED_PROPERTY} system
+* property is true, that publishes those events on the bus returned by
+* {@link #getChangeEventBus()}.
+*
+* <p>Clubs reading the same book share one row of the Books table, found through the
+* {@link BookCatalog} when a club is created or its book is changed, so that the row is written
+* and cached once for all of them.
 */
 public class StorageHandlerApi {
+  /** The timestamp bound of reads that do not need to observe the latest writes. */
+  public static final TimestampBound DEFAULT_STALENESS =
+      TimestampBound.ofMaxStaleness(10, TimeUnit.SECONDS);
 
-  private static final Spanner spanner = StorageHandlerSetup.createSpannerService();
-  private static final DatabaseClient dbClient = StorageHandlerSetup.createDbClient(spanner);
+  /**
+  * The system property naming the storage backend used by the default constructor, either
+  * {@code SPANNER_BACKEND} or {@code IN_MEMORY_BACKEND}.
+  */
+  public static final String BACKEND_PROPERTY = "coffeehouse.storage.backend";
+  public static final String SPANNER_BACKEND = "spanner";
+  public static final String IN_MEMORY_BACKEND = "memory";
+
+  /**
+  * The system property naming how memberships are added, either {@code INSERT_JOIN_MODE}
+  * (the default) or {@code READ_FIRST_JOIN_MODE}.
+  */
+  public static final String JOIN_MODE_PROPERTY = "coffeehouse.storage.joinMode";
+  public static final String INSERT_JOIN_MODE = "insert";
+  public static final String READ_FIRST_JOIN_MODE = "readFirst";
+
+  // Generates the book IDs of books that clubs change to.
+  private static final IdentifierGenerator idGen = new UuidWrapper();
+
+  private final StorageBackend backend;
+  private final StorageHandlerCache cache;
+  private final boolean insertJoins;
+  private final ChangeEventBus changeEvents;
+
+  /**
+  * Creates an API that uses the backend named by the {@code BACKEND_PROPERTY} system property,
+  * which defaults to the Cloud Spanner database. Every API created this way shares the same
+  * backend and cache.
+  */
+  public StorageHandlerApi() {
+    this(DefaultStorage.BACKEND, DefaultStorage.CACHE, DefaultStorage.CHANGE_EVENTS);
+  }
+
+  /**
+  * Creates an API that uses the given backend, with a cache and change event bus of its own.
+  * Used for dependency injection and to run the application against an
+  * {@link InMemoryStorageBackend}. No relay publishes the outbox of the backend on the bus unless
+  * the caller starts an {@link OutboxRelay}.
+  *
+  * @param  backend   the storage backend that is read from and written to
+  */
+  public StorageHandlerApi(StorageBackend backend) {
+    this(backend, new StorageHandlerCache(), new ChangeEventBus());
+  }
+
+  private StorageHandlerApi(
+      StorageBackend backend, StorageHandlerCache cache, ChangeEventBus changeEvents) {
+    this.backend = backend;
+    this.cache = cache;
+    this.insertJoins = isInsertJoinMode();
+    this.changeEvents = changeEvents;
+  }
 
   /**
   * Returns a {@link Person} by fetching using the ID.
@@ -40,7 +134,7 @@ public class StorageHandlerApi {
   * @return           a Person object containing information from the database
   */
   public Person fetchPersonFromId(String userId) {
-    return StorageHandler.getPerson(dbClient, userId);
+    return cache.getPersons().get(userId, backend::getPerson);
   }
 
   /**
@@ -50,7 +144,93 @@ public class StorageHandlerApi {
   * @return           a Club object containing information from the database
   */
   public Club fetchClubFromId(String clubId) {
-    return StorageHandler.getClub(dbClient, clubId);
+    return fetchClubFromId(clubId, DEFAULT_STALENESS);
+  }
+
+  /**
+  * Returns a {@link Club} by fetching using the ID at the given timestamp bound.
+  * Max staleness reads are served from the cache if the cached club was loaded less than the
+  * bound's staleness ago, and are otherwise read from the database at the given bound, so that
+  * Spanner can serve them from the nearest replica. Every other bound bypasses the cache: strong
+  * reads must observe the latest committed writes, and exact staleness and timestamp reads must
+  * observe the database at a given time.
+  *
+  * @param  clubId    the club ID string used to query the Clubs table from the database.
+  * @param  bound     the timestamp bound (strong, exact staleness or max staleness) of the read
+  * @return           a Club object containing information from the database
+  */
+  public Club fetchClubFromId(String clubId, TimestampBound bound) {
+    if (!isMaxStaleness(bound)) {
+      return backend.getClub(clubId, bound);
+    }
+    return cache.getClubs().get(
+        clubId, bound.getStaleness(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS,
+        id -> backend.getClub(id, bound));
+  }
+
+  /**
+  * Returns a {@link Book} by fetching using the ID.
+  *
+  * @param  bookId    the book ID string used to query the Books table from the database.
+  * @return           a Book object containing information from the database
+  */
+  public Book fetchBookFromId(String bookId) {
+    return fetchBookFromId(bookId, DEFAULT_STALENESS);
+  }
+
+  /**
+  * Returns a {@link Book} by fetching using the ID at the given timestamp bound.
+  * As with {@link #fetchClubFromId(String, TimestampBound)}, only max staleness reads use the
+  * cache, and only the books loaded less than the bound's staleness ago.
+  *
+  * @param  bookId    the book ID string used to query the Books table from the database.
+  * @param  bound     the timestamp bound (strong, exact staleness or max staleness) of the read
+  * @return           a Book object containing information from the database
+  */
+  public Book fetchBookFromId(String bookId, TimestampBound bound) {
+    if (!isMaxStaleness(bound)) {
+      return backend.getBook(bookId, bound);
+    }
+    return cache.getBooks().get(
+        bookId, bound.getStaleness(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS,
+        id -> backend.getBook(id, bound));
+  }
+
+  /**
+  * Returns a map from user ID to {@link Person} by fetching all of the IDs with one batched read.
+  * IDs that do not exist in the database are absent from the returned map.
+  *
+  * @param  userIds   the user ID strings used to query the Persons table from the database
+  * @return           a map from user ID to the Person object containing information from the
+  *                   database
+  */
+  public Map<String, Person> fetchPersonsByIds(Collection<String> userIds) {
+    return cache.getPersons().getAll(userIds, backend::getPersons);
+  }
+
+  /**
+  * Returns a map from book ID to {@link Book} by fetching all of the IDs with one batched read.
+  * IDs that do not exist in the database are absent from the returned map.
+  *
+  * @param  bookIds   the book ID strings used to query the Books table from the database
+  * @return           a map from book ID to the Book object containing information from the
+  *                   database
+  */
+  public Map<String, Book> fetchBooksByIds(Collection<String> bookIds) {
+    return cache.getBooks().getAll(bookIds, backend::getBooks);
+  }
+
+  /**
+  * Returns a map from club ID to {@link Club} by fetching all of the IDs with one batched read
+  * of the Clubs table and one batched read of the Books table.
+  * IDs that do not exist in the database are absent from the returned map.
+  *
+  * @param  clubIds   the club ID strings used to query the Clubs table from the database
+  * @return           a map from club ID to the Club object containing information from the
+  *                   database
+  */
+  public Map<String, Club> fetchClubsByIds(Collection<String> clubIds) {
+    return cache.getClubs().getAll(clubIds, backend::getClubs);
   }
 
   /**
@@ -60,33 +240,43 @@ public class StorageHandlerApi {
   * @return           a list of Person objects that are members of a club
   */
   public List<Person> fetchMembersByClubId(String clubId) {
-    return StorageHandler.getListOfMembers(dbClient, clubId);
+    return backend.getListOfMembers(clubId);
   }
 
   /**
   * Adds a membership to the database.
-  * This method calls a transacation that adds a membership to the Memberships table.
+  * This method inserts a membership into the Memberships table with a transaction that either
+  * reads the membership first or not, depending on the {@code JOIN_MODE_PROPERTY} system
+  * property.
   *
   * @param  userId      the user ID string specifying the person who is being added as a member
   * @param  clubId      the club ID string specifying the club a person is being added to
   */
   public void addMembership(String userId, String clubId) {
-    StorageHandler.runAddAnyMembershipTypeTransaction(
-      dbClient, userId, clubId, MembershipConstants.MEMBER);
+    addAnyMembershipType(userId, clubId, MembershipConstants.MEMBER);
   }
 
   /**
   * Adds an ownership to the database.
-  * This method calls a transacation that adds an ownership to the Memberships table.
+  * This method inserts an ownership into the Memberships table with a transaction that either
+  * reads the membership first or not, depending on the {@code JOIN_MODE_PROPERTY} system
+  * property.
   *
   * @param  userId      the user ID string specifying the person who is being added as a member
   * @param  clubId      the club ID string specifying the club a person is being added to
   */
   public void addOwnership(String userId, String clubId) {
-    StorageHandler.runAddAnyMembershipTypeTransaction(
-      dbClient, userId, clubId, MembershipConstants.OWNER);
+    addAnyMembershipType(userId, clubId, MembershipConstants.OWNER);
   }
 
+  private void addAnyMembershipType(String userId, String clubId, int membershipLevel) {
+    if (insertJoins) {
+      backend.insertMembership(userId, clubId, membershipLevel);
+    } else {
+      backend.addAnyMembershipType(userId, clubId, membershipLevel);
+    }
+    cache.invalidateMembership(clubId);
+  }
 
   /**
   * Deletes a membership from the database.
@@ -96,7 +286,8 @@ public class StorageHandlerApi {
   * @param  clubId      the club ID string specifying the club a person is leaving
   */
   public void deleteMembership(String userId, String clubId) {
-    StorageHandler.runDeleteMembershipTransaction(dbClient, userId, clubId);
+    backend.deleteMembership(userId, clubId);
+    cache.invalidateMembership(clubId);
   }
 
   /**
@@ -107,15 +298,372 @@ public class StorageHandlerApi {
   * @return                   the list of {@link Club}s
   */
   public List<Club> listClubsFromUserId(String userId, MembershipConstants.MembershipStatus membershipStatus) {
-    return StorageHandler.getListOfClubs(dbClient, userId, membershipStatus);
+    return listClubsFromUserId(userId, membershipStatus, defaultListingBound(membershipStatus));
+  }
+
+  /**
+  * Returns a list of {@link Club}s depending on the user's membership status, read at the
+  * given timestamp bound.
+  *
+  * @param  userId            the user ID string specifying the person
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  bound             the timestamp bound (strong, exact staleness or max staleness)
+  *                           of the read
+  * @return                   the list of {@link Club}s
+  */
+  public List<Club> listClubsFromUserId(
+      String userId, MembershipConstants.MembershipStatus membershipStatus, TimestampBound bound) {
+    return backend.getListOfClubs(userId, membershipStatus, bound);
+  }
+
+  /**
+  * Returns one page of the {@link Club}s depending on the user's membership status, ordered by
+  * club ID. As with {@link #listClubsFromUserId(String, MembershipConstants.MembershipStatus)},
+  * only the clubs the user is not a member of are read at the default staleness.
+  *
+  * @param  userId            the user ID string specifying the person
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  pageSize          the maximum number of clubs in the page
+  * @param  pageToken         the token returned with the previous page, or null for the first page
+  * @return                   the page of {@link Club}s and the token of the next page
+  */
+  public ClubPage listClubPageFromUserId(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      int pageSize, String pageToken) {
+    return backend.getPageOfClubs(
+        userId, membershipStatus, pageSize, pageToken, defaultListingBound(membershipStatus));
+  }
+
+  /**
+  * Passes each {@link Club} that a user is either a member of or not a member of to the
+  * consumer as it is read from the database, without holding the whole list in memory.
+  * The clubs are read at the same timestamp bound as
+  * {@link #listClubsFromUserId(String, MembershipConstants.MembershipStatus)}.
+  *
+  * @param  userId            the user ID string specifying the person
+  * @param  membershipStatus  the enum specifying whether the user is a member or not
+  * @param  consumer          the consumer that each {@link Club} is passed to
+  */
+  public void streamClubsFromUserId(
+      String userId, MembershipConstants.MembershipStatus membershipStatus,
+      Consumer<Club> consumer) {
+    backend.streamListOfClubs(
+        userId, membershipStatus, defaultListingBound(membershipStatus), consumer);
+  }
+
+  /**
+  * Passes every {@link Club}, with its {@link Book} and optionally its members, to the consumer
+  * as it is read, for a bulk export of the club catalog. The clubs are read from the database
+  * without the cache, in parallel where the backend allows it, so they are not passed in any
+  * particular order; the consumer is called by one thread at a time.
+  *
+  * @param  includeMembers    whether the members of each club are read
+  * @param  consumer          the consumer that each {@link Club}, and its members ordered by
+  *                           user ID or null if they are not read, is passed to
+  */
+  public void exportClubs(boolean includeMembers, BiConsumer<Club, List<Person>> consumer) {
+    backend.exportClubs(includeMembers, consumer);
+  }
+
+  /**
+  * Creates a club, its current book and the ownership of the club's owner in one commit, so a
+  * club is never saved without its owner. The member count of the club starts at one, and a
+  * {@code CLUB_CREATED} {@link ChangeEvent} is written to the {@link Outbox}.
+  *
+  * <p>If the {@link BookCatalog} already has the club's book, the club's current book is replaced
+  * by the shared book and no book is written. Otherwise the club's book is written and added to
+  * the catalog in the same commit.
+  *
+  * @param  club    the new {@link Club}, whose club ID must not exist in the database
+  * @return         the timestamp of the commit
+  */
+  public Timestamp createClub(Club club) {
+    return writeClubWithCatalogBook(
+        club, club.getCurrentBook(), /* correctsSharedBook= */ false,
+        StorageHandlerApi::createClubOnlyMutations);
+  }
+
+  /**
+  * Saves the changes to an existing club. If the fields of its current book differ from the book
+  * in the database with the same book ID, the club is moved to the book in the
+  * {@link BookCatalog} with the new fields, which is added with a new book ID if it is not in the
+  * catalog yet. If the catalog already has a book with the same catalog key, such as the same
+  * ISBN, but other fields, the edit is taken as a correction of that book: its shared row is
+  * rewritten with the new fields, for every club reading it. A {@code CLUB_UPDATED}
+  * {@link ChangeEvent} is written in the same commit.
+  *
+  * @param  club    the changed {@link Club}, whose club ID must exist in the database
+  * @return         the timestamp of the commit
+  */
+  public Timestamp updateClub(Club club) {
+    Book book = club.getCurrentBook();
+    Book savedBook = fetchCatalogBook(book.getBookId());
+    if (sameBook(book, savedBook)) {
+      club.setBook(savedBook);
+      return writeClubMutations(updateClubOnlyMutations(club));
+    }
+    Book newBook = Book.newBuilder()
+                       .setTitle(book.getTitle())
+                       .setAuthor(book.getAuthor().orElse(null))
+                       .setIsbn(book.getIsbn().orElse(null))
+                       .setBookId(idGen.generateId())
+                       .setStorageHandler(this)
+                       .build();
+    return writeClubWithCatalogBook(
+        club, newBook, /* correctsSharedBook= */ true, StorageHandlerApi::updateClubOnlyMutations);
+  }
+
+  /**
+  * Returns the mutations that {@link #createClub(Club)} writes for a club whose book is not in
+  * the {@link BookCatalog}, so that they can be written in the same commit as other mutations.
+  * The book is written but not added to the catalog.
+  *
+  * @param  club    the new {@link Club}, whose club ID must not exist in the database
+  * @return         the mutations of the club, its current book, its owner's membership, its
+  *                 member count and its {@code CLUB_CREATED} event
+  */
+  public static List<Mutation> createClubMutations(Club club) {
+    List<Mutation> mutations = new ArrayList<>();
+    mutations.add(club.getCurrentBook().toMutation());
+    mutations.addAll(createClubOnlyMutations(club));
+    return mutations;
+  }
+
+  private static List<Mutation> createClubOnlyMutations(Club club) {
+    List<Mutation> mutations = new ArrayList<>();
+    mutations.add(club.toClubMutation());
+    mutations.add(StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
+        club.getOwnerId(), club.getClubId(), MembershipConstants.OWNER));
+    mutations.add(StorageHandlerCommonMutations.updateMemberCountMutation(club.getClubId(), 1));
+    mutations.add(Outbox.eventMutation(ChangeEvent.Type.CLUB_CREATED, club.getClubId(), null));
+    return mutations;
+  }
+
+  private static List<Mutation> updateClubOnlyMutations(Club club) {
+    return Arrays.asList(
+        club.toClubMutation(),
+        Outbox.eventMutation(ChangeEvent.Type.CLUB_UPDATED, club.getClubId(), null));
+  }
+
+  /**
+  * Sets the club's current book to the shared book in the catalog, or to the given book, which
+  * is then written and added to the catalog, and writes the club in the same commit. If another
+  * commit adds the same book to the catalog first, the insert of the catalog entry fails and the
+  * club is written again with the book that won. If {@code correctsSharedBook} is true and the
+  * shared book's fields differ from the given book's, the shared row is updated with them in the
+  * same commit.
+  */
+  private Timestamp writeClubWithCatalogBook(
+      Club club, Book book, boolean correctsSharedBook,
+      Function<Club, List<Mutation>> clubMutations) {
+    String catalogKey = BookCatalog.catalogKey(book);
+    String isbn = BookCatalog.normalizeIsbn(book.getIsbn().orElse(null));
+    if (isbn != null) {
+      book.setIsbn(isbn);
+    }
+    for (int attempt = 0; ; attempt++) {
+      String sharedBookId = cache.getCatalogBookIds().get(catalogKey, backend::getCatalogBookId);
+      List<Mutation> mutations = new ArrayList<>();
+      if (sharedBookId != null) {
+        Book sharedBook = fetchCatalogBook(sharedBookId);
+        if (correctsSharedBook && !sameBook(book, sharedBook)) {
+          sharedBook = Book.newBuilder()
+                           .setTitle(book.getTitle())
+                           .setAuthor(book.getAuthor().orElse(null))
+                           .setIsbn(book.getIsbn().orElse(null))
+                           .setBookId(sharedBookId)
+                           .setStorageHandler(this)
+                           .build();
+          mutations.add(correctBookMutation(sharedBook));
+        }
+        club.setBook(sharedBook);
+      } else {
+        book.setStorageHandler(this);
+        club.setBook(book);
+        mutations.add(book.toMutation());
+        mutations.add(BookCatalog.entryMutation(catalogKey, book.getBookId()));
+      }
+      mutations.addAll(clubMutations.apply(club));
+      try {
+        return writeClubMutations(mutations);
+      } catch (SpannerException e) {
+        if (sharedBookId != null || attempt > 0 || e.getErrorCode() != ErrorCode.ALREADY_EXISTS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private Timestamp writeClubMutations(List<Mutation> mutations) {
+    Timestamp commitTimestamp = backend.write(mutations);
+    cache.invalidate(mutations);
+    return commitTimestamp;
+  }
+
+  /**
+  * Returns a book that may have been written moments ago by another instance. A stale read could
+  * miss it, so the book is read strongly on a miss and then cached, as shared books are read by
+  * many clubs.
+  */
+  private Book fetchCatalogBook(String bookId) {
+    return cache.getBooks().get(bookId, id -> backend.getBook(id, TimestampBound.strong()));
+  }
+
+  /**
+  * Returns the update of every field of a shared book row. Unlike {@link Book#toMutation()}, a
+  * missing author or ISBN clears the stored one.
+  */
+  private static Mutation correctBookMutation(Book book) {
+    return Mutation.newUpdateBuilder("Books")
+                   .set("bookId").to(book.getBookId())
+                   .set("title").to(book.getTitle())
+                   .set("author").to(book.getAuthor().orElse(null))
+                   .set("isbn").to(book.getIsbn().orElse(null))
+                   .build();
+  }
+
+  private static boolean sameBook(Book book, Book otherBook) {
+    return book.getTitle().equals(otherBook.getTitle())
+        && book.getAuthor().equals(otherBook.getAuthor())
+        && book.getIsbn().equals(otherBook.getIsbn());
+  }
+
+  /**
+  * Sets the number of shards the member count of a club is spread over. Clubs that many people
+  * join at the same time need more shards, so that the joins do not all write the same row.
+  *
+  * @param  clubId    the club ID string of the club
+  * @param  shards    the number of shards, which must be positive
+  * @throws IllegalArgumentException if the number of shards is not positive
+  */
+  public void setMemberCountShards(String clubId, int shards) {
+    writeMutations(Collections.singletonList(
+        StorageHandlerCommonMutations.updateMemberCountShardsMutation(clubId, shards)));
   }
 
   /**
    * Writes a list of mutations to the database.
+   * The cached entities written by the mutations are invalidated once the write commits, and a
+   * {@code CLUB_UPDATED} {@link ChangeEvent} is written in the same commit for each club that
+   * the mutations insert or update.
    *
    * @param  mutations   the List of Mutations to be written to the database
    */
   public void writeMutations(List<Mutation> mutations) {
-    dbClient.write(mutations);
+    List<Mutation> withEvents = new ArrayList<>(mutations);
+    withEvents.addAll(Outbox.clubUpdatedEventMutations(mutations));
+    backend.write(withEvents);
+    cache.invalidate(mutations);
+  }
+
+  /**
+   * Returns a writer that commits many records in as few commits as Spanner allows, with the
+   * maximum number of mutations per commit given by the
+   * {@link BulkWriter#MAX_MUTATIONS_PROPERTY} system property. The cached entities written by
+   * each commit are invalidated.
+   *
+   * @param  failureListener   the listener told about each record that could not be written
+   * @return                   the bulk writer
+   */
+  public BulkWriter newBulkWriter(BulkWriter.FailureListener failureListener) {
+    return new BulkWriter(backend, cache, BulkWriter.maxMutationsPerCommit(), failureListener);
+  }
+
+  /**
+   * Returns a snapshot of the hit, miss, eviction and expiration counters of the entity caches,
+   * keyed by the name of the cached table.
+   *
+   * @return   the map from table name to the counters of its cache
+   */
+  public Map<String, EntityCache.CacheStats> getCacheStats() {
+    return cache.getStats();
+  }
+
+  /**
+   * Returns a snapshot of the attempt, abort, commit, failure and commit latency counters of the
+   * read/write transactions, keyed by the type of transaction.
+   *
+   * @return   the map from transaction type to the counters of its transactions
+   */
+  public Map<String, TransactionMetrics.TransactionStats> getTransactionStats() {
+    return backend.getTransactionStats();
+  }
+
+  /**
+   * Returns the bus on which the changes committed through this API's backend are published.
+   * Subscribers receive each change at least once, after it commits.
+   *
+   * @return   the change event bus
+   */
+  public ChangeEventBus getChangeEventBus() {
+    return changeEvents;
+  }
+
+  /**
+   * Creates the backend, if this is the first API of the instance, and prepares it to serve
+   * requests. Called by the warmup request so that the first user request does not wait for
+   * the Spanner session pool.
+   */
+  public void warmUp() {
+    backend.warmUp();
+  }
+
+  private static boolean isInsertJoinMode() {
+    String joinMode = System.getProperty(JOIN_MODE_PROPERTY, INSERT_JOIN_MODE);
+    switch (joinMode) {
+      case INSERT_JOIN_MODE:
+        return true;
+      case READ_FIRST_JOIN_MODE:
+        return false;
+      default:
+        throw new IllegalStateException("Unknown join mode: " + joinMode);
+    }
+  }
+
+  // A user expects the clubs they just joined or created to be listed, so only the clubs
+  // they are not a member of are read at the default staleness.
+  private static TimestampBound defaultListingBound(
+      MembershipConstants.MembershipStatus membershipStatus) {
+    return membershipStatus == MembershipConstants.MembershipStatus.MEMBER
+        ? TimestampBound.strong()
+        : DEFAULT_STALENESS;
+  }
+
+  private static boolean isMaxStaleness(TimestampBound bound) {
+    return bound.getMode() == TimestampBound.Mode.MAX_STALENESS;
+  }
+
+  /**
+  * Holds the backend, cache and change event bus shared by the APIs created with the default
+  * constructor, and the relay that publishes the outbox of the backend on the bus. They are
+  * created when the default constructor is first used, so that an API created with its own
+  * backend never connects to Cloud Spanner.
+  */
+  private static class DefaultStorage {
+    private static final StorageBackend BACKEND = createBackend();
+    private static final StorageHandlerCache CACHE = new StorageHandlerCache();
+    private static final ChangeEventBus CHANGE_EVENTS = new ChangeEventBus();
+    private static final OutboxRelay RELAY = new OutboxRelay(BACKEND, CHANGE_EVENTS);
+
+    static {
+      if (Boolean.getBoolean(OutboxRelay.ENABLED_PROPERTY)) {
+        RELAY.start();
+      }
+    }
+
+    private static StorageBackend createBackend() {
+      String name = System.getProperty(BACKEND_PROPERTY, SPANNER_BACKEND);
+      switch (name) {
+        case IN_MEMORY_BACKEND:
+          return new InMemoryStorageBackend();
+        case SPANNER_BACKEND:
+          Spanner spanner = StorageHandlerSetup.createSpannerService();
+          return new SpannerStorageBackend(
+              StorageHandlerSetup.createDbClient(spanner),
+              StorageHandlerSetup.createBatchClient(spanner));
+        default:
+          throw new IllegalStateException("Unknown storage backend: " + name);
+      }
+    }
   }
 }
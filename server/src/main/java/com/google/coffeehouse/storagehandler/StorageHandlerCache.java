@@ -0,0 +1,223 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.Value;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.Person;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+* The StorageHandlerCache class holds the read-through caches of {@link Club}s, {@link Book}s and
+* {@link Person}s that sit between the {@link StorageHandlerApi} and the {@link StorageHandler},
+* and invalidates the cached entities affected by writes to the database. It also caches the book
+* IDs of {@link BookCatalog} keys, which never change once written.
+*/
+public class StorageHandlerCache {
+  /** The system property holding the number of seconds an entity stays cached. */
+  public static final String TTL_SECONDS_PROPERTY = "coffeehouse.cache.ttlSeconds";
+  /** The system property holding the maximum number of entities held by each cache. */
+  public static final String MAX_ENTRIES_PROPERTY = "coffeehouse.cache.maxEntries";
+  public static final long DEFAULT_TTL_SECONDS = 30;
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  private final EntityCache<Club> clubs;
+  private final EntityCache<Book> books;
+  private final EntityCache<Person> persons;
+  private final EntityCache<String> catalogBookIds;
+
+  /**
+  * Creates the caches with the time to live and maximum number of entries given by the
+  * {@code TTL_SECONDS_PROPERTY} and {@code MAX_ENTRIES_PROPERTY} system properties.
+  */
+  public StorageHandlerCache() {
+    this(Long.getLong(TTL_SECONDS_PROPERTY, DEFAULT_TTL_SECONDS), TimeUnit.SECONDS,
+         Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+  }
+
+  /**
+  * Creates the caches with the given time to live and maximum number of entries.
+  *
+  * @param  ttl         the time an entity stays in the cache after it is loaded
+  * @param  unit        the unit of the time to live
+  * @param  maxEntries  the maximum number of entities held by each cache
+  */
+  public StorageHandlerCache(long ttl, TimeUnit unit, int maxEntries) {
+    this.clubs = new EntityCache<>(ttl, unit, maxEntries);
+    this.books = new EntityCache<>(ttl, unit, maxEntries);
+    this.persons = new EntityCache<>(ttl, unit, maxEntries);
+    this.catalogBookIds = new EntityCache<>(ttl, unit, maxEntries);
+  }
+
+  public EntityCache<Club> getClubs() {
+    return clubs;
+  }
+
+  public EntityCache<Book> getBooks() {
+    return books;
+  }
+
+  public EntityCache<Person> getPersons() {
+    return persons;
+  }
+
+  /** Returns the cache from {@link BookCatalog} key to book ID. */
+  public EntityCache<String> getCatalogBookIds() {
+    return catalogBookIds;
+  }
+
+  /**
+  * Invalidates every cached entity that is written by the mutations. A write to a book also
+  * invalidates the cached clubs reading that book, and a write to a membership invalidates
+  * the cached club the membership belongs to.
+  *
+  * @param  mutations   the mutations that are being written to the database
+  */
+  public void invalidate(List<Mutation> mutations) {
+    for (Mutation mutation : mutations) {
+      boolean deletesRange = mutation.getOperation() == Mutation.Op.DELETE
+          && (mutation.getKeySet().isAll()
+              || mutation.getKeySet().getRanges().iterator().hasNext());
+      if (deletesRange) {
+        invalidateTable(mutation.getTable());
+        continue;
+      }
+      for (Key key : keysOf(mutation)) {
+        switch (mutation.getTable()) {
+          case "Books":
+            invalidateBook(firstPart(key));
+            break;
+          case "Clubs":
+            clubs.invalidate(firstPart(key));
+            break;
+          case "Persons":
+            persons.invalidate(firstPart(key));
+            break;
+          case "Memberships":
+            // Memberships are keyed by (userId, clubId).
+            invalidateMembership(secondPart(key));
+            break;
+          default:
+            break;
+        }
+      }
+    }
+  }
+
+  /**
+  * Invalidates the cached entities affected by a membership of the club being added or deleted.
+  *
+  * @param  clubId    the club ID string of the club the membership belongs to
+  */
+  public void invalidateMembership(String clubId) {
+    if (clubId != null) {
+      clubs.invalidate(clubId);
+    }
+  }
+
+  /** Returns a snapshot of the counters of each cache, keyed by the name of the cached table. */
+  public Map<String, EntityCache.CacheStats> getStats() {
+    Map<String, EntityCache.CacheStats> stats = new LinkedHashMap<>();
+    stats.put("Clubs", clubs.getStats());
+    stats.put("Books", books.getStats());
+    stats.put("Persons", persons.getStats());
+    stats.put(BookCatalog.TABLE, catalogBookIds.getStats());
+    return stats;
+  }
+
+  private void invalidateTable(String table) {
+    switch (table) {
+      case "Books":
+        books.invalidateAll();
+        clubs.invalidateAll();
+        break;
+      case "Clubs":
+      case "Memberships":
+        clubs.invalidateAll();
+        break;
+      case "Persons":
+        persons.invalidateAll();
+        break;
+      case BookCatalog.TABLE:
+        catalogBookIds.invalidateAll();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void invalidateBook(String bookId) {
+    if (bookId == null) {
+      return;
+    }
+    books.invalidate(bookId);
+    clubs.invalidateIf(club -> bookId.equals(club.getCurrentBook().getBookId()));
+  }
+
+  private static Iterable<Key> keysOf(Mutation mutation) {
+    if (mutation.getOperation() == Mutation.Op.DELETE) {
+      return mutation.getKeySet().getKeys();
+    }
+    Map<String, Value> values = mutation.asMap();
+    Key.Builder key = Key.newBuilder();
+    switch (mutation.getTable()) {
+      case "Books":
+        key.append(stringOrNull(values.get("bookId")));
+        break;
+      case "Clubs":
+        key.append(stringOrNull(values.get("clubId")));
+        break;
+      case "Persons":
+        key.append(stringOrNull(values.get("userId")));
+        break;
+      case "Memberships":
+        key.append(stringOrNull(values.get("userId")))
+           .append(stringOrNull(values.get("clubId")));
+        break;
+      default:
+        break;
+    }
+    return Collections.singletonList(key.build());
+  }
+
+  private static String stringOrNull(Value value) {
+    return (value == null || value.isNull()) ? null : value.getString();
+  }
+
+  private static String firstPart(Key key) {
+    return partAt(key, /* index= */ 0);
+  }
+
+  private static String secondPart(Key key) {
+    return partAt(key, /* index= */ 1);
+  }
+
+  private static String partAt(Key key, int index) {
+    int i = 0;
+    for (Object part : key.getParts()) {
+      if (i++ == index) {
+        return part == null ? null : part.toString();
+      }
+    }
+    return null;
+  }
+}
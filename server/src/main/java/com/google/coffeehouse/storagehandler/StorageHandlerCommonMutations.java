@@ -59,4 +59,41 @@ public class StorageHandlerCommonMutations {
                             KeySet.newBuilder()
                                   .addKey(Key.of(userId, clubId)).build());
   }
+
+  /**
+  * Returns a single Mutation that sets the number of members of a club.
+  *
+  * @param  clubId        the club ID string of the club whose member count is set
+  * @param  memberCount   the number of members of the club, including the owner
+  * @return               the single mutation to update the member count
+  */
+  public static Mutation updateMemberCountMutation(String clubId, long memberCount) {
+    return Mutation.newUpdateBuilder("Clubs")
+                   .set("clubId")
+                   .to(clubId)
+                   .set("memberCount")
+                   .to(memberCount)
+                   .build();
+  }
+
+  /**
+  * Returns a single Mutation that sets the number of shards the member count of a club is
+  * spread over (see {@link MemberCountShards}).
+  *
+  * @param  clubId    the club ID string of the club
+  * @param  shards    the number of shards, which must be positive
+  * @return           the single mutation to update the number of shards
+  * @throws IllegalArgumentException if the number of shards is not positive
+  */
+  public static Mutation updateMemberCountShardsMutation(String clubId, int shards) {
+    if (shards <= 0) {
+      throw new IllegalArgumentException(MemberCountShards.INVALID_SHARDS);
+    }
+    return Mutation.newUpdateBuilder("Clubs")
+                   .set("clubId")
+                   .to(clubId)
+                   .set("memberCountShards")
+                   .to(shards)
+                   .build();
+  }
 }
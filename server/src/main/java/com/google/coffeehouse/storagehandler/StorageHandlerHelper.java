@@ -28,6 +28,8 @@ import java.util.List;
 * matching the primary keys of different Cloud Spanner tables.
 */
 public class StorageHandlerHelper {
+  /** The columns of the Memberships table read by the membership checks. */
+  static final List<String> MEMBERSHIP_CHECK_COLUMNS = Arrays.asList("userId", "membershipType");
 
   /**
   * Returns a Boolean that indicates whether or not a person is in a club (member or owner).
@@ -41,8 +43,22 @@ public class StorageHandlerHelper {
   * @return              the Boolean true or false representing if the membership exists or not
   */
   public static Boolean checkAnyMembership(ReadContext readContext, String userId, String clubId) {
+    return checkAnyMembership(new CachingReadContext(readContext), userId, clubId);
+  }
+
+  /**
+  * Returns a Boolean that indicates whether or not a person is in a club (member or owner),
+  * reading the membership through the row cache of the transaction.
+  *
+  * @param  rowCache     the row cache of the transaction
+  * @param  userId       the user ID string of the user we are checking is in a club
+  * @param  clubId       the club ID string of the club we are checking the user is in
+  * @return              the Boolean true or false representing if the membership exists or not
+  */
+  public static Boolean checkAnyMembership(
+      CachingReadContext rowCache, String userId, String clubId) {
     Struct row =
-          readContext
+          rowCache
             .readRow(
               "Memberships",
               Key.of(userId, clubId),
@@ -63,17 +79,58 @@ public class StorageHandlerHelper {
   * @return              the Boolean true or false representing if the membership exists or not
   */
   public static Boolean checkOwnership(ReadContext readContext, String userId, String clubId) {
+    return checkOwnership(new CachingReadContext(readContext), userId, clubId);
+  }
+
+  /**
+  * Returns a Boolean that indicates whether or not a person is the owner of a club, reading the
+  * membership through the row cache of the transaction.
+  *
+  * @param  rowCache     the row cache of the transaction
+  * @param  userId       the user ID string of the user we are checking is in a club
+  * @param  clubId       the club ID string of the club we are checking the user is in
+  * @return              the Boolean true or false representing if the membership exists or not
+  */
+  public static Boolean checkOwnership(CachingReadContext rowCache, String userId, String clubId) {
     Struct row =
-          readContext
+          rowCache
             .readRow(
               "Memberships",
               Key.of(userId, clubId),
               Arrays.asList("membershipType"));
-    return ((row != null) && (row.getLong(/** index= **/0) == MembershipConstants.OWNER));
+    return ((row != null) && (row.getLong("membershipType") == MembershipConstants.OWNER));
+  }
+
+  /**
+  * Returns a long that is the number of members in a club, including the owner, read from the
+  * memberCount column of the club and the shards of {@link MemberCountShards}. Clubs written
+  * before the column existed, and not backfilled yet, have no count, which is then computed from
+  * the Memberships table by {@link #getMemberCount}.
+  *
+  * @param  readContext  the context for an attempt to perform a transaction
+  * @param  clubId       the club ID string of the club whose member count is read
+  * @return              the long representing the number of members in the club
+  * @throws IllegalArgumentException if the club does not exist
+  */
+  public static long readMemberCount(ReadContext readContext, String clubId) {
+    Struct row =
+          readContext
+            .readRow(
+              "Clubs",
+              Key.of(clubId),
+              Arrays.asList("memberCount"));
+    if (row == null) {
+      throw new IllegalArgumentException(StorageHandler.CLUB_DOES_NOT_EXIST);
+    }
+    return row.isNull("memberCount")
+        ? getMemberCount(readContext, clubId)
+        : row.getLong("memberCount") + MemberCountShards.sumShards(readContext, clubId);
   }
 
   /**
   * Returns a long that is the number of members in a club, including the owner.
+  * This method counts every membership of the club, so membership transactions read the
+  * maintained count with {@link #readMemberCount} instead.
   *
   * @param  readContext  the context for an attempt to perform a transaction
   * @param  userId       the club ID string used to get number of members
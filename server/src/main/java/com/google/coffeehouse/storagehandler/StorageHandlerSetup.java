@@ -14,16 +14,39 @@
 
 package com.google.coffeehouse.storagehandler;
 
+import com.google.cloud.spanner.BatchClient;
 import com.google.cloud.spanner.DatabaseClient;
 import com.google.cloud.spanner.DatabaseId;
+import com.google.cloud.spanner.SessionPoolOptions;
 import com.google.cloud.spanner.Spanner;
 import com.google.cloud.spanner.SpannerOptions;
 
 /**
 * The StorageHandlerSetup class creates and sets up the Spanner service and database
 * client needed in order to run transactions in the database.
+*
+* <p>The session pool of the database client is sized by the {@code MIN_SESSIONS_PROPERTY},
+* {@code MAX_SESSIONS_PROPERTY}, {@code WRITE_SESSIONS_FRACTION_PROPERTY} and
+* {@code KEEP_ALIVE_MINUTES_PROPERTY} system properties. The minimum number of sessions is
+* created in the background as soon as the database client is created.
 */
 public class StorageHandlerSetup {
+  /** The system property holding the number of sessions the pool creates up front. */
+  public static final String MIN_SESSIONS_PROPERTY = "coffeehouse.spanner.minSessions";
+  public static final int DEFAULT_MIN_SESSIONS = 10;
+  /** The system property holding the most sessions the pool may hold. */
+  public static final String MAX_SESSIONS_PROPERTY = "coffeehouse.spanner.maxSessions";
+  public static final int DEFAULT_MAX_SESSIONS = 50;
+  /** The system property holding the fraction of sessions prepared for read/write transactions. */
+  public static final String WRITE_SESSIONS_FRACTION_PROPERTY =
+      "coffeehouse.spanner.writeSessionsFraction";
+  public static final float DEFAULT_WRITE_SESSIONS_FRACTION = 0.2f;
+  /**
+  * The system property holding how often, in minutes, idle sessions are pinged so that Spanner
+  * does not delete them after an hour of inactivity.
+  */
+  public static final String KEEP_ALIVE_MINUTES_PROPERTY = "coffeehouse.spanner.keepAliveMinutes";
+  public static final int DEFAULT_KEEP_ALIVE_MINUTES = 30;
 
   private static final String INSTANCE_ID = "coffeehouse-instance";
   private static final String DATABASE_ID = "coffeehouse-db";
@@ -37,11 +60,53 @@ public class StorageHandlerSetup {
   */
   public static Spanner createSpannerService() {
     // Instantiates a client
-    SpannerOptions options = SpannerOptions.newBuilder().build();
+    SpannerOptions options = SpannerOptions.newBuilder()
+        .setSessionPoolOption(createSessionPoolOptions())
+        .build();
     Spanner spanner = options.getService();
     return spanner;
   }
 
+  /**
+  * Returns the session pool options read from the system properties, falling back to the
+  * defaults of this class for the properties that are not set.
+  *
+  * @return   the session pool options of the spanner service
+  * @throws IllegalStateException if the minimum number of sessions is larger than the maximum
+  */
+  static SessionPoolOptions createSessionPoolOptions() {
+    int minSessions = Integer.getInteger(MIN_SESSIONS_PROPERTY, DEFAULT_MIN_SESSIONS);
+    int maxSessions = Integer.getInteger(MAX_SESSIONS_PROPERTY, DEFAULT_MAX_SESSIONS);
+    if (minSessions > maxSessions) {
+      throw new IllegalStateException(String.format(
+          "%s (%d) must not be larger than %s (%d)",
+          MIN_SESSIONS_PROPERTY, minSessions, MAX_SESSIONS_PROPERTY, maxSessions));
+    }
+    String writeSessionsFraction = System.getProperty(WRITE_SESSIONS_FRACTION_PROPERTY);
+    return SessionPoolOptions.newBuilder()
+        .setMinSessions(minSessions)
+        .setMaxSessions(maxSessions)
+        .setWriteSessionsFraction(writeSessionsFraction == null
+            ? DEFAULT_WRITE_SESSIONS_FRACTION
+            : Float.parseFloat(writeSessionsFraction))
+        .setKeepAliveIntervalMinutes(
+            Integer.getInteger(KEEP_ALIVE_MINUTES_PROPERTY, DEFAULT_KEEP_ALIVE_MINUTES))
+        .build();
+  }
+
+  /**
+  * Returns a batch client of the same database as {@link #createDbClient}, used to read whole
+  * tables in partitions.
+  *
+  * @param spanner    the spanner service
+  * @return           the batch client of the database
+  */
+  public static BatchClient createBatchClient(Spanner spanner) {
+    SpannerOptions options = spanner.getOptions();
+    return spanner.getBatchClient(
+        DatabaseId.of(options.getProjectId(), INSTANCE_ID, DATABASE_ID));
+  }
+
   /**
   * Returns a database client that is used to query information.
   * This method creates a database client, which is then returned in order to
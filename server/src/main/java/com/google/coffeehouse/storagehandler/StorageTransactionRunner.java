@@ -0,0 +1,214 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static com.google.cloud.spanner.TransactionRunner.TransactionCallable;
+
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.SpannerExceptionFactory;
+import com.google.cloud.spanner.TransactionContext;
+import com.google.cloud.spanner.TransactionManager;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+* The StorageTransactionRunner class runs the read/write transactions of the
+* {@link StorageHandler} with a retry policy of its own instead of the unbounded retries of
+* {@link DatabaseClient#readWriteTransaction()}.
+*
+* <p>An attempt that Spanner aborts is retried after a jittered exponential backoff, never shorter
+* than the retry delay Spanner asks for, until the transaction commits, the maximum number of
+* attempts is reached or the deadline passes. The last two fail with a {@link SpannerException}
+* whose error code is {@code DEADLINE_EXCEEDED}. Exceptions thrown by the transaction itself are
+* not retried. Every attempt, abort, commit and failure is counted in the
+* {@link TransactionMetrics} under the type of the transaction.
+*
+* <p>The policy is read from the {@code MAX_ATTEMPTS_PROPERTY}, {@code DEADLINE_MILLIS_PROPERTY},
+* {@code INITIAL_BACKOFF_MILLIS_PROPERTY} and {@code MAX_BACKOFF_MILLIS_PROPERTY} system
+* properties unless it is passed to the constructor. {@link #forClient} returns the one runner
+* with that policy shared by everything that uses the same database client, so that all of
+* their transactions are counted in the same metrics.
+*/
+public class StorageTransactionRunner {
+  /** The system property holding the most attempts made of a transaction. */
+  public static final String MAX_ATTEMPTS_PROPERTY = "coffeehouse.spanner.txn.maxAttempts";
+  public static final int DEFAULT_MAX_ATTEMPTS = 10;
+  /** The system property holding the time, in milliseconds, after which no attempt is started. */
+  public static final String DEADLINE_MILLIS_PROPERTY = "coffeehouse.spanner.txn.deadlineMillis";
+  public static final long DEFAULT_DEADLINE_MILLIS = 10000;
+  /** The system property holding the backoff, in milliseconds, before the second attempt. */
+  public static final String INITIAL_BACKOFF_MILLIS_PROPERTY =
+      "coffeehouse.spanner.txn.initialBackoffMillis";
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 20;
+  /** The system property holding the longest backoff, in milliseconds, between two attempts. */
+  public static final String MAX_BACKOFF_MILLIS_PROPERTY =
+      "coffeehouse.spanner.txn.maxBackoffMillis";
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+
+  private static final Map<DatabaseClient, StorageTransactionRunner> SHARED_RUNNERS =
+      new ConcurrentHashMap<>();
+
+  private final DatabaseClient dbClient;
+  private final int maxAttempts;
+  private final long deadlineMillis;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final TransactionMetrics metrics;
+
+  /**
+  * Creates a runner with the policy read from the system properties and metrics of its own.
+  *
+  * @param  dbClient  the database client the transactions are run with
+  */
+  public StorageTransactionRunner(DatabaseClient dbClient) {
+    this(
+        dbClient,
+        Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+        Long.getLong(DEADLINE_MILLIS_PROPERTY, DEFAULT_DEADLINE_MILLIS),
+        Long.getLong(INITIAL_BACKOFF_MILLIS_PROPERTY, DEFAULT_INITIAL_BACKOFF_MILLIS),
+        Long.getLong(MAX_BACKOFF_MILLIS_PROPERTY, DEFAULT_MAX_BACKOFF_MILLIS),
+        new TransactionMetrics());
+  }
+
+  /**
+  * Returns the runner shared by the users of the database client, created on first use with the
+  * policy read from the system properties.
+  *
+  * @param  dbClient  the database client the transactions are run with
+  * @return           the runner of the database client
+  */
+  public static StorageTransactionRunner forClient(DatabaseClient dbClient) {
+    return SHARED_RUNNERS.computeIfAbsent(dbClient, StorageTransactionRunner::new);
+  }
+
+  /**
+  * Creates a runner with the given policy.
+  *
+  * @param  dbClient              the database client the transactions are run with
+  * @param  maxAttempts           the most attempts made of a transaction, at least one
+  * @param  deadlineMillis        the time after which no attempt is started
+  * @param  initialBackoffMillis  the longest backoff before the second attempt, which doubles
+  *                               with each later attempt
+  * @param  maxBackoffMillis      the longest backoff between two attempts
+  * @param  metrics               the metrics the transactions are counted in
+  */
+  public StorageTransactionRunner(
+      DatabaseClient dbClient, int maxAttempts, long deadlineMillis,
+      long initialBackoffMillis, long maxBackoffMillis, TransactionMetrics metrics) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("A transaction must be attempted at least once");
+    }
+    this.dbClient = dbClient;
+    this.maxAttempts = maxAttempts;
+    this.deadlineMillis = deadlineMillis;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.metrics = metrics;
+  }
+
+  /** Returns the metrics the transactions of this runner are counted in. */
+  public TransactionMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+  * Runs the transaction until it commits, retrying the attempts that Spanner aborts.
+  *
+  * @param  transactionType   the name the transaction is counted under in the metrics
+  * @param  callable          the body of the transaction, which is run once per attempt
+  * @return                   the value returned by the attempt that committed
+  * @throws SpannerException with the error code {@code DEADLINE_EXCEEDED} if the transaction
+  *     was aborted on every attempt, or another error code if the commit failed
+  */
+  public <T> T run(String transactionType, TransactionCallable<T> callable) {
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    try (TransactionManager manager = dbClient.transactionManager()) {
+      TransactionContext transaction = manager.begin();
+      for (int attempt = 1; ; attempt++) {
+        metrics.recordAttempt(transactionType);
+        try {
+          T result = callable.run(transaction);
+          long commitStartNanos = System.nanoTime();
+          manager.commit();
+          metrics.recordCommit(transactionType, System.nanoTime() - commitStartNanos);
+          return result;
+        } catch (SpannerException e) {
+          if (e.getErrorCode() != ErrorCode.ABORTED) {
+            rollbackQuietly(manager);
+            metrics.recordFailure(transactionType);
+            throw e;
+          }
+          metrics.recordAbort(transactionType);
+          long backoffMillis = backoffMillis(attempt, e.getRetryDelayInMillis());
+          long backoffEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+          if (attempt >= maxAttempts || backoffEndNanos - deadlineNanos > 0) {
+            metrics.recordFailure(transactionType);
+            throw SpannerExceptionFactory.newSpannerException(
+                ErrorCode.DEADLINE_EXCEEDED,
+                String.format("%s transaction was aborted on all %d attempts",
+                              transactionType, attempt),
+                e);
+          }
+          sleep(backoffMillis);
+          transaction = manager.resetForRetry();
+        } catch (RuntimeException e) {
+          rollbackQuietly(manager);
+          metrics.recordFailure(transactionType);
+          throw e;
+        } catch (Exception e) {
+          rollbackQuietly(manager);
+          metrics.recordFailure(transactionType);
+          throw SpannerExceptionFactory.newSpannerException(ErrorCode.UNKNOWN, e.getMessage(), e);
+        }
+      }
+    }
+  }
+
+  /**
+  * Returns the backoff before the attempt after the given one: a random time up to the initial
+  * backoff doubled once per earlier retry and capped at the maximum backoff, but never shorter
+  * than the retry delay Spanner asked for.
+  */
+  long backoffMillis(int attempt, long retryDelayMillis) {
+    long ceiling = initialBackoffMillis << Math.min(attempt - 1, 20);
+    ceiling = Math.min(Math.max(ceiling, 1), maxBackoffMillis);
+    long jittered = ThreadLocalRandom.current().nextLong(ceiling + 1);
+    return Math.max(jittered, retryDelayMillis);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw SpannerExceptionFactory.propagateInterrupt(e);
+    }
+  }
+
+  private static void rollbackQuietly(TransactionManager manager) {
+    if (manager.getState() != TransactionManager.TransactionState.STARTED) {
+      return;
+    }
+    try {
+      manager.rollback();
+    } catch (SpannerException e) {
+      // The transaction is abandoned either way, and Spanner releases its locks when it expires.
+    }
+  }
+}
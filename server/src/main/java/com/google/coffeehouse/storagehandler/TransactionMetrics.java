@@ -0,0 +1,149 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* The TransactionMetrics class counts, for each type of read/write transaction, the attempts,
+* the aborts, the commits, the failures and the commit latency of the transactions run by a
+* {@link StorageTransactionRunner}. Many aborts per commit point at lock contention, while a
+* high commit latency with few aborts points at Spanner itself.
+*
+* <p>The counters are updated without locking and may be read while transactions run.
+*/
+public class TransactionMetrics {
+  private final Map<String, Counters> countersByType = new ConcurrentHashMap<>();
+
+  /** Records the start of an attempt of a transaction of the type. */
+  public void recordAttempt(String transactionType) {
+    counters(transactionType).attempts.incrementAndGet();
+  }
+
+  /** Records that an attempt of a transaction of the type was aborted by Spanner. */
+  public void recordAbort(String transactionType) {
+    counters(transactionType).aborts.incrementAndGet();
+  }
+
+  /** Records a successful commit of a transaction of the type and how long the commit took. */
+  public void recordCommit(String transactionType, long commitNanos) {
+    Counters counters = counters(transactionType);
+    counters.commits.incrementAndGet();
+    counters.commitNanos.addAndGet(commitNanos);
+    counters.maxCommitNanos.accumulateAndGet(commitNanos, Math::max);
+  }
+
+  /**
+  * Records that a transaction of the type failed, either because it threw an exception or
+  * because it ran out of attempts or time.
+  */
+  public void recordFailure(String transactionType) {
+    counters(transactionType).failures.incrementAndGet();
+  }
+
+  /** Returns a snapshot of the counters of each transaction type, sorted by type. */
+  public Map<String, TransactionStats> getStats() {
+    Map<String, TransactionStats> stats = new TreeMap<>();
+    for (Map.Entry<String, Counters> entry : countersByType.entrySet()) {
+      stats.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return stats;
+  }
+
+  private Counters counters(String transactionType) {
+    return countersByType.computeIfAbsent(transactionType, type -> new Counters());
+  }
+
+  private static class Counters {
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong aborts = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    private TransactionStats snapshot() {
+      long commitCount = commits.get();
+      return new TransactionStats(
+          attempts.get(),
+          aborts.get(),
+          commitCount,
+          failures.get(),
+          commitCount == 0
+              ? 0
+              : TimeUnit.NANOSECONDS.toMicros(commitNanos.get() / commitCount),
+          TimeUnit.NANOSECONDS.toMicros(maxCommitNanos.get()));
+    }
+  }
+
+  /** TransactionStats is an immutable snapshot of the counters of one transaction type. */
+  public static class TransactionStats {
+    private final long attempts;
+    private final long aborts;
+    private final long commits;
+    private final long failures;
+    private final long meanCommitMicros;
+    private final long maxCommitMicros;
+
+    private TransactionStats(
+        long attempts, long aborts, long commits, long failures,
+        long meanCommitMicros, long maxCommitMicros) {
+      this.attempts = attempts;
+      this.aborts = aborts;
+      this.commits = commits;
+      this.failures = failures;
+      this.meanCommitMicros = meanCommitMicros;
+      this.maxCommitMicros = maxCommitMicros;
+    }
+
+    public long getAttempts() {
+      return attempts;
+    }
+
+    /** Returns the number of attempts that Spanner aborted, each of which was retried or failed. */
+    public long getAborts() {
+      return aborts;
+    }
+
+    public long getCommits() {
+      return commits;
+    }
+
+    public long getFailures() {
+      return failures;
+    }
+
+    /** Returns the mean time, in microseconds, of the commits that succeeded. */
+    public long getMeanCommitMicros() {
+      return meanCommitMicros;
+    }
+
+    public long getMaxCommitMicros() {
+      return maxCommitMicros;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "attempts: %d, aborts: %d, commits: %d, failures: %d, meanCommitMicros: %d, "
+            + "maxCommitMicros: %d",
+          attempts, aborts, commits, failures, meanCommitMicros, maxCommitMicros);
+    }
+  }
+}
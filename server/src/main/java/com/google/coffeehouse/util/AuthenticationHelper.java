@@ -16,39 +16,112 @@ package com.google.coffeehouse.util;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.cloud.secretmanager.v1.AccessSecretVersionResponse;
-import com.google.cloud.secretmanager.v1.SecretManagerServiceClient;
-import com.google.cloud.secretmanager.v1.SecretVersionName;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
 
 public class AuthenticationHelper {
   /** Client ID for Google Oauth, safe to expose. */
   public static final String CLIENT_ID =
     "893627513276-o7p1m433c9l828svolutrbaibqqvmt8q.apps.googleusercontent.com";
-  /** Client secret for Google Oauth, hidden in Secret Manager API. */
-  public static final String CLIENT_SECRET = getSecret();
+  /** The Secret Manager secret holding the client secret for Google Oauth. */
+  public static final String CLIENT_SECRET_ID = "GoogleOauthClientSecret";
+  /** The system property holding the comma separated user IDs of the administrators. */
+  public static final String ADMIN_USER_IDS_PROPERTY = "coffeehouse.admin.userIds";
+  /** The prefix of an Authorization header value that is followed by an ID token. */
+  public static final String BEARER_PREFIX = "Bearer ";
   /** The error message when an an ID token fails verification. */
   public static final String INVALID_ID_TOKEN_ERROR =
       "ID token failed verification or didn't exist";
+  /** The error message when a session token is given but the keyring can not be loaded. */
+  public static final String SESSION_KEYRING_ERROR =
+      "Session tokens can not be checked right now, sign in again";
 
-  private static String getSecret() {
-    try (SecretManagerServiceClient client = SecretManagerServiceClient.create()) {
-      SecretVersionName secretVersionName = SecretVersionName.of(
-            "coffeehouse-step2020", "GoogleOauthClientSecret", "1");
-      AccessSecretVersionResponse response = client.accessSecretVersion(secretVersionName);
-      return response.getPayload().getData().toStringUtf8();
-    } catch (Exception e) {
-      throw new RuntimeException("Unable to get Oauth client secret");
+  /** The Secret Manager secret holding the keyring of the {@link SessionTokens}. */
+  public static final String SESSION_KEYRING_SECRET = "SessionSigningKeys";
+  /**
+   * The system property holding how many milliseconds a request waits for the first load of the
+   * session keyring before it goes on without session tokens.
+   */
+  public static final String SESSION_KEYRING_WAIT_MILLIS_PROPERTY =
+      "coffeehouse.auth.sessionKeyringWaitMillis";
+  public static final long DEFAULT_SESSION_KEYRING_WAIT_MILLIS = 500;
+
+  private static final SecretCache secrets = new SecretCache();
+  // Guarded by the AuthenticationHelper class.
+  private static String sessionKeyring;
+  private static SessionTokens sessionTokens;
+
+  /**
+   * Starts loading the secrets in the background, so that the first request that needs them
+   * does not wait for Secret Manager. Called when the application starts and when an instance
+   * is warmed up.
+   */
+  public static void prefetchSecrets() {
+    secrets.prefetch(CLIENT_SECRET_ID);
+    secrets.prefetch(SESSION_KEYRING_SECRET);
+  }
+
+  /**
+   * Returns the client secret for Google Oauth, which is hidden in Secret Manager API. Only the
+   * first call waits for the secret to be loaded, later calls get the cached secret, which is
+   * reloaded in the background once it is older than
+   * {@code SecretCache.REFRESH_SECONDS_PROPERTY} seconds.
+   * @return the client secret
+   * @throws IllegalStateException if the secret has never been loaded and could not be loaded
+   */
+  public static String getClientSecret() {
+    return secrets.get(CLIENT_SECRET_ID);
+  }
+
+  /**
+   * Returns the ID token verifier shared by the servlets of this instance, so that the Google
+   * public keys it caches are downloaded once per instance instead of once per servlet, and each
+   * ID token is verified once per instance instead of once per request. When the
+   * {@code RefreshingIdTokenVerifier.ENABLED_PROPERTY} system property is true, the keys are
+   * downloaded in the background as soon as the verifier is created and before they expire.
+   * @return the shared ID token verifier
+   */
+  public static GoogleIdTokenVerifier getDefaultVerifier() {
+    return DefaultVerifier.VERIFIER;
+  }
+
+  /**
+   * Returns the session tokens shared by the servlets of this instance, whose keyring is read
+   * from the {@code SESSION_KEYRING_SECRET} secret. The session tokens are created again when the
+   * keyring is rotated. Until the keyring is first loaded, the request thread waits for it for
+   * at most {@code SESSION_KEYRING_WAIT_MILLIS_PROPERTY} milliseconds, after which the caller
+   * falls back on ID tokens: no session token is minted, and a session token is refused so that
+   * the user signs in again.
+   * @return the shared session tokens
+   * @throws IllegalStateException if the keyring has never been loaded and could not be loaded
+   *     in time
+   */
+  public static SessionTokens getDefaultSessionTokens() {
+    String keyring = secrets.get(
+        SESSION_KEYRING_SECRET,
+        Long.getLong(SESSION_KEYRING_WAIT_MILLIS_PROPERTY, DEFAULT_SESSION_KEYRING_WAIT_MILLIS),
+        TimeUnit.MILLISECONDS);
+    synchronized (AuthenticationHelper.class) {
+      if (!keyring.equals(sessionKeyring)) {
+        sessionTokens = new SessionTokens(keyring);
+        sessionKeyring = keyring;
+      }
+      return sessionTokens;
     }
   }
 
   /** 
-   * Returns a user ID given an OpenID ID token.
-   * @param idTokenString the OpenID ID token that will be verified and have user ID extracted
+   * Returns a user ID given an OpenID ID token, or a session token minted by
+   * {@link #getDefaultSessionTokens()}.
+   * @param idTokenString the OpenID ID token or session token that will be verified and have
+   *     user ID extracted
    * @param verifier the class that verifies the validity of the ID token
    * @return the user ID that was extracted from the ID token
-   * @throws GeneralSecurityException if the ID token is invalid or null
+   * @throws GeneralSecurityException if the ID token is invalid or null, or if it is a session
+   *     token and the keyring can not be loaded
    * @throws IOException if an input or output error is detected when the ID token is verified
    */
   public static String getUserIdFromIdToken(String idTokenString, GoogleIdTokenVerifier verifier)
@@ -56,6 +129,17 @@ public class AuthenticationHelper {
     if (idTokenString == null) {
       throw new GeneralSecurityException(INVALID_ID_TOKEN_ERROR);
     }
+    if (SessionTokens.isSessionToken(idTokenString)) {
+      SessionTokens tokens;
+      try {
+        tokens = getDefaultSessionTokens();
+      } catch (IllegalStateException e) {
+        // The token can not be checked, which the servlets answer as they answer a bad token.
+        throw new GeneralSecurityException(SESSION_KEYRING_ERROR, e);
+      }
+      // An HMAC check, instead of parsing a JWT and checking its RSA signature.
+      return tokens.verify(idTokenString);
+    }
     GoogleIdToken idToken = verifier.verify(idTokenString);
     if (idToken == null) {
       throw new GeneralSecurityException(INVALID_ID_TOKEN_ERROR);
@@ -63,6 +147,48 @@ public class AuthenticationHelper {
     return (String) idToken.getPayload().getSubject();
   }
 
+  /**
+   * Returns the ID token of an Authorization header of the form {@code "Bearer <ID token>"}.
+   * @param authorization the value of the Authorization header, which may be null
+   * @return the ID token, or null if the header is missing or does not hold an ID token
+   */
+  public static String getIdTokenFromAuthorizationHeader(String authorization) {
+    return authorization != null && authorization.startsWith(BEARER_PREFIX)
+        ? authorization.substring(BEARER_PREFIX.length()).trim()
+        : null;
+  }
+
+  /**
+   * Returns whether a user is an administrator, that is whether the user ID is one of those of
+   * the {@code ADMIN_USER_IDS_PROPERTY} system property. No user is an administrator if the
+   * property is not set.
+   * @param userId the user ID extracted from a verified ID token
+   * @return true if the user is an administrator
+   */
+  public static boolean isAdmin(String userId) {
+    String adminUserIds = System.getProperty(ADMIN_USER_IDS_PROPERTY, "");
+    for (String adminUserId : adminUserIds.split(",")) {
+      if (!adminUserId.trim().isEmpty() && adminUserId.trim().equals(userId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Holds the shared verifier, which is only created when a servlet first asks for it.
+  private static class DefaultVerifier {
+    private static final GoogleIdTokenVerifier VERIFIER = createVerifier();
+
+    private static GoogleIdTokenVerifier createVerifier() {
+      RefreshingIdTokenVerifier verifier = new RefreshingIdTokenVerifier(
+          new NetHttpTransport(), GsonFactory.getDefaultInstance());
+      if (Boolean.getBoolean(RefreshingIdTokenVerifier.ENABLED_PROPERTY)) {
+        verifier.start();
+      }
+      return verifier;
+    }
+  }
+
   // Private constructor to enforce that it should not be instantiated.
   private AuthenticationHelper() {}
 }
@@ -0,0 +1,178 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.util;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An ID token verifier that remembers the tokens it has verified, so that the JWT parse and RSA
+ * signature check of a token are done once instead of on every request of the session.
+ *
+ * <p>A valid token is remembered until its expiration time, and a token that fails verification
+ * is remembered for {@code INVALID_TOKEN_TTL_SECONDS_PROPERTY} seconds. Tokens are keyed by their
+ * SHA-256 hash. Valid and failed tokens are kept apart, so that a flood of garbage tokens can not
+ * push out the tokens of signed-in users: the least recently used valid token is dropped once
+ * {@code MAX_ENTRIES_PROPERTY} valid tokens are remembered, and the least recently used failed
+ * token once {@code MAX_INVALID_ENTRIES_PROPERTY} failed tokens are. A failure to download the
+ * Google public keys is not remembered.
+ */
+public class CachingIdTokenVerifier extends GoogleIdTokenVerifier {
+  /** The system property holding the maximum number of tokens remembered. */
+  public static final String MAX_ENTRIES_PROPERTY = "coffeehouse.auth.tokenCacheMaxEntries";
+  /** The system property holding the maximum number of failed tokens remembered. */
+  public static final String MAX_INVALID_ENTRIES_PROPERTY =
+      "coffeehouse.auth.invalidTokenCacheMaxEntries";
+  /** The system property holding the number of seconds a token that failed is remembered. */
+  public static final String INVALID_TOKEN_TTL_SECONDS_PROPERTY =
+      "coffeehouse.auth.invalidTokenTtlSeconds";
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+  public static final int DEFAULT_MAX_INVALID_ENTRIES = 1000;
+  public static final long DEFAULT_INVALID_TOKEN_TTL_SECONDS = 60;
+
+  private final int maxEntries;
+  private final int maxInvalidEntries;
+  private final long invalidTokenTtlMillis;
+  // Guarded by this. Ordered from least to most recently used.
+  private final Map<String, VerifiedToken> tokens;
+  // Guarded by this. The tokens that failed, ordered from least to most recently used.
+  private final Map<String, VerifiedToken> invalidTokens;
+
+  /**
+   * Creates a verifier with the maximum numbers of valid and failed tokens and the time to live of
+   * failed tokens given by the {@code MAX_ENTRIES_PROPERTY}, {@code MAX_INVALID_ENTRIES_PROPERTY}
+   * and {@code INVALID_TOKEN_TTL_SECONDS_PROPERTY} system properties.
+   * @param builder the builder of the verifier, whose clock decides when tokens expire
+   */
+  public CachingIdTokenVerifier(GoogleIdTokenVerifier.Builder builder) {
+    this(builder, Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES),
+         Integer.getInteger(MAX_INVALID_ENTRIES_PROPERTY, DEFAULT_MAX_INVALID_ENTRIES),
+         Long.getLong(INVALID_TOKEN_TTL_SECONDS_PROPERTY, DEFAULT_INVALID_TOKEN_TTL_SECONDS));
+  }
+
+  /**
+   * Creates a verifier with the given maximum numbers of tokens and time to live of failed tokens.
+   * @param builder the builder of the verifier, whose clock decides when tokens expire
+   * @param maxEntries the maximum number of valid tokens remembered
+   * @param maxInvalidEntries the maximum number of failed tokens remembered
+   * @param invalidTokenTtlSeconds the number of seconds a token that failed is remembered
+   */
+  public CachingIdTokenVerifier(
+      GoogleIdTokenVerifier.Builder builder, int maxEntries, int maxInvalidEntries,
+      long invalidTokenTtlSeconds) {
+    super(builder);
+    this.maxEntries = maxEntries;
+    this.maxInvalidEntries = maxInvalidEntries;
+    this.invalidTokenTtlMillis = invalidTokenTtlSeconds * 1000;
+    this.tokens = new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+    this.invalidTokens = new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+  }
+
+  /**
+   * Returns the verified ID token, verifying it only if it is not remembered.
+   * @param idTokenString the ID token string
+   * @return the verified ID token, or null if the token failed verification
+   * @throws GeneralSecurityException if the token could not be verified
+   * @throws IOException if the Google public keys could not be downloaded
+   */
+  @Override
+  public GoogleIdToken verify(String idTokenString) throws GeneralSecurityException, IOException {
+    String key = hash(idTokenString);
+    long now = getClock().currentTimeMillis();
+    synchronized (this) {
+      VerifiedToken verifiedToken = tokens.get(key);
+      if (verifiedToken == null) {
+        verifiedToken = invalidTokens.get(key);
+      }
+      if (verifiedToken != null && now < verifiedToken.expiresAtMillis) {
+        return verifiedToken.idToken;
+      }
+      tokens.remove(key);
+      invalidTokens.remove(key);
+    }
+    // Verify outside the lock, so that a slow download of the public keys only holds up the
+    // requests that need it.
+    GoogleIdToken idToken = verifyUncached(idTokenString);
+    long expiresAtMillis = now + invalidTokenTtlMillis;
+    if (idToken != null) {
+      Long expirationTimeSeconds = idToken.getPayload().getExpirationTimeSeconds();
+      if (expirationTimeSeconds == null) {
+        return idToken;
+      }
+      expiresAtMillis = expirationTimeSeconds * 1000;
+    }
+    if (idToken != null) {
+      put(tokens, maxEntries, key, new VerifiedToken(idToken, expiresAtMillis));
+    } else {
+      put(invalidTokens, maxInvalidEntries, key, new VerifiedToken(null, expiresAtMillis));
+    }
+    return idToken;
+  }
+
+  /**
+   * Returns the number of valid and failed tokens currently remembered, including ones that have
+   * expired.
+   */
+  public synchronized int size() {
+    return tokens.size() + invalidTokens.size();
+  }
+
+  /** Verifies the ID token without looking at the remembered tokens. */
+  GoogleIdToken verifyUncached(String idTokenString)
+      throws GeneralSecurityException, IOException {
+    return super.verify(idTokenString);
+  }
+
+  private synchronized void put(
+      Map<String, VerifiedToken> map, int maxSize, String key, VerifiedToken verifiedToken) {
+    if (maxSize <= 0) {
+      return;
+    }
+    map.put(key, verifiedToken);
+    while (map.size() > maxSize) {
+      map.remove(map.keySet().iterator().next());
+    }
+  }
+
+  private static String hash(String idTokenString) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return Base64.getEncoder().encodeToString(
+          digest.digest(idTokenString.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // A verified token, or null for a token that failed, and when it stops being remembered.
+  private static class VerifiedToken {
+    private final GoogleIdToken idToken;
+    private final long expiresAtMillis;
+
+    private VerifiedToken(GoogleIdToken idToken, long expiresAtMillis) {
+      this.idToken = idToken;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.util;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CachingIdTokenVerifier} whose Google public keys are downloaded on a daemon thread,
+ * so that no request waits for them.
+ *
+ * <p>Once started, the verifier downloads the keys at once, and then again
+ * {@code REFRESH_MARGIN_SECONDS_PROPERTY} seconds before they expire. Each download builds a new
+ * key manager that is swapped in once it holds the keys, so requests never share the lock of a
+ * manager that is downloading. A failed download is retried every {@code RETRY_SECONDS_PROPERTY}
+ * seconds while the previous keys keep being used. Until the first download completes, tokens
+ * are verified with the keys of the verifier itself, which are downloaded on the request thread.
+ */
+public class RefreshingIdTokenVerifier extends CachingIdTokenVerifier {
+  /**
+   * The system property that, when true, makes {@link AuthenticationHelper#getDefaultVerifier()}
+   * start refreshing the keys. It is set by the deployed application only, so that unit tests do
+   * not download keys.
+   */
+  public static final String ENABLED_PROPERTY = "coffeehouse.auth.keyRefreshEnabled";
+  /** The system property holding how many seconds before the keys expire they are refreshed. */
+  public static final String REFRESH_MARGIN_SECONDS_PROPERTY =
+      "coffeehouse.auth.keyRefreshMarginSeconds";
+  /** The system property holding the number of seconds between attempts of a failed refresh. */
+  public static final String RETRY_SECONDS_PROPERTY = "coffeehouse.auth.keyRetrySeconds";
+  // Must be more than the five minutes before expiry at which a key manager refreshes inline.
+  public static final long DEFAULT_REFRESH_MARGIN_SECONDS = 600;
+  public static final long DEFAULT_RETRY_SECONDS = 30;
+  /** The message to be logged when the keys could not be refreshed. */
+  public static final String LOG_REFRESH_ERROR_MESSAGE =
+      "Unable to refresh the Google public keys: ";
+
+  private final HttpTransport transport;
+  private final JsonFactory jsonFactory;
+  private final long refreshMarginMillis;
+  private final long retryMillis;
+  // The verifier holding the latest downloaded keys, or null before the first download.
+  private volatile GoogleIdTokenVerifier current;
+  private ScheduledExecutorService executor;
+
+  /**
+   * Creates a verifier with the refresh margin and retry interval of the
+   * {@code REFRESH_MARGIN_SECONDS_PROPERTY} and {@code RETRY_SECONDS_PROPERTY} system properties.
+   * @param transport the transport the keys are downloaded with
+   * @param jsonFactory the factory that parses the keys and the ID tokens
+   */
+  public RefreshingIdTokenVerifier(HttpTransport transport, JsonFactory jsonFactory) {
+    this(transport, jsonFactory,
+         Long.getLong(REFRESH_MARGIN_SECONDS_PROPERTY, DEFAULT_REFRESH_MARGIN_SECONDS),
+         Long.getLong(RETRY_SECONDS_PROPERTY, DEFAULT_RETRY_SECONDS));
+  }
+
+  /**
+   * Creates a verifier with the given refresh margin and retry interval.
+   * @param transport the transport the keys are downloaded with
+   * @param jsonFactory the factory that parses the keys and the ID tokens
+   * @param refreshMarginSeconds how many seconds before the keys expire they are refreshed
+   * @param retrySeconds the number of seconds between attempts of a failed refresh
+   */
+  public RefreshingIdTokenVerifier(
+      HttpTransport transport, JsonFactory jsonFactory,
+      long refreshMarginSeconds, long retrySeconds) {
+    super(new GoogleIdTokenVerifier.Builder(transport, jsonFactory));
+    this.transport = transport;
+    this.jsonFactory = jsonFactory;
+    this.refreshMarginMillis = TimeUnit.SECONDS.toMillis(refreshMarginSeconds);
+    this.retryMillis = TimeUnit.SECONDS.toMillis(retrySeconds);
+  }
+
+  /** Starts refreshing the keys in the background. Does nothing if the refresh is running. */
+  public synchronized void start() {
+    if (executor != null) {
+      return;
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "id-token-keys-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.execute(this::refreshAndReschedule);
+  }
+
+  /** Stops refreshing the keys, interrupting a download that is running. */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Downloads the keys with a new key manager and verifies tokens with them from then on.
+   * @return the time in milliseconds at which the downloaded keys expire
+   * @throws GeneralSecurityException if the downloaded keys could not be parsed
+   * @throws IOException if the keys could not be downloaded
+   */
+  public long refreshKeys() throws GeneralSecurityException, IOException {
+    GooglePublicKeysManager publicKeys =
+        new GooglePublicKeysManager.Builder(transport, jsonFactory)
+            .setClock(getClock())
+            .build()
+            .refresh();
+    install(new GoogleIdTokenVerifier.Builder(publicKeys).setClock(getClock()).build());
+    return publicKeys.getExpirationTimeMilliseconds();
+  }
+
+  @Override
+  GoogleIdToken verifyUncached(String idTokenString)
+      throws GeneralSecurityException, IOException {
+    GoogleIdTokenVerifier verifier = current;
+    return verifier == null
+        ? super.verifyUncached(idTokenString)
+        : verifier.verify(idTokenString);
+  }
+
+  /** Makes the verifier verify tokens with the keys of another verifier. */
+  void install(GoogleIdTokenVerifier verifier) {
+    current = verifier;
+  }
+
+  // An exception would stop the refreshes, so failures are logged and retried.
+  private void refreshAndReschedule() {
+    long delayMillis;
+    try {
+      long expirationMillis = refreshKeys();
+      delayMillis = Math.max(
+          retryMillis, expirationMillis - refreshMarginMillis - getClock().currentTimeMillis());
+    } catch (Exception e) {
+      System.out.println(LOG_REFRESH_ERROR_MESSAGE + e.getMessage());
+      delayMillis = retryMillis;
+    }
+    synchronized (this) {
+      if (executor != null) {
+        executor.schedule(this::refreshAndReschedule, delayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+}
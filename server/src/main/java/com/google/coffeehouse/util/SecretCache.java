@@ -0,0 +1,255 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.util;
+
+import com.google.cloud.secretmanager.v1.AccessSecretVersionResponse;
+import com.google.cloud.secretmanager.v1.SecretManagerServiceClient;
+import com.google.cloud.secretmanager.v1.SecretVersionName;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * SecretCache loads secrets in the background and keeps them in memory, so that no class pays
+ * for a call to Secret Manager when it is loaded, and only the callers that need a secret wait
+ * for it.
+ *
+ * <p>A secret is loaded the first time it is prefetched or asked for. Once it is older than
+ * {@code REFRESH_SECONDS_PROPERTY} seconds, the next caller still gets the cached value while the
+ * latest version is loaded in the background, so rotated secrets are picked up without a
+ * restart. A failed load is not tried again for {@code RETRY_SECONDS_PROPERTY} seconds, so that
+ * while Secret Manager is down the callers fail at once instead of each waiting for a load of
+ * their own, and a stale secret is not reloaded on every call. A failed reload is logged and the
+ * cached value is kept.
+ *
+ * <p>The default source reads a secret from the {@code ENV_PREFIX + secretId} environment
+ * variable, then from the {@code secretId} file of the {@code LOCAL_DIR_PROPERTY} directory, and
+ * only then from Secret Manager, so that the application can run offline.
+ */
+public class SecretCache {
+  /** The system property holding the number of seconds after which a secret is reloaded. */
+  public static final String REFRESH_SECONDS_PROPERTY = "coffeehouse.secrets.refreshSeconds";
+  public static final long DEFAULT_REFRESH_SECONDS = 3600;
+  /** The system property holding the number of seconds before a failed load is retried. */
+  public static final String RETRY_SECONDS_PROPERTY = "coffeehouse.secrets.retrySeconds";
+  public static final long DEFAULT_RETRY_SECONDS = 30;
+  /** The system property naming a directory holding one file per secret, for offline runs. */
+  public static final String LOCAL_DIR_PROPERTY = "coffeehouse.secrets.localDir";
+  /** The prefix of the environment variables that override secrets, for offline runs. */
+  public static final String ENV_PREFIX = "COFFEEHOUSE_SECRET_";
+  /** The project whose Secret Manager holds the secrets. */
+  public static final String PROJECT_ID = "coffeehouse-step2020";
+  /** The message of the exception thrown when a secret could not be loaded. */
+  public static final String LOAD_ERROR = "Unable to get secret ";
+  /** The message to be logged when a secret could not be reloaded. */
+  public static final String LOG_RELOAD_ERROR_MESSAGE = "Unable to reload secret ";
+
+  /** A SecretSource reads the latest version of a secret. */
+  public interface SecretSource {
+    /**
+     * Returns the latest version of a secret.
+     * @param secretId the ID of the secret
+     * @return the value of the secret
+     * @throws Exception if the secret could not be read
+     */
+    String load(String secretId) throws Exception;
+  }
+
+  private final SecretSource source;
+  private final long refreshMillis;
+  private final long retryMillis;
+  private final LongSupplier currentTimeMillis;
+  private final Executor executor;
+  // Guarded by this.
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  /**
+   * Creates a cache of the default source, which loads the secrets on a daemon thread, reloads
+   * them after the number of seconds of the {@code REFRESH_SECONDS_PROPERTY} system property and
+   * retries failed loads after the number of seconds of the
+   * {@code RETRY_SECONDS_PROPERTY} system property.
+   */
+  public SecretCache() {
+    this(SecretCache::loadDefault,
+         TimeUnit.SECONDS.toMillis(
+             Long.getLong(REFRESH_SECONDS_PROPERTY, DEFAULT_REFRESH_SECONDS)),
+         TimeUnit.SECONDS.toMillis(Long.getLong(RETRY_SECONDS_PROPERTY, DEFAULT_RETRY_SECONDS)),
+         System::currentTimeMillis,
+         Executors.newSingleThreadExecutor(runnable -> {
+           Thread thread = new Thread(runnable, "secret-cache");
+           thread.setDaemon(true);
+           return thread;
+         }));
+  }
+
+  /**
+   * Creates a cache of the given source.
+   * @param source the source the secrets are read from
+   * @param refreshMillis the number of milliseconds after which a secret is reloaded
+   * @param retryMillis the number of milliseconds before a failed load is retried
+   * @param currentTimeMillis the clock that decides when a secret is reloaded or retried
+   * @param executor the executor the secrets are loaded on
+   */
+  public SecretCache(
+      SecretSource source, long refreshMillis, long retryMillis, LongSupplier currentTimeMillis,
+      Executor executor) {
+    this.source = source;
+    this.refreshMillis = refreshMillis;
+    this.retryMillis = retryMillis;
+    this.currentTimeMillis = currentTimeMillis;
+    this.executor = executor;
+  }
+
+  /**
+   * Starts loading a secret in the background if it is not loaded or being loaded already, and
+   * its last load did not fail less than the retry interval ago.
+   * @param secretId the ID of the secret
+   */
+  public synchronized void prefetch(String secretId) {
+    Entry entry = entries.computeIfAbsent(secretId, id -> new Entry());
+    if (entry.value == null && !isBackingOff(entry)) {
+      load(secretId, entry);
+    }
+  }
+
+  /**
+   * Returns a secret, waiting for it only if it has never been loaded.
+   * @param secretId the ID of the secret
+   * @return the value of the secret
+   * @throws IllegalStateException if the secret has never been loaded and could not be loaded,
+   *     or its last load failed less than the retry interval ago
+   */
+  public String get(String secretId) {
+    return get(secretId, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a secret, waiting at most the given time for it if it has never been loaded. A load
+   * that takes longer keeps running in the background for the next callers.
+   * @param secretId the ID of the secret
+   * @param timeout the longest time to wait for the first load of the secret
+   * @param unit the unit of the timeout
+   * @return the value of the secret
+   * @throws IllegalStateException if the secret has never been loaded and could not be loaded in
+   *     time, or its last load failed less than the retry interval ago
+   */
+  public String get(String secretId, long timeout, TimeUnit unit) {
+    CompletableFuture<String> firstLoad;
+    synchronized (this) {
+      Entry entry = entries.computeIfAbsent(secretId, id -> new Entry());
+      if (entry.value != null) {
+        if (currentTimeMillis.getAsLong() - entry.loadedAtMillis >= refreshMillis
+            && !isBackingOff(entry)) {
+          load(secretId, entry);
+        }
+        return entry.value;
+      }
+      if (isBackingOff(entry)) {
+        throw new IllegalStateException(LOAD_ERROR + secretId, entry.failure);
+      }
+      firstLoad = load(secretId, entry);
+    }
+    try {
+      return firstLoad.get(timeout, unit);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(LOAD_ERROR + secretId, e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(LOAD_ERROR + secretId, e.getCause());
+    } catch (TimeoutException e) {
+      throw new IllegalStateException(LOAD_ERROR + secretId, e);
+    }
+  }
+
+  // Starts a load of the secret unless one is running, and returns the running load. Called
+  // while holding the lock.
+  private CompletableFuture<String> load(String secretId, Entry entry) {
+    if (entry.loading != null) {
+      return entry.loading;
+    }
+    CompletableFuture<String> loading = CompletableFuture.supplyAsync(() -> {
+      try {
+        return source.load(secretId);
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+    entry.loading = loading;
+    loading.whenComplete((value, error) -> finishLoad(secretId, entry, value, error));
+    return loading;
+  }
+
+  private synchronized void finishLoad(
+      String secretId, Entry entry, String value, Throwable error) {
+    entry.loading = null;
+    if (error != null) {
+      System.out.println(LOG_RELOAD_ERROR_MESSAGE + secretId + ": " + error.getMessage());
+      entry.failure = error instanceof CompletionException ? error.getCause() : error;
+      entry.failedAtMillis = currentTimeMillis.getAsLong();
+      return;
+    }
+    entry.value = value;
+    entry.loadedAtMillis = currentTimeMillis.getAsLong();
+    entry.failure = null;
+  }
+
+  // Whether a load of the secret failed less than the retry interval ago, in which case the
+  // secret is not loaded again yet. Called while holding the lock.
+  private boolean isBackingOff(Entry entry) {
+    return entry.failure != null
+        && entry.loading == null
+        && currentTimeMillis.getAsLong() - entry.failedAtMillis < retryMillis;
+  }
+
+  private static String loadDefault(String secretId) throws Exception {
+    String fromEnvironment = System.getenv(ENV_PREFIX + secretId);
+    if (fromEnvironment != null) {
+      return fromEnvironment;
+    }
+    String localDir = System.getProperty(LOCAL_DIR_PROPERTY);
+    if (localDir != null) {
+      Path file = Paths.get(localDir, secretId);
+      if (Files.exists(file)) {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+      }
+    }
+    try (SecretManagerServiceClient client = SecretManagerServiceClient.create()) {
+      AccessSecretVersionResponse response =
+          client.accessSecretVersion(SecretVersionName.of(PROJECT_ID, secretId, "latest"));
+      return response.getPayload().getData().toStringUtf8();
+    }
+  }
+
+  // The cached value of a secret, the load in progress and the last failed load, all guarded by
+  // the cache.
+  private static class Entry {
+    private String value;
+    private long loadedAtMillis;
+    private CompletableFuture<String> loading;
+    private Throwable failure;
+    private long failedAtMillis;
+  }
+}
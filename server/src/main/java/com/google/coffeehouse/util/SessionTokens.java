@@ -0,0 +1,178 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * SessionTokens mints and verifies the short-lived session tokens the server gives out once it
+ * has verified a Google ID token, so that later requests are authenticated with an HMAC instead
+ * of an RSA signature check.
+ *
+ * <p>A session token is {@code "cs1.<key ID>.<user ID>.<expiry>.<signature>"}, where the user ID
+ * is base64url encoded, the expiry is in seconds since the epoch, and the signature is the
+ * base64url encoded HMAC-SHA256 of everything before it.
+ *
+ * <p>The keys are given by a keyring of comma separated {@code "<key ID>:<base64 key>"} entries.
+ * Tokens are signed with the first key and verified with the key named in the token. To rotate
+ * the keys, add the new key at the end of the keyring, move it to the front once every instance
+ * has it, and remove the old key once the tokens it signed have expired.
+ */
+public class SessionTokens {
+  /** The prefix of every session token, which no Google ID token starts with. */
+  public static final String TOKEN_PREFIX = "cs1.";
+  /** The system property holding the number of seconds a session token is valid for. */
+  public static final String TTL_SECONDS_PROPERTY = "coffeehouse.session.ttlSeconds";
+  public static final long DEFAULT_TTL_SECONDS = 3600;
+  /** The minimum number of bytes of a signing key. */
+  public static final int MIN_KEY_BYTES = 32;
+  /** The error message when the keyring cannot be parsed. */
+  public static final String INVALID_KEYRING_ERROR =
+      "The session keyring must hold \"<key ID>:<base64 key>\" entries of at least "
+          + MIN_KEY_BYTES + " bytes.";
+  /** The error message when a session token is malformed, forged or expired. */
+  public static final String INVALID_SESSION_TOKEN_ERROR =
+      "Session token failed verification or has expired";
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+
+  private final Map<String, SecretKeySpec> keys;
+  private final String signingKeyId;
+  private final long ttlMillis;
+  private final LongSupplier currentTimeMillis;
+
+  /**
+   * Creates the session tokens of a keyring, valid for the number of seconds of the
+   * {@code TTL_SECONDS_PROPERTY} system property.
+   * @param keyring the comma separated {@code "<key ID>:<base64 key>"} entries, whose first key
+   *     signs the tokens
+   * @throws IllegalArgumentException if the keyring is empty or an entry cannot be parsed
+   */
+  public SessionTokens(String keyring) {
+    this(keyring, Long.getLong(TTL_SECONDS_PROPERTY, DEFAULT_TTL_SECONDS),
+         System::currentTimeMillis);
+  }
+
+  /**
+   * Creates the session tokens of a keyring with the given time to live and clock.
+   * @param keyring the comma separated {@code "<key ID>:<base64 key>"} entries, whose first key
+   *     signs the tokens
+   * @param ttlSeconds the number of seconds a session token is valid for
+   * @param currentTimeMillis the clock that decides when tokens expire
+   * @throws IllegalArgumentException if the keyring is empty or an entry cannot be parsed
+   */
+  public SessionTokens(String keyring, long ttlSeconds, LongSupplier currentTimeMillis) {
+    Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+    for (String entry : keyring.split(",")) {
+      String[] parts = entry.trim().split(":", 2);
+      if (parts.length != 2 || parts[0].isEmpty() || parts[0].contains(".")) {
+        throw new IllegalArgumentException(INVALID_KEYRING_ERROR);
+      }
+      byte[] key;
+      try {
+        key = Base64.getDecoder().decode(parts[1].trim());
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(INVALID_KEYRING_ERROR, e);
+      }
+      if (key.length < MIN_KEY_BYTES) {
+        throw new IllegalArgumentException(INVALID_KEYRING_ERROR);
+      }
+      keys.put(parts[0], new SecretKeySpec(key, ALGORITHM));
+    }
+    this.keys = Collections.unmodifiableMap(keys);
+    this.signingKeyId = keys.keySet().iterator().next();
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    this.currentTimeMillis = currentTimeMillis;
+  }
+
+  /**
+   * Returns whether a token is a session token rather than a Google ID token.
+   * @param token the token, which may be null
+   * @return true if the token starts with {@code TOKEN_PREFIX}
+   */
+  public static boolean isSessionToken(String token) {
+    return token != null && token.startsWith(TOKEN_PREFIX);
+  }
+
+  /**
+   * Returns a new session token for a user, signed with the first key of the keyring.
+   * @param userId the user ID of a verified Google ID token
+   * @return the session token
+   */
+  public String mint(String userId) {
+    long expirySeconds = TimeUnit.MILLISECONDS.toSeconds(currentTimeMillis.getAsLong() + ttlMillis);
+    String signedContent = TOKEN_PREFIX + signingKeyId + "."
+        + encoder.encodeToString(userId.getBytes(StandardCharsets.UTF_8)) + "." + expirySeconds;
+    return signedContent + "." + encoder.encodeToString(sign(signingKeyId, signedContent));
+  }
+
+  /**
+   * Returns the user ID of a session token.
+   * @param token the session token
+   * @return the user ID the token was minted for
+   * @throws GeneralSecurityException if the token is malformed, was not signed by a key of the
+   *     keyring, or has expired
+   */
+  public String verify(String token) throws GeneralSecurityException {
+    if (!isSessionToken(token)) {
+      throw new GeneralSecurityException(INVALID_SESSION_TOKEN_ERROR);
+    }
+    String[] parts = token.substring(TOKEN_PREFIX.length()).split("\\.", -1);
+    if (parts.length != 4 || !keys.containsKey(parts[0])) {
+      throw new GeneralSecurityException(INVALID_SESSION_TOKEN_ERROR);
+    }
+    String signedContent = token.substring(0, token.lastIndexOf('.'));
+    try {
+      byte[] signature = decoder.decode(parts[3]);
+      if (!MessageDigest.isEqual(signature, sign(parts[0], signedContent))) {
+        throw new GeneralSecurityException(INVALID_SESSION_TOKEN_ERROR);
+      }
+      long expiryMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(parts[2]));
+      if (currentTimeMillis.getAsLong() >= expiryMillis) {
+        throw new GeneralSecurityException(INVALID_SESSION_TOKEN_ERROR);
+      }
+      return new String(decoder.decode(parts[1]), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      // The signature or user ID is not base64url, or the expiry is not a number.
+      throw new GeneralSecurityException(INVALID_SESSION_TOKEN_ERROR, e);
+    }
+  }
+
+  private byte[] sign(String keyId, String signedContent) {
+    try {
+      // Mac objects are not thread safe, and creating one is cheap next to a request.
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(keys.get(keyId));
+      return mac.doFinal(signedContent.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      // Every Java platform supports HmacSHA256, and the keys were checked when parsed.
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.coffeehouse.storagehandler.EntityCache;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link CacheStatsServlet}.
+ */
+public class CacheStatsServletTest {
+  private CacheStatsServlet cacheStatsServlet;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+  private StringWriter stringWriter = new StringWriter();
+
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  @Mock private StorageHandlerApi handler;
+
+  @Before
+  public void setUp() throws IOException {
+    helper.setUp();
+
+    EntityCache<String> cache = new EntityCache<>(1, TimeUnit.MINUTES, /* maxEntries= */ 5);
+    cache.get("hit", id -> id);
+    cache.get("hit", id -> id);
+    Map<String, EntityCache.CacheStats> stats = new LinkedHashMap<>();
+    stats.put("Clubs", cache.getStats());
+
+    handler = mock(StorageHandlerApi.class);
+    when(handler.getCacheStats()).thenReturn(stats);
+    cacheStatsServlet = new CacheStatsServlet(handler);
+
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void doGet_returnsCounters() throws IOException {
+    cacheStatsServlet.doGet(request, response);
+    String result = stringWriter.toString();
+
+    JsonObject clubs = new Gson().fromJson(result, JsonObject.class).getAsJsonObject("Clubs");
+    assertEquals(1, clubs.get("hits").getAsLong());
+    assertEquals(1, clubs.get("misses").getAsLong());
+    assertEquals(0, clubs.get("evictions").getAsLong());
+    assertEquals(1, clubs.get("size").getAsInt());
+    assertEquals(5, clubs.get("maxEntries").getAsInt());
+  }
+}
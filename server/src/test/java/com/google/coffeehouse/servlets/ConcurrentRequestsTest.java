@@ -0,0 +1,306 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.servlets;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeTokenRequest;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.Person;
+import com.google.coffeehouse.storagehandler.InMemoryStorageBackend;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.SessionTokens;
+import com.google.coffeehouse.util.UuidWrapper;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress tests that send many requests at once to single servlet instances, as App Engine does
+ * when concurrent requests are enabled.
+ */
+public class ConcurrentRequestsTest {
+  private static final int THREADS = 8;
+  private static final int REQUESTS = 64;
+  private static final String OWNER_ID = "owner";
+  private static final String TOKEN_PREFIX = "token-";
+  private static final String BOOK_ISBN = "978-3-16-148410-0";
+  private static final String KEYRING =
+      "key1:" + Base64.getEncoder().encodeToString(new byte[SessionTokens.MIN_KEY_BYTES]);
+  private static final Gson gson = new Gson();
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+  private StorageHandlerApi handler;
+  private GoogleIdTokenVerifier verifier;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws IOException, GeneralSecurityException {
+    helper.setUp();
+    handler = new StorageHandlerApi(new InMemoryStorageBackend());
+    savePerson(OWNER_ID);
+
+    // Verifies an ID token of the form "token-<user ID>".
+    verifier = mock(GoogleIdTokenVerifier.class);
+    when(verifier.verify(anyString())).thenAnswer(invocation -> {
+      String idToken = invocation.getArgument(0);
+      if (!idToken.startsWith(TOKEN_PREFIX)) {
+        return null;
+      }
+      GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+      payload.setSubject(idToken.substring(TOKEN_PREFIX.length()));
+      return new GoogleIdToken(
+          new JsonWebSignature.Header(), payload, new byte[0], new byte[0]);
+    });
+
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    helper.tearDown();
+  }
+
+  @Test
+  public void createClub_concurrentRequestsGetDistinctClubsSharingOneBook() throws Exception {
+    CreateClubServlet servlet = new CreateClubServlet(handler, new UuidWrapper());
+
+    List<RecordedResponse> responses = runConcurrently(i -> () -> {
+      String body = String.join("\n",
+          "{",
+          "  \"" + Club.NAME_FIELD_NAME + "\" : \"Club " + i + "\",",
+          "  \"" + Club.OWNER_ID_FIELD_NAME + "\" : \"" + OWNER_ID + "\",",
+          "  \"" + Club.CURRENT_BOOK_FIELD_NAME + "\" : {",
+          "    \"" + Book.TITLE_FIELD_NAME + "\" : \"Book Name\",",
+          "    \"" + Book.ISBN_FIELD_NAME + "\" : \"" + BOOK_ISBN + "\"",
+          "  }",
+          "}");
+      RecordedResponse response = new RecordedResponse();
+      servlet.doPost(postRequest(body), response.response);
+      return response;
+    });
+
+    Set<String> clubIds = new HashSet<>();
+    Set<String> bookIds = new HashSet<>();
+    for (RecordedResponse response : responses) {
+      response.assertNoError();
+      JsonObject club = gson.fromJson(response.body(), JsonObject.class);
+      clubIds.add(club.get(Club.CLUB_ID_FIELD_NAME).getAsString());
+      bookIds.add(club.getAsJsonObject(Club.CURRENT_BOOK_FIELD_NAME)
+          .get(Book.BOOK_ID_FIELD_NAME).getAsString());
+    }
+    assertEquals(REQUESTS, clubIds.size());
+    assertEquals(1, bookIds.size());
+    for (String clubId : clubIds) {
+      Club club = handler.fetchClubFromId(clubId, TimestampBound.strong());
+      assertEquals(1, club.getMemberCount());
+      assertEquals(bookIds.iterator().next(), club.getCurrentBook().getBookId());
+    }
+  }
+
+  @Test
+  public void joinClub_concurrentJoinsAndReadsAreAllCounted() throws Exception {
+    String clubId = createClub();
+    for (int i = 0; i < REQUESTS; i++) {
+      savePerson("joiner" + i);
+    }
+    JoinClubServlet joinServlet = new JoinClubServlet(verifier, handler);
+    GetClubServlet getServlet = new GetClubServlet(handler);
+
+    // Every other request reads the club while the others join it.
+    List<RecordedResponse> responses = runConcurrently(i -> () -> {
+      RecordedResponse response = new RecordedResponse();
+      if (i % 2 == 0) {
+        String body = String.join("\n",
+            "{",
+            "  \"" + JoinClubServlet.ID_TOKEN_FIELD_NAME + "\" : \""
+                + TOKEN_PREFIX + "joiner" + i + "\",",
+            "  \"" + Club.CLUB_ID_FIELD_NAME + "\" : \"" + clubId + "\"",
+            "}");
+        joinServlet.doPost(postRequest(body), response.response);
+      } else {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter(Club.CLUB_ID_FIELD_NAME)).thenReturn(clubId);
+        getServlet.doGet(request, response.response);
+      }
+      return response;
+    });
+
+    for (RecordedResponse response : responses) {
+      response.assertNoError();
+    }
+    assertEquals(1 + REQUESTS / 2,
+        handler.fetchClubFromId(clubId, TimestampBound.strong()).getMemberCount());
+    assertEquals(1 + REQUESTS / 2, handler.fetchMembersByClubId(clubId).size());
+  }
+
+  @Test
+  public void retrieveToken_concurrentSignInsGetTheirOwnTokens() throws Exception {
+    SessionTokens sessionTokens = new SessionTokens(KEYRING);
+    // Each token request answers with the ID token of the user whose auth code it was given.
+    RetrieveTokenServlet servlet = new RetrieveTokenServlet(verifier, () -> {
+      AtomicReference<String> code = new AtomicReference<>();
+      GoogleAuthorizationCodeTokenRequest tokenRequest =
+          mock(GoogleAuthorizationCodeTokenRequest.class);
+      when(tokenRequest.setCode(anyString())).thenAnswer(invocation -> {
+        code.set(invocation.getArgument(0));
+        return tokenRequest;
+      });
+      when(tokenRequest.setRedirectUri(anyString())).thenReturn(tokenRequest);
+      when(tokenRequest.execute()).thenAnswer(invocation ->
+          new GoogleTokenResponse().setIdToken(TOKEN_PREFIX + code.get()));
+      return tokenRequest;
+    }, sessionTokens);
+
+    List<RecordedResponse> responses = runConcurrently(i -> () -> {
+      String body = String.join("\n",
+          "{",
+          "  \"" + RetrieveTokenServlet.CODE_KEY_NAME + "\":\"user" + i + "\",",
+          "  \"" + RetrieveTokenServlet.REDIRECT_URI_KEY_NAME + "\":\"abc\"",
+          "}");
+      RecordedResponse response = new RecordedResponse();
+      servlet.doPost(postRequest(body), response.response);
+      return response;
+    });
+
+    for (int i = 0; i < REQUESTS; i++) {
+      RecordedResponse response = responses.get(i);
+      response.assertNoError();
+      assertEquals(TOKEN_PREFIX + "user" + i + "\n", response.body());
+      assertEquals("user" + i, sessionTokens.verify(response.sessionToken()));
+    }
+  }
+
+  // Runs REQUESTS requests on THREADS threads, all released at once, and returns their results
+  // in request order.
+  private <T> List<T> runConcurrently(IntFunction<Callable<T>> requests) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<T>> futures = new ArrayList<>();
+    for (int i = 0; i < REQUESTS; i++) {
+      Callable<T> request = requests.apply(i);
+      futures.add(executor.submit(() -> {
+        start.await();
+        return request.call();
+      }));
+    }
+    start.countDown();
+    List<T> results = new ArrayList<>();
+    for (Future<T> future : futures) {
+      results.add(future.get(30, TimeUnit.SECONDS));
+    }
+    return results;
+  }
+
+  private String createClub() {
+    Book book = Book.newBuilder()
+                    .setTitle("Book Name")
+                    .setBookId("book")
+                    .setStorageHandler(handler)
+                    .build();
+    Club club = Club.newBuilder()
+                    .setName("Club Name")
+                    .setCurrentBook(book)
+                    .setOwnerId(OWNER_ID)
+                    .setClubId("club")
+                    .setContentWarnings(new ArrayList<>())
+                    .setStorageHandler(handler)
+                    .build();
+    handler.createClub(club);
+    return club.getClubId();
+  }
+
+  private void savePerson(String userId) {
+    Person.newBuilder()
+          .setUserId(userId)
+          .setEmail(userId + "@test.com")
+          .setNickname(userId)
+          .setStorageHandler(handler)
+          .build()
+          .save();
+  }
+
+  private static HttpServletRequest postRequest(String body) throws IOException {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getReader()).thenReturn(new BufferedReader(new StringReader(body)));
+    return request;
+  }
+
+  // A mock response that records what the servlet writes to it.
+  private static class RecordedResponse {
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+    private final StringWriter writer = new StringWriter();
+    private final AtomicReference<String> sessionToken = new AtomicReference<>();
+
+    private RecordedResponse() throws IOException {
+      when(response.getWriter()).thenReturn(new PrintWriter(writer));
+      doAnswer(invocation -> {
+        if (RetrieveTokenServlet.SESSION_TOKEN_HEADER.equals(invocation.getArgument(0))) {
+          sessionToken.set(invocation.getArgument(1));
+        }
+        return null;
+      }).when(response).setHeader(anyString(), anyString());
+    }
+
+    private String body() {
+      return writer.toString();
+    }
+
+    private String sessionToken() {
+      return sessionToken.get();
+    }
+
+    private void assertNoError() throws IOException {
+      verify(response, never()).sendError(anyInt(), anyString());
+      verify(response, never()).sendError(anyInt());
+    }
+  }
+}
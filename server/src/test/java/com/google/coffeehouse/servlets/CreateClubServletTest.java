@@ -17,12 +17,14 @@ package com.google.coffeehouse.servlets;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.cloud.Timestamp;
 import com.google.coffeehouse.common.Book;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.storagehandler.StorageHandlerApi;
@@ -103,6 +105,7 @@ public class CreateClubServletTest {
     handler = spy(StorageHandlerApi.class);
     doNothing().when(handler).writeMutations(anyList());
     doNothing().when(handler).addOwnership(anyString(), anyString());
+    doReturn(Timestamp.now()).when(handler).createClub(any(Club.class));
 
     IdentifierGenerator idGen = mock(IdentifierGenerator.class);
     when(idGen.generateId()).thenReturn(CLUB_ID);
@@ -137,6 +140,7 @@ public class CreateClubServletTest {
     assertEquals(CLUB_ID, c.getCurrentBook().getBookId());
     assertFalse(c.getCurrentBook().getAuthor().isPresent());
     assertFalse(c.getCurrentBook().getIsbn().isPresent());
+    verify(handler).createClub(any(Club.class));
   }
 
   @Test
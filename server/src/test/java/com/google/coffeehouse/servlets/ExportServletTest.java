@@ -0,0 +1,242 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.servlets;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.Person;
+import com.google.coffeehouse.storagehandler.InMemoryStorageBackend;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.AuthenticationHelper;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link ExportServlet}.
+ */
+public class ExportServletTest {
+  private static final String ADMIN_ID = "admin-user-identification-string";
+  private static final String ID_TOKEN = "Identification Token";
+
+  private ExportServlet exportServlet;
+  private StorageHandlerApi handler;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+  private ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  @Mock private GoogleIdTokenVerifier verifier;
+  @Mock private GoogleIdToken idToken;
+  @Mock private Payload payload;
+
+  @Before
+  public void setUp() throws IOException, GeneralSecurityException {
+    helper.setUp();
+    System.setProperty(AuthenticationHelper.ADMIN_USER_IDS_PROPERTY, ADMIN_ID);
+
+    payload = mock(Payload.class);
+    when(payload.getSubject()).thenReturn(ADMIN_ID);
+    idToken = mock(GoogleIdToken.class);
+    when(idToken.getPayload()).thenReturn(payload);
+    verifier = mock(GoogleIdTokenVerifier.class);
+    when(verifier.verify(ID_TOKEN)).thenReturn(idToken);
+
+    handler = new StorageHandlerApi(new InMemoryStorageBackend());
+    Person.newBuilder()
+          .setUserId("owner")
+          .setEmail("owner@test.com")
+          .setNickname("owner")
+          .setStorageHandler(handler)
+          .build()
+          .save();
+    createClub("clubA");
+    createClub("clubB");
+    exportServlet = new ExportServlet(verifier, handler);
+
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        outputStream.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(AuthenticationHelper.ADMIN_USER_IDS_PROPERTY);
+    helper.tearDown();
+  }
+
+  @Test
+  public void doGet_exportsClubsWithMembers() throws IOException {
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+    when(request.getParameter(ExportServlet.MEMBERS_PARAMETER)).thenReturn("true");
+
+    exportServlet.doGet(request, response);
+
+    verify(response).setContentType("application/gzip");
+    List<JsonObject> lines = readExport();
+    assertEquals(2, lines.size());
+    assertEquals("clubA", lines.get(0).get("clubId").getAsString());
+    assertEquals("clubA title", lines.get(0).getAsJsonObject("currentBook")
+        .get("title").getAsString());
+    assertEquals("owner", lines.get(0).getAsJsonArray(ExportServlet.MEMBERS_FIELD_NAME)
+        .get(0).getAsJsonObject().get("userId").getAsString());
+    assertEquals("clubB", lines.get(1).get("clubId").getAsString());
+  }
+
+  @Test
+  public void doGet_exportsClubsWithoutMembers() throws IOException {
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+
+    exportServlet.doGet(request, response);
+
+    List<JsonObject> lines = readExport();
+    assertEquals(2, lines.size());
+    assertFalse(lines.get(0).has(ExportServlet.MEMBERS_FIELD_NAME));
+  }
+
+  @Test
+  public void doGet_notAdmin() throws IOException {
+    System.setProperty(AuthenticationHelper.ADMIN_USER_IDS_PROPERTY, "other");
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+
+    exportServlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, ExportServlet.NOT_ADMIN_ERROR);
+    verify(response, never()).getOutputStream();
+  }
+
+  @Test
+  public void doGet_noIdToken() throws IOException {
+    exportServlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_FORBIDDEN, AuthenticationHelper.INVALID_ID_TOKEN_ERROR);
+  }
+
+  @Test
+  public void doGet_readFailureBeforeTheFileIsSent() throws IOException {
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+    StorageHandlerApi failingHandler = mock(StorageHandlerApi.class);
+    doThrow(new IllegalStateException("Spanner is unavailable"))
+        .when(failingHandler).exportClubs(anyBoolean(), any());
+
+    new ExportServlet(verifier, failingHandler).doGet(request, response);
+
+    verify(response).reset();
+    verify(response).sendError(
+        HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ExportServlet.EXPORT_ERROR);
+  }
+
+  @Test
+  public void doGet_readFailureAfterTheFileStartedAbortsTheResponse() throws IOException {
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+    when(response.isCommitted()).thenReturn(true);
+    StorageHandlerApi failingHandler = mock(StorageHandlerApi.class);
+    Club club = handler.fetchClubFromId("clubA");
+    doAnswer(invocation -> {
+      BiConsumer<Club, List<Person>> consumer = invocation.getArgument(1);
+      consumer.accept(club, null);
+      throw new IllegalStateException("Spanner is unavailable");
+    }).when(failingHandler).exportClubs(anyBoolean(), any());
+
+    assertThrows(IOException.class, () -> {
+      new ExportServlet(verifier, failingHandler).doGet(request, response);
+    });
+    verify(response, never()).sendError(
+        HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ExportServlet.EXPORT_ERROR);
+    // The end of the gzip file was not written, so the partial export can not be read.
+    assertThrows(EOFException.class, this::readExport);
+  }
+
+  private void createClub(String clubId) {
+    Book book = Book.newBuilder()
+                    .setTitle(clubId + " title")
+                    .setBookId(clubId + "Book")
+                    .setStorageHandler(handler)
+                    .build();
+    Club club = Club.newBuilder()
+                    .setName(clubId)
+                    .setCurrentBook(book)
+                    .setOwnerId("owner")
+                    .setClubId(clubId)
+                    .setContentWarnings(new ArrayList<>())
+                    .setStorageHandler(handler)
+                    .build();
+    handler.createClub(club);
+  }
+
+  private List<JsonObject> readExport() throws IOException {
+    List<JsonObject> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray())),
+        StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(new Gson().fromJson(line, JsonObject.class));
+      }
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.verify;
+
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link GetClubsServlet}.
+ */
+public class GetClubsServletTest {
+  private static final String NAME = "Club Name";
+  private static final String DESCRIPTION = "Club Description";
+  private static final String CLUB_ID = "predetermined-identification-string";
+  private static final String OTHER_CLUB_ID = "other-predetermined-identification-string";
+  private static final String MISSING_CLUB_ID = "missing-identification-string";
+  private static final String OWNER_ID = "predetermined-owner-identification-string";
+  private static final String BOOK_TITLE = "Book Name";
+  private static final String BOOK_ID = "predetermined-book-identification-string";
+  private List<String> testContentWarnings = new ArrayList<>(Arrays.asList("1", "2"));
+  private Book testBook = Book.newBuilder()
+                              .setTitle(BOOK_TITLE)
+                              .setBookId(BOOK_ID)
+                              .build();
+  private Club testClub = Club.newBuilder()
+                              .setName(NAME)
+                              .setCurrentBook(testBook)
+                              .setOwnerId(OWNER_ID)
+                              .setClubId(CLUB_ID)
+                              .setDescription(DESCRIPTION)
+                              .setContentWarnings(testContentWarnings)
+                              .build();
+  private Club otherTestClub = Club.newBuilder()
+                                   .setName(NAME)
+                                   .setCurrentBook(testBook)
+                                   .setOwnerId(OWNER_ID)
+                                   .setClubId(OTHER_CLUB_ID)
+                                   .setDescription(DESCRIPTION)
+                                   .setContentWarnings(testContentWarnings)
+                                   .build();
+
+  private GetClubsServlet getClubsServlet;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+  private StringWriter stringWriter = new StringWriter();
+
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  @Mock private StorageHandlerApi handler;
+  
+  @Before
+  public void setUp() throws IOException {
+    helper.setUp();
+
+    Map<String, Club> clubsById = new HashMap<>();
+    clubsById.put(CLUB_ID, testClub);
+    clubsById.put(OTHER_CLUB_ID, otherTestClub);
+    handler = mock(StorageHandlerApi.class);
+    when(handler.fetchClubsByIds(anyCollection())).thenReturn(clubsById);
+    getClubsServlet = new GetClubsServlet(handler);
+
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void doGet_validInputInRequestedOrder() throws IOException {
+    when(request.getParameterValues(eq(Club.CLUB_ID_FIELD_NAME)))
+        .thenReturn(new String[] {OTHER_CLUB_ID, CLUB_ID});
+
+    getClubsServlet.doGet(request, response);
+    String result = stringWriter.toString();
+
+    Gson gson = new Gson();
+    JsonObject json = gson.fromJson(result, JsonObject.class);
+    Club[] clubs = gson.fromJson(json.get(GetClubsServlet.CLUBS_FIELD_NAME), Club[].class);
+    String[] missing =
+        gson.fromJson(json.get(GetClubsServlet.MISSING_CLUB_IDS_FIELD_NAME), String[].class);
+
+    assertEquals(2, clubs.length);
+    assertEquals(OTHER_CLUB_ID, clubs[0].getClubId());
+    assertEquals(CLUB_ID, clubs[1].getClubId());
+    assertEquals(NAME, clubs[1].getName());
+    assertEquals(OWNER_ID, clubs[1].getOwnerId());
+    assertEquals(DESCRIPTION, clubs[1].getDescription());
+    assertEquals(testContentWarnings, clubs[1].getContentWarnings());
+    assertEquals(BOOK_TITLE, clubs[1].getCurrentBook().getTitle());
+    assertEquals(BOOK_ID, clubs[1].getCurrentBook().getBookId());
+    assertEquals(0, missing.length);
+  }
+
+  @Test
+  public void doGet_missingClubReportedAsAbsent() throws IOException {
+    when(request.getParameterValues(eq(Club.CLUB_ID_FIELD_NAME)))
+        .thenReturn(new String[] {CLUB_ID, MISSING_CLUB_ID});
+
+    getClubsServlet.doGet(request, response);
+    String result = stringWriter.toString();
+
+    Gson gson = new Gson();
+    JsonObject json = gson.fromJson(result, JsonObject.class);
+    Club[] clubs = gson.fromJson(json.get(GetClubsServlet.CLUBS_FIELD_NAME), Club[].class);
+    String[] missing =
+        gson.fromJson(json.get(GetClubsServlet.MISSING_CLUB_IDS_FIELD_NAME), String[].class);
+
+    assertEquals(1, clubs.length);
+    assertEquals(CLUB_ID, clubs[0].getClubId());
+    assertArrayEquals(new String[] {MISSING_CLUB_ID}, missing);
+  }
+
+  @Test
+  public void doGet_noClubId() throws IOException {
+    when(request.getParameterValues(eq(Club.CLUB_ID_FIELD_NAME))).thenReturn(null);
+
+    getClubsServlet.doGet(request, response);
+    
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST,
+        String.format(GetClubsServlet.LOG_INPUT_ERROR_MESSAGE, Club.CLUB_ID_FIELD_NAME));
+  }
+
+  @Test
+  public void doGet_tooManyClubIds() throws IOException {
+    String[] clubIds = new String[GetClubsServlet.MAX_CLUB_IDS + 1];
+    for (int i = 0; i < clubIds.length; i++) {
+      clubIds[i] = CLUB_ID + i;
+    }
+    when(request.getParameterValues(eq(Club.CLUB_ID_FIELD_NAME))).thenReturn(clubIds);
+
+    getClubsServlet.doGet(request, response);
+    
+    verify(response).sendError(
+        HttpServletResponse.SC_BAD_REQUEST,
+        String.format(GetClubsServlet.TOO_MANY_CLUBS_ERROR,
+                      GetClubsServlet.MAX_CLUB_IDS, Club.CLUB_ID_FIELD_NAME));
+  }
+
+  @Test
+  public void doGet_storageFailure() throws IOException {
+    when(request.getParameterValues(eq(Club.CLUB_ID_FIELD_NAME)))
+        .thenReturn(new String[] {CLUB_ID});
+    when(handler.fetchClubsByIds(anyCollection()))
+        .thenThrow(new IllegalStateException("Spanner is unavailable"));
+
+    getClubsServlet.doGet(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_INTERNAL_SERVER_ERROR, GetClubsServlet.INTERNAL_ERROR);
+  }
+}
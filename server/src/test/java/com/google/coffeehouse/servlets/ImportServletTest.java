@@ -0,0 +1,155 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.servlets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.storagehandler.InMemoryStorageBackend;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.AuthenticationHelper;
+import com.google.coffeehouse.util.IdentifierGenerator;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link ImportServlet}.
+ */
+public class ImportServletTest {
+  private static final String ADMIN_ID = "admin-user-identification-string";
+  private static final String ID_TOKEN = "Identification Token";
+  private static final String GENERATED_ID = "generated-identification-string";
+  private static final String NDJSON = String.join("\n",
+      "{\"type\": \"person\", \"userId\": \"owner\", \"email\": \"owner@test.com\","
+          + " \"nickname\": \"owner\"}",
+      "{\"type\": \"person\", \"userId\": \"member\", \"email\": \"member@test.com\","
+          + " \"nickname\": \"member\"}",
+      "",
+      "{\"type\": \"club\", \"clubId\": \"club\", \"name\": \"club\", \"ownerId\": \"owner\","
+          + " \"currentBook\": {\"title\": \"title\"}}",
+      "{\"type\": \"membership\", \"userId\": \"member\", \"clubId\": \"club\"}",
+      "{\"type\": \"membership\", \"userId\": \"member\", \"clubId\": \"club\"}",
+      "{\"type\": \"person\", \"userId\": \"noEmail\", \"nickname\": \"noEmail\"}",
+      "{\"type\": \"unknown\"}",
+      "{\"type\": ");
+
+  private ImportServlet importServlet;
+  private StorageHandlerApi handler;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+  private StringWriter stringWriter = new StringWriter();
+
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  @Mock private GoogleIdTokenVerifier verifier;
+  @Mock private GoogleIdToken idToken;
+  @Mock private Payload payload;
+
+  @Before
+  public void setUp() throws IOException, GeneralSecurityException {
+    helper.setUp();
+    System.setProperty(AuthenticationHelper.ADMIN_USER_IDS_PROPERTY, "other, " + ADMIN_ID);
+
+    payload = mock(Payload.class);
+    when(payload.getSubject()).thenReturn(ADMIN_ID);
+    idToken = mock(GoogleIdToken.class);
+    when(idToken.getPayload()).thenReturn(payload);
+    verifier = mock(GoogleIdTokenVerifier.class);
+    when(verifier.verify(ID_TOKEN)).thenReturn(idToken);
+
+    IdentifierGenerator idGen = mock(IdentifierGenerator.class);
+    when(idGen.generateId()).thenReturn(GENERATED_ID);
+    handler = new StorageHandlerApi(new InMemoryStorageBackend());
+    importServlet = new ImportServlet(verifier, handler, idGen);
+
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(AuthenticationHelper.ADMIN_USER_IDS_PROPERTY);
+    helper.tearDown();
+  }
+
+  @Test
+  public void doPost_importsRecordsAndReportsFailures() throws IOException {
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+    when(request.getReader()).thenReturn(new BufferedReader(new StringReader(NDJSON)));
+
+    importServlet.doPost(request, response);
+
+    JsonObject summary = new Gson().fromJson(stringWriter.toString(), JsonObject.class);
+    assertEquals(4, summary.get("imported").getAsLong());
+    assertEquals(4, summary.get("failed").getAsLong());
+    JsonArray errors = summary.getAsJsonArray("errors");
+    List<Long> failedLines = new ArrayList<>();
+    for (JsonElement error : errors) {
+      failedLines.add(error.getAsJsonObject().get("line").getAsLong());
+    }
+    // Records that cannot be parsed fail as they are read, and records that cannot be written
+    // fail when their batch is committed.
+    assertEquals(Arrays.asList(7L, 8L, 9L, 6L), failedLines);
+
+    Club club = handler.fetchClubFromId("club");
+    assertEquals(GENERATED_ID, club.getCurrentBook().getBookId());
+    assertEquals(2, club.getMemberCount());
+    assertEquals(2, handler.fetchMembersByClubId("club").size());
+  }
+
+  @Test
+  public void doPost_notAdmin() throws IOException {
+    System.setProperty(AuthenticationHelper.ADMIN_USER_IDS_PROPERTY, "other");
+    when(request.getHeader("Authorization"))
+        .thenReturn(AuthenticationHelper.BEARER_PREFIX + ID_TOKEN);
+
+    importServlet.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, ImportServlet.NOT_ADMIN_ERROR);
+  }
+
+  @Test
+  public void doPost_noIdToken() throws IOException {
+    importServlet.doPost(request, response);
+
+    verify(response).sendError(
+        HttpServletResponse.SC_FORBIDDEN, AuthenticationHelper.INVALID_ID_TOKEN_ERROR);
+  }
+}
@@ -17,7 +17,10 @@ package com.google.coffeehouse.servlets;
 import static com.google.coffeehouse.common.MembershipConstants.MembershipStatus;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 
@@ -28,6 +31,7 @@ import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.coffeehouse.common.Book;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.MembershipConstants;
+import com.google.coffeehouse.storagehandler.ClubPage;
 import com.google.coffeehouse.storagehandler.StorageHandlerApi;
 import com.google.coffeehouse.storagehandler.StorageHandler;
 import com.google.coffeehouse.util.AuthenticationHelper;
@@ -39,12 +43,15 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Unit tests for {@link ListClubsServlet}.
@@ -57,6 +64,7 @@ public class ListClubsServletTest {
   private static final String BOOK_TITLE = "Book Name";
   private static final String BOOK_ID = "predetermined-book-identification-string";
   private static final String ID_TOKEN = "Identification Token";
+  private static final String NEXT_PAGE_TOKEN = "next-page-token";
   private List<String> testContentWarnings = new ArrayList<>(Arrays.asList("1", "2"));
   private Book testBook = Book.newBuilder()
                               .setTitle(BOOK_TITLE)
@@ -88,13 +96,15 @@ public class ListClubsServletTest {
     helper.setUp();
 
     memberHandler = mock(StorageHandlerApi.class);
-    when(memberHandler.listClubsFromUserId(
-        anyString(), eq(MembershipStatus.MEMBER))).thenReturn(Arrays.asList(testClub));
+    doAnswer(streamClubs(testClub)).when(memberHandler).streamClubsFromUserId(
+        anyString(), eq(MembershipStatus.MEMBER), any());
 
     notMemberHandler = mock(StorageHandlerApi.class);
-    when(notMemberHandler.listClubsFromUserId(
-        anyString(), eq(MembershipStatus.NOT_MEMBER))).thenReturn(Arrays.asList(testClub));
-
+    doAnswer(streamClubs(testClub)).when(notMemberHandler).streamClubsFromUserId(
+        anyString(), eq(MembershipStatus.NOT_MEMBER), any());
+    when(notMemberHandler.listClubPageFromUserId(
+        anyString(), eq(MembershipStatus.NOT_MEMBER), anyInt(), anyString()))
+        .thenReturn(new ClubPage(Arrays.asList(testClub), NEXT_PAGE_TOKEN));
 
     request = mock(HttpServletRequest.class);
     response = mock(HttpServletResponse.class);
@@ -118,6 +128,18 @@ public class ListClubsServletTest {
     helper.tearDown();
   }
 
+  /** Returns an answer that passes each of the clubs to the consumer argument of the call. */
+  private static Answer<Void> streamClubs(Club... clubs) {
+    return invocation -> {
+      @SuppressWarnings("unchecked")
+      Consumer<Club> consumer = (Consumer<Club>) invocation.getArguments()[2];
+      for (Club club : clubs) {
+        consumer.accept(club);
+      }
+      return null;
+    };
+  }
+
   @Test
   public void doGet_validInputMember() throws IOException {
     listClubsServlet = new ListClubsServlet(verifier, memberHandler);
@@ -236,4 +258,120 @@ public class ListClubsServletTest {
         HttpServletResponse.SC_FORBIDDEN,
         AuthenticationHelper.INVALID_ID_TOKEN_ERROR);
   }
+
+  @Test
+  public void doGet_validPageRequest() throws IOException {
+    listClubsServlet = new ListClubsServlet(verifier, notMemberHandler);
+    when(request.getParameter(eq(ListClubsServlet.ID_TOKEN_PARAMETER))).thenReturn(ID_TOKEN);
+    when(request.getParameter(eq(ListClubsServlet.MEMBERSHIP_STATUS_PARAMETER)))
+        .thenReturn(ListClubsServlet.NOT_MEMBER);
+    when(request.getParameter(eq(ListClubsServlet.PAGE_SIZE_PARAMETER))).thenReturn("1");
+    when(request.getParameter(eq(ListClubsServlet.PAGE_TOKEN_PARAMETER))).thenReturn("token");
+
+    listClubsServlet.doGet(request, response);
+    String result = stringWriter.toString();
+
+    Gson gson = new Gson();
+    ClubPage page = gson.fromJson(result, ClubPage.class);
+
+    verify(notMemberHandler).listClubPageFromUserId(
+        OWNER_ID, MembershipStatus.NOT_MEMBER, /* pageSize= */ 1, "token");
+    assertEquals(1, page.getClubs().size());
+    assertEquals(CLUB_ID, page.getClubs().get(0).getClubId());
+    assertEquals(NEXT_PAGE_TOKEN, page.getNextPageToken());
+  }
+
+  @Test
+  public void doGet_pageSizeNotANumber() throws IOException {
+    listClubsServlet = new ListClubsServlet(verifier, notMemberHandler);
+    when(request.getParameter(eq(ListClubsServlet.ID_TOKEN_PARAMETER))).thenReturn(ID_TOKEN);
+    when(request.getParameter(eq(ListClubsServlet.MEMBERSHIP_STATUS_PARAMETER)))
+        .thenReturn(ListClubsServlet.NOT_MEMBER);
+    when(request.getParameter(eq(ListClubsServlet.PAGE_SIZE_PARAMETER))).thenReturn("ten");
+
+    listClubsServlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        ListClubsServlet.INVALID_PAGE_SIZE_ERROR);
+  }
+
+  @Test
+  public void doGet_pageSizeTooLarge() throws IOException {
+    listClubsServlet = new ListClubsServlet(verifier, notMemberHandler);
+    when(request.getParameter(eq(ListClubsServlet.ID_TOKEN_PARAMETER))).thenReturn(ID_TOKEN);
+    when(request.getParameter(eq(ListClubsServlet.MEMBERSHIP_STATUS_PARAMETER)))
+        .thenReturn(ListClubsServlet.NOT_MEMBER);
+    when(request.getParameter(eq(ListClubsServlet.PAGE_SIZE_PARAMETER)))
+        .thenReturn(String.valueOf(ListClubsServlet.MAX_PAGE_SIZE + 1));
+
+    listClubsServlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST,
+        ListClubsServlet.INVALID_PAGE_SIZE_ERROR);
+  }
+
+  @Test
+  public void doGet_streamsMoreClubsThanOneFlush() throws IOException {
+    int numClubs = ListClubsServlet.CLUBS_PER_FLUSH * 2 + 1;
+    Club[] manyClubs = new Club[numClubs];
+    Arrays.fill(manyClubs, testClub);
+    doAnswer(streamClubs(manyClubs)).when(notMemberHandler).streamClubsFromUserId(
+        anyString(), eq(MembershipStatus.NOT_MEMBER), any());
+    listClubsServlet = new ListClubsServlet(verifier, notMemberHandler);
+    when(request.getParameter(eq(ListClubsServlet.ID_TOKEN_PARAMETER))).thenReturn(ID_TOKEN);
+    when(request.getParameter(eq(ListClubsServlet.MEMBERSHIP_STATUS_PARAMETER)))
+        .thenReturn(ListClubsServlet.NOT_MEMBER);
+
+    listClubsServlet.doGet(request, response);
+    String result = stringWriter.toString();
+
+    Gson gson = new Gson();
+    Club[] clubs = gson.fromJson(result, Club[].class);
+
+    assertEquals(numClubs, clubs.length);
+    verify(response, times(2)).flushBuffer();
+  }
+
+  @Test
+  public void doGet_streamFailsBeforeFirstClub() throws IOException {
+    doThrow(new IllegalStateException("query failed")).when(notMemberHandler)
+        .streamClubsFromUserId(anyString(), eq(MembershipStatus.NOT_MEMBER), any());
+    listClubsServlet = new ListClubsServlet(verifier, notMemberHandler);
+    when(request.getParameter(eq(ListClubsServlet.ID_TOKEN_PARAMETER))).thenReturn(ID_TOKEN);
+    when(request.getParameter(eq(ListClubsServlet.MEMBERSHIP_STATUS_PARAMETER)))
+        .thenReturn(ListClubsServlet.NOT_MEMBER);
+
+    listClubsServlet.doGet(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "query failed");
+  }
+
+  @Test
+  public void doGet_streamFailsAfterFlushAbortsResponse() throws IOException {
+    Club[] flushedClubs = new Club[ListClubsServlet.CLUBS_PER_FLUSH];
+    Arrays.fill(flushedClubs, testClub);
+    doAnswer(invocation -> {
+      streamClubs(flushedClubs).answer(invocation);
+      throw new IllegalStateException("query failed");
+    }).when(notMemberHandler).streamClubsFromUserId(
+        anyString(), eq(MembershipStatus.NOT_MEMBER), any());
+    // The response is committed by the first flush, as it is in the container.
+    AtomicBoolean committed = new AtomicBoolean(false);
+    doAnswer(invocation -> {
+      committed.set(true);
+      return null;
+    }).when(response).flushBuffer();
+    when(response.isCommitted()).thenAnswer(invocation -> committed.get());
+    listClubsServlet = new ListClubsServlet(verifier, notMemberHandler);
+    when(request.getParameter(eq(ListClubsServlet.ID_TOKEN_PARAMETER))).thenReturn(ID_TOKEN);
+    when(request.getParameter(eq(ListClubsServlet.MEMBERSHIP_STATUS_PARAMETER)))
+        .thenReturn(ListClubsServlet.NOT_MEMBER);
+
+    IOException e = assertThrows(IOException.class, () -> {
+      listClubsServlet.doGet(request, response);
+    });
+
+    assertTrue(e.getCause() instanceof IllegalStateException);
+    verify(response, times(0)).sendError(anyInt(), anyString());
+  }
 }
@@ -16,6 +16,7 @@ package com.google.coffeehouse.servlets;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
@@ -27,6 +28,7 @@ import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.coffeehouse.servlets.RetrieveTokenServlet;
+import com.google.coffeehouse.util.SessionTokens;
 import com.google.gson.Gson;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -34,11 +36,13 @@ import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.security.GeneralSecurityException;
+import java.util.Base64;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
 /**
@@ -60,11 +64,14 @@ public class RetrieveTokenServletTest {
       "  \"" + RetrieveTokenServlet.CODE_KEY_NAME + "\":\"123\"",
       "}");
   private static final String SYNTACTICALLY_INCORRECT_JSON = "{\"}";
+  private static final String KEYRING =
+      "key1:" + Base64.getEncoder().encodeToString(new byte[SessionTokens.MIN_KEY_BYTES]);
 
   private RetrieveTokenServlet retrieveTokenServlet;
   private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
   private StringWriter stringWriter = new StringWriter();
   private static final Gson gson = new Gson();
+  private final SessionTokens sessionTokens = new SessionTokens(KEYRING);
 
   @Mock private HttpServletRequest request;
   @Mock private HttpServletResponse response;
@@ -109,10 +116,14 @@ public class RetrieveTokenServletTest {
           new BufferedReader(new StringReader(VALID_JSON)));
     when(verifier.verify(any(String.class))).thenReturn(idToken);
 
-    retrieveTokenServlet = new RetrieveTokenServlet(verifier, tokenRequest);
+    retrieveTokenServlet = new RetrieveTokenServlet(verifier, () -> tokenRequest, sessionTokens);
     retrieveTokenServlet.doPost(request, response);
     String actual = stringWriter.toString();
     assertEquals(ID_TOKEN + "\n", actual);
+    ArgumentCaptor<String> sessionToken = ArgumentCaptor.forClass(String.class);
+    verify(response).setHeader(
+        eq(RetrieveTokenServlet.SESSION_TOKEN_HEADER), sessionToken.capture());
+    assertEquals(ID_TOKEN, sessionTokens.verify(sessionToken.getValue()));
   }
 
   @Test
@@ -121,7 +132,7 @@ public class RetrieveTokenServletTest {
           new BufferedReader(new StringReader(VALID_JSON)));
     when(verifier.verify(any(String.class))).thenReturn(null);
 
-    retrieveTokenServlet = new RetrieveTokenServlet(verifier, tokenRequest);
+    retrieveTokenServlet = new RetrieveTokenServlet(verifier, () -> tokenRequest, sessionTokens);
     retrieveTokenServlet.doPost(request, response);
 
     verify(response).sendError(
@@ -134,7 +145,7 @@ public class RetrieveTokenServletTest {
           new BufferedReader(new StringReader(NO_CODE_JSON)));
     when(verifier.verify(any(String.class))).thenReturn(idToken);
 
-    retrieveTokenServlet = new RetrieveTokenServlet(verifier, tokenRequest);
+    retrieveTokenServlet = new RetrieveTokenServlet(verifier, () -> tokenRequest, sessionTokens);
     retrieveTokenServlet.doPost(request, response);
 
     verify(response).sendError(
@@ -147,7 +158,7 @@ public class RetrieveTokenServletTest {
           new BufferedReader(new StringReader(NO_REDIRECT_URI_JSON)));
     when(verifier.verify(any(String.class))).thenReturn(idToken);
 
-    retrieveTokenServlet = new RetrieveTokenServlet(verifier, tokenRequest);
+    retrieveTokenServlet = new RetrieveTokenServlet(verifier, () -> tokenRequest, sessionTokens);
     retrieveTokenServlet.doPost(request, response);
 
     verify(response).sendError(
@@ -160,7 +171,7 @@ public class RetrieveTokenServletTest {
           new BufferedReader(new StringReader(SYNTACTICALLY_INCORRECT_JSON)));
     when(verifier.verify(any(String.class))).thenReturn(idToken);
 
-    retrieveTokenServlet = new RetrieveTokenServlet(verifier, tokenRequest);
+    retrieveTokenServlet = new RetrieveTokenServlet(verifier, () -> tokenRequest, sessionTokens);
     retrieveTokenServlet.doPost(request, response);
 
     verify(response).sendError(
@@ -0,0 +1,87 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.storagehandler.TransactionMetrics;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link TransactionStatsServlet}.
+ */
+public class TransactionStatsServletTest {
+  private TransactionStatsServlet transactionStatsServlet;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+  private StringWriter stringWriter = new StringWriter();
+
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  @Mock private StorageHandlerApi handler;
+
+  @Before
+  public void setUp() throws IOException {
+    helper.setUp();
+
+    TransactionMetrics metrics = new TransactionMetrics();
+    metrics.recordAttempt("addMembership");
+    metrics.recordAbort("addMembership");
+    metrics.recordAttempt("addMembership");
+    metrics.recordCommit("addMembership", TimeUnit.MILLISECONDS.toNanos(4));
+
+    handler = mock(StorageHandlerApi.class);
+    when(handler.getTransactionStats()).thenReturn(metrics.getStats());
+    transactionStatsServlet = new TransactionStatsServlet(handler);
+
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void doGet_returnsCounters() throws IOException {
+    transactionStatsServlet.doGet(request, response);
+    String result = stringWriter.toString();
+
+    JsonObject addMembership =
+        new Gson().fromJson(result, JsonObject.class).getAsJsonObject("addMembership");
+    assertEquals(2, addMembership.get("attempts").getAsLong());
+    assertEquals(1, addMembership.get("aborts").getAsLong());
+    assertEquals(1, addMembership.get("commits").getAsLong());
+    assertEquals(0, addMembership.get("failures").getAsLong());
+    assertEquals(4000, addMembership.get("meanCommitMicros").getAsLong());
+    assertEquals(4000, addMembership.get("maxCommitMicros").getAsLong());
+  }
+}
@@ -27,6 +27,8 @@ import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.cloud.Timestamp;
+import com.google.cloud.spanner.TimestampBound;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.Book;
 import com.google.coffeehouse.common.Person;
@@ -197,7 +199,8 @@ public class UpdateClubServletTest {
 
     handler = spy(StorageHandlerApi.class);
     doNothing().when(handler).writeMutations(anyList());
-    doReturn(testClub).when(handler).fetchClubFromId(anyString());
+    doReturn(Timestamp.now()).when(handler).updateClub(any(Club.class));
+    doReturn(testClub).when(handler).fetchClubFromId(anyString(), any(TimestampBound.class));
 
     request = mock(HttpServletRequest.class);
     response = mock(HttpServletResponse.class);
@@ -249,6 +252,7 @@ public class UpdateClubServletTest {
     assertEquals(AUTHOR, c.getCurrentBook().getAuthor().get());
     assertEquals(ISBN, c.getCurrentBook().getIsbn().get());
     assertEquals(BOOK_ID, c.getCurrentBook().getBookId());
+    verify(handler).updateClub(any(Club.class));
   }
 
   @Test
@@ -0,0 +1,100 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.servlets;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.googleapis.auth.oauth2.GooglePublicKeysManager;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.coffeehouse.storagehandler.StorageHandlerApi;
+import com.google.coffeehouse.util.RefreshingIdTokenVerifier;
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+/**
+ * Unit tests for {@link WarmupServlet}.
+ */
+public class WarmupServletTest {
+  private WarmupServlet warmupServlet;
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  @Mock private HttpServletRequest request;
+  @Mock private HttpServletResponse response;
+  @Mock private GoogleIdTokenVerifier verifier;
+  @Mock private GooglePublicKeysManager publicKeysManager;
+  @Mock private StorageHandlerApi handler;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    verifier = mock(GoogleIdTokenVerifier.class);
+    publicKeysManager = mock(GooglePublicKeysManager.class);
+    handler = mock(StorageHandlerApi.class);
+    when(verifier.getPublicKeysManager()).thenReturn(publicKeysManager);
+    warmupServlet = new WarmupServlet(verifier, handler);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void doGet_warmsStorageAndVerifier() throws Exception {
+    warmupServlet.doGet(request, response);
+    verify(handler).warmUp();
+    verify(publicKeysManager).refresh();
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+
+  @Test
+  public void doGet_storageFailureStillFetchesKeys() throws Exception {
+    doThrow(new IllegalStateException("no sessions")).when(handler).warmUp();
+    warmupServlet.doGet(request, response);
+    verify(publicKeysManager).refresh();
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+
+  @Test
+  public void doGet_keyFetchFailureStillSucceeds() throws Exception {
+    when(publicKeysManager.refresh()).thenThrow(new IOException("offline"));
+    warmupServlet.doGet(request, response);
+    verify(handler).warmUp();
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+
+  @Test
+  public void doGet_refreshingVerifierDownloadsTheKeysItVerifiesWith() throws Exception {
+    RefreshingIdTokenVerifier refreshingVerifier = mock(RefreshingIdTokenVerifier.class);
+    when(refreshingVerifier.getPublicKeysManager()).thenReturn(publicKeysManager);
+    warmupServlet = new WarmupServlet(refreshingVerifier, handler);
+    warmupServlet.doGet(request, response);
+    verify(refreshingVerifier).refreshKeys();
+    verify(publicKeysManager, never()).refresh();
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+}
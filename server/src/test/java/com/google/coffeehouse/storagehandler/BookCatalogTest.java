@@ -0,0 +1,76 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+
+import com.google.coffeehouse.common.Book;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The BookCatalogTest class runs tests to verify the ISBN normalization and catalog keys of
+* the book catalog.
+*/
+@RunWith(JUnit4.class)
+public class BookCatalogTest {
+  @Test
+  public void normalizeIsbn_convertsIsbn10() throws Exception {
+    assertEquals("9780306406157", BookCatalog.normalizeIsbn("0-306-40615-2"));
+    assertEquals("9780804429573", BookCatalog.normalizeIsbn("080442957X"));
+  }
+
+  @Test
+  public void normalizeIsbn_keepsIsbn13() throws Exception {
+    assertEquals("9780306406157", BookCatalog.normalizeIsbn("978-0-306-40615-7"));
+    assertEquals("9780306406157", BookCatalog.normalizeIsbn(" 978 0306406157 "));
+  }
+
+  @Test
+  public void normalizeIsbn_invalid() throws Exception {
+    assertNull(BookCatalog.normalizeIsbn(null));
+    assertNull(BookCatalog.normalizeIsbn("0-306-40615-3"));
+    assertNull(BookCatalog.normalizeIsbn("978-0-306-40615-8"));
+    assertNull(BookCatalog.normalizeIsbn("123"));
+  }
+
+  @Test
+  public void catalogKey_sameForIsbn10AndIsbn13() throws Exception {
+    assertEquals(
+        BookCatalog.catalogKey(book("A Title", null, "0-306-40615-2")),
+        BookCatalog.catalogKey(book("Another Title", null, "9780306406157")));
+  }
+
+  @Test
+  public void catalogKey_fallsBackToTitleAndAuthor() throws Exception {
+    assertEquals(
+        BookCatalog.catalogKey(book("The  Title ", "An Author", "not an isbn")),
+        BookCatalog.catalogKey(book("the title", "an author", null)));
+    assertNotEquals(
+        BookCatalog.catalogKey(book("the title", "an author", null)),
+        BookCatalog.catalogKey(book("the title", "another author", null)));
+  }
+
+  private static Book book(String title, String author, String isbn) {
+    return Book.newBuilder()
+               .setTitle(title)
+               .setAuthor(author)
+               .setIsbn(isbn)
+               .setBookId("book")
+               .setStorageHandler(new StorageHandlerApi(new InMemoryStorageBackend()))
+               .build();
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.SpannerExceptionFactory;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.MembershipConstants;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The BulkWriterTest class runs tests against the {@link InMemoryStorageBackend} to verify that
+* records are committed in batches that respect the mutation limit, and that a bad record fails
+* alone.
+*/
+@RunWith(JUnit4.class)
+public class BulkWriterTest {
+  private InMemoryStorageBackend backend;
+  private List<Long> failedRecords;
+
+  @Before
+  public void setUp() {
+    backend = new InMemoryStorageBackend();
+    backend.write(Arrays.asList(
+        Mutation.newInsertBuilder("Books")
+            .set("bookId").to("book")
+            .set("title").to("title")
+            .build(),
+        Mutation.newInsertBuilder("Clubs")
+            .set("clubId").to("club")
+            .set("bookId").to("book")
+            .set("name").to("club")
+            .set("ownerId").to("owner")
+            .set("memberCount").to(1)
+            .build(),
+        StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
+            "owner", "club", MembershipConstants.OWNER)));
+    failedRecords = new ArrayList<>();
+  }
+
+  @Test
+  public void add_commitsWhenTheNextRecordDoesNotFit() throws Exception {
+    // Each person mutation has three columns, so two records fit in a commit.
+    BulkWriter writer = newWriter(/* maxMutations= */ 7);
+    for (int i = 0; i < 5; i++) {
+      writer.add(i, Collections.singletonList(personMutation("person" + i)));
+    }
+    assertEquals(2, writer.getCommits());
+    writer.flush();
+
+    assertEquals(3, writer.getCommits());
+    assertEquals(5, writer.getWrittenRecords());
+    assertEquals(5, backend.getPersons(Arrays.asList(
+        "person0", "person1", "person2", "person3", "person4")).size());
+  }
+
+  @Test
+  public void flush_badRecordFailsAlone() throws Exception {
+    BulkWriter writer = newWriter(/* maxMutations= */ 100);
+    writer.addMembership(1, "memberA", "club", MembershipConstants.MEMBER);
+    writer.addMembership(2, "owner", "club", MembershipConstants.MEMBER);
+    writer.addMembership(3, "memberB", "club", MembershipConstants.MEMBER);
+    writer.flush();
+
+    assertEquals(Collections.singletonList(2L), failedRecords);
+    assertEquals(2, writer.getWrittenRecords());
+    assertEquals(3, backend.getListOfMembers("club").size());
+  }
+
+  @Test
+  public void flush_recountsTheClubsOfAddedMemberships() throws Exception {
+    BulkWriter writer = newWriter(/* maxMutations= */ 100);
+    writer.addMembership(1, "memberA", "club", MembershipConstants.MEMBER);
+    writer.addMembership(2, "memberB", "club", MembershipConstants.MEMBER);
+    writer.flush();
+
+    assertEquals(3, backend.getClub("club", TimestampBound.strong()).getMemberCount());
+    assertEquals(2, backend.readOutbox(10).size());
+  }
+
+  @Test
+  public void flush_failedRecountIsReportedAndOtherClubsAreRecounted() throws Exception {
+    backend.write(Arrays.asList(
+        Mutation.newInsertBuilder("Clubs")
+            .set("clubId").to("otherClub")
+            .set("bookId").to("book")
+            .set("name").to("otherClub")
+            .set("ownerId").to("owner")
+            .set("memberCount").to(0)
+            .build()));
+    backend = spy(backend);
+    doThrow(SpannerExceptionFactory.newSpannerException(ErrorCode.UNAVAILABLE, "unavailable"))
+        .when(backend).recountMembers("club");
+    List<String> staleClubIds = new ArrayList<>();
+    BulkWriter writer = new BulkWriter(
+        backend, new StorageHandlerCache(), /* maxMutations= */ 100, /* maxAttempts= */ 3,
+        /* backoffMillis= */ 1, new BulkWriter.FailureListener() {
+          @Override
+          public void onFailure(long recordNumber, RuntimeException e) {
+            failedRecords.add(recordNumber);
+          }
+
+          @Override
+          public void onRecountFailure(String clubId, RuntimeException e) {
+            staleClubIds.add(clubId);
+          }
+        });
+    writer.addMembership(1, "memberA", "club", MembershipConstants.MEMBER);
+    writer.addMembership(2, "memberA", "otherClub", MembershipConstants.MEMBER);
+    writer.flush();
+
+    assertTrue(failedRecords.isEmpty());
+    assertEquals(2, writer.getWrittenRecords());
+    assertEquals(Collections.singletonList("club"), staleClubIds);
+    assertEquals(1, backend.getClub("otherClub", TimestampBound.strong()).getMemberCount());
+  }
+
+  @Test
+  public void flush_retriesTheWholeCommitOnTransientErrors() throws Exception {
+    backend = spy(backend);
+    doThrow(SpannerExceptionFactory.newSpannerException(ErrorCode.ABORTED, "aborted"))
+        .doThrow(SpannerExceptionFactory.newSpannerException(ErrorCode.UNAVAILABLE, "unavailable"))
+        .doCallRealMethod()
+        .when(backend).write(anyList());
+    BulkWriter writer = newWriter(/* maxMutations= */ 100);
+    for (int i = 0; i < 3; i++) {
+      writer.add(i, Collections.singletonList(personMutation("person" + i)));
+    }
+    writer.flush();
+
+    assertTrue(failedRecords.isEmpty());
+    assertEquals(3, writer.getCommits());
+    assertEquals(3, writer.getWrittenRecords());
+  }
+
+  @Test
+  public void flush_failsEveryRecordWhenTheDatabaseKeepsFailing() throws Exception {
+    backend = spy(backend);
+    doThrow(SpannerExceptionFactory.newSpannerException(ErrorCode.UNAVAILABLE, "unavailable"))
+        .when(backend).write(anyList());
+    BulkWriter writer = newWriter(/* maxMutations= */ 100);
+    writer.add(1, Collections.singletonList(personMutation("personA")));
+    writer.add(2, Collections.singletonList(personMutation("personB")));
+    writer.flush();
+
+    // The commit is attempted three times and never split into one commit per record.
+    assertEquals(Arrays.asList(1L, 2L), failedRecords);
+    assertEquals(3, writer.getCommits());
+    assertEquals(0, writer.getWrittenRecords());
+  }
+
+  @Test
+  public void add_recordLargerThanACommitFails() throws Exception {
+    BulkWriter writer = newWriter(/* maxMutations= */ 2);
+    writer.add(1, Collections.singletonList(personMutation("person")));
+    writer.flush();
+
+    assertEquals(Collections.singletonList(1L), failedRecords);
+    assertEquals(0, writer.getCommits());
+  }
+
+  private BulkWriter newWriter(int maxMutations) {
+    return new BulkWriter(
+        backend, new StorageHandlerCache(), maxMutations, /* maxAttempts= */ 3,
+        /* backoffMillis= */ 1, (recordNumber, e) -> failedRecords.add(recordNumber));
+  }
+
+  private static Mutation personMutation(String userId) {
+    return Mutation.newInsertBuilder("Persons")
+        .set("userId").to(userId)
+        .set("email").to("person@test.com")
+        .set("nickname").to("person")
+        .build();
+  }
+}
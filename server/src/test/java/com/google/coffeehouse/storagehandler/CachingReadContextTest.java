@@ -0,0 +1,113 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.Struct;
+import com.google.coffeehouse.common.MembershipConstants;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+/**
+* The CachingReadContextTest class runs tests to verify that rows are read from the wrapped read
+* context once per transaction, with the union of the requested columns.
+*/
+@RunWith(JUnit4.class)
+public class CachingReadContextTest {
+  private static final Key MEMBERSHIP_KEY = Key.of("person", "club");
+
+  private ReadContext readContext;
+
+  @Before
+  public void setUp() {
+    readContext = mock(ReadContext.class);
+  }
+
+  @Test
+  public void readRow_prefetchedColumnsServeLaterReads() throws Exception {
+    when(readContext.readRow(eq("Memberships"), eq(MEMBERSHIP_KEY), any()))
+        .thenReturn(membershipRow(MembershipConstants.OWNER));
+    CachingReadContext rowCache = new CachingReadContext(readContext)
+        .prefetchColumns("Memberships", StorageHandlerHelper.MEMBERSHIP_CHECK_COLUMNS);
+
+    assertTrue(StorageHandlerHelper.checkAnyMembership(rowCache, "person", "club"));
+    assertTrue(StorageHandlerHelper.checkOwnership(rowCache, "person", "club"));
+
+    ArgumentCaptor<Iterable> columns = ArgumentCaptor.forClass(Iterable.class);
+    verify(readContext, times(1)).readRow(eq("Memberships"), eq(MEMBERSHIP_KEY), columns.capture());
+    assertEquals(Arrays.asList("userId", "membershipType"), columns.getValue());
+  }
+
+  @Test
+  public void readRow_missingColumnsReadTheUnion() throws Exception {
+    when(readContext.readRow(eq("Memberships"), eq(MEMBERSHIP_KEY), any()))
+        .thenReturn(membershipRow(MembershipConstants.MEMBER));
+    CachingReadContext rowCache = new CachingReadContext(readContext);
+
+    rowCache.readRow("Memberships", MEMBERSHIP_KEY, Arrays.asList("userId"));
+    rowCache.readRow("Memberships", MEMBERSHIP_KEY, Arrays.asList("membershipType"));
+    rowCache.readRow("Memberships", MEMBERSHIP_KEY, Arrays.asList("userId", "membershipType"));
+
+    ArgumentCaptor<Iterable> columns = ArgumentCaptor.forClass(Iterable.class);
+    verify(readContext, times(2)).readRow(eq("Memberships"), eq(MEMBERSHIP_KEY), columns.capture());
+    List<Iterable> reads = columns.getAllValues();
+    assertEquals(Arrays.asList("userId"), reads.get(0));
+    assertEquals(Arrays.asList("membershipType", "userId"), reads.get(1));
+  }
+
+  @Test
+  public void readRow_missingRowIsCached() throws Exception {
+    when(readContext.readRow(anyString(), any(Key.class), any())).thenReturn(null);
+    CachingReadContext rowCache = new CachingReadContext(readContext)
+        .prefetchColumns("Memberships", StorageHandlerHelper.MEMBERSHIP_CHECK_COLUMNS);
+
+    assertFalse(StorageHandlerHelper.checkAnyMembership(rowCache, "person", "club"));
+    assertFalse(StorageHandlerHelper.checkOwnership(rowCache, "person", "club"));
+    verify(readContext, times(1)).readRow(anyString(), any(Key.class), any());
+  }
+
+  @Test
+  public void readRow_differentKeysAreReadSeparately() throws Exception {
+    when(readContext.readRow(anyString(), any(Key.class), any()))
+        .thenReturn(membershipRow(MembershipConstants.MEMBER));
+    CachingReadContext rowCache = new CachingReadContext(readContext);
+
+    StorageHandlerHelper.checkAnyMembership(rowCache, "person", "club");
+    StorageHandlerHelper.checkAnyMembership(rowCache, "person", "otherClub");
+    verify(readContext, times(2)).readRow(anyString(), any(Key.class), any());
+  }
+
+  private static Struct membershipRow(int membershipType) {
+    return Struct.newBuilder()
+        .set("userId").to("person")
+        .set("membershipType").to(membershipType)
+        .build();
+  }
+}
@@ -0,0 +1,155 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The EntityCacheTest class runs tests to verify the hits, misses, evictions and invalidations
+* of the entity cache.
+*/
+@RunWith(JUnit4.class)
+public class EntityCacheTest {
+  private AtomicLong now;
+  private AtomicInteger loads;
+  private EntityCache<String> cache;
+
+  @Before
+  public void setUp() {
+    now = new AtomicLong(0);
+    loads = new AtomicInteger(0);
+    cache = new EntityCache<>(10, TimeUnit.SECONDS, /* maxEntries= */ 2, now::get);
+  }
+
+  private String load(String id) {
+    loads.incrementAndGet();
+    return "value-" + id;
+  }
+
+  @Test
+  public void get_secondReadIsHit() throws Exception {
+    assertEquals("value-a", cache.get("a", this::load));
+    assertEquals("value-a", cache.get("a", this::load));
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getStats().getHits());
+    assertEquals(1, cache.getStats().getMisses());
+  }
+
+  @Test
+  public void get_expiredEntryIsReloaded() throws Exception {
+    cache.get("a", this::load);
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    cache.get("a", this::load);
+    assertEquals(2, loads.get());
+    assertEquals(1, cache.getStats().getExpirations());
+  }
+
+  @Test
+  public void get_entryOlderThanMaxAgeIsReloaded() throws Exception {
+    cache.get("a", this::load);
+    now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+    cache.get("a", 6, TimeUnit.SECONDS, this::load);
+    assertEquals(1, loads.get());
+
+    cache.get("a", 5, TimeUnit.SECONDS, this::load);
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.getStats().getExpirations());
+
+    // The reloaded entry replaced the old one, so it is fresh for the same maximum age.
+    cache.get("a", 5, TimeUnit.SECONDS, this::load);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void get_leastRecentlyUsedIsEvicted() throws Exception {
+    cache.get("a", this::load);
+    cache.get("b", this::load);
+    cache.get("a", this::load);
+    cache.get("c", this::load);
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getStats().getEvictions());
+
+    // "b" was the least recently used, so it is the one that must be loaded again.
+    cache.get("a", this::load);
+    assertEquals(3, loads.get());
+    cache.get("b", this::load);
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void get_failedLoadIsNotCached() throws Exception {
+    assertThrows(IllegalArgumentException.class, () -> {
+      cache.get("a", id -> {
+        throw new IllegalArgumentException();
+      });
+    });
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidate_removesEntry() throws Exception {
+    cache.get("a", this::load);
+    cache.invalidate("a");
+    cache.get("a", this::load);
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void invalidateIf_removesMatchingEntries() throws Exception {
+    cache.get("a", this::load);
+    cache.get("b", this::load);
+    cache.invalidateIf(value -> value.equals("value-a"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void get_loadRacingInvalidationIsNotCached() throws Exception {
+    cache.get("a", id -> {
+      // A write invalidates the entry while this (now stale) read is in flight.
+      cache.invalidate(id);
+      return load(id);
+    });
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void getAll_loadsOnlyMissingIdsInOneBatch() throws Exception {
+    cache.get("a", this::load);
+    AtomicInteger batches = new AtomicInteger(0);
+    Map<String, String> actual = cache.getAll(Arrays.asList("a", "b", "missing"), ids -> {
+      batches.incrementAndGet();
+      assertEquals(Arrays.asList("b", "missing"), ids);
+      Map<String, String> loaded = new HashMap<>();
+      loaded.put("b", load("b"));
+      return loaded;
+    });
+    assertEquals(1, batches.get());
+    assertEquals(2, actual.size());
+    assertEquals("value-a", actual.get("a"));
+    assertEquals("value-b", actual.get("b"));
+    assertFalse(actual.containsKey("missing"));
+  }
+}
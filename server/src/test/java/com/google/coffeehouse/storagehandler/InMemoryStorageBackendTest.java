@@ -0,0 +1,535 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.cloud.spanner.Key;
+import com.google.cloud.spanner.KeyRange;
+import com.google.cloud.spanner.KeySet;
+import com.google.cloud.spanner.Mutation;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.Book;
+import com.google.coffeehouse.common.Club;
+import com.google.coffeehouse.common.MembershipConstants;
+import com.google.coffeehouse.common.Person;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The InMemoryStorageBackendTest class runs tests to verify that the in-memory backend reads,
+* writes and runs the membership transactions the way the Cloud Spanner backend does.
+*/
+@RunWith(JUnit4.class)
+public class InMemoryStorageBackendTest {
+  private InMemoryStorageBackend backend;
+
+  @Before
+  public void setUp() {
+    backend = new InMemoryStorageBackend();
+    backend.write(Arrays.asList(
+        personMutation("person"),
+        personMutation("owner"),
+        bookMutation("book"),
+        clubMutation("clubA", "book"),
+        clubMutation("clubB", "book"),
+        clubMutation("clubC", "book"),
+        StorageHandlerCommonMutations.addAnyMembershipTypeMutation(
+            "owner", "clubA", MembershipConstants.OWNER)));
+  }
+
+  @Test
+  public void getClub_includesBookAndContentWarnings() throws Exception {
+    Club club = backend.getClub("clubA", TimestampBound.strong());
+    assertEquals("clubA", club.getClubId());
+    assertEquals("owner", club.getOwnerId());
+    assertEquals(Arrays.asList("warning1", "warning2"), club.getContentWarnings());
+    assertEquals("title", club.getCurrentBook().getTitle());
+    assertFalse(club.getCurrentBook().getIsbn().isPresent());
+  }
+
+  @Test
+  public void getClub_doesNotExist() throws Exception {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      backend.getClub("clubNotInDb", TimestampBound.strong());
+    });
+    assertEquals(StorageHandler.CLUB_DOES_NOT_EXIST, e.getMessage());
+  }
+
+  @Test
+  public void getPersons_missingIdsAreAbsent() throws Exception {
+    Map<String, Person> persons = backend.getPersons(Arrays.asList("person", "missing"));
+    assertEquals(1, persons.size());
+    assertEquals("person", persons.get("person").getUserId());
+    assertFalse(persons.get("person").getPronouns().isPresent());
+  }
+
+  @Test
+  public void addAnyMembershipType_alreadyInClub() throws Exception {
+    backend.addAnyMembershipType("person", "clubA", MembershipConstants.MEMBER);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      backend.addAnyMembershipType("person", "clubA", MembershipConstants.MEMBER);
+    });
+    assertEquals(MembershipConstants.PERSON_ALREADY_IN_CLUB, e.getMessage());
+  }
+
+  @Test
+  public void deleteMembership_ownerCanNotLeave() throws Exception {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      backend.deleteMembership("owner", "clubA");
+    });
+    assertEquals(MembershipConstants.OWNER_CAN_NOT_LEAVE_CLUB, e.getMessage());
+  }
+
+  @Test
+  public void deleteMembership_notInClub() throws Exception {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      backend.deleteMembership("person", "clubA");
+    });
+    assertEquals(MembershipConstants.PERSON_NOT_IN_CLUB, e.getMessage());
+  }
+
+  @Test
+  public void getListOfMembers_orderedByUserId() throws Exception {
+    backend.addAnyMembershipType("person", "clubA", MembershipConstants.MEMBER);
+    List<Person> members = backend.getListOfMembers("clubA");
+    assertEquals(2, members.size());
+    assertEquals("owner", members.get(0).getUserId());
+    assertEquals("person", members.get(1).getUserId());
+
+    backend.deleteMembership("person", "clubA");
+    assertEquals(1, backend.getListOfMembers("clubA").size());
+  }
+
+  @Test
+  public void getListOfMembers_noMembers() throws Exception {
+    assertThrows(IllegalStateException.class, () -> backend.getListOfMembers("clubB"));
+  }
+
+  @Test
+  public void getListOfClubs_memberAndNotMember() throws Exception {
+    List<Club> member = backend.getListOfClubs(
+        "owner", MembershipConstants.MembershipStatus.MEMBER, TimestampBound.strong());
+    List<Club> notMember = backend.getListOfClubs(
+        "owner", MembershipConstants.MembershipStatus.NOT_MEMBER, TimestampBound.strong());
+    assertEquals(Arrays.asList("clubA"), clubIds(member));
+    assertEquals(Arrays.asList("clubB", "clubC"), clubIds(notMember));
+  }
+
+  @Test
+  public void getListOfClubs_clubWithMissingBook() throws Exception {
+    backend.write(Arrays.asList(clubMutation("noBook", "bookNotInDb")));
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      backend.getListOfClubs(
+          "owner", MembershipConstants.MembershipStatus.NOT_MEMBER, TimestampBound.strong());
+    });
+    assertEquals(StorageHandler.BOOK_DOES_NOT_EXIST, e.getMessage());
+  }
+
+  @Test
+  public void storageHandlerApi_staleReadMissUsesBoundAndIsCached() throws Exception {
+    InMemoryStorageBackend spiedBackend = spy(backend);
+    StorageHandlerApi api = new StorageHandlerApi(spiedBackend);
+
+    Club club = api.fetchClubFromId("clubA");
+    Book book = api.fetchBookFromId("book");
+
+    assertEquals("clubA", club.getClubId());
+    assertEquals("book", book.getBookId());
+    verify(spiedBackend).getClub("clubA", StorageHandlerApi.DEFAULT_STALENESS);
+    // The club's own read of its book goes through the spy too.
+    verify(spiedBackend, atLeastOnce()).getBook("book", StorageHandlerApi.DEFAULT_STALENESS);
+    assertSame(club, api.fetchClubFromId("clubA"));
+    verify(spiedBackend, times(1)).getClub("clubA", StorageHandlerApi.DEFAULT_STALENESS);
+  }
+
+  @Test
+  public void getPageOfClubs_pagesThroughClubsInOrder() throws Exception {
+    ClubPage first = backend.getPageOfClubs(
+        "person", MembershipConstants.MembershipStatus.NOT_MEMBER,
+        /* pageSize= */ 2, /* pageToken= */ null, TimestampBound.strong());
+    assertEquals(Arrays.asList("clubA", "clubB"), clubIds(first.getClubs()));
+    assertNotNull(first.getNextPageToken());
+
+    ClubPage second = backend.getPageOfClubs(
+        "person", MembershipConstants.MembershipStatus.NOT_MEMBER,
+        /* pageSize= */ 2, first.getNextPageToken(), TimestampBound.strong());
+    assertEquals(Arrays.asList("clubC"), clubIds(second.getClubs()));
+    assertNull(second.getNextPageToken());
+  }
+
+  @Test
+  public void write_failedBatchIsRolledBack() throws Exception {
+    assertThrows(SpannerException.class, () -> {
+      backend.write(Arrays.asList(
+          personMutation("newPerson"),
+          Mutation.newInsertBuilder("Books")
+              .set("bookId").to("book")
+              .set("title").to("duplicate")
+              .build()));
+    });
+    assertTrue(backend.getPersons(Arrays.asList("newPerson")).isEmpty());
+    assertEquals("title", backend.getBook("book", TimestampBound.strong()).getTitle());
+  }
+
+  @Test
+  public void write_deletesKeyRange() throws Exception {
+    backend.write(Arrays.asList(Mutation.delete("Clubs",
+        KeySet.range(KeyRange.closedOpen(Key.of("clubA"), Key.of("clubC"))))));
+    Map<String, Club> clubs = backend.getClubs(Arrays.asList("clubA", "clubB", "clubC"));
+    assertEquals(1, clubs.size());
+    assertTrue(clubs.containsKey("clubC"));
+  }
+
+  @Test
+  public void addAnyMembershipType_concurrentJoinsAddOneMembership() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Boolean>> joins = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      joins.add(executor.submit(() -> {
+        try {
+          backend.addAnyMembershipType("person", "clubB", MembershipConstants.MEMBER);
+          return true;
+        } catch (IllegalArgumentException e) {
+          return false;
+        }
+      }));
+    }
+    int successfulJoins = 0;
+    for (Future<Boolean> join : joins) {
+      if (join.get(10, TimeUnit.SECONDS)) {
+        successfulJoins++;
+      }
+    }
+    executor.shutdown();
+    assertEquals(1, successfulJoins);
+    assertEquals(1, backend.getListOfMembers("clubB").size());
+  }
+
+  @Test
+  public void storageHandlerApi_savesAndFetchesThroughBackend() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    Book book = Book.newBuilder()
+                    .setTitle("saved title")
+                    .setBookId("savedBook")
+                    .setStorageHandler(api)
+                    .build();
+    Club club = Club.newBuilder()
+                    .setName("saved club")
+                    .setCurrentBook(book)
+                    .setOwnerId("owner")
+                    .setClubId("savedClub")
+                    .setDescription("description")
+                    .setContentWarnings(new ArrayList<>())
+                    .setStorageHandler(api)
+                    .build();
+    club.save();
+    api.addOwnership("owner", "savedClub");
+
+    Club fetched = api.fetchClubFromId("savedClub");
+    assertEquals("saved club", fetched.getName());
+    assertEquals("saved title", fetched.getCurrentBook().getTitle());
+    assertEquals(1, api.fetchMembersByClubId("savedClub").size());
+  }
+
+  @Test
+  public void storageHandlerApi_createClubWritesClubBookAndOwnerTogether() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    Book book = Book.newBuilder()
+                    .setTitle("created title")
+                    .setBookId("createdBook")
+                    .setStorageHandler(api)
+                    .build();
+    Club club = Club.newBuilder()
+                    .setName("created club")
+                    .setCurrentBook(book)
+                    .setOwnerId("owner")
+                    .setClubId("createdClub")
+                    .setContentWarnings(new ArrayList<>())
+                    .setStorageHandler(api)
+                    .build();
+    assertNotNull(api.createClub(club));
+
+    Club created = api.fetchClubFromId("createdClub");
+    assertEquals("created title", created.getCurrentBook().getTitle());
+    assertEquals(1, created.getMemberCount());
+    List<Person> members = api.fetchMembersByClubId("createdClub");
+    assertEquals(1, members.size());
+    assertEquals("owner", members.get(0).getUserId());
+  }
+
+  @Test
+  public void storageHandlerApi_staleReadSkipsClubOlderThanBound() throws Exception {
+    InMemoryStorageBackend spiedBackend = spy(backend);
+    StorageHandlerApi api = new StorageHandlerApi(spiedBackend);
+    TimestampBound noStaleness = TimestampBound.ofMaxStaleness(0, TimeUnit.SECONDS);
+    api.fetchClubFromId("clubA");
+    api.fetchClubFromId("clubA", noStaleness);
+
+    verify(spiedBackend).getClub("clubA", noStaleness);
+  }
+
+  @Test
+  public void storageHandlerApi_createClubSharesBookWithSameIsbn() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    api.createClub(newClub(api, "firstClub", "firstBook", "0-306-40615-2"));
+    Club second = newClub(api, "secondClub", "secondBook", "978-0-306-40615-7");
+    api.createClub(second);
+
+    assertEquals("firstBook", second.getCurrentBook().getBookId());
+    assertEquals("firstBook", api.fetchClubFromId("secondClub").getCurrentBook().getBookId());
+    assertEquals("9780306406157", api.fetchBookFromId("firstBook").getIsbn().get());
+    assertTrue(api.fetchBooksByIds(Arrays.asList("secondBook")).isEmpty());
+  }
+
+  @Test
+  public void storageHandlerApi_updateClubDoesNotEditSharedBook() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    api.createClub(newClub(api, "firstClub", "sharedBook", null));
+    api.createClub(newClub(api, "secondClub", "otherBook", null));
+
+    Club changed = api.fetchClubFromId("secondClub", TimestampBound.strong());
+    changed.getCurrentBook().setTitle("changed title");
+    api.updateClub(changed);
+
+    Book newBook = api.fetchClubFromId("secondClub", TimestampBound.strong()).getCurrentBook();
+    assertNotEquals("sharedBook", newBook.getBookId());
+    assertEquals("changed title", newBook.getTitle());
+    assertEquals("shared title", api.fetchBookFromId("sharedBook").getTitle());
+    assertEquals("shared title", api.fetchClubFromId("firstClub").getCurrentBook().getTitle());
+  }
+
+  @Test
+  public void storageHandlerApi_updateClubCorrectsSharedBookWithSameIsbn() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    api.createClub(newClub(api, "firstClub", "sharedBook", "0-306-40615-2"));
+    api.createClub(newClub(api, "secondClub", "otherBook", "978-0-306-40615-7"));
+
+    Club changed = api.fetchClubFromId("secondClub", TimestampBound.strong());
+    changed.getCurrentBook().setTitle("corrected title");
+    api.updateClub(changed);
+
+    Book book = api.fetchClubFromId("secondClub", TimestampBound.strong()).getCurrentBook();
+    assertEquals("sharedBook", book.getBookId());
+    assertEquals("corrected title", book.getTitle());
+    assertEquals("corrected title", api.fetchBookFromId("sharedBook").getTitle());
+    assertEquals("corrected title", api.fetchClubFromId("firstClub").getCurrentBook().getTitle());
+  }
+
+  @Test
+  public void storageHandlerApi_insertJoinAlreadyInClub() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    api.addMembership("person", "clubB");
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      api.addMembership("person", "clubB");
+    });
+    assertEquals(MembershipConstants.PERSON_ALREADY_IN_CLUB, e.getMessage());
+    assertEquals(1, backend.getListOfMembers("clubB").size());
+  }
+
+  @Test
+  public void storageHandlerApi_concurrentInsertJoinsAddOneMembership() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Boolean>> joins = new ArrayList<>();
+    for (int i = 0; i < 32; i++) {
+      joins.add(executor.submit(() -> {
+        try {
+          api.addMembership("person", "clubC");
+          return true;
+        } catch (IllegalArgumentException e) {
+          return false;
+        }
+      }));
+    }
+    int successfulJoins = 0;
+    for (Future<Boolean> join : joins) {
+      if (join.get(10, TimeUnit.SECONDS)) {
+        successfulJoins++;
+      }
+    }
+    executor.shutdown();
+    assertEquals(1, successfulJoins);
+    assertEquals(1, backend.getListOfMembers("clubC").size());
+  }
+
+  @Test
+  public void storageHandlerApi_readFirstJoinMode() throws Exception {
+    System.setProperty(
+        StorageHandlerApi.JOIN_MODE_PROPERTY, StorageHandlerApi.READ_FIRST_JOIN_MODE);
+    try {
+      StorageHandlerApi api = new StorageHandlerApi(backend);
+      api.addMembership("person", "clubB");
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+        api.addMembership("person", "clubB");
+      });
+      assertEquals(MembershipConstants.PERSON_ALREADY_IN_CLUB, e.getMessage());
+    } finally {
+      System.clearProperty(StorageHandlerApi.JOIN_MODE_PROPERTY);
+    }
+  }
+
+  @Test
+  public void memberCount_maintainedByJoinsAndLeaves() throws Exception {
+    // clubA was written without a member count, which is then counted from its memberships.
+    backend.addAnyMembershipType("person", "clubA", MembershipConstants.MEMBER);
+    assertEquals(2, backend.getClub("clubA", TimestampBound.strong()).getMemberCount());
+
+    backend.deleteMembership("person", "clubA");
+    assertEquals(1, backend.getClub("clubA", TimestampBound.strong()).getMemberCount());
+
+    backend.insertMembership("person", "clubB", MembershipConstants.MEMBER);
+    List<Club> member = backend.getListOfClubs(
+        "person", MembershipConstants.MembershipStatus.MEMBER, TimestampBound.strong());
+    assertEquals(1, member.get(0).getMemberCount());
+  }
+
+  @Test
+  public void memberCount_withoutBaseCountIsBackfilledByRecount() throws Exception {
+    // clubA was written without a member count and has only its owner. Reads do not count its
+    // memberships, so the count is zero until it is backfilled.
+    assertEquals(0, backend.getClub("clubA", TimestampBound.strong()).getMemberCount());
+
+    backend.recountMembers("clubA");
+
+    assertEquals(1, backend.getClub("clubA", TimestampBound.strong()).getMemberCount());
+    assertEquals(1, backend.getClubs(Arrays.asList("clubA")).get("clubA").getMemberCount());
+  }
+
+  @Test
+  public void insertMembership_clubDoesNotExist() throws Exception {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      backend.insertMembership("person", "clubNotInDb", MembershipConstants.MEMBER);
+    });
+    assertEquals(StorageHandler.CLUB_DOES_NOT_EXIST, e.getMessage());
+  }
+
+  @Test
+  public void memberCount_spreadOverShards() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    backend.write(Arrays.asList(
+        StorageHandlerCommonMutations.updateMemberCountMutation("clubC", 0)));
+    api.setMemberCountShards("clubC", 8);
+    for (int i = 0; i < 40; i++) {
+      backend.write(Arrays.asList(personMutation("joiner" + i)));
+      api.addMembership("joiner" + i, "clubC");
+    }
+    api.deleteMembership("joiner0", "clubC");
+
+    assertEquals(39, backend.getClub("clubC", TimestampBound.strong()).getMemberCount());
+    assertEquals(39, backend.getClubs(Arrays.asList("clubC")).get("clubC").getMemberCount());
+  }
+
+  @Test
+  public void setMemberCountShards_notPositive() throws Exception {
+    StorageHandlerApi api = new StorageHandlerApi(backend);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      api.setMemberCountShards("clubC", 0);
+    });
+    assertEquals(MemberCountShards.INVALID_SHARDS, e.getMessage());
+  }
+
+  @Test
+  public void exportClubs_passesEveryClubWithItsMembers() throws Exception {
+    backend.write(Arrays.asList(clubMutation("noBook", "bookNotInDb")));
+    List<Club> clubs = new ArrayList<>();
+    List<List<Person>> members = new ArrayList<>();
+    backend.exportClubs(true, (club, clubMembers) -> {
+      clubs.add(club);
+      members.add(clubMembers);
+    });
+
+    assertEquals(Arrays.asList("clubA", "clubB", "clubC"), clubIds(clubs));
+    assertEquals("title", clubs.get(0).getCurrentBook().getTitle());
+    assertEquals(1, members.get(0).size());
+    assertEquals("owner", members.get(0).get(0).getUserId());
+    assertTrue(members.get(1).isEmpty());
+  }
+
+  @Test
+  public void exportClubs_withoutMembers() throws Exception {
+    List<List<Person>> members = new ArrayList<>();
+    backend.exportClubs(false, (club, clubMembers) -> members.add(clubMembers));
+
+    assertEquals(Arrays.asList(null, null, null), members);
+  }
+
+  private static Club newClub(StorageHandlerApi api, String clubId, String bookId, String isbn) {
+    Book book = Book.newBuilder()
+                    .setTitle("shared title")
+                    .setIsbn(isbn)
+                    .setBookId(bookId)
+                    .setStorageHandler(api)
+                    .build();
+    return Club.newBuilder()
+               .setName(clubId)
+               .setCurrentBook(book)
+               .setOwnerId("owner")
+               .setClubId(clubId)
+               .setContentWarnings(new ArrayList<>())
+               .setStorageHandler(api)
+               .build();
+  }
+
+  private static List<String> clubIds(List<Club> clubs) {
+    List<String> clubIds = new ArrayList<>();
+    for (Club club : clubs) {
+      clubIds.add(club.getClubId());
+    }
+    return clubIds;
+  }
+
+  private static Mutation personMutation(String userId) {
+    return Mutation.newInsertBuilder("Persons")
+        .set("userId").to(userId)
+        .set("email").to("person@test.com")
+        .set("nickname").to("person")
+        .build();
+  }
+
+  private static Mutation bookMutation(String bookId) {
+    return Mutation.newInsertBuilder("Books")
+        .set("bookId").to(bookId)
+        .set("title").to("title")
+        .set("author").to("author")
+        .build();
+  }
+
+  private static Mutation clubMutation(String clubId, String bookId) {
+    return Mutation.newInsertBuilder("Clubs")
+        .set("clubId").to(clubId)
+        .set("bookId").to(bookId)
+        .set("name").to("club")
+        .set("description").to("description")
+        .set("ownerId").to("owner")
+        .set("contentWarning").to("warning1\nwarning2")
+        .build();
+  }
+}
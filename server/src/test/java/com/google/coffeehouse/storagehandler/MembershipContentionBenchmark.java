@@ -0,0 +1,115 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.TimestampBound;
+import com.google.coffeehouse.common.MembershipConstants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+* Compares the two join modes of {@link StorageHandlerApi} when many users join one popular club
+* at once: the transaction of {@code READ_FIRST_JOIN_MODE}, which reads the membership before
+* inserting it, and the transaction of {@code INSERT_JOIN_MODE}, which inserts it without reading
+* it. Both transactions also read the club and a shard of its member count. For each mode it
+* prints the join latencies and the attempts, aborts and commits of the membership transactions.
+*
+* <p>It runs against the same test database as {@link StorageHandlerTest}, whose data it
+* deletes, so point it at the Spanner emulator or a scratch instance. It is not run by the
+* tests; run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+* -Dexec.mainClass=com.google.coffeehouse.storagehandler.MembershipContentionBenchmark}.
+*/
+public class MembershipContentionBenchmark {
+  private static final int THREADS = 32;
+  private static final int JOINERS = 500;
+  private static final String CLUB_ID = "popular";
+
+  public static void main(String[] args) throws Exception {
+    DatabaseClient dbClient = StorageHandlerTestHelper.setUpHelper();
+    for (String joinMode : new String[] {
+        StorageHandlerApi.READ_FIRST_JOIN_MODE, StorageHandlerApi.INSERT_JOIN_MODE}) {
+      StorageHandlerTestHelper.setUpClearDb();
+      StorageHandlerTestHelper.insertBook("book");
+      StorageHandlerTestHelper.insertPerson("owner");
+      StorageHandlerTestHelper.insertClub(CLUB_ID, /* owner_id= */ "owner");
+      StorageHandlerTestHelper.insertMembership("owner", CLUB_ID, MembershipConstants.OWNER);
+      for (int i = 0; i < JOINERS; i++) {
+        StorageHandlerTestHelper.insertPerson("joiner" + i);
+      }
+      System.setProperty(StorageHandlerApi.JOIN_MODE_PROPERTY, joinMode);
+      SpannerStorageBackend backend = new SpannerStorageBackend(dbClient);
+      measure(joinMode, new StorageHandlerApi(backend), backend);
+    }
+    System.clearProperty(StorageHandlerApi.JOIN_MODE_PROPERTY);
+    StorageHandlerTestHelper.setUpClearDb();
+    System.exit(0);
+  }
+
+  private static void measure(
+      String joinMode, StorageHandlerApi api, SpannerStorageBackend backend) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Long>> joins = new ArrayList<>();
+    for (int i = 0; i < JOINERS; i++) {
+      String userId = "joiner" + i;
+      joins.add(executor.submit(() -> {
+        start.await();
+        long joinStart = System.nanoTime();
+        api.addMembership(userId, CLUB_ID);
+        return System.nanoTime() - joinStart;
+      }));
+    }
+    long runStart = System.nanoTime();
+    start.countDown();
+    List<Long> latencies = new ArrayList<>();
+    int failures = 0;
+    for (Future<Long> join : joins) {
+      try {
+        latencies.add(join.get());
+      } catch (Exception e) {
+        failures++;
+      }
+    }
+    long runMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart);
+    executor.shutdown();
+    Collections.sort(latencies);
+
+    System.out.println(joinMode + ": " + JOINERS + " joins on " + THREADS + " threads in "
+        + runMillis + " ms, " + failures + " failed");
+    if (!latencies.isEmpty()) {
+      System.out.println("  latency p50 " + millisAt(latencies, 0.50)
+          + " ms, p99 " + millisAt(latencies, 0.99)
+          + " ms, max " + millisAt(latencies, 1.0) + " ms");
+    }
+    for (Map.Entry<String, TransactionMetrics.TransactionStats> stats
+        : backend.getTransactionStats().entrySet()) {
+      System.out.println("  " + stats.getKey() + ": " + stats.getValue());
+    }
+    System.out.println("  member count "
+        + backend.getClub(CLUB_ID, TimestampBound.strong()).getMemberCount());
+  }
+
+  private static long millisAt(List<Long> sortedNanos, double percentile) {
+    int index = (int) Math.ceil(percentile * sortedNanos.size()) - 1;
+    return TimeUnit.NANOSECONDS.toMillis(sortedNanos.get(Math.max(0, index)));
+  }
+}
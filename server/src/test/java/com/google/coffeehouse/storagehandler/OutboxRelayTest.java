@@ -0,0 +1,172 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+
+import com.google.cloud.spanner.Mutation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The OutboxRelayTest class runs tests against the {@link InMemoryStorageBackend} to verify that
+* the changes to clubs and memberships are written to the outbox with the change, and relayed to
+* the subscribers of the bus at least once.
+*/
+@RunWith(JUnit4.class)
+public class OutboxRelayTest {
+  private InMemoryStorageBackend backend;
+  private StorageHandlerApi api;
+  private ChangeEventBus bus;
+  private List<ChangeEvent> received;
+
+  @Before
+  public void setUp() {
+    backend = new InMemoryStorageBackend();
+    backend.write(Arrays.asList(
+        Mutation.newInsertBuilder("Books")
+            .set("bookId").to("book")
+            .set("title").to("title")
+            .build(),
+        Mutation.newInsertBuilder("Clubs")
+            .set("clubId").to("club")
+            .set("bookId").to("book")
+            .set("name").to("club")
+            .set("ownerId").to("owner")
+            .set("memberCount").to(1)
+            .build()));
+    api = new StorageHandlerApi(backend);
+    bus = api.getChangeEventBus();
+    received = new ArrayList<>();
+    bus.subscribe(received::add);
+  }
+
+  @Test
+  public void relayBatch_publishesMembershipChangesInCommitOrder() throws Exception {
+    api.addMembership("person", "club");
+    api.deleteMembership("person", "club");
+
+    OutboxRelay relay = new OutboxRelay(backend, bus, /* batchSize= */ 10, /* pollMillis= */ 1000);
+    assertEquals(2, relay.relayBatch());
+
+    assertEquals(2, received.size());
+    assertEquals(ChangeEvent.Type.MEMBERSHIP_ADDED, received.get(0).getType());
+    assertEquals(ChangeEvent.Type.MEMBERSHIP_DELETED, received.get(1).getType());
+    assertEquals("club", received.get(0).getClubId());
+    assertEquals("person", received.get(0).getUserId());
+    assertTrue(backend.readOutbox(10).isEmpty());
+  }
+
+  @Test
+  public void writeMutations_recordsClubUpdate() throws Exception {
+    api.writeMutations(Arrays.asList(
+        Mutation.newUpdateBuilder("Clubs")
+            .set("clubId").to("club")
+            .set("name").to("renamed")
+            .build()));
+
+    List<ChangeEvent> events = backend.readOutbox(10);
+    assertEquals(1, events.size());
+    assertEquals(ChangeEvent.Type.CLUB_UPDATED, events.get(0).getType());
+    assertEquals("club", events.get(0).getClubId());
+    assertNull(events.get(0).getUserId());
+  }
+
+  @Test
+  public void refusedJoin_recordsNoEvent() throws Exception {
+    api.addMembership("person", "club");
+    assertThrows(IllegalArgumentException.class, () -> api.addMembership("person", "club"));
+
+    assertEquals(1, backend.readOutbox(10).size());
+  }
+
+  @Test
+  public void relayBatch_failedSubscriberKeepsEventsForRedelivery() throws Exception {
+    AtomicBoolean fail = new AtomicBoolean(true);
+    bus.subscribe(event -> {
+      if (fail.get()) {
+        throw new IllegalStateException("subscriber failed");
+      }
+    });
+    api.addMembership("person", "club");
+    OutboxRelay relay = new OutboxRelay(backend, bus, /* batchSize= */ 10, /* pollMillis= */ 1000);
+
+    assertThrows(IllegalStateException.class, relay::relayBatch);
+    assertEquals(1, backend.readOutbox(10).size());
+
+    fail.set(false);
+    assertEquals(1, relay.relayBatch());
+    assertEquals(2, received.size());
+    assertEquals(received.get(0).getEventId(), received.get(1).getEventId());
+    assertTrue(backend.readOutbox(10).isEmpty());
+  }
+
+  @Test
+  public void drain_relaysEveryBatch() throws Exception {
+    api.addMembership("personA", "club");
+    api.addMembership("personB", "club");
+    api.addMembership("personC", "club");
+
+    OutboxRelay relay = new OutboxRelay(backend, bus, /* batchSize= */ 2, /* pollMillis= */ 1000);
+    assertEquals(3, relay.drain());
+    assertEquals(3, received.size());
+    assertEquals(0, relay.drain());
+  }
+
+  @Test
+  public void deleteMembership_ownerCanNotLeaveRecordsNoEvent() throws Exception {
+    api.addOwnership("owner", "club");
+    assertThrows(IllegalArgumentException.class, () -> api.deleteMembership("owner", "club"));
+
+    List<ChangeEvent> events = backend.readOutbox(10);
+    assertEquals(1, events.size());
+    assertEquals(ChangeEvent.Type.MEMBERSHIP_ADDED, events.get(0).getType());
+  }
+
+  @Test
+  public void readOutbox_oldestEventsInCommitOrderAcrossBuckets() throws Exception {
+    for (int i = 0; i < 40; i++) {
+      api.addMembership("person" + i, "club");
+    }
+    backend.write(Arrays.asList(
+        Outbox.deleteEventsMutation(Arrays.asList(backend.readOutbox(1).get(0).getEventId()))));
+
+    List<ChangeEvent> events = backend.readOutbox(30);
+    assertEquals(30, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      assertEquals("person" + (i + 1), events.get(i).getUserId());
+    }
+    assertEquals(39, backend.readOutbox(100).size());
+  }
+
+  @Test
+  public void eventMutation_spreadsEventsOverBuckets() throws Exception {
+    Set<Long> buckets = new HashSet<>();
+    for (int i = 0; i < 200; i++) {
+      long bucket = Outbox.eventMutation(ChangeEvent.Type.CLUB_UPDATED, "club", null)
+          .asMap().get("bucket").getInt64();
+      assertTrue(bucket >= 0 && bucket < Outbox.BUCKETS);
+      buckets.add(bucket);
+    }
+    assertTrue(buckets.size() > 1);
+  }
+}
@@ -19,6 +19,7 @@ import static org.junit.Assert.*;
 import com.google.cloud.spanner.DatabaseClient;
 import com.google.cloud.spanner.ReadContext;
 import com.google.coffeehouse.common.MembershipConstants;
+import java.util.Arrays;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -123,4 +124,16 @@ public class StorageHandlerHelperTest {
     long actual = StorageHandlerHelper.getMemberCount(readContext, "club");
     assertEquals(0, actual);
   }
+
+  @Test
+  public void readMemberCount_sumsBaseAndShards() throws Exception {
+    StorageHandlerTestHelper.insertClubWithContentWarnings("club");
+    dbClient.write(Arrays.asList(
+        StorageHandlerCommonMutations.updateMemberCountMutation("club", 1),
+        MemberCountShards.shardMutation("club", 0, 2),
+        MemberCountShards.shardMutation("club", 3, -1)));
+    ReadContext readContext = dbClient.singleUse();
+    long actual = StorageHandlerHelper.readMemberCount(readContext, "club");
+    assertEquals(2, actual);
+  }
 }
@@ -0,0 +1,69 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+
+import com.google.cloud.spanner.SessionPoolOptions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The StorageHandlerSetupTest class runs tests to verify that the session pool options are read
+* from the system properties.
+*/
+@RunWith(JUnit4.class)
+public class StorageHandlerSetupTest {
+  @After
+  public void tearDown() {
+    System.clearProperty(StorageHandlerSetup.MIN_SESSIONS_PROPERTY);
+    System.clearProperty(StorageHandlerSetup.MAX_SESSIONS_PROPERTY);
+    System.clearProperty(StorageHandlerSetup.WRITE_SESSIONS_FRACTION_PROPERTY);
+    System.clearProperty(StorageHandlerSetup.KEEP_ALIVE_MINUTES_PROPERTY);
+  }
+
+  @Test
+  public void createSessionPoolOptions_defaults() throws Exception {
+    SessionPoolOptions options = StorageHandlerSetup.createSessionPoolOptions();
+    assertEquals(StorageHandlerSetup.DEFAULT_MIN_SESSIONS, options.getMinSessions());
+    assertEquals(StorageHandlerSetup.DEFAULT_MAX_SESSIONS, options.getMaxSessions());
+    assertEquals(StorageHandlerSetup.DEFAULT_WRITE_SESSIONS_FRACTION,
+        options.getWriteSessionsFraction(), 0.0001f);
+    assertEquals(StorageHandlerSetup.DEFAULT_KEEP_ALIVE_MINUTES,
+        options.getKeepAliveIntervalMinutes());
+  }
+
+  @Test
+  public void createSessionPoolOptions_readsSystemProperties() throws Exception {
+    System.setProperty(StorageHandlerSetup.MIN_SESSIONS_PROPERTY, "2");
+    System.setProperty(StorageHandlerSetup.MAX_SESSIONS_PROPERTY, "8");
+    System.setProperty(StorageHandlerSetup.WRITE_SESSIONS_FRACTION_PROPERTY, "0.5");
+    System.setProperty(StorageHandlerSetup.KEEP_ALIVE_MINUTES_PROPERTY, "15");
+    SessionPoolOptions options = StorageHandlerSetup.createSessionPoolOptions();
+    assertEquals(2, options.getMinSessions());
+    assertEquals(8, options.getMaxSessions());
+    assertEquals(0.5f, options.getWriteSessionsFraction(), 0.0001f);
+    assertEquals(15, options.getKeepAliveIntervalMinutes());
+  }
+
+  @Test
+  public void createSessionPoolOptions_minLargerThanMax() throws Exception {
+    System.setProperty(StorageHandlerSetup.MIN_SESSIONS_PROPERTY, "20");
+    System.setProperty(StorageHandlerSetup.MAX_SESSIONS_PROPERTY, "10");
+    assertThrows(IllegalStateException.class, StorageHandlerSetup::createSessionPoolOptions);
+  }
+}
@@ -19,6 +19,7 @@ import static org.junit.Assert.*;
 import com.google.cloud.spanner.Database;
 import com.google.cloud.spanner.DatabaseClient;
 import com.google.cloud.spanner.ReadContext;
+import com.google.cloud.spanner.TimestampBound;
 import com.google.coffeehouse.common.Book;
 import com.google.coffeehouse.common.Club;
 import com.google.coffeehouse.common.MembershipConstants;
@@ -27,6 +28,8 @@ import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -187,9 +190,78 @@ public class StorageHandlerTest {
                       expected.getContentWarnings().toArray(new String[0]));
   }
 
+  @Test
+  public void getClub_strongBoundSeesLatestWrite() throws Exception {
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("strongClub");
+    Club actual = StorageHandler.getClub(dbClient, "strongClub", TimestampBound.strong());
+    assertEquals("strongClub", actual.getClubId());
+    assertEquals("title", actual.getCurrentBook().getTitle());
+  }
+
+  @Test
+  public void getClub_exactStalenessDoesNotSeeLaterWrite() throws Exception {
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("staleClub");
+    assertThrows(IllegalArgumentException.class, () -> {
+      StorageHandler.getClub(
+          dbClient, "staleClub", TimestampBound.ofExactStaleness(30, TimeUnit.SECONDS));
+    });
+  }
+
+  @Test
+  public void getPageOfClubs_pagesThroughClubsInOrder() throws Exception {
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubA");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubB");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubC");
+
+    ClubPage first = StorageHandler.getPageOfClubs(
+        dbClient, "person", MembershipConstants.MembershipStatus.NOT_MEMBER,
+        /* pageSize= */ 2, /* pageToken= */ null, TimestampBound.strong());
+    assertEquals(2, first.getClubs().size());
+    assertEquals("clubA", first.getClubs().get(0).getClubId());
+    assertEquals("clubB", first.getClubs().get(1).getClubId());
+    assertNotNull(first.getNextPageToken());
+
+    ClubPage second = StorageHandler.getPageOfClubs(
+        dbClient, "person", MembershipConstants.MembershipStatus.NOT_MEMBER,
+        /* pageSize= */ 2, first.getNextPageToken(), TimestampBound.strong());
+    assertEquals(1, second.getClubs().size());
+    assertEquals("clubC", second.getClubs().get(0).getClubId());
+    assertNull(second.getNextPageToken());
+  }
+
+  @Test
+  public void getPageOfClubs_excludesClubsUserIsMemberOf() throws Exception {
+    StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubA");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubB");
+    StorageHandlerTestHelper.insertMembership("person", "clubA", MembershipConstants.MEMBER);
+
+    ClubPage page = StorageHandler.getPageOfClubs(
+        dbClient, "person", MembershipConstants.MembershipStatus.NOT_MEMBER,
+        /* pageSize= */ 10, /* pageToken= */ null, TimestampBound.strong());
+    assertEquals(1, page.getClubs().size());
+    assertEquals("clubB", page.getClubs().get(0).getClubId());
+    assertNull(page.getNextPageToken());
+  }
+
+  @Test
+  public void getPageOfClubs_invalidPageToken() throws Exception {
+    assertThrows(IllegalArgumentException.class, () -> {
+      StorageHandler.getPageOfClubs(
+          dbClient, "person", MembershipConstants.MembershipStatus.NOT_MEMBER,
+          /* pageSize= */ 10, "not a token!", TimestampBound.strong());
+    });
+  }
+
   @Test
   public void runAddAnyMembershipTypeTransaction_member() throws Exception {
     StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
     StorageHandler.runAddAnyMembershipTypeTransaction(
       dbClient, "person", "club", MembershipConstants.MEMBER);
     ReadContext readContext = dbClient.singleUse();
@@ -200,6 +272,8 @@ public class StorageHandlerTest {
   @Test
   public void runAddAnyMembershipTypeTransaction_owner() throws Exception {
     StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "person");
     StorageHandler.runAddAnyMembershipTypeTransaction(
       dbClient, "person", "club", MembershipConstants.OWNER);
     ReadContext readContext = dbClient.singleUse();
@@ -210,6 +284,8 @@ public class StorageHandlerTest {
   @Test
   public void runDeleteMembershipTransaction_member() throws Exception {
     StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
     StorageHandlerTestHelper.insertMembership("person", "club", MembershipConstants.MEMBER);
     StorageHandler.runDeleteMembershipTransaction(dbClient, "person", "club");
     ReadContext readContext = dbClient.singleUse();
@@ -220,6 +296,8 @@ public class StorageHandlerTest {
   @Test
   public void runDeleteMembershipTransaction_ownerFailsToLeaveClub() throws Exception {
     StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "person");
     StorageHandlerTestHelper.insertMembership("person", "club", MembershipConstants.OWNER);
     ReadContext readContext = dbClient.singleUse();
     assertThrows(RuntimeException.class, () -> {
@@ -227,6 +305,60 @@ public class StorageHandlerTest {
     });
   }
 
+  @Test
+  public void runAddAnyMembershipTypeTransaction_incrementsMemberCount() throws Exception {
+    StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    StorageHandlerTestHelper.insertPerson("other");
+    StorageHandler.runAddAnyMembershipTypeTransaction(
+      dbClient, "person", "club", MembershipConstants.MEMBER);
+    StorageHandler.runInsertMembershipTransaction(
+      dbClient, "other", "club", MembershipConstants.MEMBER);
+    Club club = StorageHandler.getClub(dbClient, "club");
+    assertEquals(2, club.getMemberCount());
+  }
+
+  @Test
+  public void runDeleteMembershipTransaction_decrementsMemberCount() throws Exception {
+    StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    StorageHandler.runAddAnyMembershipTypeTransaction(
+      dbClient, "person", "club", MembershipConstants.MEMBER);
+    StorageHandler.runDeleteMembershipTransaction(dbClient, "person", "club");
+    Club club = StorageHandler.getClub(dbClient, "club");
+    assertEquals(0, club.getMemberCount());
+  }
+
+  @Test
+  public void getClub_memberCountWithoutBaseCountAfterRecount() throws Exception {
+    StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "person");
+    StorageHandlerTestHelper.insertMembership("person", "club", MembershipConstants.OWNER);
+    assertEquals(0, StorageHandler.getClub(dbClient, "club").getMemberCount());
+
+    StorageHandler.runRecountMembersTransaction(
+      StorageTransactionRunner.forClient(dbClient), "club");
+
+    assertEquals(1, StorageHandler.getClub(dbClient, "club").getMemberCount());
+  }
+
+  @Test
+  public void runInsertMembershipTransaction_alreadyInClub() throws Exception {
+    StorageHandlerTestHelper.insertPerson("person");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    StorageHandler.runInsertMembershipTransaction(
+      dbClient, "person", "club", MembershipConstants.MEMBER);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      StorageHandler.runInsertMembershipTransaction(
+        dbClient, "person", "club", MembershipConstants.MEMBER);
+    });
+    assertEquals(MembershipConstants.PERSON_ALREADY_IN_CLUB, e.getMessage());
+  }
+
   @Test
   public void getListOfMembers_clubDoesNotExistInDb() throws Exception {
     assertThrows(RuntimeException.class, () -> {
@@ -284,6 +416,48 @@ public class StorageHandlerTest {
     }
   }
 
+  @Test
+  public void getListOfMembers_orderedByUserId() throws Exception {
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    for (String userId : Arrays.asList("member3", "owner", "member1", "member2")) {
+      StorageHandlerTestHelper.insertPerson(userId);
+      StorageHandlerTestHelper.insertMembership(userId, "club", MembershipConstants.MEMBER);
+    }
+    List<Person> actual = StorageHandler.getListOfMembers(dbClient, "club");
+
+    assertEquals(4, actual.size());
+    assertEquals("member1", actual.get(0).getUserId());
+    assertEquals("member2", actual.get(1).getUserId());
+    assertEquals("member3", actual.get(2).getUserId());
+    assertEquals("owner", actual.get(3).getUserId());
+  }
+
+  @Test
+  public void getListOfMembers_memberWithoutPersonRow() throws Exception {
+    StorageHandlerTestHelper.insertPerson("owner");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    StorageHandlerTestHelper.insertMembership("owner", "club", MembershipConstants.OWNER);
+    StorageHandlerTestHelper.insertMembership("personNotInDb", "club", MembershipConstants.MEMBER);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      StorageHandler.getListOfMembers(dbClient, "club");
+    });
+    assertEquals(StorageHandler.PERSON_DOES_NOT_EXIST, e.getMessage());
+  }
+
+  @Test
+  public void getListOfMembers_onlyMembersOfTheClub() throws Exception {
+    StorageHandlerTestHelper.insertPerson("owner");
+    StorageHandlerTestHelper.insertPerson("other");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    StorageHandlerTestHelper.insertClub("otherClub", /* owner_id= */ "other");
+    StorageHandlerTestHelper.insertMembership("owner", "club", MembershipConstants.OWNER);
+    StorageHandlerTestHelper.insertMembership("other", "otherClub", MembershipConstants.OWNER);
+    List<Person> actual = StorageHandler.getListOfMembers(dbClient, "club");
+
+    assertEquals(1, actual.size());
+    assertEquals("owner", actual.get(0).getUserId());
+  }
+
   @Test
   public void getListOfClubs_memberOfAll() throws Exception {
     List<Club> expected = new ArrayList<Club>();
@@ -393,4 +567,88 @@ public class StorageHandlerTest {
                                              MembershipConstants.MembershipStatus.MEMBER));
     assertEquals(0, actual.size());
   }
+
+  @Test
+  public void getListOfClubs_includesBookAndContentWarnings() throws Exception {
+    StorageHandlerTestHelper.insertPerson("member");
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClubWithContentWarnings("clubWithContentWarnings");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubWithNoContentWarnings");
+    StorageHandlerTestHelper.insertMembership(
+      "member", "clubWithContentWarnings", MembershipConstants.MEMBER);
+    StorageHandlerTestHelper.insertMembership(
+      "member", "clubWithNoContentWarnings", MembershipConstants.MEMBER);
+    List<Club> actual = new ArrayList<Club>(StorageHandler.getListOfClubs(dbClient, "member",
+                                             MembershipConstants.MembershipStatus.MEMBER));
+    Book expectedBook = StorageHandlerTestHelper.createTestBookObject(
+                                                   "book",
+                                                   /* isbnExists= */ true,
+                                                   /* authorExists= */ true);
+    assertEquals(2, actual.size());
+    assertEquals("clubWithContentWarnings", actual.get(0).getClubId());
+    assertEquals(Arrays.asList("test"), actual.get(0).getContentWarnings());
+    assertEquals("clubWithNoContentWarnings", actual.get(1).getClubId());
+    assertEquals(Collections.emptyList(), actual.get(1).getContentWarnings());
+    for (Club club : actual) {
+      assertEquals(expectedBook.getBookId(), club.getCurrentBook().getBookId());
+      assertEquals(expectedBook.getTitle(), club.getCurrentBook().getTitle());
+      assertEquals(expectedBook.getAuthor(), club.getCurrentBook().getAuthor());
+      assertEquals(expectedBook.getIsbn(), club.getCurrentBook().getIsbn());
+    }
+  }
+
+  @Test
+  public void getListOfClubs_clubWithMissingBook() throws Exception {
+    StorageHandlerTestHelper.insertPerson("member");
+    StorageHandlerTestHelper.insertClub("club", /* owner_id= */ "owner");
+    StorageHandlerTestHelper.insertMembership("member", "club", MembershipConstants.MEMBER);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      StorageHandler.getListOfClubs(
+        dbClient, "member", MembershipConstants.MembershipStatus.MEMBER);
+    });
+    assertEquals(StorageHandler.BOOK_DOES_NOT_EXIST, e.getMessage());
+  }
+
+  @Test
+  public void getPersons_missingIdsAreAbsent() throws Exception {
+    StorageHandlerTestHelper.insertPersonWithPronouns("person");
+    StorageHandlerTestHelper.insertPersonWithNullPronouns("personWithNullPronouns");
+    Map<String, Person> actual = StorageHandler.getPersons(
+      dbClient.singleUse(), Arrays.asList("person", "personWithNullPronouns", "personNotInDb"));
+    assertEquals(2, actual.size());
+    assertEquals("person", actual.get("person").getUserId());
+    assertEquals("she/he/they", actual.get("person").getPronouns().get());
+    assertFalse(actual.get("personWithNullPronouns").getPronouns().isPresent());
+    assertFalse(actual.containsKey("personNotInDb"));
+  }
+
+  @Test
+  public void getBooks_missingIdsAreAbsent() throws Exception {
+    StorageHandlerTestHelper.insertBookWithAuthorAndIsbn("book");
+    StorageHandlerTestHelper.insertBookWithNullAuthorAndNullIsbn("bookNullAuthorNullIsbn");
+    Map<String, Book> actual = StorageHandler.getBooks(
+      dbClient.singleUse(), Arrays.asList("book", "bookNullAuthorNullIsbn", "bookNotInDb"));
+    assertEquals(2, actual.size());
+    assertEquals("author", actual.get("book").getAuthor().get());
+    assertEquals("isbn", actual.get("book").getIsbn().get());
+    assertFalse(actual.get("bookNullAuthorNullIsbn").getAuthor().isPresent());
+    assertFalse(actual.get("bookNullAuthorNullIsbn").getIsbn().isPresent());
+    assertFalse(actual.containsKey("bookNotInDb"));
+  }
+
+  @Test
+  public void getClubs_missingIdsAreAbsent() throws Exception {
+    StorageHandlerTestHelper.insertBook("book");
+    StorageHandlerTestHelper.insertClubWithContentWarnings("clubWithContentWarnings");
+    StorageHandlerTestHelper.insertClubWithNoContentWarnings("clubWithNoContentWarnings");
+    Map<String, Club> actual = StorageHandler.getClubs(
+      dbClient,
+      Arrays.asList("clubWithContentWarnings", "clubWithNoContentWarnings", "clubNotInDb"));
+    assertEquals(2, actual.size());
+    assertEquals(Arrays.asList("test"), actual.get("clubWithContentWarnings").getContentWarnings());
+    assertEquals(Collections.emptyList(),
+                 actual.get("clubWithNoContentWarnings").getContentWarnings());
+    assertEquals("title", actual.get("clubWithContentWarnings").getCurrentBook().getTitle());
+    assertFalse(actual.containsKey("clubNotInDb"));
+  }
 }
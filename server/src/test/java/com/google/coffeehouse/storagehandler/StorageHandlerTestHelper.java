@@ -52,6 +52,9 @@ public class StorageHandlerTestHelper {
     List<Mutation> mutations = new ArrayList<>();
     mutations.add(Mutation.delete("Persons", KeySet.all()));
     mutations.add(Mutation.delete("Books", KeySet.all()));
+    mutations.add(Mutation.delete(BookCatalog.TABLE, KeySet.all()));
+    mutations.add(Mutation.delete(MemberCountShards.TABLE, KeySet.all()));
+    mutations.add(Mutation.delete(Outbox.TABLE, KeySet.all()));
     mutations.add(Mutation.delete("Clubs", KeySet.all()));
     mutations.add(Mutation.delete("Memberships", KeySet.all()));
     dbClient.write(mutations);
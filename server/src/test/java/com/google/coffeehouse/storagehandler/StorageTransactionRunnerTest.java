@@ -0,0 +1,177 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.coffeehouse.storagehandler;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.spanner.DatabaseClient;
+import com.google.cloud.spanner.ErrorCode;
+import com.google.cloud.spanner.SpannerException;
+import com.google.cloud.spanner.SpannerExceptionFactory;
+import com.google.cloud.spanner.TransactionContext;
+import com.google.cloud.spanner.TransactionManager;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+* The StorageTransactionRunnerTest class runs tests to verify that aborted transactions are
+* retried within the attempt limit and that every attempt is counted in the metrics.
+*/
+@RunWith(JUnit4.class)
+public class StorageTransactionRunnerTest {
+  private static final String TRANSACTION_TYPE = "test";
+
+  private DatabaseClient dbClient;
+  private TransactionManager manager;
+  private TransactionContext transaction;
+  private TransactionMetrics metrics;
+  private StorageTransactionRunner runner;
+
+  @Before
+  public void setUp() {
+    dbClient = mock(DatabaseClient.class);
+    manager = mock(TransactionManager.class);
+    transaction = mock(TransactionContext.class);
+    when(dbClient.transactionManager()).thenReturn(manager);
+    when(manager.begin()).thenReturn(transaction);
+    when(manager.resetForRetry()).thenReturn(transaction);
+    when(manager.getState()).thenReturn(TransactionManager.TransactionState.STARTED);
+    metrics = new TransactionMetrics();
+    runner = new StorageTransactionRunner(
+        dbClient,
+        /* maxAttempts= */ 3,
+        /* deadlineMillis= */ 10000,
+        /* initialBackoffMillis= */ 1,
+        /* maxBackoffMillis= */ 2,
+        metrics);
+  }
+
+  @Test
+  public void run_retriesAbortedCommit() throws Exception {
+    doThrow(aborted()).doNothing().when(manager).commit();
+    AtomicInteger runs = new AtomicInteger();
+
+    String result = runner.run(TRANSACTION_TYPE, transaction -> {
+      runs.incrementAndGet();
+      return "committed";
+    });
+
+    assertEquals("committed", result);
+    assertEquals(2, runs.get());
+    verify(manager, times(1)).resetForRetry();
+    TransactionMetrics.TransactionStats stats = metrics.getStats().get(TRANSACTION_TYPE);
+    assertEquals(2, stats.getAttempts());
+    assertEquals(1, stats.getAborts());
+    assertEquals(1, stats.getCommits());
+    assertEquals(0, stats.getFailures());
+  }
+
+  @Test
+  public void run_failsAfterMaxAttempts() throws Exception {
+    doThrow(aborted()).when(manager).commit();
+
+    SpannerException e = assertThrows(SpannerException.class, () -> {
+      runner.run(TRANSACTION_TYPE, transaction -> null);
+    });
+
+    assertEquals(ErrorCode.DEADLINE_EXCEEDED, e.getErrorCode());
+    TransactionMetrics.TransactionStats stats = metrics.getStats().get(TRANSACTION_TYPE);
+    assertEquals(3, stats.getAttempts());
+    assertEquals(3, stats.getAborts());
+    assertEquals(0, stats.getCommits());
+    assertEquals(1, stats.getFailures());
+  }
+
+  @Test
+  public void run_failsWhenBackoffPassesDeadline() throws Exception {
+    runner = new StorageTransactionRunner(
+        dbClient,
+        /* maxAttempts= */ 10,
+        /* deadlineMillis= */ 0,
+        /* initialBackoffMillis= */ 1,
+        /* maxBackoffMillis= */ 2,
+        metrics);
+    doThrow(aborted()).when(manager).commit();
+
+    SpannerException e = assertThrows(SpannerException.class, () -> {
+      runner.run(TRANSACTION_TYPE, transaction -> null);
+    });
+
+    assertEquals(ErrorCode.DEADLINE_EXCEEDED, e.getErrorCode());
+    assertEquals(1, metrics.getStats().get(TRANSACTION_TYPE).getAttempts());
+  }
+
+  @Test
+  public void run_doesNotRetryExceptionsOfTheTransaction() throws Exception {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+      runner.run(TRANSACTION_TYPE, transaction -> {
+        throw new IllegalArgumentException("refused");
+      });
+    });
+
+    assertEquals("refused", e.getMessage());
+    verify(manager).rollback();
+    verify(manager, never()).commit();
+    TransactionMetrics.TransactionStats stats = metrics.getStats().get(TRANSACTION_TYPE);
+    assertEquals(1, stats.getAttempts());
+    assertEquals(1, stats.getFailures());
+  }
+
+  @Test
+  public void run_doesNotRetryOtherCommitErrors() throws Exception {
+    doThrow(SpannerExceptionFactory.newSpannerException(ErrorCode.ALREADY_EXISTS, "exists"))
+        .when(manager).commit();
+
+    SpannerException e = assertThrows(SpannerException.class, () -> {
+      runner.run(TRANSACTION_TYPE, transaction -> null);
+    });
+
+    assertEquals(ErrorCode.ALREADY_EXISTS, e.getErrorCode());
+    verify(manager, never()).resetForRetry();
+  }
+
+  @Test
+  public void backoffMillis_respectsRetryDelayAndCap() throws Exception {
+    for (int attempt = 1; attempt <= 30; attempt++) {
+      long backoff = runner.backoffMillis(attempt, /* retryDelayMillis= */ -1);
+      assertTrue(backoff >= 0 && backoff <= 2);
+    }
+    assertEquals(50, runner.backoffMillis(1, /* retryDelayMillis= */ 50));
+  }
+
+  @Test
+  public void forClient_sharesOneRunnerPerClient() throws Exception {
+    StorageTransactionRunner shared = StorageTransactionRunner.forClient(dbClient);
+
+    assertSame(shared, StorageTransactionRunner.forClient(dbClient));
+    shared.run(TRANSACTION_TYPE, transaction -> null);
+    assertEquals(1, new SpannerStorageBackend(dbClient).getTransactionStats()
+        .get(TRANSACTION_TYPE).getCommits());
+    assertNotSame(shared, StorageTransactionRunner.forClient(mock(DatabaseClient.class)));
+  }
+
+  private static SpannerException aborted() {
+    return SpannerExceptionFactory.newSpannerException(ErrorCode.ABORTED, "aborted");
+  }
+}
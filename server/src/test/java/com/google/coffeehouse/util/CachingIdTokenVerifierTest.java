@@ -0,0 +1,166 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken.Payload;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CachingIdTokenVerifier}.
+ */
+public class CachingIdTokenVerifierTest {
+  private static final String VALID_TOKEN = "valid token";
+  private static final String OTHER_VALID_TOKEN = "other valid token";
+  private static final String THIRD_VALID_TOKEN = "third valid token";
+  private static final String INVALID_TOKEN = "invalid token";
+  private static final long EXPIRATION_SECONDS = 3600;
+
+  private AtomicLong nowMillis;
+  private AtomicInteger verifications;
+  private Map<String, GoogleIdToken> validTokens;
+  private CachingIdTokenVerifier verifier;
+
+  @Before
+  public void setUp() {
+    nowMillis = new AtomicLong(0);
+    verifications = new AtomicInteger(0);
+    validTokens = new HashMap<>();
+    validTokens.put(VALID_TOKEN, idToken("user"));
+    validTokens.put(OTHER_VALID_TOKEN, idToken("otherUser"));
+    validTokens.put(THIRD_VALID_TOKEN, idToken("thirdUser"));
+    verifier = newVerifier(/* maxEntries= */ 10);
+  }
+
+  @Test
+  public void verify_validTokenIsVerifiedOnceUntilItExpires() throws Exception {
+    assertEquals("user", verifier.verify(VALID_TOKEN).getPayload().getSubject());
+    assertEquals("user", verifier.verify(VALID_TOKEN).getPayload().getSubject());
+    assertEquals(1, verifications.get());
+
+    nowMillis.set(EXPIRATION_SECONDS * 1000);
+    verifier.verify(VALID_TOKEN);
+    assertEquals(2, verifications.get());
+  }
+
+  @Test
+  public void verify_invalidTokenIsRememberedForItsTimeToLive() throws Exception {
+    assertNull(verifier.verify(INVALID_TOKEN));
+    assertNull(verifier.verify(INVALID_TOKEN));
+    assertEquals(1, verifications.get());
+
+    nowMillis.set(60 * 1000);
+    assertNull(verifier.verify(INVALID_TOKEN));
+    assertEquals(2, verifications.get());
+  }
+
+  @Test
+  public void verify_leastRecentlyUsedTokenIsDropped() throws Exception {
+    verifier = newVerifier(/* maxEntries= */ 2);
+    verifier.verify(VALID_TOKEN);
+    verifier.verify(OTHER_VALID_TOKEN);
+    verifier.verify(VALID_TOKEN);
+    verifier.verify(THIRD_VALID_TOKEN);
+    assertEquals(2, verifier.size());
+
+    verifier.verify(VALID_TOKEN);
+    assertEquals(3, verifications.get());
+    verifier.verify(OTHER_VALID_TOKEN);
+    assertEquals(4, verifications.get());
+  }
+
+  @Test
+  public void verify_invalidTokensDoNotDropValidTokens() throws Exception {
+    verifier = newVerifier(/* maxEntries= */ 2, /* maxInvalidEntries= */ 1);
+    verifier.verify(VALID_TOKEN);
+    verifier.verify(OTHER_VALID_TOKEN);
+    for (int i = 0; i < 5; i++) {
+      assertNull(verifier.verify(INVALID_TOKEN + i));
+    }
+    assertEquals(3, verifier.size());
+
+    verifier.verify(VALID_TOKEN);
+    verifier.verify(OTHER_VALID_TOKEN);
+    assertEquals(7, verifications.get());
+    // Only the most recent failed token is still remembered.
+    verifier.verify(INVALID_TOKEN + 4);
+    assertEquals(7, verifications.get());
+    verifier.verify(INVALID_TOKEN + 0);
+    assertEquals(8, verifications.get());
+  }
+
+  @Test
+  public void verify_concurrentRequests() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> subjects = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        String token = i % 2 == 0 ? VALID_TOKEN : OTHER_VALID_TOKEN;
+        subjects.add(executor.submit(() -> verifier.verify(token).getPayload().getSubject()));
+      }
+      for (int i = 0; i < subjects.size(); i++) {
+        assertEquals(i % 2 == 0 ? "user" : "otherUser", subjects.get(i).get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(2, verifier.size());
+  }
+
+  private CachingIdTokenVerifier newVerifier(int maxEntries) {
+    return newVerifier(maxEntries, /* maxInvalidEntries= */ maxEntries);
+  }
+
+  private CachingIdTokenVerifier newVerifier(int maxEntries, int maxInvalidEntries) {
+    GoogleIdTokenVerifier.Builder builder =
+        new GoogleIdTokenVerifier.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance())
+            .setClock(nowMillis::get);
+    return new CachingIdTokenVerifier(
+        builder, maxEntries, maxInvalidEntries, /* invalidTokenTtlSeconds= */ 60) {
+      @Override
+      GoogleIdToken verifyUncached(String idTokenString) {
+        verifications.incrementAndGet();
+        return validTokens.get(idTokenString);
+      }
+    };
+  }
+
+  private static GoogleIdToken idToken(String subject) {
+    Payload payload = mock(Payload.class);
+    when(payload.getSubject()).thenReturn(subject);
+    when(payload.getExpirationTimeSeconds()).thenReturn(EXPIRATION_SECONDS);
+    GoogleIdToken idToken = mock(GoogleIdToken.class);
+    when(idToken.getPayload()).thenReturn(payload);
+    return idToken;
+  }
+}
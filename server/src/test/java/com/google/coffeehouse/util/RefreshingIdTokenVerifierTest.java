@@ -0,0 +1,75 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RefreshingIdTokenVerifier}.
+ */
+public class RefreshingIdTokenVerifierTest {
+  private static final String ID_TOKEN = "Identification Token";
+
+  @Test
+  public void verify_usesInstalledKeys() throws Exception {
+    GoogleIdToken idToken = mock(GoogleIdToken.class);
+    GoogleIdTokenVerifier installed = mock(GoogleIdTokenVerifier.class);
+    when(installed.verify(ID_TOKEN)).thenReturn(idToken);
+    RefreshingIdTokenVerifier verifier = new RefreshingIdTokenVerifier(
+        new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+        /* refreshMarginSeconds= */ 600, /* retrySeconds= */ 30);
+
+    verifier.install(installed);
+
+    assertSame(idToken, verifier.verify(ID_TOKEN));
+  }
+
+  @Test
+  public void start_refreshesInBackgroundAndRetriesFailures() throws Exception {
+    AtomicInteger refreshes = new AtomicInteger(0);
+    CountDownLatch threeRefreshes = new CountDownLatch(3);
+    RefreshingIdTokenVerifier verifier = new RefreshingIdTokenVerifier(
+        new NetHttpTransport(), GsonFactory.getDefaultInstance(),
+        /* refreshMarginSeconds= */ 0, /* retrySeconds= */ 0) {
+      @Override
+      public long refreshKeys() throws IOException {
+        threeRefreshes.countDown();
+        if (refreshes.incrementAndGet() == 1) {
+          throw new IOException("keys could not be downloaded");
+        }
+        // Keys that expire at once are refreshed again after the retry interval.
+        return System.currentTimeMillis();
+      }
+    };
+
+    verifier.start();
+    try {
+      assertTrue(threeRefreshes.await(10, TimeUnit.SECONDS));
+    } finally {
+      verifier.stop();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link SecretCache}.
+ */
+public class SecretCacheTest {
+  private static final String SECRET_ID = "TestSecret";
+  private static final long REFRESH_MILLIS = 1000;
+  private static final long RETRY_MILLIS = 100;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Queue<String> values = new ArrayDeque<>();
+  private final List<String> loads = new ArrayList<>();
+  private final Queue<Runnable> deferredLoads = new ArrayDeque<>();
+  private boolean deferLoads;
+  private long now;
+  private SecretCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new SecretCache(
+        secretId -> {
+          loads.add(secretId);
+          String value = values.remove();
+          if (value.isEmpty()) {
+            throw new IOException("Secret Manager is unavailable");
+          }
+          return value;
+        },
+        REFRESH_MILLIS,
+        RETRY_MILLIS,
+        () -> now,
+        runnable -> {
+          if (deferLoads) {
+            deferredLoads.add(runnable);
+          } else {
+            runnable.run();
+          }
+        });
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(SecretCache.LOCAL_DIR_PROPERTY);
+  }
+
+  @Test
+  public void get_loadsOnceAndCaches() {
+    values.add("first");
+
+    assertEquals("first", cache.get(SECRET_ID));
+    now += REFRESH_MILLIS - 1;
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals(1, loads.size());
+  }
+
+  @Test
+  public void prefetch_doesNotWaitForLoad() {
+    values.add("first");
+    deferLoads = true;
+
+    cache.prefetch(SECRET_ID);
+    cache.prefetch(SECRET_ID);
+    assertTrue(loads.isEmpty());
+    assertEquals(1, deferredLoads.size());
+
+    deferredLoads.remove().run();
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals(1, loads.size());
+  }
+
+  @Test
+  public void get_staleSecretReturnedWhileReloading() {
+    values.add("first");
+    values.add("rotated");
+    assertEquals("first", cache.get(SECRET_ID));
+    deferLoads = true;
+    now += REFRESH_MILLIS;
+
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals(1, deferredLoads.size());
+
+    deferredLoads.remove().run();
+    assertEquals("rotated", cache.get(SECRET_ID));
+    assertEquals(2, loads.size());
+  }
+
+  @Test
+  public void get_failedReloadKeepsSecret() {
+    values.add("first");
+    values.add("");
+    values.add("rotated");
+    assertEquals("first", cache.get(SECRET_ID));
+    now += REFRESH_MILLIS;
+
+    // The reload runs right away and fails, so the stale secret is still returned.
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals(2, loads.size());
+
+    // The stale secret is only reloaded again once the retry interval has passed.
+    now += RETRY_MILLIS;
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals("rotated", cache.get(SECRET_ID));
+    assertEquals(3, loads.size());
+  }
+
+  @Test
+  public void get_failedFirstLoadThrowsAndRetriesAfterBackoff() {
+    values.add("");
+    values.add("first");
+
+    try {
+      cache.get(SECRET_ID);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals(SecretCache.LOAD_ERROR + SECRET_ID, e.getMessage());
+    }
+    // The failure is remembered, so the next callers fail without loading the secret again.
+    now += RETRY_MILLIS - 1;
+    assertThrows(IllegalStateException.class, () -> cache.get(SECRET_ID));
+    cache.prefetch(SECRET_ID);
+    assertEquals(1, loads.size());
+
+    now += 1;
+    assertEquals("first", cache.get(SECRET_ID));
+    assertEquals(2, loads.size());
+  }
+
+  @Test
+  public void get_firstLoadSlowerThanTimeoutThrowsAndKeepsLoading() {
+    values.add("first");
+    deferLoads = true;
+
+    try {
+      cache.get(SECRET_ID, 1, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    assertEquals(1, deferredLoads.size());
+
+    deferredLoads.remove().run();
+    assertEquals("first", cache.get(SECRET_ID, 1, TimeUnit.MILLISECONDS));
+    assertEquals(1, loads.size());
+  }
+
+  @Test
+  public void defaultSource_readsLocalDirectory() throws IOException {
+    File secretFile = folder.newFile(SECRET_ID);
+    Files.write(secretFile.toPath(), "local secret\n".getBytes(StandardCharsets.UTF_8));
+    System.setProperty(SecretCache.LOCAL_DIR_PROPERTY, folder.getRoot().getPath());
+
+    assertEquals("local secret", new SecretCache().get(SECRET_ID));
+  }
+}
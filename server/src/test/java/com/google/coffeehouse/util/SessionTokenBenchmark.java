@@ -0,0 +1,93 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.util;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.json.webtoken.JsonWebSignature;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of authenticating a request with a Google ID token, which is parsed and has
+ * its RSA signature checked, and with a {@link SessionTokens} session token, which has its HMAC
+ * checked. It is not run by the tests; run it with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.google.coffeehouse.util.SessionTokenBenchmark}.
+ */
+public class SessionTokenBenchmark {
+  private static final int WARMUP_ITERATIONS = 20000;
+  private static final int MEASURED_ITERATIONS = 100000;
+  private static final String USER_ID = "123456789012345678901";
+
+  public static void main(String[] args) throws Exception {
+    JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    // Google signs ID tokens with 2048 bit RSA keys.
+    generator.initialize(2048);
+    KeyPair keyPair = generator.generateKeyPair();
+
+    JsonWebSignature.Header header = new JsonWebSignature.Header();
+    header.setAlgorithm("RS256");
+    header.setKeyId("benchmark");
+    GoogleIdToken.Payload payload = new GoogleIdToken.Payload();
+    payload.setIssuer("https://accounts.google.com");
+    payload.setAudience(AuthenticationHelper.CLIENT_ID);
+    payload.setSubject(USER_ID);
+    payload.setEmail("user@example.com");
+    payload.setIssuedAtTimeSeconds(System.currentTimeMillis() / 1000);
+    payload.setExpirationTimeSeconds(System.currentTimeMillis() / 1000 + 3600);
+    String idToken =
+        JsonWebSignature.signUsingRsaSha256(keyPair.getPrivate(), jsonFactory, header, payload);
+
+    byte[] key = new byte[SessionTokens.MIN_KEY_BYTES];
+    SessionTokens sessionTokens =
+        new SessionTokens("benchmark:" + Base64.getEncoder().encodeToString(key));
+    String sessionToken = sessionTokens.mint(USER_ID);
+
+    System.out.println("ID token: " + idToken.length() + " characters");
+    System.out.println("Session token: " + sessionToken.length() + " characters");
+    measure("ID token (parse + RSA)", () -> {
+      GoogleIdToken parsed = GoogleIdToken.parse(jsonFactory, idToken);
+      if (!parsed.verifySignature(keyPair.getPublic())) {
+        throw new IllegalStateException("The ID token failed verification.");
+      }
+      return parsed.getPayload().getSubject();
+    });
+    measure("Session token (HMAC)", () -> sessionTokens.verify(sessionToken));
+  }
+
+  private static void measure(String name, Verification verification) throws Exception {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      verification.verify();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      if (!USER_ID.equals(verification.verify())) {
+        throw new IllegalStateException("Wrong user ID for " + name);
+      }
+    }
+    long nanosPerOperation = (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    System.out.println(name + ": " + nanosPerOperation + " ns/op, "
+        + TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanosPerOperation) + " ops/s");
+  }
+
+  // A verification of a token, returning the user ID it holds.
+  private interface Verification {
+    String verify() throws Exception;
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.coffeehouse.util;
+
+import static org.junit.Assert.*;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SessionTokens}.
+ */
+public class SessionTokensTest {
+  private static final String USER_ID = "user-identification-string";
+  private static final String OLD_KEY = "old:" + key((byte) 1);
+  private static final String NEW_KEY = "new:" + key((byte) 2);
+  private static final long TTL_SECONDS = 3600;
+
+  private AtomicLong nowMillis;
+  private SessionTokens sessionTokens;
+
+  @Before
+  public void setUp() {
+    nowMillis = new AtomicLong(1_600_000_000_000L);
+    sessionTokens = newSessionTokens(OLD_KEY);
+  }
+
+  @Test
+  public void verify_mintedToken() throws Exception {
+    String token = sessionTokens.mint(USER_ID);
+
+    assertTrue(SessionTokens.isSessionToken(token));
+    assertEquals(USER_ID, sessionTokens.verify(token));
+  }
+
+  @Test
+  public void verify_expiredToken() throws Exception {
+    String token = sessionTokens.mint(USER_ID);
+    nowMillis.addAndGet(TTL_SECONDS * 1000);
+
+    assertInvalid(token);
+  }
+
+  @Test
+  public void verify_changedToken() throws Exception {
+    String token = sessionTokens.mint(USER_ID);
+    String[] parts = token.split("\\.");
+    parts[2] = Base64.getUrlEncoder().withoutPadding().encodeToString("admin".getBytes());
+
+    assertInvalid(String.join(".", parts));
+    assertInvalid(token.substring(0, token.length() - 2));
+    assertInvalid("cs1.old.garbage");
+    assertInvalid("not a session token");
+  }
+
+  @Test
+  public void verify_keyRotation() throws Exception {
+    String oldToken = sessionTokens.mint(USER_ID);
+    SessionTokens rotated = newSessionTokens(NEW_KEY + "," + OLD_KEY);
+    String newToken = rotated.mint(USER_ID);
+
+    assertEquals(USER_ID, rotated.verify(oldToken));
+    assertEquals(USER_ID, rotated.verify(newToken));
+    assertTrue(newToken.startsWith(SessionTokens.TOKEN_PREFIX + "new."));
+
+    SessionTokens oldKeyRemoved = newSessionTokens(NEW_KEY);
+    assertEquals(USER_ID, oldKeyRemoved.verify(newToken));
+    GeneralSecurityException e = assertThrows(GeneralSecurityException.class, () -> {
+      oldKeyRemoved.verify(oldToken);
+    });
+    assertEquals(SessionTokens.INVALID_SESSION_TOKEN_ERROR, e.getMessage());
+  }
+
+  @Test
+  public void newSessionTokens_invalidKeyring() throws Exception {
+    for (String keyring : Arrays.asList("", "noKey", "short:" + key((byte) 1).substring(8),
+                                        "bad.id:" + key((byte) 1), "id:not base64!")) {
+      IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+        newSessionTokens(keyring);
+      });
+      assertEquals(SessionTokens.INVALID_KEYRING_ERROR, e.getMessage());
+    }
+  }
+
+  private SessionTokens newSessionTokens(String keyring) {
+    return new SessionTokens(keyring, TTL_SECONDS, nowMillis::get);
+  }
+
+  private void assertInvalid(String token) {
+    GeneralSecurityException e = assertThrows(GeneralSecurityException.class, () -> {
+      sessionTokens.verify(token);
+    });
+    assertEquals(SessionTokens.INVALID_SESSION_TOKEN_ERROR, e.getMessage());
+  }
+
+  private static String key(byte fill) {
+    byte[] key = new byte[SessionTokens.MIN_KEY_BYTES];
+    Arrays.fill(key, fill);
+    return Base64.getEncoder().encodeToString(key);
+  }
+}